@@ -0,0 +1,77 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.microsoft.azure.practices.nvadaemon.config.AzureProbeMonitorConfiguration;
+import com.microsoft.azure.practices.nvadaemon.config.NamedResourceId;
+import com.microsoft.azure.practices.nvadaemon.config.NvaConfiguration;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The active NVA as last written by a leader.  The fingerprint identifies the configuration
+ * the index refers to, so state written for a different set of resources is never trusted.
+ */
+public final class ActiveNvaState {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final int activeNvaIndex;
+    private final String fingerprint;
+
+    @JsonCreator
+    public ActiveNvaState(@JsonProperty("activeNvaIndex")int activeNvaIndex,
+                          @JsonProperty("fingerprint")String fingerprint) {
+        Preconditions.checkArgument(activeNvaIndex >= 0, "activeNvaIndex cannot be negative");
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(fingerprint),
+            "fingerprint cannot be null or empty");
+        this.activeNvaIndex = activeNvaIndex;
+        this.fingerprint = fingerprint;
+    }
+
+    public int getActiveNvaIndex() { return this.activeNvaIndex; }
+
+    public String getFingerprint() { return this.fingerprint; }
+
+    public byte[] toBytes() throws IOException {
+        return mapper.writeValueAsBytes(this);
+    }
+
+    public static ActiveNvaState fromBytes(byte[] data) throws IOException {
+        Preconditions.checkNotNull(data, "data cannot be null");
+        return mapper.readValue(data, ActiveNvaState.class);
+    }
+
+    public static String fingerprint(AzureProbeMonitorConfiguration configuration) {
+        Preconditions.checkNotNull(configuration, "configuration cannot be null");
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (NvaConfiguration nvaConfiguration : configuration.getNvaConfigurations()) {
+            hasher.putString("nva", StandardCharsets.UTF_8);
+            for (NamedResourceId networkInterface : nvaConfiguration.getNetworkInterfaces()) {
+                putNamedResourceId(hasher, networkInterface);
+            }
+        }
+
+        hasher.putString("routeTables", StandardCharsets.UTF_8);
+        for (String routeTable : configuration.getRouteTables()) {
+            hasher.putString(routeTable, StandardCharsets.UTF_8).putChar('\0');
+        }
+
+        hasher.putString("publicIpAddresses", StandardCharsets.UTF_8);
+        for (NamedResourceId publicIpAddress : configuration.getPublicIpAddresses()) {
+            putNamedResourceId(hasher, publicIpAddress);
+        }
+
+        return hasher.hash().toString();
+    }
+
+    private static void putNamedResourceId(Hasher hasher, NamedResourceId namedResourceId) {
+        hasher.putString(namedResourceId.getName(), StandardCharsets.UTF_8).putChar('\0')
+            .putString(namedResourceId.getId(), StandardCharsets.UTF_8).putChar('\0');
+    }
+}
@@ -0,0 +1,258 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.microsoft.azure.practices.nvadaemon.metrics.LatencyHistogram;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Paces ARM requests to stay inside the subscription's request quota rather than running into
+ * it.  Reads and writes each draw from one token bucket for the whole subscription, which
+ * refills at the hourly quota and is corrected by the x-ms-ratelimit-remaining-subscription
+ * headers ARM returns, so daemons sharing a subscription see each other's usage.  Those headers
+ * count every provider together, so the buckets are not split by provider.  A throttled
+ * request waits out the Retry-After and is sent again instead of failing.
+ *
+ * Requests also share a limited number of slots, and writes take a free slot ahead of any
+ * waiting reads, so failover writes are not stuck behind background validation.  A read that
+ * would wait longer than maxWait for the quota fails instead.  Writes wait for up to
+ * maxWriteWait, which by default is longer than a failover waits for them, so it is the
+ * failover's timeout, and not the quota, that gives up on a write.
+ *
+ * For each resource provider and request class, the time a request spends waiting for a
+ * token and a slot is recorded as arm_request_wait and the time ARM takes to answer it as
+ * arm_request_latency.
+ */
+public final class ArmRequestScheduler implements Interceptor {
+    private static final Logger log = LoggerFactory.getLogger(ArmRequestScheduler.class);
+    static final String REMAINING_READS_HEADER = "x-ms-ratelimit-remaining-subscription-reads";
+    static final String REMAINING_WRITES_HEADER = "x-ms-ratelimit-remaining-subscription-writes";
+    static final String RETRY_AFTER_HEADER = "Retry-After";
+    static final int TOO_MANY_REQUESTS = 429;
+    public static final int DEFAULT_READS_PER_HOUR = 12000;
+    public static final int DEFAULT_WRITES_PER_HOUR = 1200;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 16;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final int DEFAULT_MAX_WAIT = 60000;
+    public static final int DEFAULT_MAX_WRITE_WAIT = 300000;
+    public static final int DEFAULT_RETRY_AFTER = 10000;
+    private static final String DEFAULT_PROVIDER = "microsoft.resources";
+    private static final String PROVIDERS_SEGMENT = "providers";
+    static final String REQUEST_WAIT_METRIC = "arm_request_wait";
+    static final String REQUEST_LATENCY_METRIC = "arm_request_latency";
+    private static final String REQUEST_LABEL = "request";
+
+    private final int maxConcurrentRequests;
+    private final int maxRetries;
+    private final long maxWait;
+    private final long maxWriteWait;
+    private final Ticker ticker;
+    private final MetricRegistry metricRegistry;
+    private final TokenBucket reads;
+    private final TokenBucket writes;
+    private final Map<String, LatencyHistogram> waits = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotReleased = this.lock.newCondition();
+    private int inFlight;
+    private int waitingWrites;
+
+    public ArmRequestScheduler() {
+        this(new MetricRegistry());
+    }
+
+    public ArmRequestScheduler(MetricRegistry metricRegistry) {
+        this(DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_RETRIES, DEFAULT_MAX_WAIT,
+            DEFAULT_MAX_WRITE_WAIT, TimeUnit.MILLISECONDS, Ticker.systemTicker(), metricRegistry);
+    }
+
+    ArmRequestScheduler(int maxConcurrentRequests, int maxRetries, long maxWait, TimeUnit unit,
+                        Ticker ticker) {
+        this(maxConcurrentRequests, maxRetries, maxWait, maxWait, unit, ticker);
+    }
+
+    ArmRequestScheduler(int maxConcurrentRequests, int maxRetries, long maxWait,
+                        long maxWriteWait, TimeUnit unit, Ticker ticker) {
+        this(maxConcurrentRequests, maxRetries, maxWait, maxWriteWait, unit, ticker,
+            new MetricRegistry());
+    }
+
+    ArmRequestScheduler(int maxConcurrentRequests, int maxRetries, long maxWait,
+                        long maxWriteWait, TimeUnit unit, Ticker ticker,
+                        MetricRegistry metricRegistry) {
+        Preconditions.checkArgument(maxConcurrentRequests > 0,
+            "maxConcurrentRequests must be greater than 0");
+        Preconditions.checkArgument(maxRetries >= 0, "maxRetries cannot be negative");
+        Preconditions.checkArgument(maxWait >= 0, "maxWait cannot be negative");
+        Preconditions.checkArgument(maxWriteWait >= 0, "maxWriteWait cannot be negative");
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxRetries = maxRetries;
+        this.maxWait = unit.toNanos(maxWait);
+        this.maxWriteWait = unit.toNanos(maxWriteWait);
+        this.ticker = Preconditions.checkNotNull(ticker, "ticker cannot be null");
+        this.metricRegistry = Preconditions.checkNotNull(metricRegistry,
+            "metricRegistry cannot be null");
+        this.reads = new TokenBucket(DEFAULT_READS_PER_HOUR, DEFAULT_READS_PER_HOUR,
+            TimeUnit.HOURS, ticker);
+        this.writes = new TokenBucket(DEFAULT_WRITES_PER_HOUR, DEFAULT_WRITES_PER_HOUR,
+            TimeUnit.HOURS, ticker);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean write = isWrite(request);
+        String key = getRequestKey(request, write);
+        TokenBucket bucket = this.getBucket(write);
+        long maxWait = write ? this.maxWriteWait : this.maxWait;
+        LatencyHistogram waits = this.waits.computeIfAbsent(key,
+            k -> this.metricRegistry.getHistogram(REQUEST_WAIT_METRIC, REQUEST_LABEL, k));
+        LatencyHistogram latencies = this.latencies.computeIfAbsent(key,
+            k -> this.metricRegistry.getHistogram(REQUEST_LATENCY_METRIC, REQUEST_LABEL, k));
+        for (int attempt = 0; ; attempt++) {
+            long start = System.nanoTime();
+            long wait = bucket.tryReserve(maxWait, TimeUnit.NANOSECONDS);
+            if (wait < 0) {
+                throw new IOException("ARM request quota exhausted for " + key);
+            }
+
+            if (wait > 0) {
+                log.debug("Delaying " + key + " request for " +
+                    TimeUnit.NANOSECONDS.toMillis(wait) + "ms");
+                sleep(wait);
+            }
+
+            Response response;
+            this.acquireSlot(write);
+            long sent = System.nanoTime();
+            waits.record(sent - start, TimeUnit.NANOSECONDS);
+            try {
+                response = chain.proceed(request);
+            } finally {
+                this.releaseSlot();
+                latencies.recordSince(sent);
+            }
+
+            String remaining = response.header(write ?
+                REMAINING_WRITES_HEADER : REMAINING_READS_HEADER);
+            if (remaining != null) {
+                try {
+                    bucket.sync(Long.parseLong(remaining.trim()));
+                } catch (NumberFormatException e) {
+                    log.debug("Ignoring invalid " + remaining + " header", e);
+                }
+            }
+
+            if (response.code() != TOO_MANY_REQUESTS || attempt >= this.maxRetries) {
+                return response;
+            }
+
+            long retryAfter = getRetryAfter(response);
+            log.warn("ARM throttled " + key + " request, retrying in " + retryAfter + "ms");
+            bucket.pause(retryAfter, TimeUnit.MILLISECONDS);
+            response.close();
+        }
+    }
+
+    TokenBucket getBucket(boolean write) {
+        return write ? this.writes : this.reads;
+    }
+
+    static boolean isWrite(Request request) {
+        return !("GET".equals(request.method()) || "HEAD".equals(request.method()));
+    }
+
+    /**
+     * Returns the resource provider namespace and request class of a request, which its
+     * metrics are labelled with.
+     */
+    static String getRequestKey(Request request, boolean write) {
+        String provider = DEFAULT_PROVIDER;
+        List<String> segments = request.url().pathSegments();
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if (PROVIDERS_SEGMENT.equalsIgnoreCase(segments.get(i))) {
+                provider = segments.get(i + 1).toLowerCase(Locale.ROOT);
+                break;
+            }
+        }
+
+        return provider + (write ? "/write" : "/read");
+    }
+
+    private static long getRetryAfter(Response response) {
+        String retryAfter = response.header(RETRY_AFTER_HEADER);
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring invalid " + RETRY_AFTER_HEADER + " header: " + retryAfter);
+            }
+        }
+
+        return DEFAULT_RETRY_AFTER;
+    }
+
+    private static void sleep(long nanos) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for ARM request quota");
+        }
+    }
+
+    private void acquireSlot(boolean write) throws InterruptedIOException {
+        this.lock.lock();
+        try {
+            if (write) {
+                this.waitingWrites++;
+            }
+
+            try {
+                while (this.inFlight >= this.maxConcurrentRequests ||
+                    (!write && this.waitingWrites > 0)) {
+                    this.slotReleased.await();
+                }
+            } finally {
+                if (write) {
+                    this.waitingWrites--;
+                    // Reads may have been held back for us.
+                    this.slotReleased.signalAll();
+                }
+            }
+
+            this.inFlight++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to send ARM request");
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void releaseSlot() {
+        this.lock.lock();
+        try {
+            this.inFlight--;
+            this.slotReleased.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.microsoft.azure.management.network.NetworkInterface;
+import com.microsoft.azure.management.network.PublicIpAddress;
+import com.microsoft.azure.management.network.RouteTable;
+import com.microsoft.azure.management.resources.fluentcore.model.Appliable;
+import rx.Observable;
+import rx.Scheduler;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A non-blocking view of an AzureClient.  Nothing is sent until an Observable is subscribed
+ * to, so callers can compose many ARM calls and run them at once over the client's shared
+ * connection pool.
+ */
+public interface AsyncAzureClient {
+    Observable<Boolean> checkExistenceById(String id);
+
+    Observable<NetworkInterface> getNetworkInterfaceById(String id);
+
+    Observable<PublicIpAddress> getPublicIpAddressById(String id);
+
+    Observable<RouteTable> getRouteTableById(String id);
+
+    /**
+     * Applies an update to the resource with the given id, emitting the updated resource once
+     * ARM has finished with it.  Any cached copy of the resource is invalidated when the
+     * update finishes, fails or is cancelled.
+     */
+    default <T> Observable<T> apply(String id, Appliable<T> update) {
+        return this.apply(Collections.singletonList(id), update);
+    }
+
+    /**
+     * Applies an update that changes every resource in ids, such as a network interface update
+     * that also changes which network interface a public ip address is assigned to.  Only the
+     * resources in ids are invalidated, so reads of anything else the update changes can be
+     * stale for up to the client's resourceCacheTtl.
+     */
+    <T> Observable<T> apply(List<String> ids, Appliable<T> update);
+
+    /**
+     * Creates an AsyncAzureClient over azureClient.  The SDK only offers blocking reads, so
+     * they run on the scheduler, which should be bounded to limit the number of concurrent
+     * ARM requests.  Updates use the SDK's own asynchronous apply, which polls long running
+     * operations on timers rather than holding a thread for the whole operation.
+     */
+    static AsyncAzureClient create(AzureClient azureClient, Scheduler scheduler) {
+        return new AsyncAzureClientImpl(azureClient, scheduler);
+    }
+
+    final class AsyncAzureClientImpl implements AsyncAzureClient {
+        private final AzureClient azureClient;
+        private final Scheduler scheduler;
+
+        private AsyncAzureClientImpl(AzureClient azureClient, Scheduler scheduler) {
+            this.azureClient = Preconditions.checkNotNull(azureClient,
+                "azureClient cannot be null");
+            this.scheduler = Preconditions.checkNotNull(scheduler, "scheduler cannot be null");
+        }
+
+        @Override
+        public Observable<Boolean> checkExistenceById(String id) {
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(id), "id cannot be null or empty");
+            return Observable.fromCallable(() -> this.azureClient.checkExistenceById(id))
+                .subscribeOn(this.scheduler);
+        }
+
+        @Override
+        public Observable<NetworkInterface> getNetworkInterfaceById(String id) {
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(id), "id cannot be null or empty");
+            return Observable.fromCallable(() -> this.azureClient.getNetworkInterfaceById(id))
+                .subscribeOn(this.scheduler);
+        }
+
+        @Override
+        public Observable<PublicIpAddress> getPublicIpAddressById(String id) {
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(id), "id cannot be null or empty");
+            return Observable.fromCallable(() -> this.azureClient.getPublicIpAddressById(id))
+                .subscribeOn(this.scheduler);
+        }
+
+        @Override
+        public Observable<RouteTable> getRouteTableById(String id) {
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(id), "id cannot be null or empty");
+            return Observable.fromCallable(() -> this.azureClient.getRouteTableById(id))
+                .subscribeOn(this.scheduler);
+        }
+
+        @Override
+        public <T> Observable<T> apply(List<String> ids, Appliable<T> update) {
+            Preconditions.checkArgument((ids != null) && (!ids.isEmpty()),
+                "ids cannot be null or empty");
+            Preconditions.checkArgument(ids.stream().noneMatch(Strings::isNullOrEmpty),
+                "ids cannot contain a null or empty id");
+            Preconditions.checkNotNull(update, "update cannot be null");
+            // The initial request is still made on the subscribing thread, so we defer it
+            // onto the scheduler as well.
+            return Observable.defer(() -> update.applyAsync())
+                .last()
+                .doOnTerminate(() -> this.invalidate(ids))
+                .doOnUnsubscribe(() -> this.invalidate(ids))
+                .subscribeOn(this.scheduler);
+        }
+
+        private void invalidate(List<String> ids) {
+            for (String id : ids) {
+                this.azureClient.invalidate(id);
+            }
+        }
+    }
+}
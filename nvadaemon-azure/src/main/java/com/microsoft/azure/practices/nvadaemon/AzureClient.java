@@ -2,6 +2,10 @@ package com.microsoft.azure.practices.nvadaemon;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.microsoft.azure.RestClient;
 import com.microsoft.azure.credentials.AzureTokenCredentials;
 import com.microsoft.azure.management.Azure;
@@ -19,9 +23,12 @@ import com.microsoft.azure.management.resources.fluentcore.arm.models.GroupableR
 import com.microsoft.azure.management.storage.StorageAccounts;
 import com.microsoft.azure.management.storage.Usages;
 import com.microsoft.azure.management.trafficmanager.TrafficManagerProfiles;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 public interface AzureClient extends AutoCloseable {
@@ -83,19 +90,52 @@ public interface AzureClient extends AutoCloseable {
 
     RouteTable getRouteTableById(String id);
 
+    /**
+     * Drops any cached copy of a resource so the next read goes to ARM.  This must be called
+     * whenever we write to a resource.
+     */
+    void invalidate(String id);
+
     static AzureClient create(AzureTokenCredentials tokenCredentials,
                                      String subscriptionId) {
+        return create(tokenCredentials, subscriptionId, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates an AzureClient that reuses resources read by id for up to resourceCacheTtl, so
+     * the several reads of the same resources made while validating and failing over cost a
+     * single GET each.  A resourceCacheTtl of 0 disables the cache.
+     */
+    static AzureClient create(AzureTokenCredentials tokenCredentials,
+                              String subscriptionId, long resourceCacheTtl, TimeUnit unit) {
+        return create(tokenCredentials, subscriptionId, resourceCacheTtl, unit,
+            new MetricRegistry());
+    }
+
+    /**
+     * Creates an AzureClient as above that records how long each ARM request takes in
+     * metricRegistry.
+     */
+    static AzureClient create(AzureTokenCredentials tokenCredentials,
+                              String subscriptionId, long resourceCacheTtl, TimeUnit unit,
+                              MetricRegistry metricRegistry) {
         Preconditions.checkNotNull(tokenCredentials, "tokenCredentials cannot be null");
         Preconditions.checkArgument(!Strings.isNullOrEmpty(subscriptionId),
             "subscriptionId cannot be null or empty");
+        Preconditions.checkArgument(resourceCacheTtl >= 0,
+            "resourceCacheTtl cannot be negative");
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        Preconditions.checkNotNull(metricRegistry, "metricRegistry cannot be null");
         RestClient restClient = tokenCredentials
             .getEnvironment()
             .newRestClientBuilder()
             .withCredentials(tokenCredentials)
+            .withInterceptor(new ArmRequestScheduler(metricRegistry))
             .build();
         Azure azure = Azure.authenticate(restClient, tokenCredentials.getDomain())
             .withSubscription(subscriptionId);
-        return new AzureClientImpl(azure, restClient);
+        return new AzureClientImpl(azure, restClient, AzureClientImpl.createResourceCache(
+            resourceCacheTtl, unit));
     }
 
     final class AzureClientImpl implements AzureClient {
@@ -104,14 +144,26 @@ public interface AzureClient extends AutoCloseable {
         private final Azure azure;
         private final RestClient restClient;
         private final int shutdownTimeoutMs;
+        // Resources keyed by lower case id, or null if caching is disabled.
+        private final Cache<String, Object> resourceCache;
 
-        private AzureClientImpl(Azure azure, RestClient restClient) {
-            this(azure, restClient, DEFAULT_SHUTDOWN_TIMEOUT_MS);
+        private AzureClientImpl(Azure azure, RestClient restClient,
+                                Cache<String, Object> resourceCache) {
+            this(azure, restClient, DEFAULT_SHUTDOWN_TIMEOUT_MS, resourceCache);
         }
-        private AzureClientImpl(Azure azure, RestClient restClient, int shutdownTimeoutMs) {
+
+        private AzureClientImpl(Azure azure, RestClient restClient, int shutdownTimeoutMs,
+                                Cache<String, Object> resourceCache) {
             this.azure = Preconditions.checkNotNull(azure, "azure cannot be null");
             this.restClient = Preconditions.checkNotNull(restClient, "restClient cannot be null");
             this.shutdownTimeoutMs = shutdownTimeoutMs;
+            this.resourceCache = resourceCache;
+        }
+
+        private static Cache<String, Object> createResourceCache(long ttl, TimeUnit unit) {
+            return ttl == 0 ? null : CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl, unit)
+                .build();
         }
 
         public NetworkInterface getNetworkInterfaceById(String id) {
@@ -138,9 +190,38 @@ public interface AzureClient extends AutoCloseable {
                 return false;
             }
         }
+        @SuppressWarnings("unchecked")
         public <T extends GroupableResource> T getById(String id, SupportsGettingById<T> resources) {
             Preconditions.checkArgument(!Strings.isNullOrEmpty(id), "id cannot be null or empty");
             Preconditions.checkNotNull(resources, "resources cannot be null");
+            if (this.resourceCache == null) {
+                return load(id, resources);
+            }
+
+            try {
+                // Concurrent reads of the same resource share one GET.
+                return (T)this.resourceCache.get(id.toLowerCase(Locale.ROOT),
+                    () -> load(id, resources));
+            } catch (UncheckedExecutionException | ExecutionException e) {
+                // Surface the original exception so callers see the same errors as an uncached GET.
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException)e.getCause();
+                }
+
+                throw new IllegalArgumentException("Error getting resource: " + id, e.getCause());
+            } catch (ExecutionError e) {
+                throw (java.lang.Error)e.getCause();
+            }
+        }
+
+        public void invalidate(String id) {
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(id), "id cannot be null or empty");
+            if (this.resourceCache != null) {
+                this.resourceCache.invalidate(id.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        private static <T> T load(String id, SupportsGettingById<T> resources) {
             log.debug("Getting resource: " + id);
 
             T resource = resources.getById(id);
@@ -12,71 +12,304 @@ import com.microsoft.azure.practices.nvadaemon.config.*;
 import com.microsoft.azure.practices.nvadaemon.credentials.AsymmetricKeyCredentialFactory;
 import com.microsoft.azure.practices.nvadaemon.credentials.AzureClientIdCertificateCredentialFactoryImpl;
 import com.microsoft.azure.practices.nvadaemon.credentials.CertificateCredentials;
+import com.microsoft.azure.practices.nvadaemon.failover.AzureResourceMigrator;
+import com.microsoft.azure.practices.nvadaemon.failover.FailoverPlan;
+import com.microsoft.azure.practices.nvadaemon.failover.FailoverPlanner;
+import com.microsoft.azure.practices.nvadaemon.failover.FailoverTargetSelector;
+import com.microsoft.azure.practices.nvadaemon.metrics.LatencyHistogram;
+import com.microsoft.azure.practices.nvadaemon.metrics.Gauge;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
+import com.microsoft.azure.practices.nvadaemon.monitor.FailureDetector;
+import com.microsoft.azure.practices.nvadaemon.monitor.HealthSample;
+import com.microsoft.azure.practices.nvadaemon.monitor.MonitorContext;
+import com.microsoft.azure.practices.nvadaemon.monitor.MonitorStateStore;
+import com.microsoft.azure.practices.nvadaemon.monitor.PeerHealth;
+import com.microsoft.azure.practices.nvadaemon.monitor.PhiAccrualFailureDetector;
 import com.microsoft.azure.practices.nvadaemon.monitor.ScheduledMonitor;
+import com.microsoft.azure.practices.nvadaemon.monitor.ThresholdFailureDetector;
+import com.microsoft.azure.practices.nvadaemon.probe.HttpProbe;
+import com.microsoft.azure.practices.nvadaemon.probe.Probe;
+import com.microsoft.azure.practices.nvadaemon.probe.ProbeEngine;
+import com.microsoft.azure.practices.nvadaemon.probe.ProbeResult;
+import com.microsoft.azure.practices.nvadaemon.probe.TcpProbe;
+import com.microsoft.azure.practices.nvadaemon.probe.TlsProbe;
+import com.microsoft.azure.practices.nvadaemon.probe.UdpProbe;
 import com.microsoft.azure.practices.nvadaemon.config.AzureConfiguration.ServicePrincipal;
 import com.microsoft.azure.practices.nvadaemon.config.AzureConfiguration.ServicePrincipal.AuthenticationMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rx.schedulers.Schedulers;
 
 import java.io.IOException;
-import java.nio.channels.SocketChannel;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class AzureProbeMonitor implements ScheduledMonitor {
 
     private static final Logger log = LoggerFactory.getLogger(AzureProbeMonitor.class);
+    private static final int FAILOVER_EXECUTOR_SHUTDOWN_TIMEOUT_MS = 5000;
+    private static final String ACTIVE_NVA_STATE_KEY = "active-nva";
+    private static final String FAILOVER_JOURNAL_STATE_KEY = "failover-journal";
+    // The failover rounds the peers can refuse before we go back to the normal probe interval.
+    static final int MAX_UNCONFIRMED_ROUNDS = 3;
+    static final String PROBE_LATENCY_METRIC = "probe_latency";
+    static final String FAILURE_DETECTION_TIME_METRIC = "failure_detection_time";
+    static final String FAILOVER_DURATION_METRIC = "failover_duration";
+    static final String NVA_ACTIVE_METRIC = "nva_active";
+    static final String NVA_HEALTHY_METRIC = "nva_healthy";
     private int failures = 0;
+    private int unconfirmedRounds = 0;
     private AzureClient azureClient;
+    private AzureTokenCredentials credentials;
     private AzureProbeMonitorConfiguration configuration;
     private CurrentPeekingIterator<NvaConfiguration> nvaConfigurations;
+    private ExecutorService failoverExecutorService;
+    private AsyncAzureClient asyncAzureClient;
+    private PrivateIpAddressCache privateIpAddressCache;
+    private ProbeEngine probeEngine;
+    private volatile Map<SocketAddress, ProbeResult> probeResults = Collections.emptyMap();
+    private final FailoverTargetSelector failoverTargetSelector = new FailoverTargetSelector();
+    private final Map<SocketAddress, FailureDetector> failureDetectors = new HashMap<>();
+    private final Map<ProbeConfiguration, Probe> probes = new IdentityHashMap<>();
+    private MonitorStateStore stateStore;
+    private PeerHealth peerHealth;
+    private MetricRegistry metricRegistry;
+    private LatencyHistogram failureDetectionTime;
+    private LatencyHistogram failoverDuration;
+    private final Map<SocketAddress, LatencyHistogram> probeLatencies = new HashMap<>();
+    private final Map<SocketAddress, Gauge> nvaActive = new HashMap<>();
+    private final Map<SocketAddress, Gauge> nvaHealthy = new HashMap<>();
+    private boolean failing;
+    private long failureStart;
+    private String fingerprint;
+    private long configurationId;
+    private Future<Verification> verification;
+    private FailoverJournal journal;
+    private FailoverPlanner failoverPlanner;
+    private AzureResourceMigrator resourceMigrator;
+
+    private static final class Verification {
+        private final int activeNvaIndex;
+        private final boolean valid;
+
+        Verification(int activeNvaIndex, boolean valid) {
+            this.activeNvaIndex = activeNvaIndex;
+            this.valid = valid;
+        }
+    }
+
+    public static final class AzureProbeMonitorException extends RuntimeException {
+        public AzureProbeMonitorException(String message) {
+            super(message);
+        }
+
+        public AzureProbeMonitorException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
 
     public AzureProbeMonitor(MonitorConfiguration monitorConfiguration)
         throws ConfigurationException {
+        this(monitorConfiguration, new InMemoryMonitorStateStore(), new InMemoryPeerHealth(),
+            new MetricRegistry());
+    }
+
+    public AzureProbeMonitor(MonitorConfiguration monitorConfiguration,
+                             MonitorContext monitorContext)
+        throws ConfigurationException {
+        this(monitorConfiguration, Preconditions.checkNotNull(monitorContext,
+            "monitorContext cannot be null").getStateStore(), monitorContext.getPeerHealth(),
+            monitorContext.getMetricRegistry());
+    }
+
+    private AzureProbeMonitor(MonitorConfiguration monitorConfiguration,
+                              MonitorStateStore stateStore, PeerHealth peerHealth,
+                              MetricRegistry metricRegistry)
+        throws ConfigurationException {
         this.configuration = AzureProbeMonitorConfiguration.create(
             Preconditions.checkNotNull(monitorConfiguration, "monitorConfiguration cannot be null"));
-        this.azureClient = createAzureClient(this.configuration);
+        this.stateStore = Preconditions.checkNotNull(stateStore, "stateStore cannot be null");
+        this.peerHealth = Preconditions.checkNotNull(peerHealth, "peerHealth cannot be null");
+        this.setMetricRegistry(metricRegistry);
+        this.credentials = createCredentials(this.configuration);
+        this.azureClient = createAzureClient(this.configuration, this.credentials,
+            this.metricRegistry);
         this.configuration.validate(this.azureClient);
+        this.failoverExecutorService = Executors.newFixedThreadPool(
+            this.configuration.getFailoverParallelism());
+        this.asyncAzureClient = AsyncAzureClient.create(this.azureClient,
+            Schedulers.from(this.failoverExecutorService));
+        this.privateIpAddressCache = createPrivateIpAddressCache();
+        this.failoverPlanner = new FailoverPlanner(this.configuration, this.azureClient,
+            this.privateIpAddressCache, this.failoverExecutorService);
+        this.resourceMigrator = new AzureResourceMigrator(this.configuration, this.azureClient,
+            this.asyncAzureClient, this.failoverPlanner, this.metricRegistry);
+        this.probeEngine = createProbeEngine();
+        this.fingerprint = ActiveNvaState.fingerprint(this.configuration);
+        this.configurationId = Long.parseUnsignedLong(this.fingerprint.substring(0, 16), 16);
+    }
+
+    AzureProbeMonitor(AzureProbeMonitorConfiguration configuration, AzureClient azureClient) {
+        this(configuration, azureClient, new InMemoryMonitorStateStore());
+    }
+
+    AzureProbeMonitor(AzureProbeMonitorConfiguration configuration, AzureClient azureClient,
+                      MonitorStateStore stateStore) {
+        this(configuration, azureClient, stateStore, new InMemoryPeerHealth());
+    }
+
+    AzureProbeMonitor(AzureProbeMonitorConfiguration configuration, AzureClient azureClient,
+                      MonitorStateStore stateStore, PeerHealth peerHealth) {
+        this(configuration, azureClient, stateStore, peerHealth, createProbeEngine());
+    }
+
+    AzureProbeMonitor(AzureProbeMonitorConfiguration configuration, AzureClient azureClient,
+                      MonitorStateStore stateStore, PeerHealth peerHealth,
+                      ProbeEngine probeEngine) {
+        this.configuration = Preconditions.checkNotNull(configuration,
+            "configuration cannot be null");
+        this.azureClient = Preconditions.checkNotNull(azureClient, "azureClient cannot be null");
+        this.stateStore = Preconditions.checkNotNull(stateStore, "stateStore cannot be null");
+        this.peerHealth = Preconditions.checkNotNull(peerHealth, "peerHealth cannot be null");
+        this.setMetricRegistry(new MetricRegistry());
+        this.failoverExecutorService = Executors.newFixedThreadPool(
+            this.configuration.getFailoverParallelism());
+        this.asyncAzureClient = AsyncAzureClient.create(this.azureClient,
+            Schedulers.from(this.failoverExecutorService));
+        this.privateIpAddressCache = createPrivateIpAddressCache();
+        this.failoverPlanner = new FailoverPlanner(this.configuration, this.azureClient,
+            this.privateIpAddressCache, this.failoverExecutorService);
+        this.resourceMigrator = new AzureResourceMigrator(this.configuration, this.azureClient,
+            this.asyncAzureClient, this.failoverPlanner, this.metricRegistry);
+        this.probeEngine = Preconditions.checkNotNull(probeEngine, "probeEngine cannot be null");
+        this.fingerprint = ActiveNvaState.fingerprint(this.configuration);
+        this.configurationId = Long.parseUnsignedLong(this.fingerprint.substring(0, 16), 16);
+    }
+
+    private void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry = Preconditions.checkNotNull(metricRegistry,
+            "metricRegistry cannot be null");
+        this.failureDetectionTime = metricRegistry.getHistogram(FAILURE_DETECTION_TIME_METRIC);
+        this.failoverDuration = metricRegistry.getHistogram(FAILOVER_DURATION_METRIC);
+    }
+
+    MetricRegistry getMetricRegistry() {
+        return this.metricRegistry;
+    }
+
+    private static ProbeEngine createProbeEngine() {
+        try {
+            return new ProbeEngine();
+        } catch (IOException e) {
+            throw new AzureProbeMonitorException("Error creating probe engine", e);
+        }
     }
 
-    private static AzureClient createAzureClient(AzureProbeMonitorConfiguration azureProbeMonitorConfiguration) throws CloudException {
+    private FailureDetector createFailureDetector() {
+        FailureDetectorConfiguration failureDetectorConfiguration =
+            this.configuration.getFailureDetectorConfiguration();
+        if (FailureDetectorConfiguration.PHI_ACCRUAL.equals(
+            failureDetectorConfiguration.getType())) {
+            return new PhiAccrualFailureDetector(failureDetectorConfiguration.getPhiThreshold(),
+                failureDetectorConfiguration.getMaxSampleSize(),
+                failureDetectorConfiguration.getMinStdDeviation(),
+                failureDetectorConfiguration.getAcceptablePause(),
+                this.configuration.getProbePollingInterval(), TimeUnit.MILLISECONDS);
+        }
+
+        return new ThresholdFailureDetector(this.configuration.getNumberOfFailuresThreshold());
+    }
+
+    // Every NVA keeps its own history, so a standby we fail over to is judged on its record.
+    FailureDetector getFailureDetector(SocketAddress probeSocketAddress) {
+        return this.failureDetectors.computeIfAbsent(probeSocketAddress,
+            a -> createFailureDetector());
+    }
+
+    static Probe createProbe(ProbeConfiguration probeConfiguration) {
+        Preconditions.checkNotNull(probeConfiguration, "probeConfiguration cannot be null");
+        switch (probeConfiguration.getType()) {
+            case ProbeConfiguration.HTTP:
+            case ProbeConfiguration.HTTPS:
+                return new HttpProbe(ProbeConfiguration.HTTPS.equals(probeConfiguration.getType()),
+                    probeConfiguration.isVerifyCertificate(), probeConfiguration.getPath(),
+                    probeConfiguration.getExpectedStatus(), probeConfiguration.getExpectedBody());
+            case ProbeConfiguration.TLS:
+                return new TlsProbe(probeConfiguration.isVerifyCertificate());
+            case ProbeConfiguration.UDP:
+                return new UdpProbe(
+                    probeConfiguration.getRequest().getBytes(StandardCharsets.UTF_8),
+                    probeConfiguration.getExpectedResponse() == null ? null :
+                        probeConfiguration.getExpectedResponse().getBytes(StandardCharsets.UTF_8));
+            default:
+                return TcpProbe.INSTANCE;
+        }
+    }
+
+    private Probe getProbe(ProbeConfiguration probeConfiguration) {
+        return this.probes.computeIfAbsent(probeConfiguration, c -> createProbe(c));
+    }
+
+    private PrivateIpAddressCache createPrivateIpAddressCache() {
+        return new PrivateIpAddressCache(this.azureClient,
+            this.configuration.getPrivateIpAddressCacheTtl(), TimeUnit.MILLISECONDS,
+            this.failoverExecutorService);
+    }
+
+    private static AzureClient createAzureClient(AzureProbeMonitorConfiguration azureProbeMonitorConfiguration,
+                                                 AzureTokenCredentials credentials,
+                                                 MetricRegistry metricRegistry) throws CloudException {
         Preconditions.checkNotNull(azureProbeMonitorConfiguration,
             "azureProbeMonitorConfiguration cannot be null");
         try {
-            AzureTokenCredentials credentials;
-            AzureConfiguration azureConfiguration =
-                azureProbeMonitorConfiguration.getAzureConfiguration();
-            ServicePrincipal servicePrincipal =
-                azureConfiguration.getServicePrincipal();
-
-            if (servicePrincipal.getAuthenticationMode() == AuthenticationMode.PASSWORD) {
-                credentials = new ApplicationTokenCredentials(
-                    servicePrincipal.getClientId(), servicePrincipal.getTenantId(),
-                    servicePrincipal.getClientSecret(), AzureEnvironment.AZURE);
-            } else if (servicePrincipal.getAuthenticationMode() == AuthenticationMode.CERTIFICATE) {
-                AsymmetricKeyCredentialFactory factory =
-                    new AzureClientIdCertificateCredentialFactoryImpl(
-                        servicePrincipal.getClientId(),
-                        servicePrincipal.getClientCertificate().getKeyStorePath(),
-                        servicePrincipal.getClientCertificate().getKeyStorePassword(),
-                        servicePrincipal.getClientCertificate().getCertificatePassword());
-
-                credentials = new CertificateCredentials(
-                    servicePrincipal.getTenantId(), AzureEnvironment.AZURE, factory);
-            } else {
-                throw new IllegalArgumentException("Unsupported AuthenticationMode: " +
-                servicePrincipal.getAuthenticationMode());
-            }
-
             return AzureClient.create(credentials,
-                azureConfiguration.getSubscriptionId());
+                azureProbeMonitorConfiguration.getAzureConfiguration().getSubscriptionId(),
+                azureProbeMonitorConfiguration.getResourceCacheTtl(), TimeUnit.MILLISECONDS,
+                metricRegistry);
         } catch (CloudException e) {
             log.error("Exception creating Azure client", e);
             throw e;
         }
     }
 
+    private static AzureTokenCredentials createCredentials(AzureProbeMonitorConfiguration azureProbeMonitorConfiguration) {
+        Preconditions.checkNotNull(azureProbeMonitorConfiguration,
+            "azureProbeMonitorConfiguration cannot be null");
+        AzureTokenCredentials credentials;
+        AzureConfiguration azureConfiguration =
+            azureProbeMonitorConfiguration.getAzureConfiguration();
+        ServicePrincipal servicePrincipal =
+            azureConfiguration.getServicePrincipal();
+
+        if (servicePrincipal.getAuthenticationMode() == AuthenticationMode.PASSWORD) {
+            credentials = new ApplicationTokenCredentials(
+                servicePrincipal.getClientId(), servicePrincipal.getTenantId(),
+                servicePrincipal.getClientSecret(), AzureEnvironment.AZURE);
+        } else if (servicePrincipal.getAuthenticationMode() == AuthenticationMode.CERTIFICATE) {
+            AsymmetricKeyCredentialFactory factory =
+                new AzureClientIdCertificateCredentialFactoryImpl(
+                    servicePrincipal.getClientId(),
+                    servicePrincipal.getClientCertificate().getKeyStorePath(),
+                    servicePrincipal.getClientCertificate().getKeyStorePassword(),
+                    servicePrincipal.getClientCertificate().getCertificatePassword());
+
+            credentials = new CertificateCredentials(
+                servicePrincipal.getTenantId(), AzureEnvironment.AZURE, factory);
+        } else {
+            throw new IllegalArgumentException("Unsupported AuthenticationMode: " +
+            servicePrincipal.getAuthenticationMode());
+        }
+
+        return credentials;
+    }
+
     private int getCurrentNvaIndex() {
         // We need to find out the current setup of the NVAs
         // We are going to change this from the original version.  In order to save some cycles,
@@ -106,7 +339,7 @@ public class AzureProbeMonitor implements ScheduledMonitor {
             }
 
             Set<String> privateIpAddresses = nvaConfiguration.getNetworkInterfaces().stream()
-                .map(r -> this.azureClient.getNetworkInterfaceById(r.getId()).primaryPrivateIp())
+                .map(r -> this.privateIpAddressCache.get(r.getId()))
                 .collect(Collectors.toSet());
             Set<String> nextHopIpAddresses = routeTables.stream()
                 .flatMap(rt -> rt.routes().values().stream()
@@ -125,103 +358,42 @@ public class AzureProbeMonitor implements ScheduledMonitor {
 
     private void migrateAzureResources(NvaConfiguration nvaConfiguration) {
         Preconditions.checkNotNull(nvaConfiguration, "nvaConfiguration cannot be null");
-        this.migratePublicIpAddress(nvaConfiguration);
-        this.migrateRouteTables(nvaConfiguration);
+        List<String> steps = new ArrayList<>(this.configuration.getRouteTables());
+        steps.addAll(this.failoverPlanner.getPublicIpAddressMigrations(nvaConfiguration).keySet());
+        this.migrateAzureResources(nvaConfiguration, new FailoverJournal(
+            this.configuration.getNvaConfigurations().indexOf(nvaConfiguration),
+            this.fingerprint, steps, null));
     }
 
-    private void migrateRouteTables(NvaConfiguration next) {
-        // We are going to migrate all routes that start with any of the other private ip
-        // addresses.
-        Map<String, String> toMap = next.getNetworkInterfaces().stream()
-            .collect(Collectors.toMap(r -> r.getName(),
-                r -> this.azureClient.getNetworkInterfaceById(r.getId()).primaryPrivateIp()));
-        Map<String, List<String>> fromMap = this.configuration.getNvaConfigurations().stream()
-            .filter(c -> !c.equals(next))
-            .flatMap(c -> c.getNetworkInterfaces().stream())
-            .collect(Collectors.groupingBy(r -> r.getName(),
-                Collectors.mapping(
-                    r -> this.azureClient.getNetworkInterfaceById(r.getId()).primaryPrivateIp(),
-                    Collectors.toList())));
-        List<RouteTable> routeTables = this.configuration.getRouteTables().stream()
-            .map(id -> this.azureClient.getRouteTableById(id))
-            .collect(Collectors.toList());
-        for (RouteTable routeTable : routeTables) {
-            RouteTable.Update update = null;
-            for (String nicGroup : fromMap.keySet()) {
-                String toIpAddress = toMap.get(nicGroup);
-                List<String> routeNames = routeTable.routes().entrySet().stream()
-                    .filter(e -> fromMap.get(nicGroup).contains(e.getValue().nextHopIpAddress()))
-                    .map(e -> e.getKey())
-                    .collect(Collectors.toList());
-                for (String routeName : routeNames) {
-                    update = routeTable.update()
-                        .updateRoute(routeName)
-                        .withNextHopToVirtualAppliance(toIpAddress)
-                        .parent();
-                }
-            }
-
-            if (update != null) {
-                log.debug("Updating route table" + routeTable.id());
-                update.apply();
-                log.debug("Updated route table" + routeTable.id());
-            }
+    private void migrateAzureResources(NvaConfiguration nvaConfiguration,
+                                       FailoverJournal journal) {
+        long deadline = System.nanoTime() +
+            TimeUnit.MILLISECONDS.toNanos(this.configuration.getFailoverTimeout());
+        // The plan is written before any resource is touched, so a leader that takes over
+        // partway through knows what is left to do.
+        this.journal = journal;
+        this.writeJournal();
+        Set<String> pendingSteps = new HashSet<>(journal.getPendingSteps());
+        FailoverPlan plan = this.failoverPlanner.getFailoverPlan(nvaConfiguration);
+        if (plan != null) {
+            log.info("Using prepared failover plan with " + plan.getWriteCount() + " write(s)");
         }
-    }
-
-    private void migratePublicIpAddress(NvaConfiguration next) {
-        Map<String, NetworkInterface> toMap = next.getNetworkInterfaces().stream()
-            .collect(Collectors.toMap(r -> r.getName(),
-                r -> this.azureClient.getNetworkInterfaceById(r.getId())));
-        Map<String, PublicIpAddress> publicIpAddresses =
-            this.configuration.getPublicIpAddresses().stream()
-            .collect(Collectors.toMap(r -> r.getName(),
-                r -> this.azureClient.getPublicIpAddressById(r.getId())));
-        for (Map.Entry<String, PublicIpAddress> entry : publicIpAddresses.entrySet()) {
-            NetworkInterface toNetworkInterface = toMap.get(entry.getKey());
-            if (toNetworkInterface != null) {
-                PublicIpAddress publicIpAddress = entry.getValue();
-                NetworkInterface publicIpAddressNetworkInterface = null;
-                if (publicIpAddress.hasAssignedNetworkInterface()) {
-                    publicIpAddressNetworkInterface =
-                        publicIpAddress.getAssignedNetworkInterfaceIpConfiguration()
-                        .parent();
-                }
 
-                boolean migratePip = false;
-                if (publicIpAddressNetworkInterface == null) {
-                    migratePip = true;
-                } else if (!publicIpAddressNetworkInterface.id().equals(
-                        toNetworkInterface.id())) {
-                    migratePip = true;
-                    log.debug("Removing public ip address from network interface " +
-                        publicIpAddressNetworkInterface.id());
-
-                    publicIpAddressNetworkInterface.update()
-                        .withoutPrimaryPublicIpAddress()
-                        .apply();
-                    log.debug("Public ip address removed from network interface " +
-                        publicIpAddressNetworkInterface.id());
-
-                    log.debug("Adding public ip address to network interface " +
-                        toNetworkInterface.id());
-                    toNetworkInterface.update()
-                        .withExistingPrimaryPublicIpAddress(publicIpAddress)
-                        .apply();
-                    log.debug("Added public ip address to network interface " +
-                        toNetworkInterface.id());
-                }
+        List<String> failedResources;
+        try {
+            failedResources = this.resourceMigrator.migrate(nvaConfiguration, plan, pendingSteps,
+                this::completeStep, deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AzureProbeMonitorException("Migration interrupted", e);
+        } finally {
+            // The plans describe the resources as they were before we changed them.
+            this.failoverPlanner.invalidate();
+        }
 
-                if (migratePip) {
-                    log.debug("Adding public ip address to network interface " +
-                        toNetworkInterface.id());
-                    toNetworkInterface.update()
-                        .withExistingPrimaryPublicIpAddress(publicIpAddress)
-                        .apply();
-                    log.debug("Added public ip address to network interface " +
-                        toNetworkInterface.id());
-                }
-            }
+        if (failedResources.size() > 0) {
+            throw new AzureProbeMonitorException("Error migrating resource(s): " +
+                failedResources.stream().collect(Collectors.joining(", ")));
         }
     }
 
@@ -253,7 +425,7 @@ public class AzureProbeMonitor implements ScheduledMonitor {
         }
 
         Set<String> privateIpAddresses = networkInterfaces.values().stream()
-            .map(id -> this.azureClient.getNetworkInterfaceById(id).primaryPrivateIp())
+            .map(id -> this.privateIpAddressCache.get(id))
             .collect(Collectors.toSet());
         Set<String> nextHopIpAddresses = this.configuration.getRouteTables().stream()
             .map(id -> this.azureClient.getRouteTableById(id))
@@ -272,52 +444,492 @@ public class AzureProbeMonitor implements ScheduledMonitor {
     }
 
     @Override
-    //public void init(MonitorConfiguration configuration) throws Exception {
+    public void refresh() throws Exception {
+        // Keep a standby ready to take over with a current token, a warm connection pool and
+        // the private ip addresses and plans a failover needs.
+        if (this.credentials != null) {
+            this.credentials.getToken(this.credentials.getEnvironment().getManagementEndpoint());
+        }
+
+        for (NvaConfiguration nvaConfiguration : this.configuration.getNvaConfigurations()) {
+            for (NamedResourceId networkInterface : nvaConfiguration.getNetworkInterfaces()) {
+                this.privateIpAddressCache.get(networkInterface.getId());
+            }
+        }
+
+        this.failoverPlanner.refresh();
+    }
+
+    @Override
     public void init() throws Exception {
-//        Preconditions.checkNotNull(configuration, "config cannot be null");
-//        this.configuration = AzureProbeMonitorConfiguration.create(configuration);
         this.failures = 0;
-//        createAzureClient();
-//        this.configuration.validate(this.azureClient);
+        this.unconfirmedRounds = 0;
+        this.failoverPlanner.expireRefreshInterval();
+        FailoverJournal journal = this.readJournal();
+        if (journal != null) {
+            // The previous leader died partway through a failover.  Its journal tells us the
+            // target and which resources were already moved, so we only finish the rest.
+            log.info("Resuming failover to NVA index " + journal.getTargetNvaIndex() + " with " +
+                journal.getPendingSteps().size() + " of " + journal.getSteps().size() +
+                " resource(s) left to migrate");
+            this.setCurrentNva(journal.getTargetNvaIndex());
+            this.migrateAzureResources(this.nvaConfigurations.current(), journal);
+            this.writeActiveNvaIndex();
+            return;
+        }
+
+        int persistedNvaIndex = this.readActiveNvaIndex();
+        if (persistedNvaIndex != -1) {
+            // The previous leader left us the active NVA, so we can start probing right away
+            // and check it against ARM in the background.
+            log.info("Using persisted active NVA index " + persistedNvaIndex);
+            this.setCurrentNva(persistedNvaIndex);
+            this.verification = this.failoverExecutorService.submit(() -> this.verify());
+            return;
+        }
+
+        Verification verification = this.verify();
+        this.setCurrentNva(verification.activeNvaIndex);
+        if (!verification.valid) {
+            this.migrateAzureResources(this.nvaConfigurations.current());
+        }
+
+        this.writeActiveNvaIndex();
+    }
+
+    private Verification verify() throws ExecutionException {
+        // Resolve every network interface up front so a failover only has to issue writes.
+        this.privateIpAddressCache.load(this.configuration.getNvaConfigurations().stream()
+            .flatMap(c -> c.getNetworkInterfaces().stream())
+            .map(r -> r.getId())
+            .collect(Collectors.toList()));
         int currentNvaIndex = this.getCurrentNvaIndex();
         if (currentNvaIndex == -1) {
             throw new UnsupportedOperationException("Active NVA was not found");
         }
 
+        return new Verification(currentNvaIndex, this.isNvaValid(
+            this.configuration.getNvaConfigurations().get(currentNvaIndex)));
+    }
+
+    private void completeVerification() {
+        if ((this.verification == null) || (!this.verification.isDone())) {
+            return;
+        }
+
+        Verification verification;
+        try {
+            verification = this.verification.get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (e.getCause() instanceof UnsupportedOperationException) {
+                throw (UnsupportedOperationException)e.getCause();
+            }
+
+            log.warn("Error verifying persisted active NVA.  Retrying", e);
+            this.verification = this.failoverExecutorService.submit(() -> this.verify());
+            return;
+        }
+
+        this.verification = null;
+        int currentNvaIndex = this.configuration.getNvaConfigurations()
+            .indexOf(this.nvaConfigurations.current());
+        if (verification.activeNvaIndex != currentNvaIndex) {
+            log.warn("Persisted active NVA index " + currentNvaIndex +
+                " does not match the Azure resources.  Using index " +
+                verification.activeNvaIndex);
+            this.setCurrentNva(verification.activeNvaIndex);
+        }
+
+        if (!verification.valid) {
+            this.migrateAzureResources(this.nvaConfigurations.current());
+        }
+
+        this.writeActiveNvaIndex();
+        log.info("Persisted active NVA verified");
+    }
+
+    boolean isVerified() {
+        return this.verification == null;
+    }
+
+    private void setCurrentNva(int nvaIndex) {
         this.nvaConfigurations = com.microsoft.azure.practices.nvadaemon.collect.Iterators.currentPeekingIterator(
             Iterators.peekingIterator(Iterators.cycle(this.configuration.getNvaConfigurations())));
         // This needs to be one greater than the current index, since the iterator is at the beginning.
-        Iterators.advance(this.nvaConfigurations, currentNvaIndex + 1);
-        NvaConfiguration current = this.nvaConfigurations.current();
-        if (!this.isNvaValid(current)) {
-            this.migrateAzureResources(current);
+        Iterators.advance(this.nvaConfigurations, nvaIndex + 1);
+    }
+
+    private int readActiveNvaIndex() {
+        try {
+            byte[] data = this.stateStore.read(ACTIVE_NVA_STATE_KEY);
+            if (data == null) {
+                return -1;
+            }
+
+            ActiveNvaState state = ActiveNvaState.fromBytes(data);
+            if (!state.getFingerprint().equals(this.fingerprint)) {
+                log.info("Persisted active NVA is for a different configuration.  Ignoring");
+                return -1;
+            }
+
+            if (state.getActiveNvaIndex() >= this.configuration.getNvaConfigurations().size()) {
+                return -1;
+            }
+
+            return state.getActiveNvaIndex();
+        } catch (Exception e) {
+            log.warn("Error reading persisted active NVA", e);
+            return -1;
+        }
+    }
+
+    private void writeActiveNvaIndex() {
+        int currentNvaIndex = this.configuration.getNvaConfigurations()
+            .indexOf(this.nvaConfigurations.current());
+        try {
+            this.stateStore.write(ACTIVE_NVA_STATE_KEY,
+                new ActiveNvaState(currentNvaIndex, this.fingerprint).toBytes());
+        } catch (Exception e) {
+            // The next leader will just have to discover the active NVA itself.
+            log.warn("Error persisting active NVA", e);
+        }
+    }
+
+    private FailoverJournal readJournal() {
+        try {
+            byte[] data = this.stateStore.read(FAILOVER_JOURNAL_STATE_KEY);
+            if (data == null) {
+                return null;
+            }
+
+            FailoverJournal journal = FailoverJournal.fromBytes(data);
+            if (!journal.getFingerprint().equals(this.fingerprint)) {
+                log.info("Persisted failover journal is for a different configuration.  Ignoring");
+                return null;
+            }
+
+            if ((journal.isComplete()) ||
+                (journal.getTargetNvaIndex() >= this.configuration.getNvaConfigurations().size())) {
+                return null;
+            }
+
+            return journal;
+        } catch (Exception e) {
+            log.warn("Error reading persisted failover journal", e);
+            return null;
+        }
+    }
+
+    private synchronized void completeStep(String step) {
+        this.journal = this.journal.withCompletedStep(step);
+        this.writeJournal();
+    }
+
+    private synchronized void writeJournal() {
+        try {
+            this.stateStore.write(FAILOVER_JOURNAL_STATE_KEY, this.journal.toBytes());
+        } catch (Exception e) {
+            // The next leader will just repeat the steps we could not record.
+            log.warn("Error persisting failover journal", e);
         }
     }
 
     @Override
     public boolean probe() {
+        this.completeVerification();
+        this.failoverPlanner.scheduleRefresh();
+        // Every NVA is probed in the same cycle, so we always know which standbys are healthy.
+        NvaConfiguration current = this.nvaConfigurations.current();
+        // Confirmation probes must not outlast the confirmation interval.
+        int timeout = isConfirming() ?
+            Math.min(this.configuration.getProbeConnectTimeout(), getConfirmationTime()) :
+            this.configuration.getProbeConnectTimeout();
+        FailureDetector failureDetector = getFailureDetector(current.getProbeSocketAddress());
+        Map<SocketAddress, ProbeResult> probeResults;
+        long start = System.nanoTime();
         try {
-            NvaConfiguration current = this.nvaConfigurations.current();
-            try (SocketChannel channel = SocketChannel.open()) {
-                channel.socket().connect(current.getProbeSocketAddress(),
-                    this.configuration.getProbeConnectTimeout());
+            probeResults = probeAll(current, timeout);
+        } catch (IOException e) {
+            log.info("probe() threw an exception", e);
+            this.failures++;
+            long now = System.nanoTime();
+            failureDetector.failure(now);
+            this.recordFailure(now);
+            // A local probe error is no more reason to skip the peers than a failed probe.
+            return this.recordAvailability(
+                failureDetector.isAvailable(now) || !isFailureConfirmedByPeers(current), now);
+        }
+
+        long now = System.nanoTime();
+
+        for (ProbeResult probeResult : probeResults.values()) {
+            ProbeResult previous = this.probeResults.get(probeResult.getTarget());
+            if ((previous != null) && (previous.isSuccess() != probeResult.isSuccess())) {
+                log.info("Probe state changed: " + probeResult);
+            } else {
+                log.debug(probeResult.toString());
             }
 
+            FailureDetector detector = getFailureDetector(probeResult.getTarget());
+            if (probeResult.isSuccess()) {
+                this.probeLatencies.computeIfAbsent(probeResult.getTarget(),
+                    t -> this.metricRegistry.getHistogram(PROBE_LATENCY_METRIC, "nva",
+                        t.toString()))
+                    .record(probeResult.getLatency(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+                detector.success(start + probeResult.getLatency(TimeUnit.NANOSECONDS));
+            } else {
+                detector.failure(now);
+            }
+        }
+
+        this.probeResults = probeResults;
+        this.recordNvaStatus();
+        this.failoverTargetSelector.record(probeResults.values());
+        ProbeResult probeResult = probeResults.get(current.getProbeSocketAddress());
+        if (probeResult.isSuccess()) {
             // If this works, we want to reset any previous failures.
             this.failures = 0;
-        } catch (IOException e) {
-            log.info("probe() threw an exception", e);
+            this.unconfirmedRounds = 0;
+            this.failing = false;
+        } else {
+            log.info("probe() failed for " + probeResult.getTarget(), probeResult.getCause());
             this.failures++;
+            this.recordFailure(now);
+        }
+
+        return this.recordAvailability(
+            failureDetector.isAvailable(now) || !isFailureConfirmedByPeers(current), now);
+    }
+
+    private void recordFailure(long now) {
+        if (!this.failing) {
+            this.failing = true;
+            this.failureStart = now;
+        }
+    }
+
+    // The time to detect a failure runs from the first failed probe of the active NVA to the
+    // probe that gives up on it.
+    private boolean recordAvailability(boolean available, long now) {
+        if ((!available) && (this.failing)) {
+            this.failureDetectionTime.record(now - this.failureStart, TimeUnit.NANOSECONDS);
+            this.failing = false;
+        }
+
+        return available;
+    }
+
+    private Map<SocketAddress, Probe> getProbes() {
+        // Every endpoint of every NVA shares the one probe cycle.
+        Map<SocketAddress, Probe> probes = new LinkedHashMap<>();
+        for (NvaConfiguration nvaConfiguration : this.configuration.getNvaConfigurations()) {
+            probes.put(nvaConfiguration.getProbeSocketAddress(),
+                getProbe(nvaConfiguration.getProbeConfiguration()));
+            for (ProbeEndpointConfiguration probeEndpoint : nvaConfiguration.getProbeEndpoints()) {
+                probes.put(probeEndpoint.getSocketAddress(),
+                    getProbe(probeEndpoint.getProbeConfiguration()));
+            }
         }
 
-        return this.failures < this.configuration.getNumberOfFailuresThreshold();
+        return probes;
+    }
+
+    private Map<SocketAddress, ProbeResult> probeAll(int timeout) throws IOException {
+        return evaluateQuorums(this.probeEngine.probe(getProbes(), timeout,
+            TimeUnit.MILLISECONDS));
+    }
+
+    // Only the active NVA's endpoints get the whole timeout.  The standbys get at most half a
+    // polling interval, so one that never answers cannot stretch the cycle that decides on
+    // the active NVA.
+    private Map<SocketAddress, ProbeResult> probeAll(NvaConfiguration current, int timeout)
+        throws IOException {
+        Set<SocketAddress> required = new HashSet<>();
+        required.add(current.getProbeSocketAddress());
+        for (ProbeEndpointConfiguration probeEndpoint : current.getProbeEndpoints()) {
+            required.add(probeEndpoint.getSocketAddress());
+        }
+
+        return evaluateQuorums(this.probeEngine.probe(getProbes(), required, timeout,
+            Math.max(1, this.configuration.getProbePollingInterval() / 2),
+            TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Probes every NVA as a follower and publishes the results for the leader.
+     */
+    @Override
+    public void observe() throws Exception {
+        Map<SocketAddress, ProbeResult> probeResults =
+            probeAll(this.configuration.getProbeConnectTimeout());
+        List<NvaConfiguration> nvaConfigurations = this.configuration.getNvaConfigurations();
+        BitSet healthy = new BitSet(nvaConfigurations.size());
+        for (int i = 0; i < nvaConfigurations.size(); i++) {
+            healthy.set(i, probeResults.get(
+                nvaConfigurations.get(i).getProbeSocketAddress()).isSuccess());
+        }
+
+        this.peerHealth.publish(new HealthSample(System.currentTimeMillis(),
+            this.configurationId, healthy));
+    }
+
+    // A leader that has lost its own path to the active NVA would otherwise fail over on its
+    // own, so we wait until enough of the daemons that can see the NVA agree it is down.
+    private boolean isFailureConfirmedByPeers(NvaConfiguration current) {
+        int failoverQuorum = this.configuration.getFailoverQuorum();
+        if (failoverQuorum <= 1) {
+            return true;
+        }
+
+        List<HealthSample> peerSamples;
+        try {
+            peerSamples = this.peerHealth.getPeerSamples();
+        } catch (Exception e) {
+            log.warn("Error reading peer health samples.  Deferring failover", e);
+            this.unconfirmedRounds++;
+            return false;
+        }
+
+        int index = this.configuration.getNvaConfigurations().indexOf(current);
+        long oldest = System.currentTimeMillis() - this.configuration.getPeerSampleTtl();
+        List<HealthSample> currentSamples = peerSamples.stream()
+            .filter(s -> s.getConfigurationId() == this.configurationId)
+            .filter(s -> s.getTimestamp() >= oldest)
+            .collect(Collectors.toList());
+        int voters = currentSamples.size() + 1;
+        long agreed = currentSamples.stream()
+            .filter(s -> !s.isHealthy(index))
+            .count() + 1;
+        int required = Math.min(failoverQuorum, voters);
+        if (agreed >= required) {
+            log.info("Failure of " + current.getProbeSocketAddress() + " confirmed by " +
+                agreed + " of " + voters + " daemons");
+            this.unconfirmedRounds = 0;
+            return true;
+        }
+
+        this.unconfirmedRounds++;
+        log.warn("Failure of " + current.getProbeSocketAddress() + " not confirmed.  " +
+            agreed + " of " + voters + " daemons agree, " + required + " required");
+        return false;
+    }
+
+    // Reduces the endpoint results to one result per NVA, keyed by its probeSocketAddress.
+    private Map<SocketAddress, ProbeResult> evaluateQuorums(
+        Map<SocketAddress, ProbeResult> endpointResults) {
+        Map<SocketAddress, ProbeResult> probeResults = new LinkedHashMap<>();
+        for (NvaConfiguration nvaConfiguration : this.configuration.getNvaConfigurations()) {
+            SocketAddress target = nvaConfiguration.getProbeSocketAddress();
+            if (nvaConfiguration.getProbeEndpoints().isEmpty()) {
+                probeResults.put(target, endpointResults.get(target));
+                continue;
+            }
+
+            List<ProbeResult> results = new ArrayList<>();
+            results.add(endpointResults.get(target));
+            for (ProbeEndpointConfiguration probeEndpoint : nvaConfiguration.getProbeEndpoints()) {
+                ProbeResult result = endpointResults.get(probeEndpoint.getSocketAddress());
+                if (!result.isSuccess()) {
+                    log.debug("Probe endpoint failed: " + result);
+                }
+
+                results.add(result);
+            }
+
+            probeResults.put(target, ProbeResult.quorum(target, results,
+                nvaConfiguration.getProbeQuorum()));
+        }
+
+        return probeResults;
+    }
+
+    Map<SocketAddress, ProbeResult> getProbeResults() {
+        return this.probeResults;
     }
 
     @Override
     public void execute() {
         log.info("Probe failure.  Executing failure action.");
-        this.migrateAzureResources(this.nvaConfigurations.next());
+        if (this.verification != null) {
+            // The failover rewrites every resource anyway, and the verification result would
+            // describe the NVA we are leaving.
+            this.verification.cancel(true);
+            this.verification = null;
+        }
+
+        // Any plans a refresh has already made are still used.
+        this.failoverPlanner.cancelRefresh();
+
+        long start = System.nanoTime();
+        NvaConfiguration next = this.selectFailoverTarget();
+        this.migrateAzureResources(next);
+        this.writeActiveNvaIndex();
+        // Only failovers that finish are recorded, so the histogram shows how long one takes.
+        this.failoverDuration.recordSince(start);
+        this.recordNvaStatus();
         this.failures = 0;
+        this.unconfirmedRounds = 0;
+        // Give the new active NVA a full detection window before it can be failed over too.
+        getFailureDetector(next.getProbeSocketAddress()).reset();
+    }
+
+    /**
+     * Publishes which NVA is active and which passed their last probe, so they can be scraped
+     * without reading our state.
+     */
+    private void recordNvaStatus() {
+        NvaConfiguration current = this.nvaConfigurations.current();
+        for (NvaConfiguration nvaConfiguration : this.configuration.getNvaConfigurations()) {
+            SocketAddress target = nvaConfiguration.getProbeSocketAddress();
+            getNvaGauge(this.nvaActive, NVA_ACTIVE_METRIC, target)
+                .set(nvaConfiguration == current);
+            ProbeResult probeResult = this.probeResults.get(target);
+            if (probeResult != null) {
+                getNvaGauge(this.nvaHealthy, NVA_HEALTHY_METRIC, target)
+                    .set(probeResult.isSuccess());
+            }
+        }
+    }
+
+    // Once closed, usually because the daemon lost leadership, this monitor no longer knows
+    // which NVA is active or healthy.
+    private void resetNvaStatus() {
+        for (Gauge gauge : this.nvaActive.values()) {
+            gauge.set(false);
+        }
+
+        for (Gauge gauge : this.nvaHealthy.values()) {
+            gauge.set(false);
+        }
+    }
+
+    private Gauge getNvaGauge(Map<SocketAddress, Gauge> gauges, String name,
+                              SocketAddress target) {
+        return gauges.computeIfAbsent(target,
+            t -> this.metricRegistry.getGauge(name, "nva", t.toString()));
+    }
+
+    private NvaConfiguration selectFailoverTarget() {
+        // The standbys, in the order we would cycle through them without any probe results.
+        List<NvaConfiguration> all = this.configuration.getNvaConfigurations();
+        int currentIndex = all.indexOf(this.nvaConfigurations.current());
+        List<NvaConfiguration> candidates = new ArrayList<>();
+        for (int i = 1; i < all.size(); i++) {
+            candidates.add(all.get((currentIndex + i) % all.size()));
+        }
+
+        if (candidates.isEmpty()) {
+            return this.nvaConfigurations.next();
+        }
+
+        NvaConfiguration next = this.failoverTargetSelector.select(candidates,
+            c -> c.getProbeSocketAddress());
+        while (this.nvaConfigurations.next() != next) {
+            // Skip the standbys that were passed over.
+        }
+
+        log.info("Selected failover target " + next.getProbeSocketAddress());
+        return next;
     }
 
     @Override
@@ -330,11 +942,48 @@ public class AzureProbeMonitor implements ScheduledMonitor {
         return TimeUnit.MILLISECONDS;
     }
 
+    @Override
+    public boolean isConfirming() {
+        // Peers that keep refusing to confirm a failure would otherwise have us probe, and read
+        // their samples, at the confirmation rate for as long as they disagree.
+        return (this.failures > 0) && (this.unconfirmedRounds < MAX_UNCONFIRMED_ROUNDS);
+    }
+
+    @Override
+    public int getConfirmationTime() {
+        return this.configuration.getProbeConfirmationInterval();
+    }
+
     @Override
     public void close() throws Exception {
+        this.resetNvaStatus();
+        if (this.failoverExecutorService != null) {
+            this.failoverExecutorService.shutdown();
+            try {
+                if (!this.failoverExecutorService.awaitTermination(
+                    FAILOVER_EXECUTOR_SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    this.failoverExecutorService.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                log.debug("AzureProbeMonitor.close() interrupted");
+                Thread.currentThread().interrupt();
+            }
+
+            this.failoverExecutorService = null;
+        }
+
+        if (this.probeEngine != null) {
+            this.probeEngine.close();
+            this.probeEngine = null;
+        }
+
         if (this.azureClient != null) {
             this.azureClient.close();
             this.azureClient = null;
         }
+
+        if (this.credentials instanceof AutoCloseable) {
+            ((AutoCloseable)this.credentials).close();
+        }
     }
 }
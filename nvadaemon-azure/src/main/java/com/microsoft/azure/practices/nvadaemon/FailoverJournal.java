@@ -0,0 +1,87 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The progress of a failover, as written by the leader performing it.  Each step is the id of
+ * one route table or public ip address to move to the target NVA, so a leader that takes over
+ * partway through only has to repeat the steps that were not recorded as completed.  Every
+ * step is safe to repeat, since it only writes when the resource is not already migrated.
+ */
+public final class FailoverJournal {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final int targetNvaIndex;
+    private final String fingerprint;
+    private final List<String> steps;
+    private final Set<String> completedSteps;
+
+    @JsonCreator
+    public FailoverJournal(@JsonProperty("targetNvaIndex")int targetNvaIndex,
+                           @JsonProperty("fingerprint")String fingerprint,
+                           @JsonProperty("steps")List<String> steps,
+                           @JsonProperty("completedSteps")Collection<String> completedSteps) {
+        Preconditions.checkArgument(targetNvaIndex >= 0, "targetNvaIndex cannot be negative");
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(fingerprint),
+            "fingerprint cannot be null or empty");
+        Preconditions.checkNotNull(steps, "steps cannot be null");
+        this.targetNvaIndex = targetNvaIndex;
+        this.fingerprint = fingerprint;
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+        this.completedSteps = Collections.unmodifiableSet(completedSteps == null ?
+            new LinkedHashSet<>() : new LinkedHashSet<>(completedSteps));
+        Preconditions.checkArgument(this.steps.containsAll(this.completedSteps),
+            "completedSteps must be steps");
+    }
+
+    public int getTargetNvaIndex() { return this.targetNvaIndex; }
+
+    public String getFingerprint() { return this.fingerprint; }
+
+    public List<String> getSteps() { return this.steps; }
+
+    public Set<String> getCompletedSteps() { return this.completedSteps; }
+
+    @JsonIgnore
+    public List<String> getPendingSteps() {
+        return this.steps.stream()
+            .filter(s -> !this.completedSteps.contains(s))
+            .collect(Collectors.toList());
+    }
+
+    @JsonIgnore
+    public boolean isComplete() {
+        return this.completedSteps.size() == this.steps.size();
+    }
+
+    public FailoverJournal withCompletedStep(String step) {
+        Preconditions.checkArgument(this.steps.contains(step), "Unknown step: " + step);
+        Set<String> completedSteps = new LinkedHashSet<>(this.completedSteps);
+        completedSteps.add(step);
+        return new FailoverJournal(this.targetNvaIndex, this.fingerprint, this.steps,
+            completedSteps);
+    }
+
+    public byte[] toBytes() throws IOException {
+        return mapper.writeValueAsBytes(this);
+    }
+
+    public static FailoverJournal fromBytes(byte[] data) throws IOException {
+        Preconditions.checkNotNull(data, "data cannot be null");
+        return mapper.readValue(data, FailoverJournal.class);
+    }
+}
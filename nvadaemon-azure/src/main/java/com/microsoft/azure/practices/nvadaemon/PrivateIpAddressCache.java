@@ -0,0 +1,77 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the primary private ip address of network interfaces so the failover path does not
+ * have to GET every network interface again.  Entries older than the ttl are reloaded in the
+ * background, and the previous value is returned until the reload completes.
+ */
+public final class PrivateIpAddressCache {
+    private static final Logger log = LoggerFactory.getLogger(PrivateIpAddressCache.class);
+    private final LoadingCache<String, String> cache;
+
+    public PrivateIpAddressCache(AzureClient azureClient, long ttl, TimeUnit unit,
+                                 Executor executor) {
+        this(azureClient, ttl, unit, executor, Ticker.systemTicker());
+    }
+
+    PrivateIpAddressCache(AzureClient azureClient, long ttl, TimeUnit unit,
+                          Executor executor, Ticker ticker) {
+        Preconditions.checkNotNull(azureClient, "azureClient cannot be null");
+        Preconditions.checkArgument(ttl > 0, "ttl must be greater than 0");
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        Preconditions.checkNotNull(executor, "executor cannot be null");
+        Preconditions.checkNotNull(ticker, "ticker cannot be null");
+        this.cache = CacheBuilder.newBuilder()
+            .ticker(ticker)
+            .refreshAfterWrite(ttl, unit)
+            .build(CacheLoader.asyncReloading(new CacheLoader<String, String>() {
+                @Override
+                public String load(String id) {
+                    log.debug("Loading private ip address for network interface " + id);
+                    return azureClient.getNetworkInterfaceById(id).primaryPrivateIp();
+                }
+            }, executor));
+    }
+
+    public String get(String networkInterfaceId) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(networkInterfaceId),
+            "networkInterfaceId cannot be null or empty");
+        try {
+            return this.cache.getUnchecked(networkInterfaceId);
+        } catch (UncheckedExecutionException e) {
+            // Surface the original exception so callers see the same errors as an uncached GET.
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    public void load(Iterable<String> networkInterfaceIds) throws ExecutionException {
+        Preconditions.checkNotNull(networkInterfaceIds, "networkInterfaceIds cannot be null");
+        this.cache.getAll(networkInterfaceIds);
+    }
+
+    public void invalidate(String networkInterfaceId) {
+        this.cache.invalidate(networkInterfaceId);
+    }
+
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+}
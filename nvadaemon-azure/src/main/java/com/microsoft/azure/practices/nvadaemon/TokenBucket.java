@@ -0,0 +1,79 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that hands out reservations, so a caller that finds it empty learns how long
+ * to wait instead of being refused.  The level can be corrected with sync() when the server
+ * tells us how much of the quota is really left, which accounts for other clients sharing it.
+ */
+final class TokenBucket {
+    private final double capacity;
+    private final double refillPerNano;
+    private final Ticker ticker;
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil;
+
+    TokenBucket(long capacity, long refill, TimeUnit per, Ticker ticker) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be greater than 0");
+        Preconditions.checkArgument(refill > 0, "refill must be greater than 0");
+        Preconditions.checkNotNull(per, "per cannot be null");
+        this.ticker = Preconditions.checkNotNull(ticker, "ticker cannot be null");
+        this.capacity = capacity;
+        this.refillPerNano = (double)refill / per.toNanos(1);
+        this.tokens = capacity;
+        this.lastRefill = ticker.read();
+        this.pausedUntil = this.lastRefill;
+    }
+
+    /**
+     * Takes a token, returning the number of nanoseconds the caller must wait before using it,
+     * or -1 without taking one if that would be longer than maxWait.
+     */
+    synchronized long tryReserve(long maxWait, TimeUnit unit) {
+        long now = this.refill();
+        long wait = Math.max(0, this.pausedUntil - now);
+        if (this.tokens < 1) {
+            wait = Math.max(wait, (long)Math.ceil((1 - this.tokens) / this.refillPerNano));
+        }
+
+        if (wait > unit.toNanos(maxWait)) {
+            return -1;
+        }
+
+        this.tokens -= 1;
+        return wait;
+    }
+
+    /**
+     * Sets the level to the number of tokens the server says are left.
+     */
+    synchronized void sync(long remaining) {
+        this.refill();
+        this.tokens = Math.min(this.capacity, Math.max(0, remaining));
+    }
+
+    /**
+     * Holds every reservation back until the given time has passed.
+     */
+    synchronized void pause(long duration, TimeUnit unit) {
+        this.pausedUntil = Math.max(this.pausedUntil, this.ticker.read() + unit.toNanos(duration));
+    }
+
+    synchronized double getTokens() {
+        this.refill();
+        return this.tokens;
+    }
+
+    private long refill() {
+        long now = this.ticker.read();
+        this.tokens = Math.min(this.capacity,
+            this.tokens + (now - this.lastRefill) * this.refillPerNano);
+        this.lastRefill = now;
+        return now;
+    }
+}
@@ -14,6 +14,9 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 public class AzureProbeMonitorConfiguration implements ConfigurationValidation {
@@ -22,6 +25,13 @@ public class AzureProbeMonitorConfiguration implements ConfigurationValidation {
     public static final int DEFAULT_NUMBER_OF_FAILURES_THRESHOLD = 3;
     public static final int DEFAULT_PROBE_CONNECT_TIMEOUT = 10000;
     public static final int DEFAULT_PROBE_POLLING_INTERVAL = 3000;
+    public static final int DEFAULT_FAILOVER_PARALLELISM = 8;
+    public static final int DEFAULT_PRIVATE_IP_ADDRESS_CACHE_TTL = 300000;
+    public static final int DEFAULT_FAILOVER_TIMEOUT = 120000;
+    public static final int DEFAULT_FAILOVER_QUORUM = 1;
+    public static final int DEFAULT_PEER_SAMPLE_TTL = 30000;
+    public static final int DEFAULT_RESOURCE_CACHE_TTL = 5000;
+    public static final int DEFAULT_FAILOVER_PLAN_REFRESH_INTERVAL = 30000;
 
     private List<String> routeTables = new ArrayList<>();
     private List<NamedResourceId> publicIpAddresses = new ArrayList<>();
@@ -33,6 +43,16 @@ public class AzureProbeMonitorConfiguration implements ConfigurationValidation {
     private int numberOfFailuresThreshold = DEFAULT_NUMBER_OF_FAILURES_THRESHOLD;
     private int probeConnectTimeout = DEFAULT_PROBE_CONNECT_TIMEOUT;
     private int probePollingInterval = DEFAULT_PROBE_POLLING_INTERVAL;
+    private int failoverParallelism = DEFAULT_FAILOVER_PARALLELISM;
+    private int privateIpAddressCacheTtl = DEFAULT_PRIVATE_IP_ADDRESS_CACHE_TTL;
+    private int failoverTimeout = DEFAULT_FAILOVER_TIMEOUT;
+    private Integer probeConfirmationInterval;
+    private FailureDetectorConfiguration failureDetectorConfiguration =
+        new FailureDetectorConfiguration(null, null, null, null, null);
+    private int failoverQuorum = DEFAULT_FAILOVER_QUORUM;
+    private int peerSampleTtl = DEFAULT_PEER_SAMPLE_TTL;
+    private int resourceCacheTtl = DEFAULT_RESOURCE_CACHE_TTL;
+    private int failoverPlanRefreshInterval = DEFAULT_FAILOVER_PLAN_REFRESH_INTERVAL;
 
     public static AzureProbeMonitorConfiguration create(MonitorConfiguration monitorConfiguration)
         throws ConfigurationException {
@@ -50,6 +70,18 @@ public class AzureProbeMonitorConfiguration implements ConfigurationValidation {
         }
     }
 
+    public AzureProbeMonitorConfiguration(AzureConfiguration azureConfiguration,
+                                          List<NvaConfiguration> nvaConfigurations,
+                                          List<String> routeTables,
+                                          List<NamedResourceId> publicIpAddresses,
+                                          Integer numberOfFailuresThreshold,
+                                          Integer probeConnectTimeout,
+                                          Integer probePollingInterval) {
+        this(azureConfiguration, nvaConfigurations, routeTables, publicIpAddresses,
+            numberOfFailuresThreshold, probeConnectTimeout, probePollingInterval, null, null, null,
+            null, null, null, null, null, null);
+    }
+
     @JsonCreator
     public AzureProbeMonitorConfiguration(@JsonProperty("azure")AzureConfiguration azureConfiguration,
                                           @JsonProperty("nvas")List<NvaConfiguration> nvaConfigurations,
@@ -57,7 +89,16 @@ public class AzureProbeMonitorConfiguration implements ConfigurationValidation {
                                           @JsonProperty("publicIpAddresses")List<NamedResourceId> publicIpAddresses,
                                           @JsonProperty("numberOfFailuresThreshold")Integer numberOfFailuresThreshold,
                                           @JsonProperty("probeConnectTimeout")Integer probeConnectTimeout,
-                                          @JsonProperty("probePollingInterval")Integer probePollingInterval) {
+                                          @JsonProperty("probePollingInterval")Integer probePollingInterval,
+                                          @JsonProperty("failoverParallelism")Integer failoverParallelism,
+                                          @JsonProperty("privateIpAddressCacheTtl")Integer privateIpAddressCacheTtl,
+                                          @JsonProperty("failoverTimeout")Integer failoverTimeout,
+                                          @JsonProperty("probeConfirmationInterval")Integer probeConfirmationInterval,
+                                          @JsonProperty("failureDetector")FailureDetectorConfiguration failureDetectorConfiguration,
+                                          @JsonProperty("failoverQuorum")Integer failoverQuorum,
+                                          @JsonProperty("peerSampleTtl")Integer peerSampleTtl,
+                                          @JsonProperty("resourceCacheTtl")Integer resourceCacheTtl,
+                                          @JsonProperty("failoverPlanRefreshInterval")Integer failoverPlanRefreshInterval) {
         this.azureConfiguration = Preconditions.checkNotNull(azureConfiguration,
             "azureConfiguration cannot be null");
         this.nvaConfigurations = Preconditions.checkNotNull(nvaConfigurations,
@@ -129,6 +170,58 @@ public class AzureProbeMonitorConfiguration implements ConfigurationValidation {
         if (probePollingInterval != null) {
             this.probePollingInterval = probePollingInterval;
         }
+
+        if (failoverParallelism != null) {
+            Preconditions.checkArgument(failoverParallelism > 0,
+                "failoverParallelism must be greater than 0");
+            this.failoverParallelism = failoverParallelism;
+        }
+
+        if (privateIpAddressCacheTtl != null) {
+            Preconditions.checkArgument(privateIpAddressCacheTtl > 0,
+                "privateIpAddressCacheTtl must be greater than 0");
+            this.privateIpAddressCacheTtl = privateIpAddressCacheTtl;
+        }
+
+        if (failoverTimeout != null) {
+            Preconditions.checkArgument(failoverTimeout > 0,
+                "failoverTimeout must be greater than 0");
+            this.failoverTimeout = failoverTimeout;
+        }
+
+        if (probeConfirmationInterval != null) {
+            Preconditions.checkArgument(probeConfirmationInterval > 0,
+                "probeConfirmationInterval must be greater than 0");
+            this.probeConfirmationInterval = probeConfirmationInterval;
+        }
+
+        if (failureDetectorConfiguration != null) {
+            this.failureDetectorConfiguration = failureDetectorConfiguration;
+        }
+
+        if (failoverQuorum != null) {
+            Preconditions.checkArgument(failoverQuorum > 0,
+                "failoverQuorum must be greater than 0");
+            this.failoverQuorum = failoverQuorum;
+        }
+
+        if (peerSampleTtl != null) {
+            Preconditions.checkArgument(peerSampleTtl > 0,
+                "peerSampleTtl must be greater than 0");
+            this.peerSampleTtl = peerSampleTtl;
+        }
+
+        if (resourceCacheTtl != null) {
+            Preconditions.checkArgument(resourceCacheTtl >= 0,
+                "resourceCacheTtl cannot be negative");
+            this.resourceCacheTtl = resourceCacheTtl;
+        }
+
+        if (failoverPlanRefreshInterval != null) {
+            Preconditions.checkArgument(failoverPlanRefreshInterval > 0,
+                "failoverPlanRefreshInterval must be greater than 0");
+            this.failoverPlanRefreshInterval = failoverPlanRefreshInterval;
+        }
     }
 
     public AzureConfiguration getAzureConfiguration() { return this.azureConfiguration; }
@@ -139,6 +232,46 @@ public class AzureProbeMonitorConfiguration implements ConfigurationValidation {
 
     public int getNumberOfFailuresThreshold() { return this.numberOfFailuresThreshold; }
 
+    public int getFailoverParallelism() { return this.failoverParallelism; }
+
+    public int getPrivateIpAddressCacheTtl() { return this.privateIpAddressCacheTtl; }
+
+    public int getFailoverTimeout() { return this.failoverTimeout; }
+
+    /**
+     * The interval between probes after a probe of the active NVA fails.  Without one, the
+     * failure is confirmed at the probePollingInterval.
+     */
+    public int getProbeConfirmationInterval() {
+        return this.probeConfirmationInterval == null ?
+            this.probePollingInterval : this.probeConfirmationInterval;
+    }
+
+    public FailureDetectorConfiguration getFailureDetectorConfiguration() {
+        return this.failureDetectorConfiguration;
+    }
+
+    /**
+     * The number of daemons, counting the leader, that must see the active NVA fail before the
+     * leader fails over.  Daemons that have not published a recent sample are not counted, so
+     * the leader never waits on daemons that are not there.
+     */
+    public int getFailoverQuorum() { return this.failoverQuorum; }
+
+    public int getPeerSampleTtl() { return this.peerSampleTtl; }
+
+    /**
+     * How long a resource read from ARM is reused before it is read again.  0 disables the
+     * cache.
+     */
+    public int getResourceCacheTtl() { return this.resourceCacheTtl; }
+
+    /**
+     * How often the writes for a failover to each NVA are planned again from the current
+     * resources, so a failover can start writing without reading anything first.
+     */
+    public int getFailoverPlanRefreshInterval() { return this.failoverPlanRefreshInterval; }
+
     public List<String> getRouteTables() { return this.routeTables; }
 
     public List<NamedResourceId> getPublicIpAddresses() { return this.publicIpAddresses; }
@@ -150,33 +283,51 @@ public class AzureProbeMonitorConfiguration implements ConfigurationValidation {
     public void validate(AzureClient azureClient) throws ConfigurationException {
         Preconditions.checkNotNull(azureClient, "azureClient cannot be null");
 
-        for (NvaConfiguration config : this.nvaConfigurations) {
-            config.validate(azureClient);
-        }
+        // All of the ARM lookups are independent, so fan them out on a pool bounded by
+        // failoverParallelism and report every problem at once.
+        ExecutorService executorService = Executors.newFixedThreadPool(
+            Math.min(this.failoverParallelism, getValidationCheckCount()));
+        try {
+            List<CompletableFuture<List<String>>> results = new ArrayList<>();
+            for (NvaConfiguration config : this.nvaConfigurations) {
+                results.add(config.validateAsync(azureClient, executorService));
+            }
 
-        if (this.nvaConfigurations.stream()
-            .map(c -> ((InetSocketAddress)c.getProbeSocketAddress()).getHostName())
-            .distinct()
-            .count() != this.nvaConfigurations.size()) {
-            throw new ConfigurationException("Duplicate probe IP Address found");
-        }
+            results.add(ValidationChecks.collect(this.publicIpAddresses.stream()
+                .map(r -> r.getId())
+                .map(id -> ValidationChecks.check("public ip address " + id,
+                    () -> azureClient.checkExistenceById(id) ? null :
+                        "Invalid public ip address: " + id, executorService))
+                .collect(Collectors.toList())));
+
+            results.add(ValidationChecks.collect(this.routeTables.stream()
+                .map(id -> ValidationChecks.check("route table " + id,
+                    () -> azureClient.checkExistenceById(id) ? null :
+                        "Invalid route table: " + id, executorService))
+                .collect(Collectors.toList())));
+
+            List<String> errors = results.stream()
+                .flatMap(r -> r.join().stream())
+                .collect(Collectors.toList());
+
+            // The probe addresses are only known once every probe network interface resolved.
+            if (this.nvaConfigurations.stream().allMatch(c -> c.getProbeSocketAddress() != null) &&
+                this.nvaConfigurations.stream()
+                .map(c -> ((InetSocketAddress)c.getProbeSocketAddress()).getHostName())
+                .distinct()
+                .count() != this.nvaConfigurations.size()) {
+                errors.add("Duplicate probe IP Address found");
+            }
 
-        List<String> invalidPublicIpAddresses = this.publicIpAddresses.stream()
-            .map(r -> r.getId())
-            .filter(id -> !azureClient.checkExistenceById(id))
-            .collect(Collectors.toList());
-        if (invalidPublicIpAddresses.size() > 0) {
-            throw new ConfigurationException("Invalid public ip address(es): " +
-                invalidPublicIpAddresses.stream().collect(Collectors.joining(", ")));
+            ValidationChecks.throwIfInvalid(errors);
+        } finally {
+            executorService.shutdownNow();
         }
+    }
 
-        List<String> invalidRouteTables = this.routeTables.stream()
-            .filter(id -> !azureClient.checkExistenceById(id))
-            .collect(Collectors.toList());
-
-        if (invalidRouteTables.size() > 0) {
-            throw new ConfigurationException("Invalid route table(s): " +
-            invalidRouteTables.stream().collect(Collectors.joining(", ")));
-        }
+    private int getValidationCheckCount() {
+        return this.nvaConfigurations.stream()
+            .mapToInt(c -> c.getNetworkInterfaces().size() + 1)
+            .sum() + this.publicIpAddresses.size() + this.routeTables.size();
     }
 }
@@ -0,0 +1,67 @@
+package com.microsoft.azure.practices.nvadaemon.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+
+public class FailureDetectorConfiguration {
+    public static final String THRESHOLD = "threshold";
+    public static final String PHI_ACCRUAL = "phiAccrual";
+
+    public static final double DEFAULT_PHI_THRESHOLD = 8.0;
+    public static final int DEFAULT_MAX_SAMPLE_SIZE = 200;
+    public static final int DEFAULT_MIN_STD_DEVIATION = 500;
+    public static final int DEFAULT_ACCEPTABLE_PAUSE = 0;
+
+    private String type = THRESHOLD;
+    private double phiThreshold = DEFAULT_PHI_THRESHOLD;
+    private int maxSampleSize = DEFAULT_MAX_SAMPLE_SIZE;
+    private int minStdDeviation = DEFAULT_MIN_STD_DEVIATION;
+    private int acceptablePause = DEFAULT_ACCEPTABLE_PAUSE;
+
+    @JsonCreator
+    public FailureDetectorConfiguration(@JsonProperty("type")String type,
+                                        @JsonProperty("phiThreshold")Double phiThreshold,
+                                        @JsonProperty("maxSampleSize")Integer maxSampleSize,
+                                        @JsonProperty("minStdDeviation")Integer minStdDeviation,
+                                        @JsonProperty("acceptablePause")Integer acceptablePause) {
+        if (type != null) {
+            Preconditions.checkArgument(THRESHOLD.equals(type) || PHI_ACCRUAL.equals(type),
+                "type must be " + THRESHOLD + " or " + PHI_ACCRUAL);
+            this.type = type;
+        }
+
+        if (phiThreshold != null) {
+            Preconditions.checkArgument(phiThreshold > 0, "phiThreshold must be greater than 0");
+            this.phiThreshold = phiThreshold;
+        }
+
+        if (maxSampleSize != null) {
+            Preconditions.checkArgument(maxSampleSize > 0,
+                "maxSampleSize must be greater than 0");
+            this.maxSampleSize = maxSampleSize;
+        }
+
+        if (minStdDeviation != null) {
+            Preconditions.checkArgument(minStdDeviation > 0,
+                "minStdDeviation must be greater than 0");
+            this.minStdDeviation = minStdDeviation;
+        }
+
+        if (acceptablePause != null) {
+            Preconditions.checkArgument(acceptablePause >= 0,
+                "acceptablePause cannot be negative");
+            this.acceptablePause = acceptablePause;
+        }
+    }
+
+    public String getType() { return this.type; }
+
+    public double getPhiThreshold() { return this.phiThreshold; }
+
+    public int getMaxSampleSize() { return this.maxSampleSize; }
+
+    public int getMinStdDeviation() { return this.minStdDeviation; }
+
+    public int getAcceptablePause() { return this.acceptablePause; }
+}
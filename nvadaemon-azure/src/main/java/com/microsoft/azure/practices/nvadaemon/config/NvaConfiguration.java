@@ -5,13 +5,18 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.microsoft.azure.management.network.NetworkInterface;
 import com.microsoft.azure.practices.nvadaemon.AzureClient;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 public class NvaConfiguration implements ConfigurationValidation {
@@ -19,13 +24,32 @@ public class NvaConfiguration implements ConfigurationValidation {
     private String probeNetworkInterface;
     private int probePort;
     private List<NamedResourceId> networkInterfaces = new ArrayList<>();
+    @JsonProperty("probe")
+    private ProbeConfiguration probeConfiguration =
+        new ProbeConfiguration(null, null, null, null, null, null, null);
+    private List<ProbeEndpointConfiguration> probeEndpoints = new ArrayList<>();
+    private Integer probeQuorum;
     @JsonIgnore
-    private SocketAddress probeSocketAddress;
+    private volatile SocketAddress probeSocketAddress;
+
+    public NvaConfiguration(String probeNetworkInterface, Integer probePort,
+                            List<NamedResourceId> networkInterfaces) {
+        this(probeNetworkInterface, probePort, networkInterfaces, null);
+    }
+
+    public NvaConfiguration(String probeNetworkInterface, Integer probePort,
+                            List<NamedResourceId> networkInterfaces,
+                            ProbeConfiguration probeConfiguration) {
+        this(probeNetworkInterface, probePort, networkInterfaces, probeConfiguration, null, null);
+    }
 
     @JsonCreator
     public NvaConfiguration(@JsonProperty("probeNetworkInterface")String probeNetworkInterface,
                             @JsonProperty("probePort")Integer probePort,
-                            @JsonProperty("networkInterfaces")List<NamedResourceId> networkInterfaces) {
+                            @JsonProperty("networkInterfaces")List<NamedResourceId> networkInterfaces,
+                            @JsonProperty("probe")ProbeConfiguration probeConfiguration,
+                            @JsonProperty("probeEndpoints")List<ProbeEndpointConfiguration> probeEndpoints,
+                            @JsonProperty("probeQuorum")Integer probeQuorum) {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(probeNetworkInterface),
             "probeNetworkInterface cannot be null or empty");
         Preconditions.checkNotNull(probePort, "probePort must be specified");
@@ -51,6 +75,52 @@ public class NvaConfiguration implements ConfigurationValidation {
             .count() != this.networkInterfaces.size()) {
             throw new IllegalArgumentException("Duplicate network id found");
         }
+
+        if (probeConfiguration != null) {
+            this.probeConfiguration = probeConfiguration;
+        }
+
+        if (probeEndpoints != null) {
+            this.probeEndpoints = probeEndpoints;
+        }
+
+        Set<String> networkInterfaceNames = this.networkInterfaces.stream()
+            .map(n -> n.getName())
+            .collect(Collectors.toSet());
+        for (ProbeEndpointConfiguration probeEndpoint : this.probeEndpoints) {
+            Preconditions.checkNotNull(probeEndpoint, "probeEndpoints cannot contain null");
+            if (!networkInterfaceNames.contains(probeEndpoint.getNetworkInterface())) {
+                throw new IllegalArgumentException("Unknown probe endpoint network interface: " +
+                    probeEndpoint.getNetworkInterface());
+            }
+        }
+
+        if (this.probeEndpoints.stream()
+            .map(e -> e.getNetworkInterface() + ":" + e.getPort())
+            .distinct()
+            .count() != this.probeEndpoints.size()) {
+            throw new IllegalArgumentException("Duplicate probe endpoint found");
+        }
+
+        // Probes are keyed by address, so an endpoint on the probe network interface and port
+        // would replace the primary probe and be counted twice toward the quorum.
+        for (ProbeEndpointConfiguration probeEndpoint : this.probeEndpoints) {
+            if ((probeEndpoint.getPort() == this.probePort) &&
+                (this.networkInterfaces.stream()
+                    .filter(n -> n.getName().equals(probeEndpoint.getNetworkInterface()))
+                    .anyMatch(n -> n.getId().equalsIgnoreCase(this.probeNetworkInterface)))) {
+                throw new IllegalArgumentException(
+                    "Probe endpoint duplicates the probeNetworkInterface and probePort: " +
+                    probeEndpoint.getNetworkInterface() + ":" + probeEndpoint.getPort());
+            }
+        }
+
+        if (probeQuorum != null) {
+            Preconditions.checkArgument(probeQuorum > 0 &&
+                    probeQuorum <= this.probeEndpoints.size() + 1,
+                "probeQuorum must be between 1 and the number of probe endpoints");
+            this.probeQuorum = probeQuorum;
+        }
     }
 
     @JsonIgnore
@@ -58,27 +128,99 @@ public class NvaConfiguration implements ConfigurationValidation {
 
     public List<NamedResourceId> getNetworkInterfaces() { return this.networkInterfaces; }
 
+    public ProbeConfiguration getProbeConfiguration() { return this.probeConfiguration; }
+
+    /**
+     * The endpoints probed in addition to the probeNetworkInterface and probePort.
+     */
+    public List<ProbeEndpointConfiguration> getProbeEndpoints() { return this.probeEndpoints; }
+
+    /**
+     * The number of probe endpoints, including the probeNetworkInterface, that must succeed for
+     * the NVA to be healthy.  By default, all of them must.
+     */
+    public int getProbeQuorum() {
+        return this.probeQuorum == null ? this.probeEndpoints.size() + 1 : this.probeQuorum;
+    }
+
     public void validate(AzureClient azureClient) throws ConfigurationException {
+        ValidationChecks.throwIfInvalid(
+            validateAsync(azureClient, MoreExecutors.directExecutor()).join());
+    }
+
+    /**
+     * Starts the existence checks for this NVA's network interfaces and the probe network
+     * interface lookup on the supplied executor.  The returned future never completes
+     * exceptionally; it completes with the list of problems found, if any.
+     */
+    CompletableFuture<List<String>> validateAsync(AzureClient azureClient, Executor executor) {
         Preconditions.checkNotNull(azureClient, "azureClient cannot be null");
+        Preconditions.checkNotNull(executor, "executor cannot be null");
 
-        List<String> invalidNetworkInterfaces = this.networkInterfaces.stream()
+        List<CompletableFuture<String>> checks = this.networkInterfaces.stream()
             .map(r -> r.getId())
-            .filter(id -> !azureClient.checkExistenceById(id))
+            .map(id -> ValidationChecks.check("network interface " + id,
+                () -> azureClient.checkExistenceById(id) ? null :
+                    "Invalid network interface: " + id, executor))
             .collect(Collectors.toList());
-        if (invalidNetworkInterfaces.size() > 0) {
-            throw new ConfigurationException("Invalid network interface(s): " +
-                invalidNetworkInterfaces.stream().collect(Collectors.joining(", ")));
-        }
 
         // Get the probe network interface and save the private ip
-        NetworkInterface probeNetworkInterface =
-            azureClient.getNetworkInterfaceById(this.probeNetworkInterface);
-        if (probeNetworkInterface == null) {
-            throw new ConfigurationException("probeNetworkInterface '" +
-                this.probeNetworkInterface + "' does not exist");
+        checks.add(ValidationChecks.check("probeNetworkInterface " + this.probeNetworkInterface,
+            () -> {
+                NetworkInterface probeNetworkInterface =
+                    azureClient.getNetworkInterfaceById(this.probeNetworkInterface);
+                if (probeNetworkInterface == null) {
+                    return "probeNetworkInterface '" + this.probeNetworkInterface +
+                        "' does not exist";
+                }
+
+                this.probeSocketAddress = new InetSocketAddress(
+                    probeNetworkInterface.primaryPrivateIp(), this.probePort);
+                return null;
+            }, executor));
+
+        for (ProbeEndpointConfiguration probeEndpoint : this.probeEndpoints) {
+            String id = this.networkInterfaces.stream()
+                .filter(n -> n.getName().equals(probeEndpoint.getNetworkInterface()))
+                .findFirst()
+                .get()
+                .getId();
+            checks.add(ValidationChecks.check("probe endpoint network interface " + id, () -> {
+                NetworkInterface networkInterface = azureClient.getNetworkInterfaceById(id);
+                if (networkInterface == null) {
+                    return "Probe endpoint network interface '" + id + "' does not exist";
+                }
+
+                probeEndpoint.setSocketAddress(new InetSocketAddress(
+                    networkInterface.primaryPrivateIp(), probeEndpoint.getPort()));
+                return null;
+            }, executor));
+        }
+
+        return ValidationChecks.collect(checks).thenApply(errors -> {
+            if (errors.isEmpty()) {
+                // Different network interfaces can still share an address.
+                String duplicate = this.findDuplicateProbeSocketAddress();
+                if (duplicate != null) {
+                    List<String> duplicateErrors = new ArrayList<>(errors);
+                    duplicateErrors.add("Duplicate probe address: " + duplicate);
+                    return duplicateErrors;
+                }
+            }
+
+            return errors;
+        });
+    }
+
+    private String findDuplicateProbeSocketAddress() {
+        Set<SocketAddress> socketAddresses = new HashSet<>();
+        socketAddresses.add(this.probeSocketAddress);
+        for (ProbeEndpointConfiguration probeEndpoint : this.probeEndpoints) {
+            if (!socketAddresses.add(probeEndpoint.getSocketAddress())) {
+                return probeEndpoint.getSocketAddress().toString();
+            }
         }
 
-        this.probeSocketAddress = new InetSocketAddress(probeNetworkInterface.primaryPrivateIp(),
-            this.probePort);
+        return null;
     }
 }
@@ -0,0 +1,93 @@
+package com.microsoft.azure.practices.nvadaemon.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Set;
+
+public class ProbeConfiguration {
+    public static final String TCP = "tcp";
+    public static final String HTTP = "http";
+    public static final String HTTPS = "https";
+    public static final String TLS = "tls";
+    public static final String UDP = "udp";
+
+    public static final String DEFAULT_PATH = "/";
+
+    private static final Set<String> TYPES = ImmutableSet.of(TCP, HTTP, HTTPS, TLS, UDP);
+
+    private String type = TCP;
+    private String path = DEFAULT_PATH;
+    private Integer expectedStatus;
+    private String expectedBody;
+    private String request;
+    private String expectedResponse;
+    private boolean verifyCertificate;
+
+    @JsonCreator
+    public ProbeConfiguration(@JsonProperty("type")String type,
+                              @JsonProperty("path")String path,
+                              @JsonProperty("expectedStatus")Integer expectedStatus,
+                              @JsonProperty("expectedBody")String expectedBody,
+                              @JsonProperty("request")String request,
+                              @JsonProperty("expectedResponse")String expectedResponse,
+                              @JsonProperty("verifyCertificate")Boolean verifyCertificate) {
+        if (type != null) {
+            Preconditions.checkArgument(TYPES.contains(type),
+                "type must be one of " + String.join(", ", TYPES));
+            this.type = type;
+        }
+
+        if (path != null) {
+            Preconditions.checkArgument(path.startsWith("/"), "path must start with /");
+            this.path = path;
+        }
+
+        if (expectedStatus != null) {
+            Preconditions.checkArgument(expectedStatus >= 100 && expectedStatus <= 599,
+                "expectedStatus must be between 100 and 599");
+            this.expectedStatus = expectedStatus;
+        }
+
+        if (expectedBody != null) {
+            Preconditions.checkArgument(!expectedBody.isEmpty(), "expectedBody cannot be empty");
+            this.expectedBody = expectedBody;
+        }
+
+        if (UDP.equals(this.type)) {
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(request),
+                "request cannot be null or empty for udp probes");
+        }
+
+        this.request = request;
+        if (expectedResponse != null) {
+            Preconditions.checkArgument(!expectedResponse.isEmpty(),
+                "expectedResponse cannot be empty");
+            this.expectedResponse = expectedResponse;
+        }
+
+        if (verifyCertificate != null) {
+            this.verifyCertificate = verifyCertificate;
+        }
+    }
+
+    public String getType() { return this.type; }
+
+    public String getPath() { return this.path; }
+
+    /**
+     * The HTTP status the probe requires, or null to accept any 2xx status.
+     */
+    public Integer getExpectedStatus() { return this.expectedStatus; }
+
+    public String getExpectedBody() { return this.expectedBody; }
+
+    public String getRequest() { return this.request; }
+
+    public String getExpectedResponse() { return this.expectedResponse; }
+
+    public boolean isVerifyCertificate() { return this.verifyCertificate; }
+}
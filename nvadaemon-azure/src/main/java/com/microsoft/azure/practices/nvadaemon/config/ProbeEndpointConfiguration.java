@@ -0,0 +1,53 @@
+package com.microsoft.azure.practices.nvadaemon.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import java.net.SocketAddress;
+
+/**
+ * An additional endpoint of an NVA to probe, on one of the NVA's network interfaces.
+ */
+public class ProbeEndpointConfiguration {
+    private String networkInterface;
+    private int port;
+    @JsonProperty("probe")
+    private ProbeConfiguration probeConfiguration =
+        new ProbeConfiguration(null, null, null, null, null, null, null);
+    @JsonIgnore
+    private volatile SocketAddress socketAddress;
+
+    @JsonCreator
+    public ProbeEndpointConfiguration(@JsonProperty("networkInterface")String networkInterface,
+                                      @JsonProperty("port")Integer port,
+                                      @JsonProperty("probe")ProbeConfiguration probeConfiguration) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(networkInterface),
+            "networkInterface cannot be null or empty");
+        Preconditions.checkNotNull(port, "port must be specified");
+        Preconditions.checkArgument(port > 0, "port must be greater than 0");
+        this.networkInterface = networkInterface;
+        this.port = port;
+        if (probeConfiguration != null) {
+            this.probeConfiguration = probeConfiguration;
+        }
+    }
+
+    /**
+     * The name of the NVA network interface to probe, as given in its networkInterfaces.
+     */
+    public String getNetworkInterface() { return this.networkInterface; }
+
+    public int getPort() { return this.port; }
+
+    public ProbeConfiguration getProbeConfiguration() { return this.probeConfiguration; }
+
+    @JsonIgnore
+    public SocketAddress getSocketAddress() { return this.socketAddress; }
+
+    void setSocketAddress(SocketAddress socketAddress) {
+        this.socketAddress = socketAddress;
+    }
+}
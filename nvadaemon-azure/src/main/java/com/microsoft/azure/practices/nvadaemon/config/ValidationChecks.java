@@ -0,0 +1,49 @@
+package com.microsoft.azure.practices.nvadaemon.config;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Helpers for running ARM validation checks concurrently.  A check completes with an error
+ * message, or null if the resource is valid, so every failure can be reported at once.
+ */
+final class ValidationChecks {
+    private ValidationChecks() {
+    }
+
+    static CompletableFuture<String> check(String description, Supplier<String> check,
+                                           Executor executor) {
+        Preconditions.checkNotNull(description, "description cannot be null");
+        Preconditions.checkNotNull(check, "check cannot be null");
+        Preconditions.checkNotNull(executor, "executor cannot be null");
+        return CompletableFuture.supplyAsync(check, executor)
+            .exceptionally(e -> {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                return "Error validating " + description + ": " + cause.getMessage();
+            });
+    }
+
+    static CompletableFuture<List<String>> collect(List<CompletableFuture<String>> checks) {
+        Preconditions.checkNotNull(checks, "checks cannot be null");
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture[checks.size()]))
+            .thenApply(v -> checks.stream()
+                .map(CompletableFuture::join)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+    }
+
+    static void throwIfInvalid(List<String> errors) throws ConfigurationException {
+        Preconditions.checkNotNull(errors, "errors cannot be null");
+        if (errors.size() > 0) {
+            throw new ConfigurationException("Invalid configuration: " +
+                errors.stream().collect(Collectors.joining("; ")));
+        }
+    }
+}
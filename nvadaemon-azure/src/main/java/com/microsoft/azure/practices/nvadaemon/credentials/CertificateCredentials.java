@@ -2,6 +2,9 @@ package com.microsoft.azure.practices.nvadaemon.credentials;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.microsoft.aad.adal4j.AsymmetricKeyCredential;
+import com.microsoft.aad.adal4j.AuthenticationCallback;
 import com.microsoft.aad.adal4j.AuthenticationContext;
 import com.microsoft.aad.adal4j.AuthenticationResult;
 import com.microsoft.azure.AzureEnvironment;
@@ -9,20 +12,40 @@ import com.microsoft.azure.credentials.AzureTokenCredentials;
 import com.microsoft.azure.credentials.AzureTokenCredentialsInterceptor;
 import com.microsoft.rest.credentials.TokenCredentials;
 import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-public class CertificateCredentials extends TokenCredentials implements AzureTokenCredentials {
+public class CertificateCredentials extends TokenCredentials
+    implements AzureTokenCredentials, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(CertificateCredentials.class);
 
-    private Map<String, AuthenticationResult> tokens;
+    // Tokens are refreshed this long before they expire, or halfway through their
+    // lifetime for short-lived tokens.
+    static final long REFRESH_MARGIN_MS = 300000;
+    static final long REFRESH_RETRY_DELAY_MS = 30000;
+
+    private final Map<String, AuthenticationResult> tokens = new ConcurrentHashMap<>();
+    private final Map<String, AsymmetricKeyCredential> keyCredentials = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    // Each resource has at most one pending refresh, so a synchronous acquire or a late retry
+    // replaces the chain rather than starting another one.
+    private final Map<String, ScheduledFuture<?>> refreshes = new ConcurrentHashMap<>();
     private String domain;
     private AzureEnvironment environment;
     private AsymmetricKeyCredentialFactory credentialFactory;
+    private final ScheduledExecutorService executorService;
+    private AuthenticationContext authenticationContext;
 
     public CertificateCredentials(String domain, AzureEnvironment environment,
                                   AsymmetricKeyCredentialFactory credentialFactory) {
@@ -34,7 +57,13 @@ public class CertificateCredentials extends TokenCredentials implements AzureTok
             "credentialFactory cannot be null");
         this.environment = Preconditions.checkNotNull(environment,
             "environment cannot be null or empty");
-        this.tokens = new HashMap<>();
+        // ADAL runs its requests on this executor as well, so it needs more than one
+        // thread to keep a refresh from queueing behind a blocking request.
+        this.executorService = Executors.newScheduledThreadPool(2,
+            new ThreadFactoryBuilder()
+                .setNameFormat("certificate-credentials-%d")
+                .setDaemon(true)
+                .build());
     }
 
     @Override
@@ -50,32 +79,127 @@ public class CertificateCredentials extends TokenCredentials implements AzureTok
     @Override
     public String getToken(String resource) throws IOException {
         AuthenticationResult authenticationResult = this.tokens.get(resource);
-        if(authenticationResult == null || authenticationResult.getExpiresOnDate().before(new Date())) {
-            authenticationResult = this.acquireAccessToken(resource);
+        if (isExpired(authenticationResult)) {
+            // Only one caller per resource goes to AAD; the rest pick up its token.
+            synchronized (this.locks.computeIfAbsent(resource, r -> new Object())) {
+                authenticationResult = this.tokens.get(resource);
+                if (isExpired(authenticationResult)) {
+                    authenticationResult = this.acquireAccessToken(resource);
+                }
+            }
         }
 
         return authenticationResult.getAccessToken();
     }
 
-    private AuthenticationResult acquireAccessToken(String resource) throws IOException {
-        String authorityUrl = this.getEnvironment().getAuthenticationEndpoint() + this.getDomain();
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        AuthenticationContext context = new AuthenticationContext(authorityUrl,
-            this.getEnvironment().isValidateAuthority(), executor);
+    private static boolean isExpired(AuthenticationResult authenticationResult) {
+        return authenticationResult == null ||
+            authenticationResult.getExpiresOnDate().before(new Date());
+    }
 
+    private AuthenticationResult acquireAccessToken(String resource) throws IOException {
         try {
-            AuthenticationResult authenticationResult = context.acquireToken(
-                resource, this.credentialFactory.create(resource), null).get();
-            this.tokens.put(resource, authenticationResult);
+            AuthenticationResult authenticationResult = getAuthenticationContext().acquireToken(
+                resource, getKeyCredential(resource), null).get();
+            onTokenAcquired(resource, authenticationResult);
             return authenticationResult;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e.getMessage(), e);
         } catch (Exception e) {
             throw new IOException(e.getMessage(), e);
-        } finally {
-            executor.shutdown();
         }
     }
 
+    private void refreshAccessToken(String resource) {
+        try {
+            getAuthenticationContext().acquireToken(resource, getKeyCredential(resource),
+                new AuthenticationCallback() {
+                    @Override
+                    public void onSuccess(AuthenticationResult authenticationResult) {
+                        onTokenAcquired(resource, authenticationResult);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable throwable) {
+                        onRefreshFailed(resource, throwable);
+                    }
+                });
+        } catch (Exception e) {
+            onRefreshFailed(resource, e);
+        }
+    }
+
+    private void onTokenAcquired(String resource, AuthenticationResult authenticationResult) {
+        this.tokens.put(resource, authenticationResult);
+        long lifetime = authenticationResult.getExpiresOnDate().getTime() -
+            System.currentTimeMillis();
+        scheduleRefresh(resource, getRefreshDelay(lifetime));
+    }
+
+    private void onRefreshFailed(String resource, Throwable throwable) {
+        // The current token is still served until it expires, after which getToken()
+        // acquires a new one itself.
+        log.warn("Error refreshing token for resource " + resource, throwable);
+        if (!isExpired(this.tokens.get(resource))) {
+            scheduleRefresh(resource, REFRESH_RETRY_DELAY_MS);
+        }
+    }
+
+    void scheduleRefresh(String resource, long delay) {
+        this.refreshes.compute(resource, (r, previous) -> {
+            if (previous != null) {
+                // A refresh that is already running finishes, and schedules its successor
+                // through here in turn.
+                previous.cancel(false);
+            }
+
+            try {
+                return this.executorService.schedule(() -> refreshAccessToken(resource),
+                    delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.debug("Token refresh not scheduled, credentials closed");
+                return null;
+            }
+        });
+    }
+
+    static long getRefreshDelay(long lifetime) {
+        if (lifetime <= 0) {
+            return 0;
+        }
+
+        return lifetime - Math.min(REFRESH_MARGIN_MS, lifetime / 2);
+    }
+
+    private AsymmetricKeyCredential getKeyCredential(String resource)
+        throws GeneralSecurityException {
+        AsymmetricKeyCredential keyCredential = this.keyCredentials.get(resource);
+        if (keyCredential == null) {
+            keyCredential = this.credentialFactory.create(resource);
+            this.keyCredentials.putIfAbsent(resource, keyCredential);
+        }
+
+        return keyCredential;
+    }
+
+    private synchronized AuthenticationContext getAuthenticationContext() throws IOException {
+        if (this.authenticationContext == null) {
+            String authorityUrl = this.getEnvironment().getAuthenticationEndpoint() +
+                this.getDomain();
+            this.authenticationContext = new AuthenticationContext(authorityUrl,
+                this.getEnvironment().isValidateAuthority(), this.executorService);
+        }
+
+        return this.authenticationContext;
+    }
+
     public void applyCredentialsFilter(OkHttpClient.Builder clientBuilder) {
         clientBuilder.interceptors().add(new AzureTokenCredentialsInterceptor(this));
     }
+
+    @Override
+    public void close() {
+        this.executorService.shutdownNow();
+    }
 }
@@ -0,0 +1,237 @@
+package com.microsoft.azure.practices.nvadaemon.failover;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.management.network.NetworkInterface;
+import com.microsoft.azure.management.network.RouteTable;
+import com.microsoft.azure.practices.nvadaemon.AsyncAzureClient;
+import com.microsoft.azure.practices.nvadaemon.AzureClient;
+import com.microsoft.azure.practices.nvadaemon.config.AzureProbeMonitorConfiguration;
+import com.microsoft.azure.practices.nvadaemon.config.NvaConfiguration;
+import com.microsoft.azure.practices.nvadaemon.failover.FailoverPlan.PublicIpAddressMove;
+import com.microsoft.azure.practices.nvadaemon.metrics.LatencyHistogram;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Points the route tables and public ip addresses at an NVA.  Every resource is written with a
+ * single update, and all of them are written at the same time.
+ */
+public final class AzureResourceMigrator {
+    private static final Logger log = LoggerFactory.getLogger(AzureResourceMigrator.class);
+    public static final String ROUTE_TABLE_UPDATE_TIME_METRIC = "route_table_update_time";
+
+    private final AzureProbeMonitorConfiguration configuration;
+    private final AzureClient azureClient;
+    private final AsyncAzureClient asyncAzureClient;
+    private final FailoverPlanner failoverPlanner;
+    private final MetricRegistry metricRegistry;
+
+    public AzureResourceMigrator(AzureProbeMonitorConfiguration configuration,
+                                 AzureClient azureClient, AsyncAzureClient asyncAzureClient,
+                                 FailoverPlanner failoverPlanner,
+                                 MetricRegistry metricRegistry) {
+        this.configuration = Preconditions.checkNotNull(configuration,
+            "configuration cannot be null");
+        this.azureClient = Preconditions.checkNotNull(azureClient, "azureClient cannot be null");
+        this.asyncAzureClient = Preconditions.checkNotNull(asyncAzureClient,
+            "asyncAzureClient cannot be null");
+        this.failoverPlanner = Preconditions.checkNotNull(failoverPlanner,
+            "failoverPlanner cannot be null");
+        this.metricRegistry = Preconditions.checkNotNull(metricRegistry,
+            "metricRegistry cannot be null");
+    }
+
+    /**
+     * Migrates the resources in steps to next, and returns the ones that failed or did not
+     * finish by deadline.  A prepared plan, if there is one, is only used to skip the resources
+     * that already point at next.  onCompleted is called with each resource once it is done.
+     *
+     * @param deadline the System.nanoTime() by which every resource has to be migrated
+     */
+    public List<String> migrate(NvaConfiguration next, FailoverPlan plan, Set<String> steps,
+                                Consumer<String> onCompleted, long deadline)
+        throws InterruptedException {
+        Preconditions.checkNotNull(next, "next cannot be null");
+        Preconditions.checkNotNull(steps, "steps cannot be null");
+        Preconditions.checkNotNull(onCompleted, "onCompleted cannot be null");
+        // Route tables and public ip addresses are unrelated ARM resources, so they are
+        // migrated at the same time.  The route tables are queued first since they converge
+        // much faster than the network interface updates, which lets east-west traffic recover
+        // without waiting on the public ip addresses.
+        Map<String, Future<Boolean>> tasks = new LinkedHashMap<>();
+        tasks.putAll(this.submitRouteTableMigrations(next, plan, steps, onCompleted));
+        tasks.putAll(this.submitPublicIpAddressMigrations(next, plan, steps, onCompleted));
+        return awaitMigrations(tasks, deadline);
+    }
+
+    private static List<String> awaitMigrations(Map<String, Future<Boolean>> tasks,
+                                                long deadline)
+        throws InterruptedException {
+        List<String> failedResources = new ArrayList<>();
+        for (Map.Entry<String, Future<Boolean>> task : tasks.entrySet()) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                if (task.getValue().get(remaining, TimeUnit.NANOSECONDS)) {
+                    log.info("Migrated " + task.getKey());
+                } else {
+                    log.debug("Nothing to migrate for " + task.getKey());
+                }
+            } catch (ExecutionException e) {
+                log.error("Error migrating " + task.getKey(), e.getCause());
+                failedResources.add(task.getKey());
+            } catch (TimeoutException e) {
+                log.error("Timed out migrating " + task.getKey());
+                task.getValue().cancel(true);
+                failedResources.add(task.getKey());
+            } catch (InterruptedException e) {
+                log.warn("Interrupted waiting for migration");
+                tasks.values().forEach(f -> f.cancel(true));
+                throw e;
+            }
+        }
+
+        return failedResources;
+    }
+
+    private Map<String, Future<Boolean>> submitRouteTableMigrations(NvaConfiguration next,
+                                                                   FailoverPlan plan,
+                                                                   Set<String> steps,
+                                                                   Consumer<String> onCompleted) {
+        RouteRewritePlanner planner = this.failoverPlanner.createRouteRewritePlanner(next);
+        // Each route table is fetched and updated independently, so we start them all at once
+        // rather than paying one ARM round-trip per table.  A prepared plan only tells us which
+        // route tables need a write, since the route tables may have changed since it was made.
+        Map<String, Future<Boolean>> tasks = new LinkedHashMap<>();
+        for (String routeTableId : this.configuration.getRouteTables()) {
+            if (!steps.contains(routeTableId)) {
+                continue;
+            }
+
+            Observable<Boolean> migration =
+                (plan == null) || (plan.getRouteTableRewrites().containsKey(routeTableId)) ?
+                    this.migrateRouteTable(routeTableId, planner) : Observable.just(false);
+            tasks.put(routeTableId, migration
+                .doOnNext(r -> onCompleted.accept(routeTableId))
+                .toBlocking().toFuture());
+        }
+
+        return tasks;
+    }
+
+    private Observable<Boolean> migrateRouteTable(String routeTableId,
+                                                  RouteRewritePlanner planner) {
+        return this.readFromArm(routeTableId, this.asyncAzureClient::getRouteTableById)
+            .flatMap(routeTable -> this.rewriteRouteTable(routeTable, planner.plan(routeTable)));
+    }
+
+    /**
+     * Reads a resource from ARM rather than from the AzureClient's cache.  Updates replace the
+     * whole resource, so building one from an older copy would undo any change made since that
+     * copy was read, and would leave the cached copy modified if the update failed.
+     */
+    private <T> Observable<T> readFromArm(String id, Function<String, Observable<T>> read) {
+        return Observable.defer(() -> {
+            this.azureClient.invalidate(id);
+            return read.apply(id);
+        });
+    }
+
+    private Observable<Boolean> rewriteRouteTable(RouteTable routeTable, RouteRewritePlan plan) {
+        if (plan.isEmpty()) {
+            return Observable.just(false);
+        }
+
+        log.debug("Updating " + plan.getNextHopIpAddresses().size() +
+            " route(s) in route table " + plan.getRouteTableId());
+        LatencyHistogram updateTime = this.metricRegistry.getHistogram(
+            ROUTE_TABLE_UPDATE_TIME_METRIC, "route_table", plan.getRouteTableId());
+        RouteTable.Update update = plan.update(routeTable);
+        return Observable.defer(() -> {
+            long start = System.nanoTime();
+            return this.asyncAzureClient.apply(plan.getRouteTableId(), update)
+                .doOnNext(r -> updateTime.recordSince(start));
+        }).map(r -> true);
+    }
+
+    private Map<String, Future<Boolean>> submitPublicIpAddressMigrations(
+        NvaConfiguration next, FailoverPlan plan, Set<String> steps,
+        Consumer<String> onCompleted) {
+        Map<String, Future<Boolean>> tasks = new LinkedHashMap<>();
+        for (Map.Entry<String, String> migration :
+            this.failoverPlanner.getPublicIpAddressMigrations(next).entrySet()) {
+            String publicIpAddressId = migration.getKey();
+            if (!steps.contains(publicIpAddressId)) {
+                continue;
+            }
+
+            Observable<Boolean> task =
+                (plan == null) || (plan.getPublicIpAddressMoves().containsKey(publicIpAddressId)) ?
+                    this.migratePublicIpAddress(publicIpAddressId, migration.getValue()) :
+                    Observable.just(false);
+            tasks.put(publicIpAddressId, task
+                .doOnNext(r -> onCompleted.accept(publicIpAddressId))
+                .toBlocking().toFuture());
+        }
+
+        return tasks;
+    }
+
+    private Observable<Boolean> migratePublicIpAddress(String publicIpAddressId,
+                                                       String networkInterfaceId) {
+        return this.readFromArm(publicIpAddressId, this.asyncAzureClient::getPublicIpAddressById)
+            .flatMap(publicIpAddress -> {
+                NetworkInterface from = publicIpAddress.hasAssignedNetworkInterface() ?
+                    publicIpAddress.getAssignedNetworkInterfaceIpConfiguration().parent() : null;
+                if ((from != null) && (from.id().equalsIgnoreCase(networkInterfaceId))) {
+                    return Observable.just(false);
+                }
+
+                return this.readFromArm(networkInterfaceId,
+                        this.asyncAzureClient::getNetworkInterfaceById)
+                    .flatMap(to -> this.movePublicIpAddress(publicIpAddressId,
+                        new PublicIpAddressMove(publicIpAddress, from, to)));
+            });
+    }
+
+    private Observable<Boolean> movePublicIpAddress(String publicIpAddressId,
+                                                    PublicIpAddressMove move) {
+        NetworkInterface from = move.getFrom();
+        NetworkInterface to = move.getTo();
+        Observable<NetworkInterface> removal;
+        if (from == null) {
+            removal = Observable.just(null);
+        } else {
+            log.debug("Removing public ip address from network interface " + from.id());
+            // Moving the public ip address changes it as well as the network interfaces, and a
+            // stale copy would leave the move back out of the next failover.
+            removal = this.asyncAzureClient.apply(Arrays.asList(from.id(), publicIpAddressId),
+                    from.update().withoutPrimaryPublicIpAddress())
+                .doOnNext(n -> log.debug(
+                    "Public ip address removed from network interface " + from.id()));
+        }
+
+        return removal
+            .flatMap(n -> {
+                log.debug("Adding public ip address to network interface " + to.id());
+                return this.asyncAzureClient.apply(Arrays.asList(to.id(), publicIpAddressId),
+                    to.update().withExistingPrimaryPublicIpAddress(move.getPublicIpAddress()));
+            })
+            .doOnNext(n -> log.debug("Added public ip address to network interface " + to.id()))
+            .map(n -> true);
+    }
+}
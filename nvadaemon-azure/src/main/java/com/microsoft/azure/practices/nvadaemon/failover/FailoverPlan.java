@@ -0,0 +1,97 @@
+package com.microsoft.azure.practices.nvadaemon.failover;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.management.network.NetworkInterface;
+import com.microsoft.azure.management.network.PublicIpAddress;
+import com.microsoft.azure.management.network.RouteTable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Every write needed to fail over to one NVA, worked out ahead of time from the resources as
+ * they were last read.  A resource without a route table rewrite or public ip address move
+ * already points at the NVA.  Resources can change after the plan is made, so a failover reads
+ * the resources that need a write again rather than building the writes from the plan's copies.
+ */
+public final class FailoverPlan {
+    private final Map<String, RouteTableRewrite> routeTableRewrites;
+    private final Map<String, PublicIpAddressMove> publicIpAddressMoves;
+
+    public static final class RouteTableRewrite {
+        private final RouteTable routeTable;
+        private final RouteRewritePlan plan;
+
+        public RouteTableRewrite(RouteTable routeTable, RouteRewritePlan plan) {
+            this.routeTable = Preconditions.checkNotNull(routeTable, "routeTable cannot be null");
+            this.plan = Preconditions.checkNotNull(plan, "plan cannot be null");
+            Preconditions.checkArgument(plan.getRouteTableId().equalsIgnoreCase(routeTable.id()),
+                "plan does not match routeTable");
+        }
+
+        public RouteTable getRouteTable() { return this.routeTable; }
+
+        public RouteRewritePlan getPlan() { return this.plan; }
+    }
+
+    public static final class PublicIpAddressMove {
+        private final PublicIpAddress publicIpAddress;
+        private final NetworkInterface from;
+        private final NetworkInterface to;
+
+        /**
+         * @param publicIpAddress the public ip address to move
+         * @param from the network interface the public ip address is assigned to, or null if it
+         *             is not assigned
+         * @param to the network interface to assign the public ip address to
+         */
+        public PublicIpAddressMove(PublicIpAddress publicIpAddress, NetworkInterface from,
+                                   NetworkInterface to) {
+            this.publicIpAddress = Preconditions.checkNotNull(publicIpAddress,
+                "publicIpAddress cannot be null");
+            this.from = from;
+            this.to = Preconditions.checkNotNull(to, "to cannot be null");
+        }
+
+        public PublicIpAddress getPublicIpAddress() { return this.publicIpAddress; }
+
+        public NetworkInterface getFrom() { return this.from; }
+
+        public NetworkInterface getTo() { return this.to; }
+    }
+
+    /**
+     * @param routeTableRewrites the route tables with routes to rewrite, keyed by route table id
+     * @param publicIpAddressMoves the public ip addresses to move, keyed by public ip address id
+     */
+    public FailoverPlan(Map<String, RouteTableRewrite> routeTableRewrites,
+                        Map<String, PublicIpAddressMove> publicIpAddressMoves) {
+        Preconditions.checkNotNull(routeTableRewrites, "routeTableRewrites cannot be null");
+        Preconditions.checkNotNull(publicIpAddressMoves, "publicIpAddressMoves cannot be null");
+        Preconditions.checkArgument(routeTableRewrites.values().stream()
+            .noneMatch(r -> r.getPlan().isEmpty()), "routeTableRewrites cannot be empty");
+        this.routeTableRewrites = Collections.unmodifiableMap(
+            new LinkedHashMap<>(routeTableRewrites));
+        this.publicIpAddressMoves = Collections.unmodifiableMap(
+            new LinkedHashMap<>(publicIpAddressMoves));
+    }
+
+    public Map<String, RouteTableRewrite> getRouteTableRewrites() {
+        return this.routeTableRewrites;
+    }
+
+    public Map<String, PublicIpAddressMove> getPublicIpAddressMoves() {
+        return this.publicIpAddressMoves;
+    }
+
+    /**
+     * Returns the number of ARM writes this plan makes.  Moving an assigned public ip address
+     * takes two, one to remove it and one to assign it.
+     */
+    public int getWriteCount() {
+        return this.routeTableRewrites.size() + this.publicIpAddressMoves.values().stream()
+            .mapToInt(m -> m.getFrom() == null ? 1 : 2)
+            .sum();
+    }
+}
@@ -0,0 +1,260 @@
+package com.microsoft.azure.practices.nvadaemon.failover;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.management.network.NetworkInterface;
+import com.microsoft.azure.management.network.PublicIpAddress;
+import com.microsoft.azure.management.network.RouteTable;
+import com.microsoft.azure.practices.nvadaemon.AzureClient;
+import com.microsoft.azure.practices.nvadaemon.PrivateIpAddressCache;
+import com.microsoft.azure.practices.nvadaemon.config.AzureProbeMonitorConfiguration;
+import com.microsoft.azure.practices.nvadaemon.config.NamedResourceId;
+import com.microsoft.azure.practices.nvadaemon.config.NvaConfiguration;
+import com.microsoft.azure.practices.nvadaemon.failover.FailoverPlan.PublicIpAddressMove;
+import com.microsoft.azure.practices.nvadaemon.failover.FailoverPlan.RouteTableRewrite;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a FailoverPlan to every NVA ready, so a failover knows which resources it has to write
+ * without reading all of them first.
+ */
+public final class FailoverPlanner {
+    private static final Logger log = LoggerFactory.getLogger(FailoverPlanner.class);
+
+    private final AzureProbeMonitorConfiguration configuration;
+    private final AzureClient azureClient;
+    private final PrivateIpAddressCache privateIpAddressCache;
+    private final ExecutorService executorService;
+    private final Object lock = new Object();
+    private volatile List<FailoverPlan> failoverPlans;
+    private List<Object> failoverPlanResources = Collections.emptyList();
+    private long generation;
+    private Future<?> refresh;
+    private volatile long nextRefresh;
+
+    /**
+     * @param executorService runs the refreshes started by scheduleRefresh()
+     */
+    public FailoverPlanner(AzureProbeMonitorConfiguration configuration, AzureClient azureClient,
+                           PrivateIpAddressCache privateIpAddressCache,
+                           ExecutorService executorService) {
+        this.configuration = Preconditions.checkNotNull(configuration,
+            "configuration cannot be null");
+        this.azureClient = Preconditions.checkNotNull(azureClient, "azureClient cannot be null");
+        this.privateIpAddressCache = Preconditions.checkNotNull(privateIpAddressCache,
+            "privateIpAddressCache cannot be null");
+        this.executorService = Preconditions.checkNotNull(executorService,
+            "executorService cannot be null");
+        this.nextRefresh = System.nanoTime();
+    }
+
+    public RouteRewritePlanner createRouteRewritePlanner(NvaConfiguration next) {
+        // We are going to migrate all routes that start with any of the other private ip
+        // addresses.
+        Map<String, String> toMap = next.getNetworkInterfaces().stream()
+            .collect(Collectors.toMap(r -> r.getName(),
+                r -> this.privateIpAddressCache.get(r.getId())));
+        Map<String, List<String>> fromMap = this.configuration.getNvaConfigurations().stream()
+            .filter(c -> !c.equals(next))
+            .flatMap(c -> c.getNetworkInterfaces().stream())
+            .collect(Collectors.groupingBy(r -> r.getName(),
+                Collectors.mapping(
+                    r -> this.privateIpAddressCache.get(r.getId()),
+                    Collectors.toList())));
+
+        return new RouteRewritePlanner(toMap, fromMap);
+    }
+
+    /**
+     * Returns the network interface id of next that each public ip address moves to.
+     */
+    public Map<String, String> getPublicIpAddressMigrations(NvaConfiguration next) {
+        Map<String, String> networkInterfaces = next.getNetworkInterfaces().stream()
+            .collect(Collectors.toMap(r -> r.getName(), r -> r.getId()));
+        Map<String, String> migrations = new LinkedHashMap<>();
+        for (NamedResourceId publicIpAddress : this.configuration.getPublicIpAddresses()) {
+            String networkInterfaceId = networkInterfaces.get(publicIpAddress.getName());
+            if (networkInterfaceId != null) {
+                migrations.put(publicIpAddress.getId(), networkInterfaceId);
+            }
+        }
+
+        return migrations;
+    }
+
+    /**
+     * Returns the plan to fail over to nvaConfiguration, or null if there is no current plan.
+     */
+    public FailoverPlan getFailoverPlan(NvaConfiguration nvaConfiguration) {
+        List<FailoverPlan> failoverPlans = this.failoverPlans;
+        return failoverPlans == null ? null : failoverPlans.get(
+            this.configuration.getNvaConfigurations().indexOf(nvaConfiguration));
+    }
+
+    /**
+     * Starts a refresh in the background unless one is running or the last one started less
+     * than failoverPlanRefreshInterval ago.  Only the monitor's own thread calls this.
+     */
+    public void scheduleRefresh() {
+        long now = System.nanoTime();
+        if (((this.refresh != null) && (!this.refresh.isDone())) ||
+            (now - this.nextRefresh < 0)) {
+            return;
+        }
+
+        this.nextRefresh = now + TimeUnit.MILLISECONDS.toNanos(
+            this.configuration.getFailoverPlanRefreshInterval());
+        this.refresh = this.executorService.submit(() -> this.refresh());
+    }
+
+    /**
+     * Stops a background refresh that is still running.  Any plans it has already made are
+     * kept.
+     */
+    public void cancelRefresh() {
+        if (this.refresh != null) {
+            this.refresh.cancel(true);
+            this.refresh = null;
+        }
+    }
+
+    /**
+     * Lets the next scheduleRefresh() start a refresh without waiting out the interval.
+     */
+    public void expireRefreshInterval() {
+        this.nextRefresh = System.nanoTime();
+    }
+
+    /**
+     * Plans a failover to every NVA from the resources as they are now, unless none of them
+     * have changed since the current plans were made.  Resources come from the AzureClient's
+     * cache, so this only reads from ARM when cached resources have expired.
+     */
+    public void refresh() {
+        long generation;
+        synchronized (this.lock) {
+            generation = this.generation;
+        }
+
+        try {
+            Map<String, RouteTable> routeTables = new LinkedHashMap<>();
+            for (String routeTableId : this.configuration.getRouteTables()) {
+                routeTables.put(routeTableId, this.azureClient.getRouteTableById(routeTableId));
+            }
+
+            Map<String, PublicIpAddress> publicIpAddresses = new LinkedHashMap<>();
+            Map<String, NetworkInterface> networkInterfaces = new LinkedHashMap<>();
+            for (NamedResourceId publicIpAddress : this.configuration.getPublicIpAddresses()) {
+                publicIpAddresses.put(publicIpAddress.getId(),
+                    this.azureClient.getPublicIpAddressById(publicIpAddress.getId()));
+                for (NvaConfiguration nvaConfiguration :
+                    this.configuration.getNvaConfigurations()) {
+                    for (NamedResourceId networkInterface :
+                        nvaConfiguration.getNetworkInterfaces()) {
+                        if (networkInterface.getName().equals(publicIpAddress.getName())) {
+                            networkInterfaces.put(networkInterface.getId(),
+                                this.azureClient.getNetworkInterfaceById(
+                                    networkInterface.getId()));
+                        }
+                    }
+                }
+            }
+
+            List<Object> resources = new ArrayList<>(routeTables.values());
+            resources.addAll(publicIpAddresses.values());
+            resources.addAll(networkInterfaces.values());
+            synchronized (this.lock) {
+                if ((this.failoverPlans != null) &&
+                    (isSameResources(resources, this.failoverPlanResources))) {
+                    return;
+                }
+            }
+
+            List<FailoverPlan> failoverPlans = new ArrayList<>();
+            for (NvaConfiguration nvaConfiguration : this.configuration.getNvaConfigurations()) {
+                failoverPlans.add(this.createFailoverPlan(nvaConfiguration, routeTables,
+                    publicIpAddresses, networkInterfaces));
+            }
+
+            synchronized (this.lock) {
+                if (generation == this.generation) {
+                    this.failoverPlans = Collections.unmodifiableList(failoverPlans);
+                    this.failoverPlanResources = resources;
+                    log.debug("Prepared failover plans");
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Error preparing failover plans", e);
+            this.invalidate();
+        }
+    }
+
+    /**
+     * Drops the current plans, and any refresh still running when this is called, so plans
+     * made from resources that have since been written are never used.
+     */
+    public void invalidate() {
+        synchronized (this.lock) {
+            this.generation++;
+            this.failoverPlans = null;
+            this.failoverPlanResources = Collections.emptyList();
+        }
+
+        this.expireRefreshInterval();
+    }
+
+    private static boolean isSameResources(List<Object> resources, List<Object> other) {
+        // The AzureClient hands out the same instance until a resource is read again, so a
+        // new instance is how we see that a resource may have changed.
+        if (resources.size() != other.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < resources.size(); i++) {
+            if (resources.get(i) != other.get(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private FailoverPlan createFailoverPlan(NvaConfiguration next,
+                                            Map<String, RouteTable> routeTables,
+                                            Map<String, PublicIpAddress> publicIpAddresses,
+                                            Map<String, NetworkInterface> networkInterfaces) {
+        RouteRewritePlanner planner = this.createRouteRewritePlanner(next);
+        Map<String, RouteTableRewrite> routeTableRewrites = new LinkedHashMap<>();
+        for (Map.Entry<String, RouteTable> routeTable : routeTables.entrySet()) {
+            RouteRewritePlan plan = planner.plan(routeTable.getValue());
+            if (!plan.isEmpty()) {
+                routeTableRewrites.put(routeTable.getKey(),
+                    new RouteTableRewrite(routeTable.getValue(), plan));
+            }
+        }
+
+        Map<String, PublicIpAddressMove> publicIpAddressMoves = new LinkedHashMap<>();
+        for (Map.Entry<String, String> migration :
+            this.getPublicIpAddressMigrations(next).entrySet()) {
+            PublicIpAddress publicIpAddress = publicIpAddresses.get(migration.getKey());
+            NetworkInterface from = publicIpAddress.hasAssignedNetworkInterface() ?
+                publicIpAddress.getAssignedNetworkInterfaceIpConfiguration().parent() : null;
+            if ((from == null) || (!from.id().equalsIgnoreCase(migration.getValue()))) {
+                publicIpAddressMoves.put(migration.getKey(), new PublicIpAddressMove(
+                    publicIpAddress, from, networkInterfaces.get(migration.getValue())));
+            }
+        }
+
+        return new FailoverPlan(routeTableRewrites, publicIpAddressMoves);
+    }
+}
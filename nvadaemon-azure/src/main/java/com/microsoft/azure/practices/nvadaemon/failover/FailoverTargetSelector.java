@@ -0,0 +1,83 @@
+package com.microsoft.azure.practices.nvadaemon.failover;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.practices.nvadaemon.probe.ProbeResult;
+
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public final class FailoverTargetSelector {
+    static final double DEFAULT_SMOOTHING_FACTOR = 0.25;
+
+    private final double smoothingFactor;
+    private final Map<SocketAddress, Boolean> healthy = new HashMap<>();
+    private final Map<SocketAddress, Double> smoothedLatencies = new HashMap<>();
+
+    public FailoverTargetSelector() {
+        this(DEFAULT_SMOOTHING_FACTOR);
+    }
+
+    FailoverTargetSelector(double smoothingFactor) {
+        Preconditions.checkArgument(smoothingFactor > 0 && smoothingFactor <= 1,
+            "smoothingFactor must be greater than 0 and less than or equal to 1");
+        this.smoothingFactor = smoothingFactor;
+    }
+
+    public synchronized void record(Collection<ProbeResult> probeResults) {
+        Preconditions.checkNotNull(probeResults, "probeResults cannot be null");
+        for (ProbeResult probeResult : probeResults) {
+            this.healthy.put(probeResult.getTarget(), probeResult.isSuccess());
+            if (probeResult.isSuccess()) {
+                double latency = probeResult.getLatency(TimeUnit.NANOSECONDS);
+                this.smoothedLatencies.merge(probeResult.getTarget(), latency,
+                    (previous, sample) -> previous + this.smoothingFactor * (sample - previous));
+            }
+        }
+    }
+
+    /**
+     * Picks the failover target from {@code candidates}, which must be in the order the NVAs
+     * would have been tried without any probe results.  The healthy candidate with the lowest
+     * smoothed probe latency wins.  If no candidate is known to be healthy, the first one
+     * that is not known to be down is used, and then the first candidate.
+     *
+     * @param candidates standby NVAs in failover order
+     * @param probeSocketAddress maps a candidate to the address it is probed on
+     * @return the failover target
+     */
+    public synchronized <T> T select(List<T> candidates,
+                                     Function<? super T, ? extends SocketAddress> probeSocketAddress) {
+        Preconditions.checkNotNull(candidates, "candidates cannot be null");
+        Preconditions.checkArgument(!candidates.isEmpty(), "candidates cannot be empty");
+        Preconditions.checkNotNull(probeSocketAddress, "probeSocketAddress cannot be null");
+        T fastest = null;
+        double fastestLatency = Double.MAX_VALUE;
+        T unknown = null;
+        for (T candidate : candidates) {
+            SocketAddress address = probeSocketAddress.apply(candidate);
+            Boolean isHealthy = this.healthy.get(address);
+            if (isHealthy == null) {
+                if (unknown == null) {
+                    unknown = candidate;
+                }
+            } else if (isHealthy) {
+                double latency = this.smoothedLatencies.get(address);
+                if (latency < fastestLatency) {
+                    fastest = candidate;
+                    fastestLatency = latency;
+                }
+            }
+        }
+
+        if (fastest != null) {
+            return fastest;
+        }
+
+        return unknown != null ? unknown : candidates.get(0);
+    }
+}
@@ -0,0 +1,52 @@
+package com.microsoft.azure.practices.nvadaemon.failover;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.microsoft.azure.management.network.RouteTable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+public final class RouteRewritePlan {
+    private final String routeTableId;
+    private final Map<String, String> nextHopIpAddresses;
+
+    public RouteRewritePlan(String routeTableId, Map<String, String> nextHopIpAddresses) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(routeTableId),
+            "routeTableId cannot be null or empty");
+        Preconditions.checkNotNull(nextHopIpAddresses, "nextHopIpAddresses cannot be null");
+        this.routeTableId = routeTableId;
+        this.nextHopIpAddresses = Collections.unmodifiableMap(new TreeMap<>(nextHopIpAddresses));
+    }
+
+    public String getRouteTableId() { return this.routeTableId; }
+
+    /**
+     * Returns the new next hop ip address for each route that needs to be rewritten, keyed by
+     * route name.
+     */
+    public Map<String, String> getNextHopIpAddresses() { return this.nextHopIpAddresses; }
+
+    public boolean isEmpty() { return this.nextHopIpAddresses.isEmpty(); }
+
+    /**
+     * Builds a single update with every route change in this plan, so the whole table costs
+     * one write no matter how many routes are rewritten.  The update is not sent, so callers
+     * can apply it asynchronously.
+     */
+    public RouteTable.Update update(RouteTable routeTable) {
+        Preconditions.checkNotNull(routeTable, "routeTable cannot be null");
+        Preconditions.checkArgument(this.routeTableId.equalsIgnoreCase(routeTable.id()),
+            "routeTable does not match this plan");
+        Preconditions.checkState(!this.isEmpty(), "There are no routes to rewrite");
+        RouteTable.Update update = routeTable.update();
+        for (Map.Entry<String, String> entry : this.nextHopIpAddresses.entrySet()) {
+            update = update.updateRoute(entry.getKey())
+                .withNextHopToVirtualAppliance(entry.getValue())
+                .parent();
+        }
+
+        return update;
+    }
+}
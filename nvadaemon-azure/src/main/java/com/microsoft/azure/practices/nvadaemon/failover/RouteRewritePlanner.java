@@ -0,0 +1,52 @@
+package com.microsoft.azure.practices.nvadaemon.failover;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.management.network.Route;
+import com.microsoft.azure.management.network.RouteTable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class RouteRewritePlanner {
+    private final Map<String, String> nextHopIpAddressMap;
+
+    /**
+     * Creates a planner that rewrites routes from the private ip addresses in {@code fromMap}
+     * to the private ip address in {@code toMap} with the same network interface name.
+     *
+     * @param toMap private ip address of the target NVA, keyed by network interface name
+     * @param fromMap private ip addresses of every other NVA, keyed by network interface name
+     */
+    public RouteRewritePlanner(Map<String, String> toMap, Map<String, List<String>> fromMap) {
+        Preconditions.checkNotNull(toMap, "toMap cannot be null");
+        Preconditions.checkNotNull(fromMap, "fromMap cannot be null");
+        Map<String, String> nextHopIpAddressMap = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : fromMap.entrySet()) {
+            String toIpAddress = toMap.get(entry.getKey());
+            if (toIpAddress == null) {
+                continue;
+            }
+
+            for (String fromIpAddress : entry.getValue()) {
+                nextHopIpAddressMap.put(fromIpAddress, toIpAddress);
+            }
+        }
+
+        this.nextHopIpAddressMap = Collections.unmodifiableMap(nextHopIpAddressMap);
+    }
+
+    public RouteRewritePlan plan(RouteTable routeTable) {
+        Preconditions.checkNotNull(routeTable, "routeTable cannot be null");
+        Map<String, String> nextHopIpAddresses = new HashMap<>();
+        for (Map.Entry<String, Route> entry : routeTable.routes().entrySet()) {
+            String toIpAddress = this.nextHopIpAddressMap.get(entry.getValue().nextHopIpAddress());
+            if (toIpAddress != null) {
+                nextHopIpAddresses.put(entry.getKey(), toIpAddress);
+            }
+        }
+
+        return new RouteRewritePlan(routeTable.id(), nextHopIpAddresses);
+    }
+}
@@ -0,0 +1,54 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.microsoft.azure.practices.nvadaemon.config.AzureProbeMonitorConfiguration;
+import com.microsoft.azure.practices.nvadaemon.config.AzureProbeMonitorConfigurationTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class ActiveNvaStateTest {
+    @Test
+    void test_negative_active_nva_index() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ActiveNvaState(-1, "fingerprint"));
+    }
+
+    @Test
+    void test_null_fingerprint() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ActiveNvaState(0, null));
+    }
+
+    @Test
+    void test_round_trip() throws IOException {
+        ActiveNvaState state = ActiveNvaState.fromBytes(
+            new ActiveNvaState(1, "fingerprint").toBytes());
+        Assertions.assertEquals(1, state.getActiveNvaIndex());
+        Assertions.assertEquals("fingerprint", state.getFingerprint());
+    }
+
+    @Test
+    void test_fingerprint_is_stable() {
+        Assertions.assertEquals(
+            ActiveNvaState.fingerprint(createConfiguration("route-table-id1", "route-table-id2")),
+            ActiveNvaState.fingerprint(createConfiguration("route-table-id1", "route-table-id2")));
+    }
+
+    @Test
+    void test_fingerprint_changes_with_resources() {
+        Assertions.assertNotEquals(
+            ActiveNvaState.fingerprint(createConfiguration("route-table-id1", "route-table-id2")),
+            ActiveNvaState.fingerprint(createConfiguration("route-table-id1", "route-table-id3")));
+    }
+
+    private static AzureProbeMonitorConfiguration createConfiguration(String... routeTables) {
+        return new AzureProbeMonitorConfiguration(
+            AzureProbeMonitorConfigurationTest.azureConfiguration,
+            AzureProbeMonitorConfigurationTest.nvaConfigurations,
+            Arrays.asList(routeTables),
+            AzureProbeMonitorConfigurationTest.publicIpAddresses,
+            null, null, null);
+    }
+}
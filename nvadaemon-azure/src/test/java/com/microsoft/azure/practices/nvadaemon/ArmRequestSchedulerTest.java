@@ -0,0 +1,259 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.microsoft.azure.practices.nvadaemon.metrics.LatencyHistogram;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ArmRequestSchedulerTest {
+    private static final String ROUTE_TABLE_URL = "https://management.azure.com/subscriptions/" +
+        "sub/resourceGroups/rg/providers/Microsoft.Network/routeTables/rt?api-version=2016-09-01";
+
+    private static Request get(String url) {
+        return new Request.Builder().url(url).build();
+    }
+
+    private static Request put(String url) {
+        return new Request.Builder().url(url)
+            .put(RequestBody.create(MediaType.parse("application/json"), "{}"))
+            .build();
+    }
+
+    private static Response response(Request request, int code, String... headers) {
+        Response.Builder builder = new Response.Builder()
+            .request(request)
+            .protocol(Protocol.HTTP_1_1)
+            .code(code)
+            .body(ResponseBody.create(MediaType.parse("application/json"), "{}"));
+        for (int i = 0; i < headers.length; i += 2) {
+            builder.header(headers[i], headers[i + 1]);
+        }
+
+        return builder.build();
+    }
+
+    private static Interceptor.Chain chain(Request request, Response... responses)
+        throws IOException {
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        if (responses.length > 0) {
+            when(chain.proceed(request)).thenReturn(responses[0],
+                Arrays.copyOfRange(responses, 1, responses.length));
+        }
+
+        return chain;
+    }
+
+    @Test
+    void testInvalidArguments() {
+        TokenBucketTest.FakeTicker ticker = new TokenBucketTest.FakeTicker();
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ArmRequestScheduler(0, 0, 0, TimeUnit.SECONDS, ticker));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ArmRequestScheduler(1, -1, 0, TimeUnit.SECONDS, ticker));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ArmRequestScheduler(1, 0, -1, TimeUnit.SECONDS, ticker));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ArmRequestScheduler(1, 0, 0, -1, TimeUnit.SECONDS, ticker));
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new ArmRequestScheduler(1, 0, 0, null, ticker));
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new ArmRequestScheduler(1, 0, 0, TimeUnit.SECONDS, null));
+    }
+
+    @Test
+    void testRequestKey() {
+        Assertions.assertEquals("microsoft.network/read",
+            ArmRequestScheduler.getRequestKey(get(ROUTE_TABLE_URL), false));
+        Assertions.assertEquals("microsoft.network/write",
+            ArmRequestScheduler.getRequestKey(put(ROUTE_TABLE_URL), true));
+        Assertions.assertEquals("microsoft.resources/read",
+            ArmRequestScheduler.getRequestKey(get(
+                "https://management.azure.com/subscriptions/sub/resourceGroups/rg"), false));
+        Assertions.assertFalse(ArmRequestScheduler.isWrite(get(ROUTE_TABLE_URL)));
+        Assertions.assertTrue(ArmRequestScheduler.isWrite(put(ROUTE_TABLE_URL)));
+    }
+
+    @Test
+    void testSyncsRemainingQuota() throws IOException {
+        ArmRequestScheduler scheduler = new ArmRequestScheduler(4, 0, 0, TimeUnit.SECONDS,
+            new TokenBucketTest.FakeTicker());
+        Request request = put(ROUTE_TABLE_URL);
+        Response response = response(request, 200,
+            ArmRequestScheduler.REMAINING_WRITES_HEADER, "0");
+        Assertions.assertSame(response, scheduler.intercept(chain(request, response)));
+        // Other daemons have used up the quota, so we refuse rather than being throttled.
+        IOException e = Assertions.expectThrows(IOException.class,
+            () -> scheduler.intercept(chain(request)));
+        Assertions.assertEquals("ARM request quota exhausted for microsoft.network/write",
+            e.getMessage());
+        // Reads have their own quota.
+        Request read = get(ROUTE_TABLE_URL);
+        Response readResponse = response(read, 200);
+        Assertions.assertSame(readResponse, scheduler.intercept(chain(read, readResponse)));
+    }
+
+    @Test
+    void testProvidersShareSubscriptionQuota() throws IOException {
+        ArmRequestScheduler scheduler = new ArmRequestScheduler(4, 0, 0, TimeUnit.SECONDS,
+            new TokenBucketTest.FakeTicker());
+        Request request = put(ROUTE_TABLE_URL);
+        scheduler.intercept(chain(request, response(request, 200,
+            ArmRequestScheduler.REMAINING_WRITES_HEADER, "0")));
+        // The remaining writes are for the whole subscription, not just Microsoft.Network.
+        Request other = put("https://management.azure.com/subscriptions/sub/resourceGroups/rg" +
+            "/providers/Microsoft.Compute/virtualMachines/vm1");
+        Assertions.assertThrows(IOException.class, () -> scheduler.intercept(chain(other)));
+    }
+
+    @Test
+    void testRetriesThrottledRequest() throws IOException {
+        ArmRequestScheduler scheduler = new ArmRequestScheduler(4, 3, 1, TimeUnit.SECONDS,
+            new TokenBucketTest.FakeTicker());
+        Request request = put(ROUTE_TABLE_URL);
+        Response throttled = response(request, 429, ArmRequestScheduler.RETRY_AFTER_HEADER, "0");
+        Response ok = response(request, 200);
+        Interceptor.Chain chain = chain(request, throttled, ok);
+        Assertions.assertSame(ok, scheduler.intercept(chain));
+        verify(chain, times(2)).proceed(request);
+    }
+
+    @Test
+    void testRecordsRequestMetrics() throws IOException {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        ArmRequestScheduler scheduler = new ArmRequestScheduler(4, 3, 1, 1, TimeUnit.SECONDS,
+            new TokenBucketTest.FakeTicker(), metricRegistry);
+        Request request = put(ROUTE_TABLE_URL);
+        Response throttled = response(request, 429, ArmRequestScheduler.RETRY_AFTER_HEADER, "0");
+        Response ok = response(request, 200);
+        scheduler.intercept(chain(request, throttled, ok));
+        // Each attempt is recorded on its own.
+        LatencyHistogram waits = metricRegistry.getHistogram(
+            ArmRequestScheduler.REQUEST_WAIT_METRIC, "request", "microsoft.network/write");
+        LatencyHistogram latencies = metricRegistry.getHistogram(
+            ArmRequestScheduler.REQUEST_LATENCY_METRIC, "request", "microsoft.network/write");
+        Assertions.assertEquals(2, waits.getCount());
+        Assertions.assertEquals(2, latencies.getCount());
+        Assertions.assertEquals(0, metricRegistry.getHistogram(
+            ArmRequestScheduler.REQUEST_LATENCY_METRIC, "request", "microsoft.network/read")
+            .getCount());
+    }
+
+    @Test
+    void testRetriesAreLimited() throws IOException {
+        ArmRequestScheduler scheduler = new ArmRequestScheduler(4, 1, 1, TimeUnit.SECONDS,
+            new TokenBucketTest.FakeTicker());
+        Request request = get(ROUTE_TABLE_URL);
+        Response throttled = response(request, 429, ArmRequestScheduler.RETRY_AFTER_HEADER, "0");
+        Response stillThrottled =
+            response(request, 429, ArmRequestScheduler.RETRY_AFTER_HEADER, "0");
+        Interceptor.Chain chain = chain(request, throttled, stillThrottled);
+        Assertions.assertSame(stillThrottled, scheduler.intercept(chain));
+        verify(chain, times(2)).proceed(request);
+    }
+
+    @Test
+    void testRetryAfterLongerThanMaxWait() throws IOException {
+        TokenBucketTest.FakeTicker ticker = new TokenBucketTest.FakeTicker();
+        ArmRequestScheduler scheduler = new ArmRequestScheduler(4, 3, 1, TimeUnit.SECONDS,
+            ticker);
+        Request request = get(ROUTE_TABLE_URL);
+        Interceptor.Chain chain = chain(request,
+            response(request, 429, ArmRequestScheduler.RETRY_AFTER_HEADER, "30"));
+        Assertions.assertThrows(IOException.class, () -> scheduler.intercept(chain));
+        verify(chain, times(1)).proceed(request);
+    }
+
+    @Test
+    void testWritesWaitLongerThanReads() throws IOException {
+        ArmRequestScheduler scheduler = new ArmRequestScheduler(4, 3, 0, 5, TimeUnit.SECONDS,
+            new TokenBucketTest.FakeTicker());
+        Request read = get(ROUTE_TABLE_URL);
+        Interceptor.Chain readChain = chain(read,
+            response(read, 429, ArmRequestScheduler.RETRY_AFTER_HEADER, "1"));
+        Assertions.assertThrows(IOException.class, () -> scheduler.intercept(readChain));
+        // A failover write waits out the same throttling rather than failing.
+        Request write = put(ROUTE_TABLE_URL);
+        Response ok = response(write, 200);
+        Interceptor.Chain writeChain = chain(write,
+            response(write, 429, ArmRequestScheduler.RETRY_AFTER_HEADER, "1"), ok);
+        Assertions.assertSame(ok, scheduler.intercept(writeChain));
+        verify(writeChain, times(2)).proceed(write);
+    }
+
+    @Test
+    void testWritesBeforeWaitingReads() throws Exception {
+        ArmRequestScheduler scheduler = new ArmRequestScheduler(1, 0, 0, TimeUnit.SECONDS,
+            new TokenBucketTest.FakeTicker());
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        Request first = get(ROUTE_TABLE_URL);
+        Interceptor.Chain firstChain = mock(Interceptor.Chain.class);
+        when(firstChain.request()).thenReturn(first);
+        when(firstChain.proceed(any())).thenAnswer(invocation -> {
+            blocking.countDown();
+            release.await();
+            return response(first, 200);
+        });
+        Request read = get(ROUTE_TABLE_URL);
+        Interceptor.Chain readChain = mock(Interceptor.Chain.class);
+        when(readChain.request()).thenReturn(read);
+        when(readChain.proceed(any())).thenAnswer(invocation -> {
+            order.add("read");
+            return response(read, 200);
+        });
+        Request write = put(ROUTE_TABLE_URL);
+        Interceptor.Chain writeChain = mock(Interceptor.Chain.class);
+        when(writeChain.request()).thenReturn(write);
+        when(writeChain.proceed(any())).thenAnswer(invocation -> {
+            order.add("write");
+            return response(write, 200);
+        });
+
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            Future<Response> firstResult =
+                executorService.submit(() -> scheduler.intercept(firstChain));
+            Assertions.assertTrue(blocking.await(5, TimeUnit.SECONDS));
+            Future<Response> readResult =
+                executorService.submit(() -> scheduler.intercept(readChain));
+            Thread.sleep(100);
+            Future<Response> writeResult =
+                executorService.submit(() -> scheduler.intercept(writeChain));
+            Thread.sleep(100);
+            release.countDown();
+            firstResult.get(5, TimeUnit.SECONDS);
+            readResult.get(5, TimeUnit.SECONDS);
+            writeResult.get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(Arrays.asList("write", "read"), order);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.microsoft.azure.management.network.NetworkInterface;
+import com.microsoft.azure.management.network.PublicIpAddress;
+import com.microsoft.azure.management.network.RouteTable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AsyncAzureClientTest {
+    @Test
+    void testNullArguments() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> AsyncAzureClient.create(null, Schedulers.immediate()));
+        Assertions.assertThrows(NullPointerException.class,
+            () -> AsyncAzureClient.create(mock(AzureClient.class), null));
+        AsyncAzureClient asyncAzureClient =
+            AsyncAzureClient.create(mock(AzureClient.class), Schedulers.immediate());
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> asyncAzureClient.getRouteTableById(null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> asyncAzureClient.getNetworkInterfaceById(""));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> asyncAzureClient.getPublicIpAddressById(""));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> asyncAzureClient.checkExistenceById(""));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> asyncAzureClient.apply((String)null, mock(RouteTable.Update.class)));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> asyncAzureClient.apply(Collections.emptyList(), mock(RouteTable.Update.class)));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> asyncAzureClient.apply(Arrays.asList("network-interface-id", null),
+                mock(NetworkInterface.Update.class)));
+        Assertions.assertThrows(NullPointerException.class,
+            () -> asyncAzureClient.apply("route-table-id", null));
+    }
+
+    @Test
+    void testReadsAreLazy() {
+        AzureClient azureClient = mock(AzureClient.class);
+        RouteTable routeTable = mock(RouteTable.class);
+        when(azureClient.getRouteTableById("route-table-id")).thenReturn(routeTable);
+        AsyncAzureClient asyncAzureClient =
+            AsyncAzureClient.create(azureClient, Schedulers.immediate());
+        Observable<RouteTable> observable = asyncAzureClient.getRouteTableById("route-table-id");
+        verify(azureClient, never()).getRouteTableById("route-table-id");
+        Assertions.assertSame(routeTable, observable.toBlocking().single());
+        verify(azureClient, times(1)).getRouteTableById("route-table-id");
+    }
+
+    @Test
+    void testReads() {
+        AzureClient azureClient = mock(AzureClient.class);
+        NetworkInterface networkInterface = mock(NetworkInterface.class);
+        PublicIpAddress publicIpAddress = mock(PublicIpAddress.class);
+        when(azureClient.getNetworkInterfaceById("network-interface-id"))
+            .thenReturn(networkInterface);
+        when(azureClient.getPublicIpAddressById("public-ip-address-id"))
+            .thenReturn(publicIpAddress);
+        when(azureClient.checkExistenceById("public-ip-address-id")).thenReturn(true);
+        AsyncAzureClient asyncAzureClient =
+            AsyncAzureClient.create(azureClient, Schedulers.immediate());
+        Assertions.assertSame(networkInterface,
+            asyncAzureClient.getNetworkInterfaceById("network-interface-id")
+                .toBlocking().single());
+        Assertions.assertSame(publicIpAddress,
+            asyncAzureClient.getPublicIpAddressById("public-ip-address-id")
+                .toBlocking().single());
+        Assertions.assertTrue(asyncAzureClient.checkExistenceById("public-ip-address-id")
+            .toBlocking().single());
+        Assertions.assertFalse(asyncAzureClient.checkExistenceById("other-id")
+            .toBlocking().single());
+    }
+
+    @Test
+    void testReadErrors() {
+        AzureClient azureClient = mock(AzureClient.class);
+        when(azureClient.getRouteTableById("route-table-id"))
+            .thenThrow(new IllegalArgumentException("Error getting resource: route-table-id"));
+        AsyncAzureClient asyncAzureClient =
+            AsyncAzureClient.create(azureClient, Schedulers.immediate());
+        IllegalArgumentException e = Assertions.expectThrows(IllegalArgumentException.class,
+            () -> asyncAzureClient.getRouteTableById("route-table-id").toBlocking().single());
+        Assertions.assertEquals("Error getting resource: route-table-id", e.getMessage());
+    }
+
+    @Test
+    void testReadsRunConcurrentlyOnScheduler() throws Exception {
+        int parallelism = 4;
+        AzureClient azureClient = mock(AzureClient.class);
+        CountDownLatch started = new CountDownLatch(parallelism);
+        when(azureClient.getRouteTableById(anyString()))
+            .thenAnswer(invocation -> {
+                started.countDown();
+                // Every read must be in flight at once for this to return.
+                Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+                return mock(RouteTable.class);
+            });
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            AsyncAzureClient asyncAzureClient =
+                AsyncAzureClient.create(azureClient, Schedulers.from(executorService));
+            List<RouteTable> routeTables = Observable.range(0, parallelism)
+                .flatMap(i -> asyncAzureClient.getRouteTableById("route-table-id" + i))
+                .toList()
+                .toBlocking()
+                .single();
+            Assertions.assertEquals(parallelism, routeTables.size());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void testApply() {
+        RouteTable routeTable = mock(RouteTable.class);
+        RouteTable.Update update = mock(RouteTable.Update.class);
+        AtomicInteger subscriptions = new AtomicInteger();
+        when(update.applyAsync()).thenReturn(Observable.just(routeTable)
+            .doOnSubscribe(subscriptions::incrementAndGet));
+        AzureClient azureClient = mock(AzureClient.class);
+        AsyncAzureClient asyncAzureClient =
+            AsyncAzureClient.create(azureClient, Schedulers.immediate());
+        Observable<RouteTable> observable = asyncAzureClient.apply("route-table-id", update);
+        verify(update, never()).applyAsync();
+        Assertions.assertSame(routeTable, observable.toBlocking().single());
+        Assertions.assertEquals(1, subscriptions.get());
+        verify(update, never()).apply();
+        verify(azureClient, atLeastOnce()).invalidate("route-table-id");
+    }
+
+    @Test
+    void testApplyInvalidatesEveryId() {
+        NetworkInterface.Update update = mock(NetworkInterface.Update.class);
+        when(update.applyAsync()).thenReturn(Observable.just(mock(NetworkInterface.class)));
+        AzureClient azureClient = mock(AzureClient.class);
+        AsyncAzureClient asyncAzureClient =
+            AsyncAzureClient.create(azureClient, Schedulers.immediate());
+        asyncAzureClient.apply(Arrays.asList("network-interface-id", "public-ip-address-id"),
+            update).toBlocking().single();
+        verify(azureClient, atLeastOnce()).invalidate("network-interface-id");
+        verify(azureClient, atLeastOnce()).invalidate("public-ip-address-id");
+    }
+
+    @Test
+    void testApplyStartsOnScheduler() throws Exception {
+        RouteTable.Update update = mock(RouteTable.Update.class);
+        AtomicReference<String> applyThread = new AtomicReference<>();
+        when(update.applyAsync()).thenAnswer(invocation -> {
+            applyThread.set(Thread.currentThread().getName());
+            return Observable.just(mock(RouteTable.class));
+        });
+        ExecutorService executorService = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "azure-scheduler"));
+        try {
+            AsyncAzureClient asyncAzureClient =
+                AsyncAzureClient.create(mock(AzureClient.class), Schedulers.from(executorService));
+            asyncAzureClient.apply("route-table-id", update).toBlocking().single();
+            Assertions.assertEquals("azure-scheduler", applyThread.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void testApplyError() {
+        RouteTable.Update update = mock(RouteTable.Update.class);
+        when(update.applyAsync()).thenReturn(Observable.error(new RuntimeException("apply failed")));
+        AzureClient azureClient = mock(AzureClient.class);
+        AsyncAzureClient asyncAzureClient =
+            AsyncAzureClient.create(azureClient, Schedulers.immediate());
+        RuntimeException e = Assertions.expectThrows(RuntimeException.class,
+            () -> asyncAzureClient.apply("route-table-id", update).toBlocking().single());
+        Assertions.assertEquals("apply failed", e.getMessage());
+        // A failed update may still have changed the resource.
+        verify(azureClient, atLeastOnce()).invalidate("route-table-id");
+    }
+}
@@ -13,9 +13,12 @@ import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class AzureClientTest {
@@ -107,6 +110,75 @@ public class AzureClientTest {
         Assertions.assertEquals(mockRouteTable, routeTable);
     }
 
+    @Test
+    void testInvalidResourceCacheTtl() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> AzureClient.create(tokenCredentials, subscriptionId, -1, TimeUnit.MILLISECONDS));
+        Assertions.assertThrows(NullPointerException.class,
+            () -> AzureClient.create(tokenCredentials, subscriptionId, 1000, null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGetByIdUncached() {
+        SupportsGettingById<RouteTable> resources =
+            (SupportsGettingById<RouteTable>)mock(SupportsGettingById.class);
+        when(resources.getById(anyString())).thenReturn(mock(RouteTable.class));
+        AzureClient azureClient = AzureClient.create(tokenCredentials, subscriptionId);
+        azureClient.getById("12345", resources);
+        azureClient.getById("12345", resources);
+        verify(resources, times(2)).getById("12345");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGetByIdCached() {
+        SupportsGettingById<RouteTable> resources =
+            (SupportsGettingById<RouteTable>)mock(SupportsGettingById.class);
+        RouteTable mockRouteTable = mock(RouteTable.class);
+        when(resources.getById(anyString())).thenReturn(mockRouteTable);
+        AzureClient azureClient = AzureClient.create(tokenCredentials, subscriptionId, 1,
+            TimeUnit.HOURS);
+        Assertions.assertSame(mockRouteTable, azureClient.getById("/route/TABLE", resources));
+        // Resource ids are not case sensitive.
+        Assertions.assertSame(mockRouteTable, azureClient.getById("/route/table", resources));
+        verify(resources, times(1)).getById(anyString());
+        azureClient.invalidate("/Route/Table");
+        Assertions.assertSame(mockRouteTable, azureClient.getById("/route/table", resources));
+        verify(resources, times(2)).getById(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGetByIdCachedExpires() throws InterruptedException {
+        SupportsGettingById<RouteTable> resources =
+            (SupportsGettingById<RouteTable>)mock(SupportsGettingById.class);
+        when(resources.getById(anyString())).thenReturn(mock(RouteTable.class));
+        AzureClient azureClient = AzureClient.create(tokenCredentials, subscriptionId, 10,
+            TimeUnit.MILLISECONDS);
+        azureClient.getById("12345", resources);
+        Thread.sleep(50);
+        azureClient.getById("12345", resources);
+        verify(resources, times(2)).getById("12345");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGetByIdCachedResourceNotFound() {
+        SupportsGettingById<RouteTable> resources =
+            (SupportsGettingById<RouteTable>)mock(SupportsGettingById.class);
+        when(resources.getById(anyString())).thenReturn(null);
+        AzureClient azureClient = AzureClient.create(tokenCredentials, subscriptionId, 1,
+            TimeUnit.HOURS);
+        IllegalArgumentException e = Assertions.expectThrows(IllegalArgumentException.class,
+            () -> azureClient.getById("12345", resources));
+        Assertions.assertEquals("Error getting resource: 12345", e.getMessage());
+        // Failures are not cached.
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> azureClient.getById("12345", resources));
+        verify(resources, times(2)).getById("12345");
+    }
+
 //    @Test
 //    void testAzureImpl() throws NoSuchMethodException, InstantiationException,
 //        IllegalAccessException, InvocationTargetException {
@@ -5,22 +5,1169 @@ import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.management.network.NetworkInterface;
+import com.microsoft.azure.management.network.NicIpConfiguration;
+import com.microsoft.azure.management.network.PublicIpAddress;
+import com.microsoft.azure.management.network.Route;
+import com.microsoft.azure.management.network.RouteNextHopType;
+import com.microsoft.azure.management.network.RouteTable;
 import com.microsoft.azure.practices.nvadaemon.config.AzureProbeMonitorConfiguration;
 import com.microsoft.azure.practices.nvadaemon.config.AzureProbeMonitorConfigurationTest;
 import com.microsoft.azure.practices.nvadaemon.config.ConfigurationException;
+import com.microsoft.azure.practices.nvadaemon.config.FailureDetectorConfiguration;
 import com.microsoft.azure.practices.nvadaemon.config.MonitorConfiguration;
+import com.microsoft.azure.practices.nvadaemon.config.NamedResourceId;
+import com.microsoft.azure.practices.nvadaemon.config.NvaConfiguration;
+import com.microsoft.azure.practices.nvadaemon.config.ProbeConfiguration;
+import com.microsoft.azure.practices.nvadaemon.config.ProbeEndpointConfiguration;
+import com.microsoft.azure.practices.nvadaemon.failover.AzureResourceMigrator;
+import com.microsoft.azure.practices.nvadaemon.metrics.LatencyHistogram;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricsServer;
+import com.microsoft.azure.practices.nvadaemon.monitor.HealthSample;
+import com.microsoft.azure.practices.nvadaemon.monitor.MonitorStateStore;
+import com.microsoft.azure.practices.nvadaemon.monitor.PhiAccrualFailureDetector;
+import com.microsoft.azure.practices.nvadaemon.probe.HttpProbe;
+import com.microsoft.azure.practices.nvadaemon.probe.Probe;
+import com.microsoft.azure.practices.nvadaemon.probe.ProbeEngine;
+import com.microsoft.azure.practices.nvadaemon.probe.ProbeResult;
+import com.microsoft.azure.practices.nvadaemon.probe.TcpProbe;
+import com.microsoft.azure.practices.nvadaemon.probe.TlsProbe;
+import com.microsoft.azure.practices.nvadaemon.probe.UdpProbe;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import rx.Observable;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URL;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class AzureProbeMonitorTest {
+    private static final Map<String, String> privateIpAddresses = new HashMap<>();
+
+    static {
+        privateIpAddresses.put("nva1-network-interface-id1", "10.0.1.4");
+        privateIpAddresses.put("nva1-network-interface-id2", "10.0.2.4");
+        privateIpAddresses.put("nva2-network-interface-id1", "10.0.1.5");
+        privateIpAddresses.put("nva2-network-interface-id2", "10.0.2.5");
+    }
+
     @Test
     void testConstructorNullMonitorConfiguration() throws ConfigurationException {
         Assertions.assertThrows(NullPointerException.class,
             () -> new AzureProbeMonitor(null));
     }
 
+    @Test
+    void testConstructorNullAzureClient() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new AzureProbeMonitor(createConfiguration(null), null));
+    }
+
+    @Test
+    void testExecuteMigratesRouteTablesConcurrently() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        int routeTableCount = configuration.getRouteTables().size();
+        CountDownLatch applying = new CountDownLatch(routeTableCount);
+        List<RouteTable.Update> updates = new ArrayList<>();
+        for (String routeTableId : configuration.getRouteTables()) {
+            RouteTable.Update update = mockRouteTable(azureClient, routeTableId);
+            when(update.apply()).thenAnswer(invocation -> {
+                // Every table has to be in flight at the same time for this to return true.
+                applying.countDown();
+                Assertions.assertTrue(applying.await(5000, TimeUnit.MILLISECONDS));
+                return null;
+            });
+            updates.add(update);
+        }
+
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.init();
+            monitor.execute();
+        }
+
+        for (RouteTable.Update update : updates) {
+            verify(update, times(2)).updateRoute(anyString());
+            verify(update, times(1)).apply();
+        }
+
+        for (String routeTableId : configuration.getRouteTables()) {
+            // Two reads during init() (discovery and validation), one during execute().
+            verify(azureClient, times(3)).getRouteTableById(routeTableId);
+        }
+
+        // Private ip addresses are resolved once during init() and reused by execute().
+        for (String networkInterfaceId : privateIpAddresses.keySet()) {
+            verify(azureClient, times(1)).getNetworkInterfaceById(networkInterfaceId);
+        }
+    }
+
+    @Test
+    void testExecuteReportsFailedRouteTables() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(1);
+        AzureClient azureClient = createAzureClient();
+        List<RouteTable.Update> updates = new ArrayList<>();
+        for (String routeTableId : configuration.getRouteTables()) {
+            updates.add(mockRouteTable(azureClient, routeTableId));
+        }
+
+        when(updates.get(0).apply()).thenThrow(new RuntimeException("apply failed"));
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.init();
+            AzureProbeMonitor.AzureProbeMonitorException e = Assertions.expectThrows(
+                AzureProbeMonitor.AzureProbeMonitorException.class, () -> monitor.execute());
+            Assertions.assertTrue(e.getMessage().contains(configuration.getRouteTables().get(0)));
+        }
+
+        // A failure in one table must not stop the others from being migrated.
+        for (RouteTable.Update update : updates) {
+            verify(update, times(1)).apply();
+        }
+    }
+
+    @Test
+    void testExecuteDoesNotWaitForPublicIpAddresses() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(
+            AzureProbeMonitorConfigurationTest.publicIpAddresses, null, null);
+        AzureClient azureClient = createAzureClient();
+        CountDownLatch routeTablesApplied = new CountDownLatch(
+            configuration.getRouteTables().size());
+        for (String routeTableId : configuration.getRouteTables()) {
+            RouteTable.Update update = mockRouteTable(azureClient, routeTableId);
+            when(update.apply()).thenAnswer(invocation -> {
+                routeTablesApplied.countDown();
+                return null;
+            });
+        }
+
+        NetworkInterface.Update removeUpdate = mockPublicIpAddress(azureClient,
+            "public-ip-address-id1", "nva1-network-interface-id1");
+        when(removeUpdate.apply()).thenAnswer(invocation -> {
+            // The route tables have to finish while the public ip address is still moving.
+            Assertions.assertTrue(routeTablesApplied.await(5000, TimeUnit.MILLISECONDS));
+            return null;
+        });
+        NetworkInterface.Update addUpdate = mockNetworkInterfaceUpdate(azureClient,
+            "nva2-network-interface-id1");
+
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.init();
+            monitor.execute();
+        }
+
+        verify(removeUpdate, times(1)).withoutPrimaryPublicIpAddress();
+        verify(removeUpdate, times(1)).apply();
+        verify(addUpdate, times(1)).withExistingPrimaryPublicIpAddress(any());
+        verify(addUpdate, times(1)).apply();
+    }
+
+    @Test
+    void testExecuteTimesOut() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(
+            AzureProbeMonitorConfigurationTest.publicIpAddresses, null, 100);
+        AzureClient azureClient = createAzureClient();
+        List<RouteTable.Update> updates = new ArrayList<>();
+        for (String routeTableId : configuration.getRouteTables()) {
+            updates.add(mockRouteTable(azureClient, routeTableId));
+        }
+
+        CountDownLatch never = new CountDownLatch(1);
+        NetworkInterface.Update removeUpdate = mockPublicIpAddress(azureClient,
+            "public-ip-address-id1", "nva1-network-interface-id1");
+        when(removeUpdate.apply()).thenAnswer(invocation -> {
+            never.await();
+            return null;
+        });
+        mockNetworkInterfaceUpdate(azureClient, "nva2-network-interface-id1");
+
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.init();
+            AzureProbeMonitor.AzureProbeMonitorException e = Assertions.expectThrows(
+                AzureProbeMonitor.AzureProbeMonitorException.class, () -> monitor.execute());
+            Assertions.assertTrue(e.getMessage().contains("public-ip-address-id1"));
+            for (String routeTableId : configuration.getRouteTables()) {
+                Assertions.assertFalse(e.getMessage().contains(routeTableId));
+            }
+        }
+
+        for (RouteTable.Update update : updates) {
+            verify(update, times(1)).apply();
+        }
+    }
+
+    @Test
+    void testProbeChecksEveryNva() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        try (ServerSocketChannel listening = openServerSocketChannel()) {
+            List<NvaConfiguration> nvaConfigurations = Arrays.asList(
+                createNvaConfiguration(azureClient, "nva1", getPort(listening)),
+                createNvaConfiguration(azureClient, "nva2", getUnusedPort()));
+            AzureProbeMonitorConfiguration configuration = new AzureProbeMonitorConfiguration(
+                AzureProbeMonitorConfigurationTest.azureConfiguration, nvaConfigurations,
+                AzureProbeMonitorConfigurationTest.routeTables, null, null, null, null);
+            for (String routeTableId : configuration.getRouteTables()) {
+                mockRouteTable(azureClient, routeTableId);
+            }
+
+            try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+                monitor.init();
+                // The active NVA is up, so the probe passes even though the standby is down.
+                Assertions.assertTrue(monitor.probe());
+                Map<SocketAddress, ProbeResult> probeResults = monitor.getProbeResults();
+                Assertions.assertEquals(2, probeResults.size());
+                Assertions.assertTrue(probeResults.get(
+                    nvaConfigurations.get(0).getProbeSocketAddress()).isSuccess());
+                Assertions.assertFalse(probeResults.get(
+                    nvaConfigurations.get(1).getProbeSocketAddress()).isSuccess());
+                // Only probes that get an answer have a latency.
+                MetricRegistry metricRegistry = monitor.getMetricRegistry();
+                Assertions.assertEquals(1, metricRegistry.getHistogram(
+                    AzureProbeMonitor.PROBE_LATENCY_METRIC, "nva",
+                    nvaConfigurations.get(0).getProbeSocketAddress().toString()).getCount());
+                Assertions.assertEquals(0, metricRegistry.getHistogram(
+                    AzureProbeMonitor.PROBE_LATENCY_METRIC, "nva",
+                    nvaConfigurations.get(1).getProbeSocketAddress().toString()).getCount());
+                Assertions.assertEquals(1, metricRegistry.getGauge(
+                    AzureProbeMonitor.NVA_ACTIVE_METRIC, "nva",
+                    nvaConfigurations.get(0).getProbeSocketAddress().toString()).get());
+                Assertions.assertEquals(0, metricRegistry.getGauge(
+                    AzureProbeMonitor.NVA_ACTIVE_METRIC, "nva",
+                    nvaConfigurations.get(1).getProbeSocketAddress().toString()).get());
+                Assertions.assertEquals(1, metricRegistry.getGauge(
+                    AzureProbeMonitor.NVA_HEALTHY_METRIC, "nva",
+                    nvaConfigurations.get(0).getProbeSocketAddress().toString()).get());
+                Assertions.assertEquals(0, metricRegistry.getGauge(
+                    AzureProbeMonitor.NVA_HEALTHY_METRIC, "nva",
+                    nvaConfigurations.get(1).getProbeSocketAddress().toString()).get());
+            }
+        }
+    }
+
+    private static String scrape(MetricsServer server) throws Exception {
+        URL url = new URL("http", "localhost", server.getAddress().getPort(), "/metrics");
+        try (InputStream input = url.openStream();
+             Scanner scanner = new Scanner(input, "UTF-8")) {
+            return scanner.useDelimiter("\\A").next();
+        }
+    }
+
+    @Test
+    void testCloseResetsNvaStatus() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        try (ServerSocketChannel listening = openServerSocketChannel()) {
+            List<NvaConfiguration> nvaConfigurations = Arrays.asList(
+                createNvaConfiguration(azureClient, "nva1", getPort(listening)),
+                createNvaConfiguration(azureClient, "nva2", getUnusedPort()));
+            AzureProbeMonitorConfiguration configuration = new AzureProbeMonitorConfiguration(
+                AzureProbeMonitorConfigurationTest.azureConfiguration, nvaConfigurations,
+                AzureProbeMonitorConfigurationTest.routeTables, null, null, null, null);
+            for (String routeTableId : configuration.getRouteTables()) {
+                mockRouteTable(azureClient, routeTableId);
+            }
+
+            String nva1 = "{nva=\"" + nvaConfigurations.get(0).getProbeSocketAddress() + "\"}";
+            AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient);
+            try (MetricsServer server = new MetricsServer(0, monitor.getMetricRegistry())) {
+                server.start();
+                monitor.init();
+                Assertions.assertTrue(monitor.probe());
+                String metrics = scrape(server);
+                Assertions.assertTrue(metrics.contains("nvadaemon_nva_active" + nva1 + " 1\n"));
+                Assertions.assertTrue(metrics.contains("nvadaemon_nva_healthy" + nva1 + " 1\n"));
+
+                // Losing leadership closes the monitor, so a follower reports no active NVA.
+                monitor.close();
+                metrics = scrape(server);
+                Assertions.assertTrue(metrics.contains("nvadaemon_nva_active" + nva1 + " 0\n"));
+                Assertions.assertTrue(metrics.contains("nvadaemon_nva_healthy" + nva1 + " 0\n"));
+            }
+        }
+    }
+
+    @Test
+    void testProbeConfirmsFailure() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        List<NvaConfiguration> nvaConfigurations = Arrays.asList(
+            createNvaConfiguration(azureClient, "nva1", getUnusedPort()),
+            createNvaConfiguration(azureClient, "nva2", getUnusedPort()));
+        AzureProbeMonitorConfiguration configuration = new AzureProbeMonitorConfiguration(
+            AzureProbeMonitorConfigurationTest.azureConfiguration, nvaConfigurations,
+            AzureProbeMonitorConfigurationTest.routeTables, null, 3, null, null, null, null,
+            null, 250, null, null, null, null, null);
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.init();
+            Assertions.assertEquals(250, monitor.getConfirmationTime());
+            Assertions.assertFalse(monitor.isConfirming());
+            Assertions.assertTrue(monitor.probe());
+            Assertions.assertTrue(monitor.isConfirming());
+            Assertions.assertTrue(monitor.probe());
+            Assertions.assertFalse(monitor.probe());
+            MetricRegistry metricRegistry = monitor.getMetricRegistry();
+            LatencyHistogram failureDetectionTime = metricRegistry.getHistogram(
+                AzureProbeMonitor.FAILURE_DETECTION_TIME_METRIC);
+            Assertions.assertEquals(1, failureDetectionTime.getCount());
+            Assertions.assertTrue(failureDetectionTime.getMax(TimeUnit.NANOSECONDS) > 0);
+            monitor.execute();
+            Assertions.assertFalse(monitor.isConfirming());
+            Assertions.assertEquals(1, metricRegistry.getHistogram(
+                AzureProbeMonitor.FAILOVER_DURATION_METRIC).getCount());
+            for (String routeTableId : configuration.getRouteTables()) {
+                Assertions.assertEquals(1, metricRegistry.getHistogram(
+                    AzureResourceMigrator.ROUTE_TABLE_UPDATE_TIME_METRIC, "route_table",
+                    routeTableId).getCount());
+            }
+        }
+    }
+
+    @Test
+    void testProbeWithPhiAccrualFailureDetector() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        List<NvaConfiguration> nvaConfigurations = Arrays.asList(
+            createNvaConfiguration(azureClient, "nva1", getUnusedPort()),
+            createNvaConfiguration(azureClient, "nva2", getUnusedPort()));
+        AzureProbeMonitorConfiguration configuration = new AzureProbeMonitorConfiguration(
+            AzureProbeMonitorConfigurationTest.azureConfiguration, nvaConfigurations,
+            AzureProbeMonitorConfigurationTest.routeTables, null, 1, null, 100, null, null,
+            null, null, new FailureDetectorConfiguration(FailureDetectorConfiguration.PHI_ACCRUAL,
+                null, null, 10, null), null, null, null, null);
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.init();
+            Assertions.assertTrue(monitor.getFailureDetector(
+                nvaConfigurations.get(0).getProbeSocketAddress())
+                instanceof PhiAccrualFailureDetector);
+            // A single failure is not enough, even though numberOfFailuresThreshold is 1...
+            Assertions.assertTrue(monitor.probe());
+            Thread.sleep(500);
+            // ...but several polling intervals without a response are.
+            Assertions.assertFalse(monitor.probe());
+        }
+    }
+
+    private static AzureProbeMonitorConfiguration createQuorumConfiguration(
+        AzureClient azureClient, int failoverQuorum) throws Exception {
+        List<NvaConfiguration> nvaConfigurations = Arrays.asList(
+            createNvaConfiguration(azureClient, "nva1", getUnusedPort()),
+            createNvaConfiguration(azureClient, "nva2", getUnusedPort()));
+        AzureProbeMonitorConfiguration configuration = new AzureProbeMonitorConfiguration(
+            AzureProbeMonitorConfigurationTest.azureConfiguration, nvaConfigurations,
+            AzureProbeMonitorConfigurationTest.routeTables, null, 1, null, null, null, null,
+            null, null, null, failoverQuorum, null, null, null);
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        return configuration;
+    }
+
+    @Test
+    void testFailoverQuorumBlocksUnconfirmedFailure() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        AzureProbeMonitorConfiguration configuration =
+            createQuorumConfiguration(azureClient, 2);
+        InMemoryPeerHealth leaderHealth = new InMemoryPeerHealth();
+        InMemoryPeerHealth followerHealth = leaderHealth.join();
+        try (AzureProbeMonitor leader = new AzureProbeMonitor(configuration, azureClient,
+                new InMemoryMonitorStateStore(), leaderHealth)) {
+            leader.init();
+            // No peers yet, so the leader's own vote is enough.
+            Assertions.assertFalse(leader.probe());
+            // A follower that can still reach nva1 holds the failover back.
+            BitSet healthy = new BitSet();
+            healthy.set(0);
+            followerHealth.publish(new HealthSample(System.currentTimeMillis(),
+                Long.parseUnsignedLong(ActiveNvaState.fingerprint(configuration)
+                    .substring(0, 16), 16), healthy));
+            Assertions.assertTrue(leader.probe());
+            // Samples taken against another configuration do not count.
+            followerHealth.publish(new HealthSample(System.currentTimeMillis(), 0,
+                healthy));
+            Assertions.assertFalse(leader.probe());
+        }
+    }
+
+    @Test
+    void testFailoverQuorumBlocksProbeError() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        AzureProbeMonitorConfiguration configuration =
+            createQuorumConfiguration(azureClient, 2);
+        InMemoryPeerHealth leaderHealth = new InMemoryPeerHealth();
+        InMemoryPeerHealth followerHealth = leaderHealth.join();
+        ProbeEngine probeEngine = mock(ProbeEngine.class);
+        when(probeEngine.probe(anyMap(), anySet(), anyLong(), anyLong(), any()))
+            .thenThrow(new IOException("Error probing"));
+        try (AzureProbeMonitor leader = new AzureProbeMonitor(configuration, azureClient,
+                new InMemoryMonitorStateStore(), leaderHealth, probeEngine)) {
+            leader.init();
+            // A follower that can still reach nva1 holds back a failover caused by our own
+            // probe error.
+            BitSet healthy = new BitSet();
+            healthy.set(0);
+            followerHealth.publish(new HealthSample(System.currentTimeMillis(),
+                Long.parseUnsignedLong(ActiveNvaState.fingerprint(configuration)
+                    .substring(0, 16), 16), healthy));
+            Assertions.assertTrue(leader.probe());
+            followerHealth.publish(new HealthSample(System.currentTimeMillis(),
+                Long.parseUnsignedLong(ActiveNvaState.fingerprint(configuration)
+                    .substring(0, 16), 16), new BitSet()));
+            Assertions.assertFalse(leader.probe());
+        }
+    }
+
+    @Test
+    void testUnconfirmedFailureStopsConfirming() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        AzureProbeMonitorConfiguration configuration =
+            createQuorumConfiguration(azureClient, 2);
+        InMemoryPeerHealth leaderHealth = new InMemoryPeerHealth();
+        InMemoryPeerHealth followerHealth = leaderHealth.join();
+        try (AzureProbeMonitor leader = new AzureProbeMonitor(configuration, azureClient,
+                new InMemoryMonitorStateStore(), leaderHealth)) {
+            leader.init();
+            BitSet healthy = new BitSet();
+            healthy.set(0);
+            followerHealth.publish(new HealthSample(System.currentTimeMillis(),
+                Long.parseUnsignedLong(ActiveNvaState.fingerprint(configuration)
+                    .substring(0, 16), 16), healthy));
+            for (int i = 0; i < AzureProbeMonitor.MAX_UNCONFIRMED_ROUNDS; i++) {
+                Assertions.assertTrue(leader.probe());
+            }
+
+            // The follower still disagrees, so we go back to the normal probe interval.
+            Assertions.assertFalse(leader.isConfirming());
+            followerHealth.publish(new HealthSample(System.currentTimeMillis(),
+                Long.parseUnsignedLong(ActiveNvaState.fingerprint(configuration)
+                    .substring(0, 16), 16), new BitSet()));
+            Assertions.assertFalse(leader.probe());
+        }
+    }
+
+    @Test
+    void testFailoverQuorumConfirmedByObserver() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        AzureProbeMonitorConfiguration configuration =
+            createQuorumConfiguration(azureClient, 2);
+        InMemoryPeerHealth leaderHealth = new InMemoryPeerHealth();
+        try (AzureProbeMonitor leader = new AzureProbeMonitor(configuration, azureClient,
+                new InMemoryMonitorStateStore(), leaderHealth);
+             AzureProbeMonitor follower = new AzureProbeMonitor(configuration, azureClient,
+                new InMemoryMonitorStateStore(), leaderHealth.join())) {
+            follower.observe();
+            List<HealthSample> samples = leaderHealth.getPeerSamples();
+            Assertions.assertEquals(1, samples.size());
+            Assertions.assertFalse(samples.get(0).isHealthy(0));
+            Assertions.assertFalse(samples.get(0).isHealthy(1));
+            leader.init();
+            Assertions.assertFalse(leader.probe());
+        }
+    }
+
+    @Test
+    void testCreateProbe() {
+        Assertions.assertSame(TcpProbe.INSTANCE, AzureProbeMonitor.createProbe(
+            new ProbeConfiguration(null, null, null, null, null, null, null)));
+        Probe probe = AzureProbeMonitor.createProbe(new ProbeConfiguration(
+            ProbeConfiguration.HTTPS, "/health", 204, "ok", null, null, true));
+        Assertions.assertTrue(probe instanceof HttpProbe);
+        Assertions.assertTrue(((HttpProbe)probe).isTls());
+        Assertions.assertTrue(((HttpProbe)probe).isVerifyCertificate());
+        Assertions.assertEquals("/health", ((HttpProbe)probe).getPath());
+        Assertions.assertEquals(Integer.valueOf(204), ((HttpProbe)probe).getExpectedStatus());
+        Assertions.assertEquals("ok", ((HttpProbe)probe).getExpectedBody());
+        Assertions.assertFalse(((HttpProbe)AzureProbeMonitor.createProbe(new ProbeConfiguration(
+            ProbeConfiguration.HTTP, null, null, null, null, null, null))).isTls());
+        Assertions.assertTrue(AzureProbeMonitor.createProbe(new ProbeConfiguration(
+            ProbeConfiguration.TLS, null, null, null, null, null, null)) instanceof TlsProbe);
+        Assertions.assertTrue(AzureProbeMonitor.createProbe(new ProbeConfiguration(
+            ProbeConfiguration.UDP, null, null, null, "ping", null, null)) instanceof UdpProbe);
+    }
+
+    @Test
+    void testHttpProbeFailsWhenOnlyTcpIsAccepted() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        // The listening socket accepts connections, but never answers the HTTP request.
+        try (ServerSocketChannel listening = openServerSocketChannel()) {
+            NvaConfiguration nva1 = createNvaConfiguration(azureClient, "nva1", getPort(listening));
+            NvaConfiguration httpNva1 = new NvaConfiguration("nva1-probe-network-interface",
+                getPort(listening), nva1.getNetworkInterfaces(), new ProbeConfiguration(
+                    ProbeConfiguration.HTTP, "/health", null, null, null, null, null));
+            httpNva1.validate(azureClient);
+            for (NvaConfiguration nva : Arrays.asList(nva1, httpNva1)) {
+                AzureProbeMonitorConfiguration configuration = new AzureProbeMonitorConfiguration(
+                    AzureProbeMonitorConfigurationTest.azureConfiguration, Arrays.asList(nva,
+                        createNvaConfiguration(azureClient, "nva2", getUnusedPort())),
+                    AzureProbeMonitorConfigurationTest.routeTables, null, 1, 500, null, null,
+                    null, null, null, null, null, null, null, null);
+                for (String routeTableId : configuration.getRouteTables()) {
+                    mockRouteTable(azureClient, routeTableId);
+                }
+
+                try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+                    monitor.init();
+                    Assertions.assertEquals(nva == nva1, monitor.probe());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSilentStandbyDoesNotDelayProbe() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        // The standby accepts connections, but never answers the HTTP request.
+        try (ServerSocketChannel listening = openServerSocketChannel();
+             ServerSocketChannel silent = openServerSocketChannel()) {
+            NvaConfiguration nva2 = createNvaConfiguration(azureClient, "nva2", getPort(silent));
+            NvaConfiguration httpNva2 = new NvaConfiguration("nva2-probe-network-interface",
+                getPort(silent), nva2.getNetworkInterfaces(), new ProbeConfiguration(
+                    ProbeConfiguration.HTTP, "/health", null, null, null, null, null));
+            httpNva2.validate(azureClient);
+            AzureProbeMonitorConfiguration configuration = new AzureProbeMonitorConfiguration(
+                AzureProbeMonitorConfigurationTest.azureConfiguration, Arrays.asList(
+                    createNvaConfiguration(azureClient, "nva1", getPort(listening)), httpNva2),
+                AzureProbeMonitorConfigurationTest.routeTables, null, 1, 10000, 400);
+            for (String routeTableId : configuration.getRouteTables()) {
+                mockRouteTable(azureClient, routeTableId);
+            }
+
+            try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+                monitor.init();
+                long start = System.nanoTime();
+                Assertions.assertTrue(monitor.probe());
+                Assertions.assertTrue(
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+                Assertions.assertFalse(monitor.getProbeResults().get(
+                    httpNva2.getProbeSocketAddress()).isSuccess());
+            }
+        }
+    }
+
+    @Test
+    void testProbeQuorum() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        NetworkInterface networkInterface = mock(NetworkInterface.class);
+        when(networkInterface.primaryPrivateIp()).thenReturn("127.0.0.1");
+        when(azureClient.getNetworkInterfaceById("nva1-network-interface-id2"))
+            .thenReturn(networkInterface);
+        // The probe network interface is down, but the endpoint on nic2 is healthy.
+        try (ServerSocketChannel listening = openServerSocketChannel()) {
+            NvaConfiguration nva1 = createNvaConfiguration(azureClient, "nva1", getUnusedPort());
+            for (int probeQuorum = 1; probeQuorum <= 2; probeQuorum++) {
+                NvaConfiguration quorumNva1 = new NvaConfiguration(
+                    "nva1-probe-network-interface", getUnusedPort(), nva1.getNetworkInterfaces(),
+                    null, Arrays.asList(new ProbeEndpointConfiguration("nic2", getPort(listening),
+                        null)), probeQuorum);
+                quorumNva1.validate(azureClient);
+                AzureProbeMonitorConfiguration configuration = new AzureProbeMonitorConfiguration(
+                    AzureProbeMonitorConfigurationTest.azureConfiguration, Arrays.asList(
+                        quorumNva1, createNvaConfiguration(azureClient, "nva2", getUnusedPort())),
+                    AzureProbeMonitorConfigurationTest.routeTables, null, 1, 500, null, null,
+                    null, null, null, null, null, null, null, null);
+                for (String routeTableId : configuration.getRouteTables()) {
+                    mockRouteTable(azureClient, routeTableId);
+                }
+
+                try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+                    monitor.init();
+                    Assertions.assertEquals(probeQuorum == 1, monitor.probe());
+                    ProbeResult probeResult = monitor.getProbeResults().get(
+                        quorumNva1.getProbeSocketAddress());
+                    Assertions.assertEquals(probeQuorum == 1, probeResult.isSuccess());
+                    Assertions.assertEquals(2, monitor.getProbeResults().size());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testExecuteSkipsUnhealthyStandby() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        mockNetworkInterface(azureClient, "nva3-network-interface-id1", "10.0.1.6");
+        mockNetworkInterface(azureClient, "nva3-network-interface-id2", "10.0.2.6");
+        List<Route.Update> routeUpdates = new ArrayList<>();
+        try (ServerSocketChannel nva1 = openServerSocketChannel();
+             ServerSocketChannel nva3 = openServerSocketChannel()) {
+            List<NvaConfiguration> nvaConfigurations = Arrays.asList(
+                createNvaConfiguration(azureClient, "nva1", getPort(nva1)),
+                createNvaConfiguration(azureClient, "nva2", getUnusedPort()),
+                createNvaConfiguration(azureClient, "nva3", getPort(nva3)));
+            AzureProbeMonitorConfiguration configuration = new AzureProbeMonitorConfiguration(
+                AzureProbeMonitorConfigurationTest.azureConfiguration, nvaConfigurations,
+                AzureProbeMonitorConfigurationTest.routeTables, null, null, null, null);
+            for (String routeTableId : configuration.getRouteTables()) {
+                RouteTable.Update update = mockRouteTable(azureClient, routeTableId);
+                routeUpdates.add(update.updateRoute("route1"));
+            }
+
+            try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+                monitor.init();
+                Assertions.assertTrue(monitor.probe());
+                monitor.execute();
+            }
+        }
+
+        // nva2 is the next NVA in order, but it is down, so we go straight to nva3.
+        for (Route.Update routeUpdate : routeUpdates) {
+            verify(routeUpdate, times(2)).withNextHopToVirtualAppliance("10.0.1.6");
+            verify(routeUpdate, never()).withNextHopToVirtualAppliance("10.0.1.5");
+        }
+    }
+
+    private static ServerSocketChannel openServerSocketChannel() throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        return channel;
+    }
+
+    private static int getPort(ServerSocketChannel channel) throws IOException {
+        return ((InetSocketAddress)channel.getLocalAddress()).getPort();
+    }
+
+    private static int getUnusedPort() throws IOException {
+        try (ServerSocketChannel channel = openServerSocketChannel()) {
+            return getPort(channel);
+        }
+    }
+
+    @Test
+    void testRefreshWarmsPrivateIpAddresses() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.refresh();
+            monitor.refresh();
+        }
+
+        // The second refresh is served from the cache.
+        for (String networkInterfaceId : privateIpAddresses.keySet()) {
+            verify(azureClient, times(1)).getNetworkInterfaceById(networkInterfaceId);
+        }
+    }
+
+    @Test
+    void testFailbackMovesPublicIpAddressBack() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(
+            AzureProbeMonitorConfigurationTest.publicIpAddresses, null, null);
+        AzureClient azureClient = createAzureClient();
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        // The public ip address is read through a cache that only our invalidations clear,
+        // as it is by AzureClient.
+        AtomicReference<String> assignedTo = new AtomicReference<>("nva1-network-interface-id1");
+        Map<String, PublicIpAddress> cache = new ConcurrentHashMap<>();
+        when(azureClient.getPublicIpAddressById("public-ip-address-id1")).thenAnswer(
+            invocation -> cache.computeIfAbsent("public-ip-address-id1",
+                id -> mockAssignedPublicIpAddress(azureClient, assignedTo.get())));
+        doAnswer(invocation -> cache.remove(invocation.<String>getArgument(0)))
+            .when(azureClient).invalidate(anyString());
+        for (String networkInterfaceId :
+            Arrays.asList("nva1-network-interface-id1", "nva2-network-interface-id1")) {
+            NetworkInterface.Update update = mockNetworkInterfaceUpdate(azureClient,
+                networkInterfaceId);
+            AtomicBoolean adding = new AtomicBoolean();
+            when(update.withoutPrimaryPublicIpAddress()).thenAnswer(invocation -> {
+                adding.set(false);
+                return update;
+            });
+            when(update.withExistingPrimaryPublicIpAddress(any())).thenAnswer(invocation -> {
+                adding.set(true);
+                return update;
+            });
+            when(update.apply()).thenAnswer(invocation -> {
+                assignedTo.set(adding.get() ? networkInterfaceId : null);
+                return null;
+            });
+        }
+
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.init();
+            monitor.execute();
+            Assertions.assertEquals("nva2-network-interface-id1", assignedTo.get());
+            // The plans are made again from what the failover left in the cache.
+            monitor.refresh();
+            monitor.execute();
+            Assertions.assertEquals("nva1-network-interface-id1", assignedTo.get());
+        }
+    }
+
+    private static PublicIpAddress mockAssignedPublicIpAddress(AzureClient azureClient,
+                                                               String networkInterfaceId) {
+        PublicIpAddress publicIpAddress = mock(PublicIpAddress.class);
+        when(publicIpAddress.id()).thenReturn("public-ip-address-id1");
+        when(publicIpAddress.hasAssignedNetworkInterface()).thenReturn(networkInterfaceId != null);
+        if (networkInterfaceId != null) {
+            NetworkInterface networkInterface =
+                azureClient.getNetworkInterfaceById(networkInterfaceId);
+            NicIpConfiguration ipConfiguration = mock(NicIpConfiguration.class);
+            when(ipConfiguration.parent()).thenReturn(networkInterface);
+            when(publicIpAddress.getAssignedNetworkInterfaceIpConfiguration())
+                .thenReturn(ipConfiguration);
+        }
+
+        return publicIpAddress;
+    }
+
+    @Test
+    void testExecuteUsesPreparedFailoverPlan() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(
+            AzureProbeMonitorConfigurationTest.publicIpAddresses, null, null);
+        AzureClient azureClient = createAzureClient();
+        List<RouteTable.Update> updates = new ArrayList<>();
+        for (String routeTableId : configuration.getRouteTables()) {
+            updates.add(mockRouteTable(azureClient, routeTableId));
+        }
+
+        NetworkInterface.Update removeUpdate = mockPublicIpAddress(azureClient,
+            "public-ip-address-id1", "nva1-network-interface-id1");
+        NetworkInterface.Update addUpdate = mockNetworkInterfaceUpdate(azureClient,
+            "nva2-network-interface-id1");
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.refresh();
+            monitor.init();
+            monitor.refresh();
+            clearInvocations(azureClient);
+            monitor.execute();
+        }
+
+        // The failover only reads the resources it writes, and reads them from ARM.
+        for (String routeTableId : configuration.getRouteTables()) {
+            verify(azureClient, atLeastOnce()).invalidate(routeTableId);
+            verify(azureClient, times(1)).getRouteTableById(routeTableId);
+        }
+
+        verify(azureClient, atLeastOnce()).invalidate("public-ip-address-id1");
+        verify(azureClient, times(1)).getPublicIpAddressById(anyString());
+        verify(azureClient, times(1)).getNetworkInterfaceById(anyString());
+        for (RouteTable.Update update : updates) {
+            verify(update, times(1)).apply();
+        }
+
+        verify(removeUpdate, times(1)).apply();
+        verify(addUpdate, times(1)).withExistingPrimaryPublicIpAddress(any());
+        verify(addUpdate, times(1)).apply();
+    }
+
+    @Test
+    void testExecuteRereadsRouteTablesChangedSincePlan() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        // This route table has no routes through an NVA, so the plan skips it.
+        String skippedRouteTableId = configuration.getRouteTables().get(1);
+        RouteTable skippedRouteTable = azureClient.getRouteTableById(skippedRouteTableId);
+        RouteTable.Update skipped = skippedRouteTable.update();
+        Route route = mock(Route.class);
+        when(route.nextHopType()).thenReturn(RouteNextHopType.INTERNET);
+        when(skippedRouteTable.routes()).thenReturn(Collections.singletonMap("route1", route));
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.init();
+            monitor.refresh();
+            // A route is added to the route table after the plan was made.
+            String routeTableId = configuration.getRouteTables().get(0);
+            RouteTable.Update stale = azureClient.getRouteTableById(routeTableId).update();
+            RouteTable.Update update = mockRouteTable(azureClient, routeTableId);
+            RouteTable changed = azureClient.getRouteTableById(routeTableId);
+            Map<String, Route> routes = new HashMap<>(changed.routes());
+            routes.put("route3", routes.get("route1"));
+            when(changed.routes()).thenReturn(routes);
+            clearInvocations(azureClient);
+            monitor.execute();
+            InOrder inOrder = inOrder(azureClient);
+            inOrder.verify(azureClient).invalidate(routeTableId);
+            inOrder.verify(azureClient).getRouteTableById(routeTableId);
+            verify(stale, never()).apply();
+            verify(update, times(1)).updateRoute("route3");
+            verify(update, times(1)).apply();
+        }
+
+        verify(azureClient, never()).getRouteTableById(skippedRouteTableId);
+        verify(skipped, never()).apply();
+    }
+
+    @Test
+    void testRefreshReplansChangedResources() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.init();
+            monitor.refresh();
+            // The route table is read again as a new instance, so the plan has to be redone.
+            String routeTableId = configuration.getRouteTables().get(0);
+            RouteTable.Update stale = azureClient.getRouteTableById(routeTableId).update();
+            RouteTable.Update update = mockRouteTable(azureClient, routeTableId);
+            monitor.refresh();
+            monitor.execute();
+            verify(stale, never()).apply();
+            verify(update, times(1)).apply();
+        }
+    }
+
+    @Test
+    void testExecuteInvalidatesFailoverPlans() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        try (AzureProbeMonitor monitor = new AzureProbeMonitor(configuration, azureClient)) {
+            monitor.init();
+            monitor.refresh();
+            monitor.execute();
+            clearInvocations(azureClient);
+            // The plans were made before the first failover changed the route tables.
+            monitor.execute();
+        }
+
+        for (String routeTableId : configuration.getRouteTables()) {
+            verify(azureClient, times(1)).getRouteTableById(routeTableId);
+        }
+    }
+
+    @Test
+    void testInitPersistsActiveNva() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        MonitorStateStore stateStore = new InMemoryMonitorStateStore();
+        try (AzureProbeMonitor monitor =
+                 new AzureProbeMonitor(configuration, azureClient, stateStore)) {
+            monitor.init();
+            Assertions.assertTrue(monitor.isVerified());
+            Assertions.assertEquals(0, readActiveNvaIndex(stateStore));
+            monitor.execute();
+            Assertions.assertEquals(1, readActiveNvaIndex(stateStore));
+        }
+    }
+
+    @Test
+    void testInitTrustsPersistedActiveNva() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        CountDownLatch release = new CountDownLatch(1);
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+            RouteTable routeTable = azureClient.getRouteTableById(routeTableId);
+            when(azureClient.getRouteTableById(routeTableId)).thenAnswer(invocation -> {
+                // ARM is slow, but init() must not wait for it.
+                release.await();
+                return routeTable;
+            });
+        }
+
+        MonitorStateStore stateStore = new InMemoryMonitorStateStore();
+        writeActiveNvaIndex(stateStore, configuration, 0);
+        try (AzureProbeMonitor monitor =
+                 new AzureProbeMonitor(configuration, azureClient, stateStore)) {
+            monitor.init();
+            Assertions.assertFalse(monitor.isVerified());
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testInitIgnoresPersistedStateForOtherConfiguration() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        MonitorStateStore stateStore = new InMemoryMonitorStateStore();
+        stateStore.write("active-nva", new ActiveNvaState(1, "other-fingerprint").toBytes());
+        try (AzureProbeMonitor monitor =
+                 new AzureProbeMonitor(configuration, azureClient, stateStore)) {
+            monitor.init();
+            Assertions.assertTrue(monitor.isVerified());
+            Assertions.assertEquals(0, readActiveNvaIndex(stateStore));
+        }
+    }
+
+    @Test
+    void testVerificationCorrectsPersistedActiveNva() throws Exception {
+        AzureClient azureClient = createAzureClient();
+        try (ServerSocketChannel nva1 = openServerSocketChannel();
+             ServerSocketChannel nva2 = openServerSocketChannel()) {
+            List<NvaConfiguration> nvaConfigurations = Arrays.asList(
+                createNvaConfiguration(azureClient, "nva1", getPort(nva1)),
+                createNvaConfiguration(azureClient, "nva2", getPort(nva2)));
+            AzureProbeMonitorConfiguration configuration = new AzureProbeMonitorConfiguration(
+                AzureProbeMonitorConfigurationTest.azureConfiguration, nvaConfigurations,
+                AzureProbeMonitorConfigurationTest.routeTables, null, null, null, null);
+            for (String routeTableId : configuration.getRouteTables()) {
+                mockRouteTable(azureClient, routeTableId);
+            }
+
+            // The routes point at nva1, but the persisted state says nva2.
+            MonitorStateStore stateStore = new InMemoryMonitorStateStore();
+            writeActiveNvaIndex(stateStore, configuration, 1);
+            try (AzureProbeMonitor monitor =
+                     new AzureProbeMonitor(configuration, azureClient, stateStore)) {
+                monitor.init();
+                long deadline = System.currentTimeMillis() + 5000;
+                while (!monitor.isVerified()) {
+                    Assertions.assertTrue(System.currentTimeMillis() < deadline);
+                    Assertions.assertTrue(monitor.probe());
+                    Thread.sleep(10);
+                }
+
+                Assertions.assertEquals(0, readActiveNvaIndex(stateStore));
+            }
+        }
+    }
+
+    @Test
+    void testExecuteCompletesFailoverJournal() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        MonitorStateStore stateStore = new InMemoryMonitorStateStore();
+        try (AzureProbeMonitor monitor =
+                 new AzureProbeMonitor(configuration, azureClient, stateStore)) {
+            monitor.init();
+            monitor.execute();
+        }
+
+        FailoverJournal journal = readJournal(stateStore);
+        Assertions.assertEquals(1, journal.getTargetNvaIndex());
+        Assertions.assertEquals(configuration.getRouteTables(), journal.getSteps());
+        Assertions.assertTrue(journal.isComplete());
+    }
+
+    @Test
+    void testExecuteLeavesFailedStepsInFailoverJournal() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        MonitorStateStore stateStore = new InMemoryMonitorStateStore();
+        try (AzureProbeMonitor monitor =
+                 new AzureProbeMonitor(configuration, azureClient, stateStore)) {
+            monitor.init();
+            String failedRouteTableId = configuration.getRouteTables().get(1);
+            RouteTable.Update update = mockRouteTable(azureClient, failedRouteTableId);
+            when(update.apply()).thenThrow(new RuntimeException("PUT failed"));
+            Assertions.assertThrows(AzureProbeMonitor.AzureProbeMonitorException.class,
+                () -> monitor.execute());
+            Assertions.assertEquals(Arrays.asList(failedRouteTableId),
+                readJournal(stateStore).getPendingSteps());
+        }
+    }
+
+    @Test
+    void testInitResumesFailoverJournal() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        Map<String, RouteTable.Update> updates = new HashMap<>();
+        for (String routeTableId : configuration.getRouteTables()) {
+            updates.put(routeTableId, mockRouteTable(azureClient, routeTableId));
+        }
+
+        // The previous leader moved the first route table to nva2 before it died.
+        List<String> routeTables = configuration.getRouteTables();
+        MonitorStateStore stateStore = new InMemoryMonitorStateStore();
+        writeActiveNvaIndex(stateStore, configuration, 0);
+        stateStore.write("failover-journal", new FailoverJournal(1,
+            ActiveNvaState.fingerprint(configuration), routeTables, null)
+            .withCompletedStep(routeTables.get(0)).toBytes());
+        try (AzureProbeMonitor monitor =
+                 new AzureProbeMonitor(configuration, azureClient, stateStore)) {
+            monitor.init();
+            Assertions.assertTrue(monitor.isVerified());
+            Assertions.assertEquals(1, readActiveNvaIndex(stateStore));
+            Assertions.assertTrue(readJournal(stateStore).isComplete());
+        }
+
+        verify(azureClient, never()).getRouteTableById(routeTables.get(0));
+        verify(updates.get(routeTables.get(0)), never()).apply();
+        verify(updates.get(routeTables.get(1))).apply();
+        verify(updates.get(routeTables.get(2))).apply();
+    }
+
+    @Test
+    void testInitIgnoresCompletedFailoverJournal() throws Exception {
+        AzureProbeMonitorConfiguration configuration = createConfiguration(null);
+        AzureClient azureClient = createAzureClient();
+        for (String routeTableId : configuration.getRouteTables()) {
+            mockRouteTable(azureClient, routeTableId);
+        }
+
+        MonitorStateStore stateStore = new InMemoryMonitorStateStore();
+        stateStore.write("failover-journal", new FailoverJournal(1,
+            ActiveNvaState.fingerprint(configuration), Collections.emptyList(), null).toBytes());
+        try (AzureProbeMonitor monitor =
+                 new AzureProbeMonitor(configuration, azureClient, stateStore)) {
+            monitor.init();
+            Assertions.assertEquals(0, readActiveNvaIndex(stateStore));
+        }
+    }
+
+    private static FailoverJournal readJournal(MonitorStateStore stateStore) throws Exception {
+        return FailoverJournal.fromBytes(stateStore.read("failover-journal"));
+    }
+
+    private static void writeActiveNvaIndex(MonitorStateStore stateStore,
+                                            AzureProbeMonitorConfiguration configuration,
+                                            int activeNvaIndex) throws Exception {
+        stateStore.write("active-nva", new ActiveNvaState(activeNvaIndex,
+            ActiveNvaState.fingerprint(configuration)).toBytes());
+    }
+
+    private static int readActiveNvaIndex(MonitorStateStore stateStore) throws Exception {
+        return ActiveNvaState.fromBytes(stateStore.read("active-nva")).getActiveNvaIndex();
+    }
+
+    private static NvaConfiguration createNvaConfiguration(AzureClient azureClient, String name,
+                                                           int probePort)
+        throws ConfigurationException {
+        NetworkInterface probeNetworkInterface = mock(NetworkInterface.class);
+        when(probeNetworkInterface.primaryPrivateIp()).thenReturn("127.0.0.1");
+        when(azureClient.getNetworkInterfaceById(name + "-probe-network-interface"))
+            .thenReturn(probeNetworkInterface);
+        when(azureClient.checkExistenceById(anyString())).thenReturn(true);
+        NvaConfiguration nvaConfiguration = new NvaConfiguration(
+            name + "-probe-network-interface", probePort, Arrays.asList(
+                new NamedResourceId("nic1", name + "-network-interface-id1"),
+                new NamedResourceId("nic2", name + "-network-interface-id2")));
+        nvaConfiguration.validate(azureClient);
+        return nvaConfiguration;
+    }
+
+    private static AzureProbeMonitorConfiguration createConfiguration(Integer failoverParallelism) {
+        return createConfiguration(Collections.emptyList(), failoverParallelism, null);
+    }
+
+    private static AzureProbeMonitorConfiguration createConfiguration(
+        List<NamedResourceId> publicIpAddresses, Integer failoverParallelism,
+        Integer failoverTimeout) {
+        return new AzureProbeMonitorConfiguration(AzureProbeMonitorConfigurationTest.azureConfiguration,
+            AzureProbeMonitorConfigurationTest.nvaConfigurations,
+            AzureProbeMonitorConfigurationTest.routeTables,
+            publicIpAddresses,
+            null, null, null, failoverParallelism, null, failoverTimeout, null, null, null, null, null, null);
+    }
+
+    private static AzureClient createAzureClient() {
+        AzureClient azureClient = mock(AzureClient.class);
+        for (Map.Entry<String, String> entry : privateIpAddresses.entrySet()) {
+            mockNetworkInterface(azureClient, entry.getKey(), entry.getValue());
+        }
+
+        return azureClient;
+    }
+
+    private static void mockNetworkInterface(AzureClient azureClient, String networkInterfaceId,
+                                             String privateIpAddress) {
+        NetworkInterface networkInterface = mock(NetworkInterface.class);
+        when(networkInterface.id()).thenReturn(networkInterfaceId);
+        when(networkInterface.primaryPrivateIp()).thenReturn(privateIpAddress);
+        when(azureClient.getNetworkInterfaceById(networkInterfaceId)).thenReturn(networkInterface);
+    }
+
+    private static NetworkInterface.Update mockPublicIpAddress(AzureClient azureClient,
+                                                               String publicIpAddressId,
+                                                               String networkInterfaceId) {
+        NetworkInterface networkInterface = azureClient.getNetworkInterfaceById(networkInterfaceId);
+        NicIpConfiguration ipConfiguration = mock(NicIpConfiguration.class);
+        when(ipConfiguration.parent()).thenReturn(networkInterface);
+        PublicIpAddress publicIpAddress = mock(PublicIpAddress.class);
+        when(publicIpAddress.hasAssignedNetworkInterface()).thenReturn(true);
+        when(publicIpAddress.getAssignedNetworkInterfaceIpConfiguration())
+            .thenReturn(ipConfiguration);
+        when(azureClient.getPublicIpAddressById(publicIpAddressId)).thenReturn(publicIpAddress);
+        return mockNetworkInterfaceUpdate(azureClient, networkInterfaceId);
+    }
+
+    private static NetworkInterface.Update mockNetworkInterfaceUpdate(AzureClient azureClient,
+                                                                      String networkInterfaceId) {
+        NetworkInterface networkInterface = azureClient.getNetworkInterfaceById(networkInterfaceId);
+        NetworkInterface.Update update = mock(NetworkInterface.Update.class);
+        when(networkInterface.update()).thenReturn(update);
+        when(update.applyAsync()).thenAnswer(invocation -> Observable.fromCallable(update::apply));
+        when(update.withoutPrimaryPublicIpAddress()).thenReturn(update);
+        when(update.withExistingPrimaryPublicIpAddress(any())).thenReturn(update);
+        return update;
+    }
+
+    private static RouteTable.Update mockRouteTable(AzureClient azureClient, String routeTableId) {
+        Route route = mock(Route.class);
+        when(route.nextHopType()).thenReturn(RouteNextHopType.VIRTUAL_APPLIANCE);
+        when(route.nextHopIpAddress()).thenReturn(privateIpAddresses.get("nva1-network-interface-id1"));
+        Map<String, Route> routes = new HashMap<>();
+        routes.put("route1", route);
+        routes.put("route2", route);
+
+        RouteTable routeTable = mock(RouteTable.class);
+        when(routeTable.id()).thenReturn(routeTableId);
+        when(routeTable.routes()).thenReturn(routes);
+        RouteTable.Update update = mock(RouteTable.Update.class);
+        Route.Update routeUpdate = mock(Route.Update.class);
+        when(routeTable.update()).thenReturn(update);
+        when(update.applyAsync()).thenAnswer(invocation -> Observable.fromCallable(update::apply));
+        when(update.updateRoute(anyString())).thenReturn(routeUpdate);
+        when(routeUpdate.withNextHopToVirtualAppliance(anyString())).thenReturn(routeUpdate);
+        when(routeUpdate.parent()).thenReturn(update);
+        when(azureClient.getRouteTableById(routeTableId)).thenReturn(routeTable);
+        return update;
+    }
+
 //    @Test
 //    void testConstructor() throws ConfigurationException {
 //        ObjectMapper mapper = new ObjectMapper()
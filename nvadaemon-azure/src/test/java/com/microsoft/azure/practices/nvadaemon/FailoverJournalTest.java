@@ -0,0 +1,66 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class FailoverJournalTest {
+    @Test
+    void test_negative_target_nva_index() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailoverJournal(-1, "fingerprint", Collections.emptyList(), null));
+    }
+
+    @Test
+    void test_null_fingerprint() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailoverJournal(0, null, Collections.emptyList(), null));
+    }
+
+    @Test
+    void test_null_steps() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new FailoverJournal(0, "fingerprint", null, null));
+    }
+
+    @Test
+    void test_unknown_completed_step() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailoverJournal(0, "fingerprint", Arrays.asList("step1"),
+                Arrays.asList("step2")));
+    }
+
+    @Test
+    void test_with_completed_step() {
+        FailoverJournal journal = new FailoverJournal(1, "fingerprint",
+            Arrays.asList("step1", "step2", "step3"), null);
+        Assertions.assertFalse(journal.isComplete());
+        journal = journal.withCompletedStep("step2");
+        Assertions.assertEquals(Arrays.asList("step1", "step3"), journal.getPendingSteps());
+        Assertions.assertFalse(journal.isComplete());
+        journal = journal.withCompletedStep("step1").withCompletedStep("step3");
+        Assertions.assertTrue(journal.getPendingSteps().isEmpty());
+        Assertions.assertTrue(journal.isComplete());
+    }
+
+    @Test
+    void test_with_completed_step_unknown_step() {
+        FailoverJournal journal = new FailoverJournal(1, "fingerprint",
+            Arrays.asList("step1"), null);
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> journal.withCompletedStep("step2"));
+    }
+
+    @Test
+    void test_round_trip() throws IOException {
+        FailoverJournal journal = FailoverJournal.fromBytes(new FailoverJournal(1, "fingerprint",
+            Arrays.asList("step1", "step2"), null).withCompletedStep("step1").toBytes());
+        Assertions.assertEquals(1, journal.getTargetNvaIndex());
+        Assertions.assertEquals("fingerprint", journal.getFingerprint());
+        Assertions.assertEquals(Arrays.asList("step1", "step2"), journal.getSteps());
+        Assertions.assertEquals(Arrays.asList("step2"), journal.getPendingSteps());
+    }
+}
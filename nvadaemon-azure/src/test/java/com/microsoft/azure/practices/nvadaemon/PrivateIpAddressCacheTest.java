@@ -0,0 +1,131 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.microsoft.azure.management.network.NetworkInterface;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PrivateIpAddressCacheTest {
+    private static final String networkInterfaceId = "network-interface-id1";
+
+    private static class ManualTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return this.nanos.get();
+        }
+
+        void advance(long time, TimeUnit unit) {
+            this.nanos.addAndGet(unit.toNanos(time));
+        }
+    }
+
+    private static AzureClient createAzureClient(String... privateIpAddresses) {
+        NetworkInterface networkInterface = mock(NetworkInterface.class);
+        when(networkInterface.primaryPrivateIp())
+            .thenReturn(privateIpAddresses[0],
+                Arrays.copyOfRange(privateIpAddresses, 1, privateIpAddresses.length));
+        AzureClient azureClient = mock(AzureClient.class);
+        when(azureClient.getNetworkInterfaceById(anyString()))
+            .thenReturn(networkInterface);
+        return azureClient;
+    }
+
+    @Test
+    void testNullAzureClient() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new PrivateIpAddressCache(null, 1000, TimeUnit.MILLISECONDS,
+                MoreExecutors.directExecutor()));
+    }
+
+    @Test
+    void testInvalidTtl() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new PrivateIpAddressCache(mock(AzureClient.class), 0, TimeUnit.MILLISECONDS,
+                MoreExecutors.directExecutor()));
+    }
+
+    @Test
+    void testNullExecutor() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new PrivateIpAddressCache(mock(AzureClient.class), 1000, TimeUnit.MILLISECONDS,
+                null));
+    }
+
+    @Test
+    void testGetEmptyId() {
+        PrivateIpAddressCache cache = new PrivateIpAddressCache(mock(AzureClient.class), 1000,
+            TimeUnit.MILLISECONDS, MoreExecutors.directExecutor());
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> cache.get(""));
+    }
+
+    @Test
+    void testGetCached() {
+        AzureClient azureClient = createAzureClient("10.0.0.4");
+        PrivateIpAddressCache cache = new PrivateIpAddressCache(azureClient, 1000,
+            TimeUnit.MILLISECONDS, MoreExecutors.directExecutor());
+        Assertions.assertEquals("10.0.0.4", cache.get(networkInterfaceId));
+        Assertions.assertEquals("10.0.0.4", cache.get(networkInterfaceId));
+        verify(azureClient, times(1)).getNetworkInterfaceById(networkInterfaceId);
+    }
+
+    @Test
+    void testLoad() throws Exception {
+        AzureClient azureClient = createAzureClient("10.0.0.4");
+        PrivateIpAddressCache cache = new PrivateIpAddressCache(azureClient, 1000,
+            TimeUnit.MILLISECONDS, MoreExecutors.directExecutor());
+        cache.load(Arrays.asList(networkInterfaceId, "network-interface-id2"));
+        cache.get(networkInterfaceId);
+        cache.get("network-interface-id2");
+        verify(azureClient, times(1)).getNetworkInterfaceById(networkInterfaceId);
+        verify(azureClient, times(1)).getNetworkInterfaceById("network-interface-id2");
+    }
+
+    @Test
+    void testRefreshAfterTtl() {
+        AzureClient azureClient = createAzureClient("10.0.0.4", "10.0.0.5");
+        ManualTicker ticker = new ManualTicker();
+        PrivateIpAddressCache cache = new PrivateIpAddressCache(azureClient, 1000,
+            TimeUnit.MILLISECONDS, MoreExecutors.directExecutor(), ticker);
+        Assertions.assertEquals("10.0.0.4", cache.get(networkInterfaceId));
+        ticker.advance(999, TimeUnit.MILLISECONDS);
+        Assertions.assertEquals("10.0.0.4", cache.get(networkInterfaceId));
+        ticker.advance(2, TimeUnit.MILLISECONDS);
+        Assertions.assertEquals("10.0.0.5", cache.get(networkInterfaceId));
+        verify(azureClient, times(2)).getNetworkInterfaceById(networkInterfaceId);
+    }
+
+    @Test
+    void testInvalidate() {
+        AzureClient azureClient = createAzureClient("10.0.0.4", "10.0.0.5");
+        PrivateIpAddressCache cache = new PrivateIpAddressCache(azureClient, 1000,
+            TimeUnit.MILLISECONDS, MoreExecutors.directExecutor());
+        Assertions.assertEquals("10.0.0.4", cache.get(networkInterfaceId));
+        cache.invalidate(networkInterfaceId);
+        Assertions.assertEquals("10.0.0.5", cache.get(networkInterfaceId));
+    }
+
+    @Test
+    void testGetRethrowsLoadException() {
+        AzureClient azureClient = mock(AzureClient.class);
+        when(azureClient.getNetworkInterfaceById(anyString()))
+            .thenThrow(new IllegalArgumentException("Error getting resource"));
+        PrivateIpAddressCache cache = new PrivateIpAddressCache(azureClient, 1000,
+            TimeUnit.MILLISECONDS, MoreExecutors.directExecutor());
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> cache.get(networkInterfaceId));
+    }
+}
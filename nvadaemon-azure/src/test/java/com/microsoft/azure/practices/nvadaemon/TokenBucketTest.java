@@ -0,0 +1,80 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TokenBucketTest {
+    static class FakeTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() { return this.nanos.get(); }
+
+        void advance(long time, TimeUnit unit) { this.nanos.addAndGet(unit.toNanos(time)); }
+    }
+
+    @Test
+    void testInvalidArguments() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new TokenBucket(0, 1, TimeUnit.SECONDS, new FakeTicker()));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new TokenBucket(1, 0, TimeUnit.SECONDS, new FakeTicker()));
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new TokenBucket(1, 1, null, new FakeTicker()));
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new TokenBucket(1, 1, TimeUnit.SECONDS, null));
+    }
+
+    @Test
+    void testBurstThenWait() {
+        FakeTicker ticker = new FakeTicker();
+        TokenBucket bucket = new TokenBucket(2, 1, TimeUnit.SECONDS, ticker);
+        Assertions.assertEquals(0, bucket.tryReserve(0, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, bucket.tryReserve(0, TimeUnit.SECONDS));
+        // Empty, so the next token is a second away...
+        Assertions.assertEquals(-1, bucket.tryReserve(500, TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(TimeUnit.SECONDS.toNanos(1),
+            bucket.tryReserve(1, TimeUnit.SECONDS));
+        // ...and the one after that is queued behind it.
+        Assertions.assertEquals(TimeUnit.SECONDS.toNanos(2),
+            bucket.tryReserve(5, TimeUnit.SECONDS));
+        ticker.advance(2, TimeUnit.SECONDS);
+        Assertions.assertEquals(TimeUnit.SECONDS.toNanos(1),
+            bucket.tryReserve(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testRefillIsCapped() {
+        FakeTicker ticker = new FakeTicker();
+        TokenBucket bucket = new TokenBucket(2, 1, TimeUnit.SECONDS, ticker);
+        ticker.advance(1, TimeUnit.HOURS);
+        Assertions.assertEquals(2, bucket.getTokens(), 0.001);
+    }
+
+    @Test
+    void testSync() {
+        FakeTicker ticker = new FakeTicker();
+        TokenBucket bucket = new TokenBucket(100, 1, TimeUnit.SECONDS, ticker);
+        bucket.sync(0);
+        Assertions.assertEquals(-1, bucket.tryReserve(0, TimeUnit.SECONDS));
+        bucket.sync(1000);
+        Assertions.assertEquals(100, bucket.getTokens(), 0.001);
+        bucket.sync(-5);
+        Assertions.assertEquals(0, bucket.getTokens(), 0.001);
+    }
+
+    @Test
+    void testPause() {
+        FakeTicker ticker = new FakeTicker();
+        TokenBucket bucket = new TokenBucket(100, 1, TimeUnit.SECONDS, ticker);
+        bucket.pause(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(TimeUnit.SECONDS.toNanos(5),
+            bucket.tryReserve(10, TimeUnit.SECONDS));
+        ticker.advance(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(0, bucket.tryReserve(0, TimeUnit.SECONDS));
+    }
+}
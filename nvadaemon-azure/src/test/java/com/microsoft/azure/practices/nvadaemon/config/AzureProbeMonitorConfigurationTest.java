@@ -13,6 +13,8 @@ import org.junit.jupiter.api.Test;
 
 import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.contains;
@@ -152,6 +154,129 @@ public class AzureProbeMonitorConfigurationTest {
             azureProbeMonitorConfiguration.getProbeConnectTimeout());
         Assertions.assertEquals(AzureProbeMonitorConfiguration.DEFAULT_PROBE_POLLING_INTERVAL,
             azureProbeMonitorConfiguration.getProbePollingInterval());
+        Assertions.assertEquals(AzureProbeMonitorConfiguration.DEFAULT_FAILOVER_PARALLELISM,
+            azureProbeMonitorConfiguration.getFailoverParallelism());
+        Assertions.assertEquals(AzureProbeMonitorConfiguration.DEFAULT_PRIVATE_IP_ADDRESS_CACHE_TTL,
+            azureProbeMonitorConfiguration.getPrivateIpAddressCacheTtl());
+        Assertions.assertEquals(AzureProbeMonitorConfiguration.DEFAULT_FAILOVER_TIMEOUT,
+            azureProbeMonitorConfiguration.getFailoverTimeout());
+        Assertions.assertEquals(AzureProbeMonitorConfiguration.DEFAULT_FAILOVER_QUORUM,
+            azureProbeMonitorConfiguration.getFailoverQuorum());
+        Assertions.assertEquals(AzureProbeMonitorConfiguration.DEFAULT_PEER_SAMPLE_TTL,
+            azureProbeMonitorConfiguration.getPeerSampleTtl());
+        Assertions.assertEquals(AzureProbeMonitorConfiguration.DEFAULT_RESOURCE_CACHE_TTL,
+            azureProbeMonitorConfiguration.getResourceCacheTtl());
+        Assertions.assertEquals(
+            AzureProbeMonitorConfiguration.DEFAULT_FAILOVER_PLAN_REFRESH_INTERVAL,
+            azureProbeMonitorConfiguration.getFailoverPlanRefreshInterval());
+    }
+
+    @Test
+    void test_invalid_private_ip_address_cache_ttl() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, null, -1, null, null, null, null, null, null, null));
+    }
+
+    @Test
+    void test_invalid_failover_parallelism() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, 0, null, null, null, null, null, null, null, null));
+    }
+
+    @Test
+    void test_failover_parallelism() {
+        AzureProbeMonitorConfiguration azureProbeMonitorConfiguration =
+            new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, 16, null, null, null, null, null, null, null, null);
+        Assertions.assertEquals(16, azureProbeMonitorConfiguration.getFailoverParallelism());
+    }
+
+    @Test
+    void test_invalid_failover_timeout() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, null, null, 0, null, null, null, null, null, null));
+    }
+
+    @Test
+    void test_invalid_probe_confirmation_interval() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, null, null, null, 0, null, null, null, null, null));
+    }
+
+    @Test
+    void test_probe_confirmation_interval() {
+        AzureProbeMonitorConfiguration azureProbeMonitorConfiguration =
+            new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, 5000, null, null, null, null, null, null, null, null, null);
+        Assertions.assertEquals(5000,
+            azureProbeMonitorConfiguration.getProbeConfirmationInterval());
+        azureProbeMonitorConfiguration =
+            new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, 5000, null, null, null, 500, null, null, null, null, null);
+        Assertions.assertEquals(500,
+            azureProbeMonitorConfiguration.getProbeConfirmationInterval());
+    }
+
+    @Test
+    void test_invalid_failover_quorum() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, null, null, null, null, null, 0, null, null, null));
+    }
+
+    @Test
+    void test_invalid_peer_sample_ttl() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, null, null, null, null, null, null, 0, null, null));
+    }
+
+    @Test
+    void test_failover_quorum() {
+        AzureProbeMonitorConfiguration azureProbeMonitorConfiguration =
+            new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, null, null, null, null, null, 2, 5000, null, null);
+        Assertions.assertEquals(2, azureProbeMonitorConfiguration.getFailoverQuorum());
+        Assertions.assertEquals(5000, azureProbeMonitorConfiguration.getPeerSampleTtl());
+    }
+
+    @Test
+    void test_invalid_resource_cache_ttl() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, null, null, null, null, null, null, null, -1, null));
+    }
+
+    @Test
+    void test_resource_cache_ttl_disabled() {
+        AzureProbeMonitorConfiguration azureProbeMonitorConfiguration =
+            new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, null, null, null, null, null, null, null, 0, null);
+        Assertions.assertEquals(0, azureProbeMonitorConfiguration.getResourceCacheTtl());
+    }
+
+    @Test
+    void test_invalid_failover_plan_refresh_interval() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, null, null, null, null, null, null, null, null, 0));
     }
 
     @Test
@@ -314,4 +439,62 @@ public class AzureProbeMonitorConfigurationTest {
 
         azureProbeMonitorConfiguration.validate(azureClient);
     }
+
+    @Test
+    void test_validate_reports_all_errors() {
+        AzureProbeMonitorConfiguration azureProbeMonitorConfiguration =
+            new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null);
+
+        AzureClient azureClient = mock(AzureClient.class);
+        when(azureClient.checkExistenceById(contains("network-interface")))
+            .thenReturn(true);
+        when(azureClient.checkExistenceById(contains("route-table")))
+            .thenThrow(new IllegalStateException("throttled"));
+        when(azureClient.getNetworkInterfaceById(anyString()))
+            .thenReturn(null);
+
+        ConfigurationException e = Assertions.expectThrows(ConfigurationException.class,
+            () -> azureProbeMonitorConfiguration.validate(azureClient));
+        for (NamedResourceId publicIpAddress : publicIpAddresses) {
+            Assertions.assertTrue(e.getMessage().contains(
+                "Invalid public ip address: " + publicIpAddress.getId()));
+        }
+        for (String routeTable : routeTables) {
+            Assertions.assertTrue(e.getMessage().contains(
+                "Error validating route table " + routeTable + ": throttled"));
+        }
+        Assertions.assertTrue(e.getMessage().contains(
+            "probeNetworkInterface 'nva-1-probe-network-interface' does not exist"));
+        Assertions.assertTrue(e.getMessage().contains(
+            "probeNetworkInterface 'nva-2-probe-network-interface' does not exist"));
+        Assertions.assertFalse(e.getMessage().contains("Duplicate probe IP Address found"));
+    }
+
+    @Test
+    void test_validate_runs_concurrently() throws ConfigurationException {
+        AzureProbeMonitorConfiguration azureProbeMonitorConfiguration =
+            new AzureProbeMonitorConfiguration(azureConfiguration,
+                nvaConfigurations, routeTables, publicIpAddresses,
+                null, null, null, 2, null, null, null, null, null, null, null, null);
+
+        // Each existence check waits for a second one to be in flight, so this only
+        // completes if the checks are fanned out.
+        CountDownLatch latch = new CountDownLatch(2);
+        AzureClient azureClient = mock(AzureClient.class);
+        when(azureClient.checkExistenceById(anyString()))
+            .then(i -> {
+                latch.countDown();
+                return latch.await(10, TimeUnit.SECONDS);
+            });
+        NetworkInterface networkInterface = mock(NetworkInterface.class);
+        when(networkInterface.primaryPrivateIp())
+            .thenReturn("127.0.0.1")
+            .thenReturn("127.0.0.2");
+        when(azureClient.getNetworkInterfaceById(anyString()))
+            .thenReturn(networkInterface);
+
+        azureProbeMonitorConfiguration.validate(azureClient);
+    }
 }
@@ -0,0 +1,65 @@
+package com.microsoft.azure.practices.nvadaemon.config;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FailureDetectorConfigurationTest {
+    @Test
+    void test_defaults() {
+        FailureDetectorConfiguration failureDetectorConfiguration =
+            new FailureDetectorConfiguration(null, null, null, null, null);
+        Assertions.assertEquals(FailureDetectorConfiguration.THRESHOLD,
+            failureDetectorConfiguration.getType());
+        Assertions.assertEquals(FailureDetectorConfiguration.DEFAULT_PHI_THRESHOLD,
+            failureDetectorConfiguration.getPhiThreshold());
+        Assertions.assertEquals(FailureDetectorConfiguration.DEFAULT_MAX_SAMPLE_SIZE,
+            failureDetectorConfiguration.getMaxSampleSize());
+        Assertions.assertEquals(FailureDetectorConfiguration.DEFAULT_MIN_STD_DEVIATION,
+            failureDetectorConfiguration.getMinStdDeviation());
+        Assertions.assertEquals(FailureDetectorConfiguration.DEFAULT_ACCEPTABLE_PAUSE,
+            failureDetectorConfiguration.getAcceptablePause());
+    }
+
+    @Test
+    void test_invalid_type() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailureDetectorConfiguration("invalid", null, null, null, null));
+    }
+
+    @Test
+    void test_invalid_phi_threshold() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailureDetectorConfiguration(null, 0.0, null, null, null));
+    }
+
+    @Test
+    void test_invalid_max_sample_size() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailureDetectorConfiguration(null, null, 0, null, null));
+    }
+
+    @Test
+    void test_invalid_min_std_deviation() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailureDetectorConfiguration(null, null, null, 0, null));
+    }
+
+    @Test
+    void test_invalid_acceptable_pause() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailureDetectorConfiguration(null, null, null, null, -1));
+    }
+
+    @Test
+    void test_valid_parameters() {
+        FailureDetectorConfiguration failureDetectorConfiguration =
+            new FailureDetectorConfiguration(FailureDetectorConfiguration.PHI_ACCRUAL, 10.0,
+                50, 100, 1000);
+        Assertions.assertEquals(FailureDetectorConfiguration.PHI_ACCRUAL,
+            failureDetectorConfiguration.getType());
+        Assertions.assertEquals(10.0, failureDetectorConfiguration.getPhiThreshold());
+        Assertions.assertEquals(50, failureDetectorConfiguration.getMaxSampleSize());
+        Assertions.assertEquals(100, failureDetectorConfiguration.getMinStdDeviation());
+        Assertions.assertEquals(1000, failureDetectorConfiguration.getAcceptablePause());
+    }
+}
@@ -74,6 +74,124 @@ public class NvaConfigurationTest {
             () -> new NvaConfiguration("probe-network-interface", 1234, networkInterfaces));
     }
 
+    @Test
+    void test_default_probe() {
+        NvaConfiguration nvaConfiguration = new NvaConfiguration("probe-network-interface",
+            1234, Arrays.asList(new NamedResourceId("nic1", "nic1-id")));
+        Assertions.assertEquals(ProbeConfiguration.TCP,
+            nvaConfiguration.getProbeConfiguration().getType());
+    }
+
+    @Test
+    void test_probe() {
+        ProbeConfiguration probeConfiguration = new ProbeConfiguration(ProbeConfiguration.HTTP,
+            "/health", null, null, null, null, null);
+        NvaConfiguration nvaConfiguration = new NvaConfiguration("probe-network-interface",
+            1234, Arrays.asList(new NamedResourceId("nic1", "nic1-id")), probeConfiguration);
+        Assertions.assertSame(probeConfiguration, nvaConfiguration.getProbeConfiguration());
+    }
+
+    @Test
+    void test_unknown_probe_endpoint_network_interface() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new NvaConfiguration("probe-network-interface", 1234,
+                Arrays.asList(new NamedResourceId("nic1", "nic1-id")), null,
+                Arrays.asList(new ProbeEndpointConfiguration("nic2", 80, null)), null));
+    }
+
+    @Test
+    void test_duplicate_probe_endpoints() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new NvaConfiguration("probe-network-interface", 1234,
+                Arrays.asList(new NamedResourceId("nic1", "nic1-id")), null,
+                Arrays.asList(new ProbeEndpointConfiguration("nic1", 80, null),
+                    new ProbeEndpointConfiguration("nic1", 80, null)), null));
+    }
+
+    @Test
+    void test_probe_endpoint_duplicates_probe() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new NvaConfiguration("nic1-id", 1234,
+                Arrays.asList(new NamedResourceId("nic1", "nic1-id")), null,
+                Arrays.asList(new ProbeEndpointConfiguration("nic1", 1234, null)), null));
+    }
+
+    @Test
+    void test_validate_duplicate_probe_address() {
+        AzureClient azureClient = mock(AzureClient.class);
+        NetworkInterface probeNetworkInterface = mock(NetworkInterface.class);
+        when(probeNetworkInterface.primaryPrivateIp()).thenReturn("10.0.0.1");
+        when(azureClient.checkExistenceById(anyString())).thenReturn(true);
+        when(azureClient.getNetworkInterfaceById("probe-network-interface"))
+            .thenReturn(probeNetworkInterface);
+        when(azureClient.getNetworkInterfaceById("nic2-id")).thenReturn(probeNetworkInterface);
+        NvaConfiguration nvaConfiguration = new NvaConfiguration("probe-network-interface", 1234,
+            Arrays.asList(new NamedResourceId("nic1", "nic1-id"),
+                new NamedResourceId("nic2", "nic2-id")), null,
+            Arrays.asList(new ProbeEndpointConfiguration("nic2", 1234, null)), null);
+        ConfigurationException e = Assertions.expectThrows(ConfigurationException.class,
+            () -> nvaConfiguration.validate(azureClient));
+        Assertions.assertTrue(e.getMessage().contains("Duplicate probe address"));
+    }
+
+    @Test
+    void test_invalid_probe_quorum() {
+        List<NamedResourceId> networkInterfaces =
+            Arrays.asList(new NamedResourceId("nic1", "nic1-id"));
+        List<ProbeEndpointConfiguration> probeEndpoints =
+            Arrays.asList(new ProbeEndpointConfiguration("nic1", 80, null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new NvaConfiguration("probe-network-interface", 1234, networkInterfaces, null,
+                probeEndpoints, 0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new NvaConfiguration("probe-network-interface", 1234, networkInterfaces, null,
+                probeEndpoints, 3));
+    }
+
+    @Test
+    void test_probe_quorum() {
+        List<NamedResourceId> networkInterfaces =
+            Arrays.asList(new NamedResourceId("nic1", "nic1-id"));
+        Assertions.assertEquals(1, new NvaConfiguration("probe-network-interface", 1234,
+            networkInterfaces).getProbeQuorum());
+        List<ProbeEndpointConfiguration> probeEndpoints = Arrays.asList(
+            new ProbeEndpointConfiguration("nic1", 80, null),
+            new ProbeEndpointConfiguration("nic1", 443, null));
+        Assertions.assertEquals(3, new NvaConfiguration("probe-network-interface", 1234,
+            networkInterfaces, null, probeEndpoints, null).getProbeQuorum());
+        NvaConfiguration nvaConfiguration = new NvaConfiguration("probe-network-interface", 1234,
+            networkInterfaces, null, probeEndpoints, 2);
+        Assertions.assertEquals(2, nvaConfiguration.getProbeQuorum());
+        Assertions.assertEquals(probeEndpoints, nvaConfiguration.getProbeEndpoints());
+    }
+
+    @Test
+    void test_validate_probe_endpoints() throws ConfigurationException {
+        AzureClient azureClient = mock(AzureClient.class);
+        NetworkInterface probeNetworkInterface = mock(NetworkInterface.class);
+        when(probeNetworkInterface.primaryPrivateIp()).thenReturn("10.0.0.1");
+        NetworkInterface networkInterface = mock(NetworkInterface.class);
+        when(networkInterface.primaryPrivateIp()).thenReturn("10.0.1.1");
+        when(azureClient.checkExistenceById(anyString())).thenReturn(true);
+        when(azureClient.getNetworkInterfaceById("probe-network-interface"))
+            .thenReturn(probeNetworkInterface);
+        when(azureClient.getNetworkInterfaceById("nic2-id")).thenReturn(networkInterface);
+        ProbeEndpointConfiguration probeEndpoint = new ProbeEndpointConfiguration("nic2", 80, null);
+        NvaConfiguration nvaConfiguration = new NvaConfiguration("probe-network-interface", 1234,
+            Arrays.asList(new NamedResourceId("nic1", "nic1-id"),
+                new NamedResourceId("nic2", "nic2-id")), null,
+            Arrays.asList(probeEndpoint), null);
+        nvaConfiguration.validate(azureClient);
+        Assertions.assertEquals(new InetSocketAddress("10.0.1.1", 80),
+            probeEndpoint.getSocketAddress());
+
+        when(azureClient.getNetworkInterfaceById("nic2-id")).thenReturn(null);
+        ConfigurationException e = Assertions.expectThrows(ConfigurationException.class,
+            () -> nvaConfiguration.validate(azureClient));
+        Assertions.assertTrue(e.getMessage().contains(
+            "Probe endpoint network interface 'nic2-id' does not exist"));
+    }
+
     @Test
     void test_validate_null_azure_client() {
         NvaConfiguration nvaConfiguration = new NvaConfiguration("probe-network-interface",
@@ -109,6 +227,26 @@ public class NvaConfigurationTest {
             () -> nvaConfiguration.validate(azureClient));
     }
 
+    @Test
+    void test_validate_reports_all_errors() {
+        AzureClient azureClient = mock(AzureClient.class);
+        List<NamedResourceId> networkInterfaces = new ArrayList<>();
+        networkInterfaces.add(new NamedResourceId("nic1", "nic1-id"));
+        networkInterfaces.add(new NamedResourceId("nic2", "nic2-id"));
+        NvaConfiguration nvaConfiguration = new NvaConfiguration("probe-network-interface",
+            1234, networkInterfaces);
+        when(azureClient.checkExistenceById(anyString()))
+            .thenReturn(false);
+        when(azureClient.getNetworkInterfaceById(anyString()))
+            .thenReturn(null);
+        ConfigurationException e = Assertions.expectThrows(ConfigurationException.class,
+            () -> nvaConfiguration.validate(azureClient));
+        Assertions.assertTrue(e.getMessage().contains("Invalid network interface: nic1-id"));
+        Assertions.assertTrue(e.getMessage().contains("Invalid network interface: nic2-id"));
+        Assertions.assertTrue(e.getMessage().contains(
+            "probeNetworkInterface 'probe-network-interface' does not exist"));
+    }
+
     @Test
     void test_validate_valid_probe_network_interfaces() throws ConfigurationException {
         Integer probePort = 1234;
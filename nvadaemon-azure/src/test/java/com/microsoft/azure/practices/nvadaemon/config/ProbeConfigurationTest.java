@@ -0,0 +1,71 @@
+package com.microsoft.azure.practices.nvadaemon.config;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ProbeConfigurationTest {
+    @Test
+    void test_defaults() {
+        ProbeConfiguration probeConfiguration =
+            new ProbeConfiguration(null, null, null, null, null, null, null);
+        Assertions.assertEquals(ProbeConfiguration.TCP, probeConfiguration.getType());
+        Assertions.assertEquals(ProbeConfiguration.DEFAULT_PATH, probeConfiguration.getPath());
+        Assertions.assertNull(probeConfiguration.getExpectedStatus());
+        Assertions.assertNull(probeConfiguration.getExpectedBody());
+        Assertions.assertNull(probeConfiguration.getRequest());
+        Assertions.assertNull(probeConfiguration.getExpectedResponse());
+        Assertions.assertFalse(probeConfiguration.isVerifyCertificate());
+    }
+
+    @Test
+    void test_invalid_type() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ProbeConfiguration("icmp", null, null, null, null, null, null));
+    }
+
+    @Test
+    void test_invalid_path() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ProbeConfiguration(ProbeConfiguration.HTTP, "health", null, null, null,
+                null, null));
+    }
+
+    @Test
+    void test_invalid_expected_status() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ProbeConfiguration(ProbeConfiguration.HTTP, null, 600, null, null,
+                null, null));
+    }
+
+    @Test
+    void test_empty_expected_body() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ProbeConfiguration(ProbeConfiguration.HTTP, null, null, "", null,
+                null, null));
+    }
+
+    @Test
+    void test_udp_without_request() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ProbeConfiguration(ProbeConfiguration.UDP, null, null, null, null,
+                null, null));
+    }
+
+    @Test
+    void test_empty_expected_response() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ProbeConfiguration(ProbeConfiguration.UDP, null, null, null, "ping",
+                "", null));
+    }
+
+    @Test
+    void test_valid_parameters() {
+        ProbeConfiguration probeConfiguration = new ProbeConfiguration(ProbeConfiguration.HTTPS,
+            "/health", 204, "ok", null, null, true);
+        Assertions.assertEquals(ProbeConfiguration.HTTPS, probeConfiguration.getType());
+        Assertions.assertEquals("/health", probeConfiguration.getPath());
+        Assertions.assertEquals(Integer.valueOf(204), probeConfiguration.getExpectedStatus());
+        Assertions.assertEquals("ok", probeConfiguration.getExpectedBody());
+        Assertions.assertTrue(probeConfiguration.isVerifyCertificate());
+    }
+}
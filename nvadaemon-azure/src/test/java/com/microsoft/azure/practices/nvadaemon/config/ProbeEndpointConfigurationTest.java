@@ -0,0 +1,45 @@
+package com.microsoft.azure.practices.nvadaemon.config;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ProbeEndpointConfigurationTest {
+    @Test
+    void test_null_network_interface() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ProbeEndpointConfiguration(null, 80, null));
+    }
+
+    @Test
+    void test_empty_network_interface() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ProbeEndpointConfiguration("", 80, null));
+    }
+
+    @Test
+    void test_null_port() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new ProbeEndpointConfiguration("nic1", null, null));
+    }
+
+    @Test
+    void test_invalid_port() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ProbeEndpointConfiguration("nic1", 0, null));
+    }
+
+    @Test
+    void test_valid_parameters() {
+        ProbeConfiguration probeConfiguration = new ProbeConfiguration(ProbeConfiguration.TLS,
+            null, null, null, null, null, null);
+        ProbeEndpointConfiguration probeEndpointConfiguration =
+            new ProbeEndpointConfiguration("nic1", 443, probeConfiguration);
+        Assertions.assertEquals("nic1", probeEndpointConfiguration.getNetworkInterface());
+        Assertions.assertEquals(443, probeEndpointConfiguration.getPort());
+        Assertions.assertSame(probeConfiguration,
+            probeEndpointConfiguration.getProbeConfiguration());
+        Assertions.assertEquals(ProbeConfiguration.TCP, new ProbeEndpointConfiguration("nic1", 80,
+            null).getProbeConfiguration().getType());
+        Assertions.assertNull(probeEndpointConfiguration.getSocketAddress());
+    }
+}
@@ -8,10 +8,13 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.security.GeneralSecurityException;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class CertificateCredentialsTest {
     String domain = "domain";
@@ -75,4 +78,84 @@ public class CertificateCredentialsTest {
         String token = credentials.getToken(resource);
         Assertions.assertEquals(accessToken, token);
     }
+
+    @Test
+    void testExpiredToken() throws Exception {
+        String resource = "resource";
+        Field tokensField = CertificateCredentials.class.getDeclaredField("tokens");
+        tokensField.setAccessible(true);
+        AsymmetricKeyCredentialFactory credentialFactory =
+            mock(AsymmetricKeyCredentialFactory.class);
+        when(credentialFactory.create(resource))
+            .thenThrow(new GeneralSecurityException("Could not load KeyStore file"));
+        try (CertificateCredentials credentials = new CertificateCredentials(domain,
+            environment, credentialFactory)) {
+            Map<String, AuthenticationResult> tokens =
+                (Map<String, AuthenticationResult>)tokensField.get(credentials);
+            AuthenticationResult authenticationResult = new AuthenticationResult(
+                "accessTokenType", "accessToken", "refreshToken", -1, "idToken", null, false);
+            tokens.put(resource, authenticationResult);
+            Assertions.assertThrows(IOException.class, () -> credentials.getToken(resource));
+            verify(credentialFactory).create(resource);
+        }
+    }
+
+    @Test
+    void testValidTokenAfterClose() throws Exception {
+        String resource = "resource";
+        String accessToken = "accessToken";
+        Field tokensField = CertificateCredentials.class.getDeclaredField("tokens");
+        tokensField.setAccessible(true);
+        CertificateCredentials credentials = new CertificateCredentials(domain,
+            environment, mock(AsymmetricKeyCredentialFactory.class));
+        Map<String, AuthenticationResult> tokens =
+            (Map<String, AuthenticationResult>)tokensField.get(credentials);
+        tokens.put(resource, new AuthenticationResult(
+            "accessTokenType", accessToken, "refreshToken", 1000, "idToken", null, false));
+        credentials.close();
+        Assertions.assertEquals(accessToken, credentials.getToken(resource));
+    }
+
+    @Test
+    void testRefreshDelay() {
+        Assertions.assertEquals(0, CertificateCredentials.getRefreshDelay(-1));
+        Assertions.assertEquals(0, CertificateCredentials.getRefreshDelay(0));
+        Assertions.assertEquals(30000, CertificateCredentials.getRefreshDelay(60000));
+        Assertions.assertEquals(3600000 - CertificateCredentials.REFRESH_MARGIN_MS,
+            CertificateCredentials.getRefreshDelay(3600000));
+    }
+
+    @Test
+    void testScheduleRefreshReplacesPendingRefresh() throws Exception {
+        String resource = "resource";
+        Field refreshesField = CertificateCredentials.class.getDeclaredField("refreshes");
+        refreshesField.setAccessible(true);
+        try (CertificateCredentials credentials = new CertificateCredentials(domain,
+            environment, mock(AsymmetricKeyCredentialFactory.class))) {
+            Map<String, ScheduledFuture<?>> refreshes =
+                (Map<String, ScheduledFuture<?>>)refreshesField.get(credentials);
+            credentials.scheduleRefresh(resource, 60000);
+            ScheduledFuture<?> first = refreshes.get(resource);
+            credentials.scheduleRefresh(resource, 60000);
+            ScheduledFuture<?> second = refreshes.get(resource);
+            Assertions.assertNotSame(first, second);
+            Assertions.assertTrue(first.isCancelled());
+            Assertions.assertFalse(second.isCancelled());
+            Assertions.assertEquals(1, refreshes.size());
+        }
+    }
+
+    @Test
+    void testScheduleRefreshAfterClose() throws Exception {
+        String resource = "resource";
+        Field refreshesField = CertificateCredentials.class.getDeclaredField("refreshes");
+        refreshesField.setAccessible(true);
+        CertificateCredentials credentials = new CertificateCredentials(domain,
+            environment, mock(AsymmetricKeyCredentialFactory.class));
+        Map<String, ScheduledFuture<?>> refreshes =
+            (Map<String, ScheduledFuture<?>>)refreshesField.get(credentials);
+        credentials.close();
+        credentials.scheduleRefresh(resource, 60000);
+        Assertions.assertFalse(refreshes.containsKey(resource));
+    }
 }
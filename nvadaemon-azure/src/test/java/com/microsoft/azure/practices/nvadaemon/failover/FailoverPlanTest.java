@@ -0,0 +1,74 @@
+package com.microsoft.azure.practices.nvadaemon.failover;
+
+import com.microsoft.azure.management.network.NetworkInterface;
+import com.microsoft.azure.management.network.PublicIpAddress;
+import com.microsoft.azure.management.network.RouteTable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FailoverPlanTest {
+    private static RouteTable routeTable(String routeTableId) {
+        RouteTable routeTable = mock(RouteTable.class);
+        when(routeTable.id()).thenReturn(routeTableId);
+        return routeTable;
+    }
+
+    @Test
+    void testNullRouteTableRewrites() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new FailoverPlan(null, Collections.emptyMap()));
+    }
+
+    @Test
+    void testNullPublicIpAddressMoves() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new FailoverPlan(Collections.emptyMap(), null));
+    }
+
+    @Test
+    void testEmptyRouteTableRewrite() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailoverPlan(Collections.singletonMap("route-table-id1",
+                new FailoverPlan.RouteTableRewrite(routeTable("route-table-id1"),
+                    new RouteRewritePlan("route-table-id1", Collections.emptyMap()))),
+                Collections.emptyMap()));
+    }
+
+    @Test
+    void testRouteTableRewriteForOtherRouteTable() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailoverPlan.RouteTableRewrite(routeTable("route-table-id1"),
+                new RouteRewritePlan("route-table-id2",
+                    Collections.singletonMap("route1", "10.0.1.5"))));
+    }
+
+    @Test
+    void testNullPublicIpAddressMoveTarget() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new FailoverPlan.PublicIpAddressMove(mock(PublicIpAddress.class),
+                mock(NetworkInterface.class), null));
+    }
+
+    @Test
+    void testWriteCount() {
+        Map<String, FailoverPlan.PublicIpAddressMove> publicIpAddressMoves = new HashMap<>();
+        publicIpAddressMoves.put("public-ip-address-id1", new FailoverPlan.PublicIpAddressMove(
+            mock(PublicIpAddress.class), mock(NetworkInterface.class),
+            mock(NetworkInterface.class)));
+        publicIpAddressMoves.put("public-ip-address-id2", new FailoverPlan.PublicIpAddressMove(
+            mock(PublicIpAddress.class), null, mock(NetworkInterface.class)));
+        FailoverPlan plan = new FailoverPlan(Collections.singletonMap("route-table-id1",
+            new FailoverPlan.RouteTableRewrite(routeTable("route-table-id1"),
+                new RouteRewritePlan("route-table-id1",
+                    Collections.singletonMap("route1", "10.0.1.5")))),
+            publicIpAddressMoves);
+        Assertions.assertEquals(4, plan.getWriteCount());
+    }
+}
@@ -0,0 +1,201 @@
+package com.microsoft.azure.practices.nvadaemon.failover;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.microsoft.azure.management.network.NetworkInterface;
+import com.microsoft.azure.management.network.NicIpConfiguration;
+import com.microsoft.azure.management.network.PublicIpAddress;
+import com.microsoft.azure.management.network.Route;
+import com.microsoft.azure.management.network.RouteNextHopType;
+import com.microsoft.azure.management.network.RouteTable;
+import com.microsoft.azure.practices.nvadaemon.AzureClient;
+import com.microsoft.azure.practices.nvadaemon.PrivateIpAddressCache;
+import com.microsoft.azure.practices.nvadaemon.config.AzureProbeMonitorConfiguration;
+import com.microsoft.azure.practices.nvadaemon.config.NamedResourceId;
+import com.microsoft.azure.practices.nvadaemon.config.NvaConfiguration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FailoverPlannerTest {
+    private static final String routeTableId = "route-table-id1";
+    private static final String publicIpAddressId = "public-ip-address-id1";
+
+    private final NvaConfiguration nva1 = new NvaConfiguration("nic1", 1234,
+        Arrays.asList(new NamedResourceId("nic1", "nva1-nic1"),
+            new NamedResourceId("nic2", "nva1-nic2")));
+    private final NvaConfiguration nva2 = new NvaConfiguration("nic1", 1234,
+        Arrays.asList(new NamedResourceId("nic1", "nva2-nic1"),
+            new NamedResourceId("nic2", "nva2-nic2")));
+    private final ExecutorService executorService = MoreExecutors.newDirectExecutorService();
+    private AzureProbeMonitorConfiguration configuration;
+    private AzureClient azureClient;
+    private PrivateIpAddressCache privateIpAddressCache;
+
+    private NetworkInterface networkInterface(String id, String privateIpAddress) {
+        NetworkInterface networkInterface = mock(NetworkInterface.class);
+        when(networkInterface.id()).thenReturn(id);
+        when(networkInterface.primaryPrivateIp()).thenReturn(privateIpAddress);
+        when(this.azureClient.getNetworkInterfaceById(id)).thenReturn(networkInterface);
+        return networkInterface;
+    }
+
+    private RouteTable routeTable(String nextHopIpAddress) {
+        Route route = mock(Route.class);
+        when(route.nextHopType()).thenReturn(RouteNextHopType.VIRTUAL_APPLIANCE);
+        when(route.nextHopIpAddress()).thenReturn(nextHopIpAddress);
+        RouteTable routeTable = mock(RouteTable.class);
+        when(routeTable.id()).thenReturn(routeTableId);
+        when(routeTable.routes()).thenReturn(Collections.singletonMap("route1", route));
+        when(this.azureClient.getRouteTableById(routeTableId)).thenReturn(routeTable);
+        return routeTable;
+    }
+
+    private void publicIpAddress(NetworkInterface assignedTo) {
+        NicIpConfiguration ipConfiguration = mock(NicIpConfiguration.class);
+        when(ipConfiguration.parent()).thenReturn(assignedTo);
+        PublicIpAddress publicIpAddress = mock(PublicIpAddress.class);
+        when(publicIpAddress.hasAssignedNetworkInterface()).thenReturn(true);
+        when(publicIpAddress.getAssignedNetworkInterfaceIpConfiguration())
+            .thenReturn(ipConfiguration);
+        when(this.azureClient.getPublicIpAddressById(publicIpAddressId))
+            .thenReturn(publicIpAddress);
+    }
+
+    private FailoverPlanner createPlanner() {
+        return new FailoverPlanner(this.configuration, this.azureClient,
+            this.privateIpAddressCache, this.executorService);
+    }
+
+    @BeforeEach
+    void setUp() {
+        this.configuration = mock(AzureProbeMonitorConfiguration.class);
+        when(this.configuration.getNvaConfigurations()).thenReturn(Arrays.asList(nva1, nva2));
+        when(this.configuration.getRouteTables())
+            .thenReturn(Collections.singletonList(routeTableId));
+        when(this.configuration.getPublicIpAddresses()).thenReturn(
+            Collections.singletonList(new NamedResourceId("nic1", publicIpAddressId)));
+        when(this.configuration.getFailoverPlanRefreshInterval()).thenReturn(60000);
+        this.azureClient = mock(AzureClient.class);
+        this.privateIpAddressCache = new PrivateIpAddressCache(this.azureClient, 1,
+            TimeUnit.HOURS, this.executorService);
+        NetworkInterface nva1Nic1 = this.networkInterface("nva1-nic1", "10.0.1.4");
+        this.networkInterface("nva1-nic2", "10.0.2.4");
+        this.networkInterface("nva2-nic1", "10.0.1.5");
+        this.networkInterface("nva2-nic2", "10.0.2.5");
+        this.routeTable("10.0.1.4");
+        this.publicIpAddress(nva1Nic1);
+    }
+
+    @Test
+    void testNullConfiguration() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new FailoverPlanner(null, this.azureClient, this.privateIpAddressCache,
+                this.executorService));
+    }
+
+    @Test
+    void testNullAzureClient() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new FailoverPlanner(this.configuration, null, this.privateIpAddressCache,
+                this.executorService));
+    }
+
+    @Test
+    void testNullPrivateIpAddressCache() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new FailoverPlanner(this.configuration, this.azureClient, null,
+                this.executorService));
+    }
+
+    @Test
+    void testNullExecutorService() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new FailoverPlanner(this.configuration, this.azureClient,
+                this.privateIpAddressCache, null));
+    }
+
+    @Test
+    void testGetPublicIpAddressMigrations() {
+        Map<String, String> migrations = this.createPlanner().getPublicIpAddressMigrations(nva2);
+        Assertions.assertEquals(Collections.singletonMap(publicIpAddressId, "nva2-nic1"),
+            migrations);
+    }
+
+    @Test
+    void testNoPlanBeforeRefresh() {
+        Assertions.assertNull(this.createPlanner().getFailoverPlan(nva2));
+    }
+
+    @Test
+    void testRefresh() {
+        FailoverPlanner planner = this.createPlanner();
+        planner.refresh();
+        FailoverPlan plan = planner.getFailoverPlan(nva2);
+        Assertions.assertEquals(Collections.singleton(routeTableId),
+            plan.getRouteTableRewrites().keySet());
+        Assertions.assertEquals(Collections.singleton(publicIpAddressId),
+            plan.getPublicIpAddressMoves().keySet());
+        Assertions.assertEquals("nva2-nic1",
+            plan.getPublicIpAddressMoves().get(publicIpAddressId).getTo().id());
+        // The resources already point at nva1.
+        Assertions.assertEquals(0, planner.getFailoverPlan(nva1).getWriteCount());
+    }
+
+    @Test
+    void testRefreshKeepsPlansForSameResources() {
+        FailoverPlanner planner = this.createPlanner();
+        planner.refresh();
+        List<FailoverPlan> plans = Arrays.asList(planner.getFailoverPlan(nva1),
+            planner.getFailoverPlan(nva2));
+        planner.refresh();
+        Assertions.assertSame(plans.get(0), planner.getFailoverPlan(nva1));
+        Assertions.assertSame(plans.get(1), planner.getFailoverPlan(nva2));
+        // A route table read again is a new instance, which could have changed.
+        this.routeTable("10.0.1.5");
+        planner.refresh();
+        Assertions.assertTrue(planner.getFailoverPlan(nva2).getRouteTableRewrites().isEmpty());
+        Assertions.assertEquals(1, planner.getFailoverPlan(nva1).getRouteTableRewrites().size());
+    }
+
+    @Test
+    void testRefreshError() {
+        FailoverPlanner planner = this.createPlanner();
+        planner.refresh();
+        when(this.azureClient.getRouteTableById(routeTableId))
+            .thenThrow(new RuntimeException("test"));
+        planner.refresh();
+        Assertions.assertNull(planner.getFailoverPlan(nva2));
+    }
+
+    @Test
+    void testInvalidate() {
+        FailoverPlanner planner = this.createPlanner();
+        planner.refresh();
+        planner.invalidate();
+        Assertions.assertNull(planner.getFailoverPlan(nva2));
+    }
+
+    @Test
+    void testScheduleRefreshWaitsForInterval() {
+        FailoverPlanner planner = this.createPlanner();
+        planner.scheduleRefresh();
+        planner.scheduleRefresh();
+        verify(this.azureClient, times(1)).getRouteTableById(routeTableId);
+        Assertions.assertNotNull(planner.getFailoverPlan(nva2));
+        planner.expireRefreshInterval();
+        planner.scheduleRefresh();
+        verify(this.azureClient, times(2)).getRouteTableById(routeTableId);
+    }
+}
@@ -0,0 +1,105 @@
+package com.microsoft.azure.practices.nvadaemon.failover;
+
+import com.microsoft.azure.practices.nvadaemon.probe.ProbeResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class FailoverTargetSelectorTest {
+    private static final SocketAddress nva2 = InetSocketAddress.createUnresolved("nva2", 1234);
+    private static final SocketAddress nva3 = InetSocketAddress.createUnresolved("nva3", 1234);
+    private static final SocketAddress nva4 = InetSocketAddress.createUnresolved("nva4", 1234);
+    private static final List<SocketAddress> candidates = Arrays.asList(nva2, nva3, nva4);
+
+    @Test
+    void test_invalid_smoothing_factor() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailoverTargetSelector(0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new FailoverTargetSelector(1.5));
+    }
+
+    @Test
+    void test_null_probe_results() {
+        FailoverTargetSelector selector = new FailoverTargetSelector();
+        Assertions.assertThrows(NullPointerException.class,
+            () -> selector.record(null));
+    }
+
+    @Test
+    void test_empty_candidates() {
+        FailoverTargetSelector selector = new FailoverTargetSelector();
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> selector.select(Collections.emptyList(), Function.identity()));
+    }
+
+    @Test
+    void test_no_probe_results() {
+        FailoverTargetSelector selector = new FailoverTargetSelector();
+        Assertions.assertEquals(nva2, selector.select(candidates, Function.identity()));
+    }
+
+    @Test
+    void test_skips_unhealthy_candidates() {
+        FailoverTargetSelector selector = new FailoverTargetSelector();
+        selector.record(Arrays.asList(failure(nva2), failure(nva3)));
+        Assertions.assertEquals(nva4, selector.select(candidates, Function.identity()));
+    }
+
+    @Test
+    void test_all_candidates_unhealthy() {
+        FailoverTargetSelector selector = new FailoverTargetSelector();
+        selector.record(Arrays.asList(failure(nva2), failure(nva3), failure(nva4)));
+        Assertions.assertEquals(nva2, selector.select(candidates, Function.identity()));
+    }
+
+    @Test
+    void test_prefers_lowest_latency() {
+        FailoverTargetSelector selector = new FailoverTargetSelector();
+        selector.record(Arrays.asList(success(nva2, 30), success(nva3, 10), success(nva4, 20)));
+        Assertions.assertEquals(nva3, selector.select(candidates, Function.identity()));
+    }
+
+    @Test
+    void test_prefers_healthy_over_unknown() {
+        FailoverTargetSelector selector = new FailoverTargetSelector();
+        selector.record(Arrays.asList(failure(nva2), success(nva4, 50)));
+        Assertions.assertEquals(nva4, selector.select(candidates, Function.identity()));
+    }
+
+    @Test
+    void test_latency_is_smoothed() {
+        FailoverTargetSelector selector = new FailoverTargetSelector(0.5);
+        selector.record(Arrays.asList(success(nva2, 10), success(nva3, 20)));
+        // A single slow sample should not outweigh the history: nva2 is now at 25ms.
+        selector.record(Arrays.asList(success(nva2, 40), success(nva3, 20)));
+        Assertions.assertEquals(nva3, selector.select(candidates, Function.identity()));
+        selector.record(Arrays.asList(success(nva2, 10), success(nva3, 20)));
+        Assertions.assertEquals(nva2, selector.select(candidates, Function.identity()));
+    }
+
+    @Test
+    void test_latest_health_wins() {
+        FailoverTargetSelector selector = new FailoverTargetSelector();
+        selector.record(Collections.singletonList(failure(nva2)));
+        Assertions.assertEquals(nva3, selector.select(candidates, Function.identity()));
+        selector.record(Collections.singletonList(success(nva2, 10)));
+        Assertions.assertEquals(nva2, selector.select(candidates, Function.identity()));
+    }
+
+    private static ProbeResult success(SocketAddress target, long latency) {
+        return ProbeResult.success(target, latency, TimeUnit.MILLISECONDS);
+    }
+
+    private static ProbeResult failure(SocketAddress target) {
+        return ProbeResult.failure(target, 1, TimeUnit.MILLISECONDS, new ConnectException());
+    }
+}
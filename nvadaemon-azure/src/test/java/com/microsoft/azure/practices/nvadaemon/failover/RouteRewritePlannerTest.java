@@ -0,0 +1,138 @@
+package com.microsoft.azure.practices.nvadaemon.failover;
+
+import com.microsoft.azure.management.network.Route;
+import com.microsoft.azure.management.network.RouteNextHopType;
+import com.microsoft.azure.management.network.RouteTable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RouteRewritePlannerTest {
+    private static final String routeTableId = "route-table-id1";
+
+    private static Map<String, String> toMap() {
+        Map<String, String> toMap = new HashMap<>();
+        toMap.put("nic1", "10.0.1.5");
+        toMap.put("nic2", "10.0.2.5");
+        return toMap;
+    }
+
+    private static Map<String, List<String>> fromMap() {
+        Map<String, List<String>> fromMap = new HashMap<>();
+        fromMap.put("nic1", Arrays.asList("10.0.1.4", "10.0.1.6"));
+        fromMap.put("nic2", Arrays.asList("10.0.2.4", "10.0.2.6"));
+        return fromMap;
+    }
+
+    private static Route route(RouteNextHopType nextHopType, String nextHopIpAddress) {
+        Route route = mock(Route.class);
+        when(route.nextHopType()).thenReturn(nextHopType);
+        when(route.nextHopIpAddress()).thenReturn(nextHopIpAddress);
+        return route;
+    }
+
+    private static RouteTable routeTable(Map<String, Route> routes) {
+        RouteTable routeTable = mock(RouteTable.class);
+        when(routeTable.id()).thenReturn(routeTableId);
+        when(routeTable.routes()).thenReturn(routes);
+        return routeTable;
+    }
+
+    @Test
+    void testNullToMap() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new RouteRewritePlanner(null, fromMap()));
+    }
+
+    @Test
+    void testNullFromMap() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new RouteRewritePlanner(toMap(), null));
+    }
+
+    @Test
+    void testPlanNullRouteTable() {
+        RouteRewritePlanner planner = new RouteRewritePlanner(toMap(), fromMap());
+        Assertions.assertThrows(NullPointerException.class,
+            () -> planner.plan(null));
+    }
+
+    @Test
+    void testPlan() {
+        Map<String, Route> routes = new HashMap<>();
+        routes.put("route1", route(RouteNextHopType.VIRTUAL_APPLIANCE, "10.0.1.4"));
+        routes.put("route2", route(RouteNextHopType.VIRTUAL_APPLIANCE, "10.0.2.6"));
+        // Already pointing at the target NVA.
+        routes.put("route3", route(RouteNextHopType.VIRTUAL_APPLIANCE, "10.0.1.5"));
+        routes.put("route4", route(RouteNextHopType.INTERNET, null));
+        routes.put("route5", route(RouteNextHopType.VIRTUAL_APPLIANCE, "192.168.0.4"));
+        RouteRewritePlanner planner = new RouteRewritePlanner(toMap(), fromMap());
+        RouteRewritePlan plan = planner.plan(routeTable(routes));
+        Assertions.assertEquals(routeTableId, plan.getRouteTableId());
+        Assertions.assertEquals(2, plan.getNextHopIpAddresses().size());
+        Assertions.assertEquals("10.0.1.5", plan.getNextHopIpAddresses().get("route1"));
+        Assertions.assertEquals("10.0.2.5", plan.getNextHopIpAddresses().get("route2"));
+    }
+
+    @Test
+    void testPlanNothingToRewrite() {
+        Map<String, Route> routes = new HashMap<>();
+        routes.put("route1", route(RouteNextHopType.VIRTUAL_APPLIANCE, "10.0.1.5"));
+        RouteRewritePlanner planner = new RouteRewritePlanner(toMap(), fromMap());
+        RouteRewritePlan plan = planner.plan(routeTable(routes));
+        Assertions.assertTrue(plan.isEmpty());
+        Assertions.assertThrows(IllegalStateException.class,
+            () -> plan.update(routeTable(routes)));
+    }
+
+    @Test
+    void testUpdateMismatchedRouteTable() {
+        Map<String, String> nextHopIpAddresses = new HashMap<>();
+        nextHopIpAddresses.put("route1", "10.0.1.5");
+        RouteRewritePlan plan = new RouteRewritePlan("route-table-id2", nextHopIpAddresses);
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> plan.update(routeTable(new HashMap<>())));
+    }
+
+    @Test
+    void testUpdateSingleWritePerRouteTable() {
+        int routeCount = 200;
+        Map<String, Route> routes = new HashMap<>();
+        for (int i = 0; i < routeCount; i++) {
+            routes.put("route" + i, route(RouteNextHopType.VIRTUAL_APPLIANCE,
+                (i % 2 == 0) ? "10.0.1.4" : "10.0.2.6"));
+        }
+
+        RouteTable routeTable = routeTable(routes);
+        RouteTable.Update update = mock(RouteTable.Update.class);
+        Route.Update routeUpdate = mock(Route.Update.class);
+        when(routeTable.update()).thenReturn(update);
+        when(update.updateRoute(anyString())).thenReturn(routeUpdate);
+        when(routeUpdate.withNextHopToVirtualAppliance(anyString())).thenReturn(routeUpdate);
+        when(routeUpdate.parent()).thenReturn(update);
+
+        RouteRewritePlanner planner = new RouteRewritePlanner(toMap(), fromMap());
+        RouteRewritePlan plan = planner.plan(routeTable);
+        Assertions.assertEquals(routeCount, plan.getNextHopIpAddresses().size());
+        Assertions.assertSame(update, plan.update(routeTable));
+
+        // Every route is staged on the same update, which is left for the caller to send.
+        verify(routeTable, times(1)).update();
+        verify(update, times(routeCount)).updateRoute(anyString());
+        verify(routeUpdate, times(routeCount / 2)).withNextHopToVirtualAppliance("10.0.1.5");
+        verify(routeUpdate, times(routeCount / 2)).withNextHopToVirtualAppliance("10.0.2.5");
+        verify(update, never()).apply();
+        verify(routeTable, never()).refresh();
+    }
+}
@@ -0,0 +1,26 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.microsoft.azure.practices.nvadaemon.monitor.MonitorStateStore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryMonitorStateStore implements MonitorStateStore {
+    private final Map<String, byte[]> state = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] read(String key) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(key), "key cannot be null or empty");
+        byte[] data = this.state.get(key);
+        return data == null ? null : data.clone();
+    }
+
+    @Override
+    public void write(String key, byte[] data) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(key), "key cannot be null or empty");
+        Preconditions.checkNotNull(data, "data cannot be null");
+        this.state.put(key, data.clone());
+    }
+}
@@ -0,0 +1,47 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.practices.nvadaemon.monitor.HealthSample;
+import com.microsoft.azure.practices.nvadaemon.monitor.PeerHealth;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Peer health within a single process.  On its own it has no peers; instances created with
+ * join() share their samples, as daemons sharing a ZooKeeper ensemble would.
+ */
+public class InMemoryPeerHealth implements PeerHealth {
+    private final Map<InMemoryPeerHealth, HealthSample> samples;
+
+    public InMemoryPeerHealth() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    private InMemoryPeerHealth(Map<InMemoryPeerHealth, HealthSample> samples) {
+        this.samples = samples;
+    }
+
+    /**
+     * Returns a new peer that shares samples with this one.
+     */
+    public InMemoryPeerHealth join() {
+        return new InMemoryPeerHealth(this.samples);
+    }
+
+    @Override
+    public void publish(HealthSample sample) {
+        Preconditions.checkNotNull(sample, "sample cannot be null");
+        this.samples.put(this, sample);
+    }
+
+    @Override
+    public List<HealthSample> getPeerSamples() {
+        return this.samples.entrySet().stream()
+            .filter(e -> e.getKey() != this)
+            .map(e -> e.getValue())
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,78 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spreads leadership of the monitor groups across the live daemons.  Every daemon takes part
+ * in every group's election, so the number of participants in an election is the number of
+ * live daemons, and a daemon's fair share is the number of groups divided by that, rounded
+ * up.  A daemon at its fair share passes on further groups, and a daemon over it gives one up.
+ *
+ * <p>Participants whose sessions have not yet expired are still counted, so the balancer may
+ * wait for a daemon that is gone.  A daemon therefore only passes on a group as many times in
+ * a row as there are other participants, after which it takes the group regardless.</p>
+ */
+public class LeadershipBalancer {
+    private final int groupCount;
+    private final Set<String> leaderships = new HashSet<>();
+    private final Map<String, Integer> yields = new HashMap<>();
+
+    public LeadershipBalancer(int groupCount) {
+        Preconditions.checkArgument(groupCount > 0, "groupCount must be greater than 0");
+        this.groupCount = groupCount;
+    }
+
+    int getFairShare(int participants) {
+        int daemons = Math.max(participants, 1);
+        return (this.groupCount + daemons - 1) / daemons;
+    }
+
+    public synchronized int getLeadershipCount() {
+        return this.leaderships.size();
+    }
+
+    /**
+     * Called when leadership of a group is acquired.  Returns true if the group should be
+     * passed on to another daemon, otherwise records the leadership.
+     */
+    public synchronized boolean shouldYield(String group, int participants) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(group),
+            "group cannot be null or empty");
+        int yielded = this.yields.getOrDefault(group, 0);
+        if ((participants > 1) && (yielded < participants - 1) &&
+            (this.leaderships.size() >= getFairShare(participants))) {
+            this.yields.put(group, yielded + 1);
+            return true;
+        }
+
+        this.yields.remove(group);
+        this.leaderships.add(group);
+        return false;
+    }
+
+    /**
+     * Returns true, and forgets the leadership, if this daemon leads more than its fair share
+     * of the groups and should give up the given one.
+     */
+    public synchronized boolean shouldRelease(String group, int participants) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(group),
+            "group cannot be null or empty");
+        if ((participants > 1) && this.leaderships.contains(group) &&
+            (this.leaderships.size() > getFairShare(participants))) {
+            this.leaderships.remove(group);
+            return true;
+        }
+
+        return false;
+    }
+
+    public synchronized void released(String group) {
+        this.leaderships.remove(group);
+    }
+}
@@ -4,6 +4,8 @@ import com.google.common.base.Preconditions;
 import com.microsoft.azure.practices.nvadaemon.config.ConfigurationException;
 import com.microsoft.azure.practices.nvadaemon.config.NvaDaemonConfiguration;
 import com.microsoft.azure.practices.nvadaemon.config.ZookeeperConfiguration;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricsServer;
 import org.apache.commons.cli.*;
 import org.apache.commons.daemon.Daemon;
 import org.apache.commons.daemon.DaemonContext;
@@ -15,6 +17,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
@@ -26,6 +30,8 @@ public class NvaDaemon implements Daemon {
     private volatile boolean stopped;
     private NvaDaemonConfiguration configuration;
     private CuratorFramework client;
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private MetricsServer metricsServer;
     private ReentrantLock lock = new ReentrantLock();
     private Condition shutdown = lock.newCondition();
 
@@ -68,9 +74,21 @@ public class NvaDaemon implements Daemon {
         log.debug("Starting daemon thread");
         Preconditions.checkState(!executorService.isShutdown(), "Already started");
         createClient();
+        startMetricsServer();
         internalStart();
     }
 
+    private void startMetricsServer() throws IOException {
+        int metricsPort = this.configuration.getDaemonConfiguration().getMetricsPort();
+        if (metricsPort == 0) {
+            return;
+        }
+
+        log.debug("Starting metrics server");
+        metricsServer = new MetricsServer(metricsPort, this.metricRegistry);
+        metricsServer.start();
+    }
+
     private synchronized void internalStart() {
         if (ourTask.get() != null) {
             log.warn("internalStart called more than once");
@@ -80,14 +98,16 @@ public class NvaDaemon implements Daemon {
         Future<Void> task = executorService.submit(new Callable<Void>() {
             @Override
             public Void call() throws Exception {
-                NvaLeaderSelectorListenerAdapter adapter = null;
+                List<NvaLeaderSelectorListenerAdapter> adapters = Collections.emptyList();
                 try {
-                    adapter = new NvaLeaderSelectorListenerAdapter(
-                        configuration, client);
+                    adapters = NvaLeaderSelectorListenerAdapter.create(
+                        configuration, client, metricRegistry);
 
-                    log.debug("Starting leader selector adapter");
-                    adapter.start();
-                    log.debug("Leader selector adapter started");
+                    log.debug("Starting leader selector adapters");
+                    for (NvaLeaderSelectorListenerAdapter adapter : adapters) {
+                        adapter.start();
+                    }
+                    log.debug("Leader selector adapters started");
                     while (!stopped) {
                         lock.lock();
                         try {
@@ -98,9 +118,22 @@ public class NvaDaemon implements Daemon {
                         }
                     }
                 } finally {
-                    log.info("Closing leader selector adapter");
-                    if (adapter != null) {
-                        adapter.close();
+                    log.info("Closing leader selector adapters");
+                    Exception closeException = null;
+                    for (NvaLeaderSelectorListenerAdapter adapter : adapters) {
+                        try {
+                            adapter.close();
+                        } catch (Exception e) {
+                            if (closeException == null) {
+                                closeException = e;
+                            } else {
+                                closeException.addSuppressed(e);
+                            }
+                        }
+                    }
+
+                    if (closeException != null) {
+                        throw closeException;
                     }
                 }
 
@@ -137,6 +170,11 @@ public class NvaDaemon implements Daemon {
             log.warn("Interrupted joining daemon thread: " + e.getMessage());
             Thread.currentThread().interrupt();
         } finally {
+            if (this.metricsServer != null) {
+                log.debug("Closing metrics server");
+                this.metricsServer.close();
+            }
+
             log.debug("Closing CuratorFramework");
             this.client.close();
             log.debug("CuratorFramework closed");
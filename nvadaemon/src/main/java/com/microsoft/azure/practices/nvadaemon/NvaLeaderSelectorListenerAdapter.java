@@ -2,39 +2,141 @@ package com.microsoft.azure.practices.nvadaemon;
 
 import com.google.common.base.Preconditions;
 import com.microsoft.azure.practices.nvadaemon.NvaMonitor.NvaMonitorException;
+import com.microsoft.azure.practices.nvadaemon.config.DaemonConfiguration;
+import com.microsoft.azure.practices.nvadaemon.config.MonitorConfiguration;
 import com.microsoft.azure.practices.nvadaemon.config.NvaDaemonConfiguration;
+import com.microsoft.azure.practices.nvadaemon.metrics.Gauge;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.leader.LeaderSelector;
 import org.apache.curator.framework.recipes.leader.LeaderSelectorListenerAdapter;
+import org.apache.curator.utils.ZKPaths;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class NvaLeaderSelectorListenerAdapter
     extends LeaderSelectorListenerAdapter implements AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(NvaLeaderSelectorListenerAdapter.class);
+    static final String LEADER_METRIC = "leader";
     private final LeaderSelector leaderSelector;
     private final NvaDaemonConfiguration configuration;
     private final NvaMonitor nvaMonitor;
+    private final String group;
+    private final LeadershipBalancer balancer;
+    private final Gauge leader;
 
     public NvaLeaderSelectorListenerAdapter(NvaDaemonConfiguration configuration,
                                             CuratorFramework client) {
+        this(configuration, client, new MetricRegistry());
+    }
+
+    public NvaLeaderSelectorListenerAdapter(NvaDaemonConfiguration configuration,
+                                            CuratorFramework client,
+                                            MetricRegistry metricRegistry) {
+        this(configuration, client, null, null, metricRegistry);
+    }
+
+    public NvaLeaderSelectorListenerAdapter(NvaDaemonConfiguration configuration,
+                                            CuratorFramework client,
+                                            MonitorConfiguration group,
+                                            LeadershipBalancer balancer) {
+        this(configuration, client, group, balancer, new MetricRegistry());
+    }
+
+    /**
+     * Creates an adapter that leads a single monitor group, electing its leader at
+     * leaderSelectorPath/name.  The balancer is shared by all of the daemon's groups.
+     */
+    public NvaLeaderSelectorListenerAdapter(NvaDaemonConfiguration configuration,
+                                            CuratorFramework client,
+                                            MonitorConfiguration group,
+                                            LeadershipBalancer balancer,
+                                            MetricRegistry metricRegistry) {
         super();
         this.configuration = Preconditions.checkNotNull(configuration,
             "configuration cannot be null");
         Preconditions.checkNotNull(client, "client cannot be null");
-        leaderSelector = new LeaderSelector(client,
-            this.configuration.getZookeeperConfiguration().getLeaderSelectorPath(), this);
+        Preconditions.checkArgument((group == null) == (balancer == null),
+            "group and balancer must both be specified");
+        Preconditions.checkNotNull(metricRegistry, "metricRegistry cannot be null");
+        this.balancer = balancer;
+        String leaderSelectorPath =
+            this.configuration.getZookeeperConfiguration().getLeaderSelectorPath();
+        DaemonConfiguration daemonConfiguration = this.configuration.getDaemonConfiguration();
+        if (group == null) {
+            this.group = null;
+            this.leader = metricRegistry.getGauge(LEADER_METRIC);
+        } else {
+            this.group = group.getName();
+            leaderSelectorPath = ZKPaths.makePath(leaderSelectorPath, this.group);
+            daemonConfiguration = new DaemonConfiguration(Collections.singletonList(group),
+                daemonConfiguration.getShutdownAwaitTime(),
+                daemonConfiguration.getStandbyRefreshInterval());
+            this.leader = metricRegistry.getGauge(LEADER_METRIC, "group", this.group);
+        }
+
+        leaderSelector = new LeaderSelector(client, leaderSelectorPath, this);
         leaderSelector.autoRequeue();
-        this.nvaMonitor = new NvaMonitor(this.configuration.getDaemonConfiguration());
+        this.nvaMonitor = new NvaMonitor(daemonConfiguration, client, metricRegistry);
+    }
+
+    /**
+     * Creates the adapters for a daemon.  Unless leadership is partitioned, a single adapter
+     * leads every monitor; otherwise each monitor is a group with its own election.
+     */
+    public static List<NvaLeaderSelectorListenerAdapter> create(
+        NvaDaemonConfiguration configuration, CuratorFramework client) {
+        return create(configuration, client, new MetricRegistry());
+    }
+
+    /**
+     * Creates the adapters for a daemon, recording their metrics and their monitors' metrics
+     * in metricRegistry.
+     */
+    public static List<NvaLeaderSelectorListenerAdapter> create(
+        NvaDaemonConfiguration configuration, CuratorFramework client,
+        MetricRegistry metricRegistry) {
+        Preconditions.checkNotNull(configuration, "configuration cannot be null");
+        if (!configuration.getZookeeperConfiguration().isPartitionLeadership()) {
+            return Collections.singletonList(
+                new NvaLeaderSelectorListenerAdapter(configuration, client, metricRegistry));
+        }
+
+        List<MonitorConfiguration> monitors = configuration.getDaemonConfiguration().getMonitors();
+        LeadershipBalancer balancer = new LeadershipBalancer(monitors.size());
+        List<NvaLeaderSelectorListenerAdapter> adapters = new ArrayList<>();
+        for (MonitorConfiguration monitor : monitors) {
+            adapters.add(new NvaLeaderSelectorListenerAdapter(configuration, client, monitor,
+                balancer, metricRegistry));
+        }
+
+        return adapters;
+    }
+
+    /**
+     * Returns true while this adapter holds leadership and is running its monitor.
+     */
+    public boolean isLeader() {
+        return this.leader.get() != 0;
+    }
+
+    private String getDescription() {
+        return this.group == null ? "" : " of " + this.group;
     }
 
     public synchronized void start() {
         log.debug("NvaLeaderSelectorListenerAdapter::start()");
+        // Build the monitor while we are a follower, so taking leadership doesn't have to.
+        nvaMonitor.standby();
         leaderSelector.start();
         log.debug("NvaLeaderSelectorListenerAdapter::start() complete");
     }
@@ -52,13 +154,51 @@ public class NvaLeaderSelectorListenerAdapter
         }
     }
 
+    private int getParticipantCount() {
+        try {
+            return leaderSelector.getParticipants().size();
+        } catch (Exception e) {
+            log.warn("Error reading participants" + getDescription(), e);
+            return 1;
+        }
+    }
+
+    private void awaitTask(Future<Void> task) throws InterruptedException, ExecutionException {
+        if (this.balancer == null) {
+            task.get();
+            return;
+        }
+
+        int rebalanceInterval =
+            this.configuration.getZookeeperConfiguration().getRebalanceInterval();
+        while (true) {
+            try {
+                task.get(rebalanceInterval, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                if (this.balancer.shouldRelease(this.group, getParticipantCount())) {
+                    log.info("Releasing leadership" + getDescription() + " to balance the load");
+                    return;
+                }
+            }
+        }
+    }
+
     @Override
     public void takeLeadership(CuratorFramework curatorFramework) throws Exception {
-        log.info("Leadership acquired");
+        if ((this.balancer != null) &&
+            this.balancer.shouldYield(this.group, getParticipantCount())) {
+            // Returning hands leadership to the next daemon in line; autoRequeue puts us back.
+            log.info("Passing on leadership" + getDescription() + " to balance the load");
+            return;
+        }
+
+        log.info("Leadership" + getDescription() + " acquired");
+        this.leader.set(true);
         try {
             log.info("Starting nvaMonitor");
             Future<Void> task = nvaMonitor.start();
-            task.get();
+            awaitTask(task);
             log.debug("task.get() returned");
         } catch (InterruptedException e) {
             log.info("takeLeadership interrupted");
@@ -73,7 +213,14 @@ public class NvaLeaderSelectorListenerAdapter
             log.error("Error executing NvaMonitor", e);
             throw e;
         } finally {
+            this.leader.set(false);
             this.nvaMonitor.stop();
+            if (this.balancer != null) {
+                this.balancer.released(this.group);
+            }
+
+            // Get ready in case leadership comes back to us.
+            this.nvaMonitor.standby();
         }
     }
 }
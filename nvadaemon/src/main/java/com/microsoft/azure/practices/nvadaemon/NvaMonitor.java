@@ -3,25 +3,50 @@ package com.microsoft.azure.practices.nvadaemon;
 import com.google.common.base.Preconditions;
 import com.microsoft.azure.practices.nvadaemon.config.DaemonConfiguration;
 import com.microsoft.azure.practices.nvadaemon.config.MonitorConfiguration;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
 import com.microsoft.azure.practices.nvadaemon.monitor.Monitor;
+import com.microsoft.azure.practices.nvadaemon.monitor.MonitorContext;
+import com.microsoft.azure.practices.nvadaemon.monitor.MonitorStateStore;
+import com.microsoft.azure.practices.nvadaemon.monitor.PeerHealth;
 import com.microsoft.azure.practices.nvadaemon.monitor.ScheduledMonitor;
+import org.apache.curator.framework.CuratorFramework;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class NvaMonitor implements AutoCloseable {
     private final Logger log = LoggerFactory.getLogger(NvaMonitor.class);
+    private static final String MONITORS_PATH = "/monitors";
+    static final String MONITOR_LABEL = "monitor";
+    static final long INITIAL_RESTART_DELAY_MS = 1000;
+    static final int MAX_RESTARTS = 3;
     private final DaemonConfiguration configuration;
-    private final ExecutorService executorService;
-    private final ReentrantLock lock = new ReentrantLock();
-    private final Condition shutdown = lock.newCondition();
+    private final CuratorFramework client;
+    private final MetricRegistry metricRegistry;
+    private final ScheduledExecutorService scheduler;
+    private final ScheduledExecutorService standbyExecutorService;
+    private final ScheduledExecutorService observeExecutorService;
 
     private volatile boolean isRunning = false;
+    private volatile boolean isClosed = false;
+    private List<SupervisedMonitor> runningMonitors = Collections.emptyList();
+    // Refreshing and observing hold the read lock while they use the prepared monitors, so
+    // the monitors are only handed on once neither is running.
+    private final ReadWriteLock preparedMonitorLock = new ReentrantReadWriteLock();
+    private List<MonitorTask<?>> preparedMonitors;
+    private ScheduledFuture<?> refreshTask;
+    private ScheduledFuture<?> observeTask;
+    private final Map<String, PeerHealth> peerHealths = new HashMap<>();
 
     public static final class NvaMonitorException extends Exception {
         public NvaMonitorException() {
@@ -38,101 +63,503 @@ public class NvaMonitor implements AutoCloseable {
     }
 
     public NvaMonitor(DaemonConfiguration configuration) {
+        this(configuration, null);
+    }
+
+    public NvaMonitor(DaemonConfiguration configuration, CuratorFramework client) {
+        this(configuration, client, new MetricRegistry());
+    }
+
+    public NvaMonitor(DaemonConfiguration configuration, CuratorFramework client,
+                      MetricRegistry metricRegistry) {
         this.configuration = Preconditions.checkNotNull(configuration,
             "configuration cannot be null");
-        this.executorService =
-            Executors.newSingleThreadExecutor();
+        this.client = client;
+        this.metricRegistry = Preconditions.checkNotNull(metricRegistry,
+            "metricRegistry cannot be null");
+        // One thread per monitor keeps a slow probe or failover in one monitor from
+        // delaying another's ticks.
+        this.scheduler =
+            Executors.newScheduledThreadPool(this.configuration.getMonitors().size());
+        this.standbyExecutorService =
+            Executors.newSingleThreadScheduledExecutor();
+        // Refreshing can block on ARM for as long as the request scheduler makes it wait, so
+        // observing gets its own thread to keep our peer samples fresh.
+        this.observeExecutorService =
+            Executors.newSingleThreadScheduledExecutor();
     }
 
-    private class ScheduledMonitorCallable<T extends ScheduledMonitor> extends MonitorCallable<T> {
-//        public ScheduledMonitorCallable(T monitor,
-//                                        MonitorConfiguration monitorConfiguration) {
-//            super(monitor, monitorConfiguration);
-        public ScheduledMonitorCallable(T monitor) {
-            super(monitor);
+    private static final class MonitorContextImpl implements MonitorContext {
+        private final String name;
+        private final MonitorStateStore stateStore;
+        private final PeerHealth peerHealth;
+        private final MetricRegistry metricRegistry;
+
+        public MonitorContextImpl(String name, MonitorStateStore stateStore,
+                                  PeerHealth peerHealth, MetricRegistry metricRegistry) {
+            this.name = Preconditions.checkNotNull(name, "name cannot be null");
+            this.stateStore = Preconditions.checkNotNull(stateStore, "stateStore cannot be null");
+            this.peerHealth = Preconditions.checkNotNull(peerHealth, "peerHealth cannot be null");
+            this.metricRegistry = Preconditions.checkNotNull(metricRegistry,
+                "metricRegistry cannot be null");
         }
 
         @Override
-        protected void await() throws InterruptedException
-        {
-            log.debug("ScheduledMonitorCallable.await()");
-            if (!shutdown.await(monitor.getTime(), monitor.getUnit())) {
-                log.debug("Probe waiting time elapsed.  Looping");
+        public String getName() { return this.name; }
+
+        @Override
+        public MonitorStateStore getStateStore() { return this.stateStore; }
+
+        @Override
+        public PeerHealth getPeerHealth() { return this.peerHealth; }
+
+        @Override
+        public MetricRegistry getMetricRegistry() { return this.metricRegistry; }
+    }
+
+    private MonitorContext createMonitorContext(MonitorConfiguration monitorConfiguration) {
+        // Without ZooKeeper the state only lives as long as this process.
+        MonitorStateStore stateStore = this.client == null ?
+            new InMemoryMonitorStateStore() :
+            new ZookeeperMonitorStateStore(this.client,
+                MONITORS_PATH + "/" + monitorConfiguration.getName());
+        return new MonitorContextImpl(monitorConfiguration.getName(), stateStore,
+            getPeerHealth(monitorConfiguration.getName()),
+            this.metricRegistry.withLabels(MONITOR_LABEL, monitorConfiguration.getName()));
+    }
+
+    // Every monitor instance we build for a name shares one znode, so it outlives them.
+    private PeerHealth getPeerHealth(String name) {
+        synchronized (this.peerHealths) {
+            return this.peerHealths.computeIfAbsent(name, n -> this.client == null ?
+                new InMemoryPeerHealth() :
+                new ZookeeperPeerHealth(this.client, MONITORS_PATH + "/" + n + "/health"));
+        }
+    }
+
+    private void closePeerHealths() {
+        synchronized (this.peerHealths) {
+            for (PeerHealth peerHealth : this.peerHealths.values()) {
+                if (peerHealth instanceof AutoCloseable) {
+                    try {
+                        ((AutoCloseable)peerHealth).close();
+                    } catch (Exception e) {
+                        log.warn("Error closing peer health", e);
+                    }
+                }
+            }
+
+            this.peerHealths.clear();
+        }
+    }
+
+    private Object createMonitor(Class<?> clazz, MonitorConfiguration monitorConfiguration)
+        throws NoSuchMethodException, InstantiationException, IllegalAccessException,
+        InvocationTargetException {
+        // Monitors that want to share state between leaders take a MonitorContext as well.
+        try {
+            Constructor<?> ctor = clazz.getConstructor(MonitorConfiguration.class,
+                MonitorContext.class);
+            return ctor.newInstance(monitorConfiguration,
+                createMonitorContext(monitorConfiguration));
+        } catch (NoSuchMethodException e) {
+            Constructor<?> ctor = clazz.getConstructor(MonitorConfiguration.class);
+            return ctor.newInstance(monitorConfiguration);
+        }
+    }
+
+    @FunctionalInterface
+    private interface MonitorWork {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs a ScheduledMonitor at a fixed rate.  Ticks stay on the grid set when the monitor
+     * started, so the interval does not drift by the time each probe takes.  A probe or
+     * failover that runs past its interval is logged, and the ticks it missed are skipped
+     * rather than run back to back.  While the monitor is confirming a failure, it is
+     * rescheduled at its confirmation rate.
+     */
+    private class ScheduledMonitorTask<T extends ScheduledMonitor> extends MonitorTask<T> {
+        private long normalPeriod;
+        private long confirmationPeriod;
+        private long period;
+        // Only touched by tick(), and fixed-rate executions never overlap.
+        private long nextTick;
+        private volatile ScheduledFuture<?> schedule;
+
+        public ScheduledMonitorTask(String name, T monitor) {
+            super(name, monitor);
+        }
+
+        @Override
+        protected void onStarted() {
+            this.normalPeriod = monitor.getUnit().toNanos(monitor.getTime());
+            this.confirmationPeriod = monitor.getUnit().toNanos(monitor.getConfirmationTime());
+            Preconditions.checkArgument(this.normalPeriod > 0,
+                "Monitor " + name + " interval must be greater than 0");
+            Preconditions.checkArgument(this.confirmationPeriod > 0,
+                "Monitor " + name + " confirmation interval must be greater than 0");
+            schedule(this.normalPeriod);
+        }
+
+        // Callers hold the task lock, or have not started the schedule yet.
+        private void schedule(long period) {
+            this.period = period;
+            this.nextTick = System.nanoTime() + period;
+            this.schedule = scheduler.scheduleAtFixedRate(this::tick, period, period,
+                TimeUnit.NANOSECONDS);
+        }
+
+        private void reschedule() {
+            long period = monitor.isConfirming() ? this.confirmationPeriod : this.normalPeriod;
+            if (period == this.period) {
+                return;
+            }
+
+            synchronized (this) {
+                if (isStopped()) {
+                    return;
+                }
+
+                log.info("Monitor " + name + " probing every " +
+                    TimeUnit.NANOSECONDS.toMillis(period) + "ms");
+                this.schedule.cancel(false);
+                schedule(period);
+            }
+        }
+
+        @Override
+        protected void onStopped() {
+            ScheduledFuture<?> schedule = this.schedule;
+            if (schedule != null) {
+                schedule.cancel(false);
+            }
+        }
+
+        private void tick() {
+            long now = System.nanoTime();
+            long scheduled = this.nextTick;
+            this.nextTick += this.period;
+            if (now - scheduled >= this.period) {
+                log.debug("Skipping missed tick for monitor " + name);
+                return;
+            }
+
+            run(() -> {
                 if (!monitor.probe()) {
                     monitor.execute();
                 }
-            } else {
-                log.debug("Monitor shutdown signal received");
+            });
+
+            long elapsed = System.nanoTime() - now;
+            if (elapsed > this.period) {
+                log.warn("Monitor " + name + " took " +
+                    TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms, longer than its " +
+                    TimeUnit.NANOSECONDS.toMillis(this.period) + "ms interval.  Skipping " +
+                    (elapsed / this.period) + " tick(s)");
             }
 
-            log.debug("ScheduledMonitorCallable.await() complete");
+            reschedule();
         }
     }
 
-    private class MonitorCallable<T extends Monitor> implements Callable<Void> {
-        protected T monitor;
-        //protected MonitorConfiguration monitorConfiguration;
+    /**
+     * Runs a Monitor on the shared scheduler.  A plain Monitor only needs init() when it
+     * starts and close() when it stops, so it does not hold a thread while it runs.  The
+     * lock only guards state changes; monitor work never runs while holding it, so stop()
+     * returns immediately and the monitor is closed once any work in progress finishes.
+     */
+    private class MonitorTask<T extends Monitor> {
+        protected final String name;
+        protected final T monitor;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private boolean started = false;
+        private boolean stopped = false;
+        private boolean busy = false;
+        private boolean closed = false;
+        private Throwable failure;
 
-        //public MonitorCallable(T monitor, MonitorConfiguration monitorConfiguration) {
-        public MonitorCallable(T monitor) {
+        public MonitorTask(String name, T monitor) {
+            this.name = Preconditions.checkNotNull(name, "name cannot be null");
             this.monitor = Preconditions.checkNotNull(monitor, "monitor cannot be null");
-//            this.monitorConfiguration = Preconditions.checkNotNull(monitorConfiguration,
-//                "monitorConfiguration cannot be null");
         }
 
-        protected void await() throws InterruptedException {
-            log.debug("MonitorCallable.await()");
-            shutdown.await();
-            log.debug("MonitorCallable.await() complete");
+        protected void onStarted() {
         }
 
-        @Override
-        public Void call() throws Exception {
-            log.debug("Starting monitor task");
-            //monitor.init(config.getAll());
-            //monitor.init(this.monitorConfiguration);
-            monitor.init();
+        protected void onStopped() {
+        }
+
+        protected synchronized boolean isStopped() {
+            return this.stopped;
+        }
+
+        public CompletableFuture<Void> start() {
+            synchronized (this) {
+                Preconditions.checkState(!this.started, "Already started");
+                this.started = true;
+            }
+
+            log.debug("Starting monitor task " + this.name);
             try {
-                while (isRunning) {
-                    lock.lock();
-                    try {
-                        log.debug("Waiting on signal");
-                        await();
-                    } catch (InterruptedException e) {
-                        log.warn("Monitor lock interrupted", e);
-//                        Thread.currentThread().interrupt();
-                    } finally {
-                        lock.unlock();
-                    }
+                scheduler.execute(() -> run(() -> {
+                    monitor.init();
+                    onStarted();
+                }));
+            } catch (RejectedExecutionException e) {
+                fail(e);
+            }
+
+            return this.completion;
+        }
+
+        protected void run(MonitorWork work) {
+            synchronized (this) {
+                if (this.stopped) {
+                    return;
                 }
+
+                this.busy = true;
+            }
+
+            Exception error = null;
+            try {
+                work.run();
+            } catch (Exception e) {
+                error = e;
             } finally {
+                boolean shouldClose;
+                synchronized (this) {
+                    this.busy = false;
+                    if (error != null) {
+                        this.stopped = true;
+                        this.failure = error;
+                    }
+
+                    shouldClose = this.stopped && !this.closed;
+                    this.closed |= shouldClose;
+                }
+
+                if (shouldClose) {
+                    onStopped();
+                    closeMonitor();
+                }
+            }
+        }
+
+        public void stop() {
+            boolean shouldClose;
+            synchronized (this) {
+                this.stopped = true;
+                shouldClose = this.started && !this.busy && !this.closed;
+                this.closed |= shouldClose;
+            }
+
+            log.debug("Stopping monitor task " + this.name);
+            onStopped();
+            if (shouldClose) {
+                try {
+                    scheduler.execute(this::closeMonitor);
+                } catch (RejectedExecutionException e) {
+                    closeMonitor();
+                }
+            }
+        }
+
+        private void fail(Throwable error) {
+            synchronized (this) {
+                this.stopped = true;
+                this.closed = true;
+                this.failure = error;
+            }
+
+            closeMonitor();
+        }
+
+        private void closeMonitor() {
+            Throwable error;
+            synchronized (this) {
+                error = this.failure;
+            }
+
+            try {
                 monitor.close();
+            } catch (Exception e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
             }
 
-            log.info("Monitor task shutdown complete");
-            return null;
+            if (error == null) {
+                log.info("Monitor task " + this.name + " shutdown complete");
+                this.completion.complete(null);
+            } else {
+                this.completion.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Keeps one configured monitor running until stop() is called.  A monitor that fails is
+     * closed and built again after a delay that doubles with each failure in a row, so a
+     * transient error does not leave its NVAs unprotected.  After MAX_RESTARTS failures in a
+     * row we give up, and the completion fails so the daemon can hand its leadership to one
+     * that may do better.  The completion also fails if the monitor failed at any point.
+     */
+    private class SupervisedMonitor {
+        private final MonitorConfiguration monitorConfiguration;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private MonitorTask<?> task;
+        private boolean stopped = false;
+        private boolean restarting = false;
+        private ScheduledFuture<?> restart;
+        private Throwable failure;
+        private int failures = 0;
+        private long started;
+
+        public SupervisedMonitor(MonitorConfiguration monitorConfiguration, MonitorTask<?> task) {
+            this.monitorConfiguration = Preconditions.checkNotNull(monitorConfiguration,
+                "monitorConfiguration cannot be null");
+            this.task = Preconditions.checkNotNull(task, "task cannot be null");
+        }
+
+        public synchronized CompletableFuture<Void> start() {
+            run(this.task);
+            return this.completion;
+        }
+
+        // Callers hold the lock, so stop() never sees a task that has not been started.
+        private void run(MonitorTask<?> task) {
+            this.started = System.nanoTime();
+            task.start().whenComplete((v, e) -> onCompleted(e));
+        }
+
+        private void onCompleted(Throwable error) {
+            synchronized (this) {
+                if (error != null) {
+                    log.error("Monitor " + this.monitorConfiguration.getName() + " failed", error);
+                    this.failure = error;
+                }
+
+                if (this.stopped) {
+                    complete();
+                    return;
+                }
+
+                if (error == null) {
+                    // Monitors only finish on their own when they fail.
+                    return;
+                }
+
+                // A monitor that ran for a while before failing starts the backoff over.
+                if (System.nanoTime() - this.started >= TimeUnit.MINUTES.toNanos(1)) {
+                    this.failures = 0;
+                }
+
+                if (this.failures >= MAX_RESTARTS) {
+                    log.error("Monitor " + this.monitorConfiguration.getName() + " failed " +
+                        (this.failures + 1) + " times in a row.  Giving up");
+                    this.stopped = true;
+                    complete();
+                    return;
+                }
+
+                long delay = INITIAL_RESTART_DELAY_MS << this.failures;
+                this.failures++;
+                this.restarting = true;
+                log.info("Restarting monitor " + this.monitorConfiguration.getName() + " in " +
+                    delay + "ms");
+                try {
+                    this.restart = scheduler.schedule(this::restart, delay,
+                        TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    this.stopped = true;
+                    complete();
+                }
+            }
+        }
+
+        private void restart() {
+            synchronized (this) {
+                if (this.stopped) {
+                    return;
+                }
+            }
+
+            MonitorTask<?> task;
+            try {
+                task = createMonitorTask(this.monitorConfiguration);
+            } catch (NvaMonitorException | RuntimeException e) {
+                onCompleted(e);
+                return;
+            }
+
+            boolean stopped;
+            synchronized (this) {
+                stopped = this.stopped;
+                if (!stopped) {
+                    this.task = task;
+                    this.restarting = false;
+                    run(task);
+                }
+            }
+
+            if (stopped) {
+                closeMonitors(Collections.singletonList(task));
+            }
+        }
+
+        public void stop() {
+            MonitorTask<?> task;
+            synchronized (this) {
+                this.stopped = true;
+                if (this.restarting) {
+                    // The failed monitor is already closed, so nothing else will complete us.
+                    if (this.restart != null) {
+                        this.restart.cancel(false);
+                    }
+
+                    complete();
+                    return;
+                }
+
+                task = this.task;
+            }
+
+            task.stop();
+        }
+
+        // Callers hold the lock.
+        private void complete() {
+            if (this.failure == null) {
+                this.completion.complete(null);
+            } else {
+                this.completion.completeExceptionally(this.failure);
+            }
         }
     }
 
     @SuppressWarnings("unchecked")
-    private Callable<Void> createMonitorCallable(MonitorConfiguration monitorConfiguration)
+    private MonitorTask<?> createMonitorTask(MonitorConfiguration monitorConfiguration)
         throws NvaMonitorException {
         Preconditions.checkNotNull(monitorConfiguration, "monitorConfiguration cannot be null");
         String className = monitorConfiguration.getMonitorClass();
 
-        Callable<Void> result = null;
+        MonitorTask<?> result = null;
         Exception innerException = null;
         try {
             Class<?> clazz = getClass()
                 .getClassLoader()
                 .loadClass(className);
-            Constructor<?> ctor = clazz.getConstructor(MonitorConfiguration.class);
             if (ScheduledMonitor.class.isAssignableFrom(clazz)) {
-                result = new ScheduledMonitorCallable(
-                    (ScheduledMonitor) ctor.newInstance(monitorConfiguration));
+                result = new ScheduledMonitorTask(monitorConfiguration.getName(),
+                    (ScheduledMonitor) createMonitor(clazz, monitorConfiguration));
             } else if (Monitor.class.isAssignableFrom(clazz)) {
-                result = new MonitorCallable(
-                    (Monitor) ctor.newInstance(monitorConfiguration));
+                result = new MonitorTask(monitorConfiguration.getName(),
+                    (Monitor) createMonitor(clazz, monitorConfiguration));
             } else {
                 innerException = new ClassCastException(
                     "Class " + className + " does not implement Monitor or ScheduledMonitor");
@@ -155,50 +582,242 @@ public class NvaMonitor implements AutoCloseable {
         return result;
     }
 
+    private List<MonitorTask<?>> createMonitorTasks() throws NvaMonitorException {
+        List<MonitorTask<?>> monitors = new ArrayList<>();
+        try {
+            for (MonitorConfiguration monitorConfiguration : this.configuration.getMonitors()) {
+                monitors.add(createMonitorTask(monitorConfiguration));
+            }
+        } catch (NvaMonitorException | RuntimeException e) {
+            closeMonitors(monitors);
+            throw e;
+        }
+
+        return monitors;
+    }
+
+    private void closeMonitors(List<MonitorTask<?>> monitors) {
+        for (MonitorTask<?> monitor : monitors) {
+            try {
+                monitor.monitor.close();
+            } catch (Exception e) {
+                log.warn("Error closing monitor " + monitor.name, e);
+            }
+        }
+    }
+
+    /**
+     * Runs every configured monitor on the shared scheduler.  The returned future completes
+     * once all of the monitors have stopped, and fails if any of them failed.  A monitor that
+     * fails is restarted after a backoff while the others keep running, but the future fails
+     * as soon as we give up on one, so the caller can give up its leadership.
+     */
     public synchronized Future<Void> start() throws NvaMonitorException {
-        //log.debug("executorService.isShutdown(): " + executorService.isShutdown());
-        //Preconditions.checkState(!executorService.isShutdown(), "Already started");
+        //log.debug("scheduler.isShutdown(): " + scheduler.isShutdown());
+        //Preconditions.checkState(!scheduler.isShutdown(), "Already started");
         Preconditions.checkState(!this.isRunning, "Already started");
-        // We need to eventually support multiple monitors, but for now, just grab the
-        // first one.
-        MonitorConfiguration monitorConfiguration =
-            this.configuration.getMonitors().get(0);
-        Callable<Void> monitor = createMonitorCallable(monitorConfiguration);
+        // A standby has already paid for authentication and validation, so use its monitors.
+        List<MonitorTask<?>> monitors = this.takePreparedMonitors();
+        if (monitors == null) {
+            monitors = createMonitorTasks();
+        }
+
         isRunning = true;
-        Future<Void> task = executorService.submit(
-            monitor
-        );
+        // The tasks are built in the order the monitors are configured.
+        List<MonitorConfiguration> monitorConfigurations = this.configuration.getMonitors();
+        List<SupervisedMonitor> supervisedMonitors = new ArrayList<>();
+        for (int i = 0; i < monitors.size(); i++) {
+            supervisedMonitors.add(
+                new SupervisedMonitor(monitorConfigurations.get(i), monitors.get(i)));
+        }
+
+        this.runningMonitors = supervisedMonitors;
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (SupervisedMonitor monitor : supervisedMonitors) {
+            tasks.add(monitor.start());
+        }
+
+        CompletableFuture<Void> result =
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[tasks.size()]));
+        // A monitor we gave up on must not wait for the others, or its NVAs would go
+        // unprotected for as long as we stay leader.
+        for (CompletableFuture<Void> task : tasks) {
+            task.whenComplete((v, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+
+        return result;
+    }
+
+    /**
+     * Builds the monitors ahead of time so that start() only has to run them.  The prepared
+     * monitors are refreshed every standbyRefreshInterval until they are started.
+     */
+    public synchronized void prepare() throws NvaMonitorException {
+        Preconditions.checkState(!this.isClosed, "Already closed");
+        if (this.isRunning || (this.preparedMonitors != null)) {
+            return;
+        }
+
+        log.info("Preparing standby monitors");
+        this.setPreparedMonitors(createMonitorTasks());
+        if (this.refreshTask == null) {
+            int refreshInterval = this.configuration.getStandbyRefreshInterval();
+            this.refreshTask = this.standbyExecutorService.scheduleWithFixedDelay(
+                this::refreshPreparedMonitors, refreshInterval, refreshInterval,
+                TimeUnit.MILLISECONDS);
+        }
+
+        if (this.observeTask == null) {
+            // Followers check the resources as often as the leader does, so the leader has a
+            // current second opinion when it sees a failure.
+            long observeInterval = this.preparedMonitors.stream()
+                .filter(t -> t.monitor instanceof ScheduledMonitor)
+                .mapToLong(t -> ((ScheduledMonitor)t.monitor).getUnit().toNanos(
+                    ((ScheduledMonitor)t.monitor).getTime()))
+                .filter(i -> i > 0)
+                .min()
+                .orElse(0);
+            if (observeInterval > 0) {
+                this.observeTask = this.observeExecutorService.scheduleWithFixedDelay(
+                    this::observePreparedMonitors, 0, observeInterval, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Prepares the monitor in the background.  Errors are only logged, since start() will
+     * build the monitor itself and report them.
+     */
+    public void standby() {
+        if (this.isClosed) {
+            return;
+        }
+
+        try {
+            this.standbyExecutorService.execute(() -> {
+                try {
+                    prepare();
+                } catch (NvaMonitorException | RuntimeException e) {
+                    log.warn("Error preparing standby monitor", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("NvaMonitor closed while entering standby");
+        }
+    }
+
+    private void refreshPreparedMonitors() {
+        this.preparedMonitorLock.readLock().lock();
+        try {
+            if (this.preparedMonitors != null) {
+                for (MonitorTask<?> preparedMonitor : this.preparedMonitors) {
+                    try {
+                        log.debug("Refreshing standby monitor " + preparedMonitor.name);
+                        preparedMonitor.monitor.refresh();
+                    } catch (Exception e) {
+                        log.warn("Error refreshing standby monitor " + preparedMonitor.name, e);
+                    }
+                }
+            }
+        } finally {
+            this.preparedMonitorLock.readLock().unlock();
+        }
+    }
+
+    private void observePreparedMonitors() {
+        this.preparedMonitorLock.readLock().lock();
+        try {
+            if (this.preparedMonitors != null) {
+                for (MonitorTask<?> preparedMonitor : this.preparedMonitors) {
+                    if (preparedMonitor.monitor instanceof ScheduledMonitor) {
+                        try {
+                            ((ScheduledMonitor)preparedMonitor.monitor).observe();
+                        } catch (Exception e) {
+                            log.debug("Error observing with standby monitor " +
+                                preparedMonitor.name, e);
+                        }
+                    }
+                }
+            }
+        } finally {
+            this.preparedMonitorLock.readLock().unlock();
+        }
+    }
 
-        return task;
+    private void setPreparedMonitors(List<MonitorTask<?>> preparedMonitors) {
+        this.preparedMonitorLock.writeLock().lock();
+        try {
+            this.preparedMonitors = preparedMonitors;
+        } finally {
+            this.preparedMonitorLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stops refreshing and observing with the prepared monitors and returns them, or null if
+     * there are none.  Monitors are not expected to be thread safe, so this waits for a
+     * refresh or observe that is still running, after interrupting it so a slow ARM read
+     * does not hold up the takeover.
+     */
+    private List<MonitorTask<?>> takePreparedMonitors() {
+        if (this.refreshTask != null) {
+            this.refreshTask.cancel(true);
+            this.refreshTask = null;
+        }
+
+        if (this.observeTask != null) {
+            this.observeTask.cancel(true);
+            this.observeTask = null;
+        }
+
+        this.preparedMonitorLock.writeLock().lock();
+        try {
+            List<MonitorTask<?>> monitors = this.preparedMonitors;
+            this.preparedMonitors = null;
+            return monitors;
+        } finally {
+            this.preparedMonitorLock.writeLock().unlock();
+        }
     }
 
     public synchronized void stop() {
         log.info("Stopping NvaMonitor task");
         isRunning = false;
-        lock.lock();
-        try {
-            log.debug("Signalling NvaMonitor condition");
-            shutdown.signal();
-            log.debug("Signalled NvaMonitor condition");
-        } finally {
-            lock.unlock();
+        for (SupervisedMonitor monitor : this.runningMonitors) {
+            monitor.stop();
         }
+
+        this.runningMonitors = Collections.emptyList();
     }
 
     @Override
     public synchronized void close() throws Exception {
+        this.isClosed = true;
         if (this.isRunning) {
             stop();
         }
 
-        executorService.shutdown();
+        standbyExecutorService.shutdownNow();
+        observeExecutorService.shutdownNow();
+        List<MonitorTask<?>> preparedMonitors = this.takePreparedMonitors();
+        if (preparedMonitors != null) {
+            closeMonitors(preparedMonitors);
+        }
+
+        scheduler.shutdown();
         try {
-            executorService.awaitTermination(10000, TimeUnit.MILLISECONDS);
+            scheduler.awaitTermination(10000, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
             log.warn("Interrupted waiting for NvaMonitor task", e);
             Thread.currentThread().interrupt();
         }
 
+        closePeerHealths();
+
         log.info("NvaMonitor task stopped");
     }
 }
@@ -0,0 +1,50 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.microsoft.azure.practices.nvadaemon.monitor.MonitorStateStore;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.PathUtils;
+import org.apache.zookeeper.KeeperException;
+
+public class ZookeeperMonitorStateStore implements MonitorStateStore {
+    private final CuratorFramework client;
+    private final String basePath;
+
+    public ZookeeperMonitorStateStore(CuratorFramework client, String basePath) {
+        this.client = Preconditions.checkNotNull(client, "client cannot be null");
+        this.basePath = PathUtils.validatePath(basePath);
+    }
+
+    private String getPath(String key) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(key), "key cannot be null or empty");
+        Preconditions.checkArgument(!key.contains("/"), "key cannot contain '/'");
+        return this.basePath + "/" + key;
+    }
+
+    @Override
+    public byte[] read(String key) throws Exception {
+        String path = getPath(key);
+        try {
+            return this.client.getData().forPath(path);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void write(String key, byte[] data) throws Exception {
+        Preconditions.checkNotNull(data, "data cannot be null");
+        String path = getPath(key);
+        try {
+            this.client.setData().forPath(path, data);
+        } catch (KeeperException.NoNodeException e) {
+            try {
+                this.client.create().creatingParentsIfNeeded().forPath(path, data);
+            } catch (KeeperException.NodeExistsException nee) {
+                // Someone else created it first, so just overwrite it.
+                this.client.setData().forPath(path, data);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.practices.nvadaemon.monitor.HealthSample;
+import com.microsoft.azure.practices.nvadaemon.monitor.PeerHealth;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.PathUtils;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes this daemon's health samples to an ephemeral znode under basePath, and reads the
+ * other daemons' from their siblings.  A sample is only written when the health it reports
+ * changes, or every refreshInterval so readers can tell it is still current, so probing more
+ * often does not write to ZooKeeper more often.
+ */
+public class ZookeeperPeerHealth implements PeerHealth, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ZookeeperPeerHealth.class);
+    public static final int DEFAULT_REFRESH_INTERVAL = 10000;
+
+    private final CuratorFramework client;
+    private final String basePath;
+    private final String path;
+    private final long refreshInterval;
+    private HealthSample lastWritten;
+    private long lastWriteTime;
+
+    public ZookeeperPeerHealth(CuratorFramework client, String basePath) {
+        this(client, basePath, DEFAULT_REFRESH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public ZookeeperPeerHealth(CuratorFramework client, String basePath, long refreshInterval,
+                               TimeUnit unit) {
+        this.client = Preconditions.checkNotNull(client, "client cannot be null");
+        this.basePath = PathUtils.validatePath(basePath);
+        Preconditions.checkArgument(refreshInterval > 0, "refreshInterval must be greater than 0");
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        this.refreshInterval = unit.toNanos(refreshInterval);
+        this.path = ZKPaths.makePath(this.basePath, UUID.randomUUID().toString());
+    }
+
+    String getPath() { return this.path; }
+
+    @Override
+    public synchronized void publish(HealthSample sample) throws Exception {
+        Preconditions.checkNotNull(sample, "sample cannot be null");
+        long now = System.nanoTime();
+        if (sample.sameHealth(this.lastWritten) && (now - this.lastWriteTime < this.refreshInterval)) {
+            return;
+        }
+
+        byte[] data = sample.toBytes();
+        try {
+            this.client.setData().forPath(this.path, data);
+        } catch (KeeperException.NoNodeException e) {
+            // First sample, or our session expired and took the node with it.
+            this.client.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL)
+                .forPath(this.path, data);
+        }
+
+        this.lastWritten = sample;
+        this.lastWriteTime = now;
+    }
+
+    @Override
+    public List<HealthSample> getPeerSamples() throws Exception {
+        List<String> children;
+        try {
+            children = this.client.getChildren().forPath(this.basePath);
+        } catch (KeeperException.NoNodeException e) {
+            return Collections.emptyList();
+        }
+
+        List<HealthSample> samples = new ArrayList<>();
+        for (String child : children) {
+            String childPath = ZKPaths.makePath(this.basePath, child);
+            if (childPath.equals(this.path)) {
+                continue;
+            }
+
+            try {
+                samples.add(HealthSample.fromBytes(this.client.getData().forPath(childPath)));
+            } catch (KeeperException.NoNodeException e) {
+                // The peer went away while we were reading.
+            } catch (IllegalArgumentException e) {
+                log.debug("Ignoring invalid health sample at " + childPath, e);
+            }
+        }
+
+        return samples;
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        if (this.lastWritten == null) {
+            return;
+        }
+
+        try {
+            this.client.delete().forPath(this.path);
+        } catch (KeeperException.NoNodeException e) {
+            // Already gone with our session.
+        }
+
+        this.lastWritten = null;
+    }
+}
@@ -8,25 +8,65 @@ import java.util.List;
 
 public class DaemonConfiguration {
     public static final int DEFAULT_SHUTDOWN_AWAIT_TIME = 5000;
+    public static final int DEFAULT_STANDBY_REFRESH_INTERVAL = 300000;
 
     private int shutdownAwaitTime = DEFAULT_SHUTDOWN_AWAIT_TIME;
+    private int standbyRefreshInterval = DEFAULT_STANDBY_REFRESH_INTERVAL;
+    private int metricsPort;
     private List<MonitorConfiguration> monitors = new ArrayList<>();
 
+    public DaemonConfiguration(List<MonitorConfiguration> monitors, Integer shutdownAwaitTime) {
+        this(monitors, shutdownAwaitTime, null);
+    }
+
+    public DaemonConfiguration(List<MonitorConfiguration> monitors, Integer shutdownAwaitTime,
+                               Integer standbyRefreshInterval) {
+        this(monitors, shutdownAwaitTime, standbyRefreshInterval, null);
+    }
+
     @JsonCreator
     public DaemonConfiguration(@JsonProperty("monitors")List<MonitorConfiguration> monitors,
-                               @JsonProperty("shutdownAwaitTime")Integer shutdownAwaitTime) {
+                               @JsonProperty("shutdownAwaitTime")Integer shutdownAwaitTime,
+                               @JsonProperty("standbyRefreshInterval")Integer standbyRefreshInterval,
+                               @JsonProperty("metricsPort")Integer metricsPort) {
         if ((monitors == null) || (monitors.size() == 0)) {
             throw new IllegalArgumentException("No monitors found in configuration");
         }
 
         this.monitors = monitors;
+        // Monitor names key their shared state, so they must be unique.
+        if (this.monitors.stream()
+            .map(m -> m.getName())
+            .distinct()
+            .count() != this.monitors.size()) {
+            throw new IllegalArgumentException("Duplicate monitor name found");
+        }
 
         if ((shutdownAwaitTime != null) && (shutdownAwaitTime > 0)) {
             this.shutdownAwaitTime = shutdownAwaitTime;
         }
+
+        if ((standbyRefreshInterval != null) && (standbyRefreshInterval > 0)) {
+            this.standbyRefreshInterval = standbyRefreshInterval;
+        }
+
+        if (metricsPort != null) {
+            if ((metricsPort <= 0) || (metricsPort > 65535)) {
+                throw new IllegalArgumentException("metricsPort must be between 1 and 65535");
+            }
+
+            this.metricsPort = metricsPort;
+        }
     }
 
     public int getShutdownAwaitTime() { return this.shutdownAwaitTime; }
 
+    public int getStandbyRefreshInterval() { return this.standbyRefreshInterval; }
+
+    /**
+     * Returns the port the daemon serves its metrics on, or 0 if it does not serve them.
+     */
+    public int getMetricsPort() { return this.metricsPort; }
+
     public List<MonitorConfiguration> getMonitors() { return this.monitors; }
 }
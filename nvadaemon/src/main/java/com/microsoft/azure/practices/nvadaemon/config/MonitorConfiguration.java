@@ -10,20 +10,37 @@ import java.util.Map;
 
 public class MonitorConfiguration {
     private String monitorClass;
+    private String name;
     private Map<String, Object> settings = new HashMap<>();
 
+    public MonitorConfiguration(String monitorClass, Map<String, Object> settings) {
+        this(monitorClass, settings, null);
+    }
+
     @JsonCreator
     public MonitorConfiguration(@JsonProperty("monitorClass")String monitorClass,
-                                @JsonProperty("settings")Map<String, Object> settings) {
+                                @JsonProperty("settings")Map<String, Object> settings,
+                                @JsonProperty("name")String name) {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(monitorClass),
             "monitorClass cannot be null or empty");
         this.monitorClass = monitorClass;
         if (settings != null) {
             this.settings = settings;
         }
+
+        // The name is used as a znode name, so it cannot contain a path separator.
+        if (name != null) {
+            Preconditions.checkArgument(!name.isEmpty(), "name cannot be empty");
+            Preconditions.checkArgument(!name.contains("/"), "name cannot contain '/'");
+            this.name = name;
+        } else {
+            this.name = monitorClass;
+        }
     }
 
     public String getMonitorClass() { return this.monitorClass; }
 
+    public String getName() { return this.name; }
+
     public Map<String, Object> getSettings() { return this.settings; }
 }
@@ -8,18 +8,28 @@ import com.google.common.base.Strings;
 public class ZookeeperConfiguration {
     public static final int DEFAULT_RETRY_SLEEP_TIME = 3000;
     public static final int DEFAULT_NUMBER_OF_RETRIES = 5;
+    public static final int DEFAULT_REBALANCE_INTERVAL = 30000;
 
     private String connectionString;
     private String leaderSelectorPath;
 
     private int retrySleepTime = DEFAULT_RETRY_SLEEP_TIME;
     private int numberOfRetries = DEFAULT_NUMBER_OF_RETRIES;
+    private boolean partitionLeadership = false;
+    private int rebalanceInterval = DEFAULT_REBALANCE_INTERVAL;
+
+    public ZookeeperConfiguration(String connectionString, String leaderSelectorPath,
+                                  Integer retrySleepTime, Integer numberOfRetries) {
+        this(connectionString, leaderSelectorPath, retrySleepTime, numberOfRetries, null, null);
+    }
 
     @JsonCreator
     public ZookeeperConfiguration(@JsonProperty("connectionString")String connectionString,
                                   @JsonProperty("leaderSelectorPath")String leaderSelectorPath,
                                   @JsonProperty("retrySleepTime")Integer retrySleepTime,
-                                  @JsonProperty("numberOfRetries")Integer numberOfRetries) {
+                                  @JsonProperty("numberOfRetries")Integer numberOfRetries,
+                                  @JsonProperty("partitionLeadership")Boolean partitionLeadership,
+                                  @JsonProperty("rebalanceInterval")Integer rebalanceInterval) {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(connectionString),
             "connectionString cannot be null or empty");
         Preconditions.checkArgument(!Strings.isNullOrEmpty(leaderSelectorPath),
@@ -35,6 +45,14 @@ public class ZookeeperConfiguration {
         if ((numberOfRetries != null) && (numberOfRetries > 0)) {
             this.numberOfRetries = numberOfRetries;
         }
+
+        if (partitionLeadership != null) {
+            this.partitionLeadership = partitionLeadership;
+        }
+
+        if ((rebalanceInterval != null) && (rebalanceInterval > 0)) {
+            this.rebalanceInterval = rebalanceInterval;
+        }
     }
 
     public String getConnectionString() { return this.connectionString; }
@@ -44,4 +62,8 @@ public class ZookeeperConfiguration {
     public int getNumberOfRetries() { return this.numberOfRetries; }
 
     public String getLeaderSelectorPath() { return this.leaderSelectorPath; }
+
+    public boolean isPartitionLeadership() { return this.partitionLeadership; }
+
+    public int getRebalanceInterval() { return this.rebalanceInterval; }
 }
@@ -0,0 +1,20 @@
+package com.microsoft.azure.practices.nvadaemon.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A value that is set rather than accumulated, such as whether this daemon is the leader.
+ */
+public final class Gauge {
+    private final AtomicLong value = new AtomicLong();
+
+    public void set(long value) {
+        this.value.set(value);
+    }
+
+    public void set(boolean value) {
+        this.set(value ? 1 : 0);
+    }
+
+    public long get() { return this.value.get(); }
+}
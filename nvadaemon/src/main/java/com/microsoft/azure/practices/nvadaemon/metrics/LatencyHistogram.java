@@ -0,0 +1,145 @@
+package com.microsoft.azure.practices.nvadaemon.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds with log-linear buckets, in the style of
+ * HdrHistogram.  Every power of two is split into 16 buckets, so any recorded value is known to
+ * within 1/16 of itself from 32ns up to the largest long.  Recording is lock free and never
+ * allocates, so it can be used on the probe and failover paths.  Readers see each bucket
+ * atomically, but not the histogram as a whole.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Values below this have a bucket each.
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT << 1;
+    private static final int LINEAR_LIMIT_BITS = SUB_BUCKET_BITS + 1;
+    static final int BUCKET_COUNT =
+        LINEAR_LIMIT + (Long.SIZE - 1 - LINEAR_LIMIT_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long duration, TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        this.record(unit.toNanos(duration));
+    }
+
+    /**
+     * Records the time since start, a value of System.nanoTime().
+     */
+    public void recordSince(long start) {
+        this.record(System.nanoTime() - start);
+    }
+
+    private void record(long nanos) {
+        // The clock only goes backwards across threads by a little, so we treat that as 0.
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(getBucketIndex(value));
+        this.sum.add(value);
+        long max;
+        while ((value > (max = this.max.get())) && (!this.max.compareAndSet(max, value))) {
+            // Another thread raised the max first, so we compare against theirs.
+        }
+
+        this.count.incrementAndGet();
+    }
+
+    public long getCount() { return this.count.get(); }
+
+    public long getSum(TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        return unit.convert(this.sum.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getMax(TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        return unit.convert(this.max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the smallest value that at least percentile percent of the recorded values are
+     * less than or equal to, rounded up to the top of its bucket.  Returns 0 if nothing has been
+     * recorded.
+     */
+    public long getValueAtPercentile(double percentile, TimeUnit unit) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100,
+            "percentile must be between 0 and 100");
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += this.counts.get(i);
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        // Values recorded since we counted them only push the answer up a little.
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return unit.convert(Math.min(getBucketUpperBound(i), this.max.get()),
+                    TimeUnit.NANOSECONDS);
+            }
+        }
+
+        return unit.convert(this.max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of recorded values in buckets that lie entirely at or below value.
+     * This is exact when value is the top of a bucket, and otherwise leaves out the values that
+     * share value's bucket.
+     */
+    public long getCountAtOrBelow(long value, TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        long nanos = unit.toNanos(value);
+        if (nanos < 0) {
+            return 0;
+        }
+
+        int index = getBucketIndex(nanos);
+        if (getBucketUpperBound(index) > nanos) {
+            index--;
+        }
+
+        long count = 0;
+        for (int i = 0; i <= index; i++) {
+            count += this.counts.get(i);
+        }
+
+        return count;
+    }
+
+    static int getBucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int)value;
+        }
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return LINEAR_LIMIT + (exponent - LINEAR_LIMIT_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long getBucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + LINEAR_LIMIT_BITS;
+        long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT;
+        // The top of the last bucket wraps round to Long.MAX_VALUE.
+        return ((SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,171 @@
+package com.microsoft.azure.practices.nvadaemon.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * The histograms and gauges a daemon records, each named by a metric name and any number of
+ * labels.  Looking a metric up allocates, so code that records on every probe should look its
+ * metrics up once and keep them.  The metrics are kept in order, so they can be published
+ * without copying or sorting them.
+ */
+public final class MetricRegistry {
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+    private final ConcurrentNavigableMap<MetricName, LatencyHistogram> histograms;
+    private final ConcurrentNavigableMap<MetricName, Gauge> gauges;
+    private final String[] labels;
+
+    public MetricRegistry() {
+        this(new ConcurrentSkipListMap<>(), new ConcurrentSkipListMap<>(), new String[0]);
+    }
+
+    private MetricRegistry(ConcurrentNavigableMap<MetricName, LatencyHistogram> histograms,
+                           ConcurrentNavigableMap<MetricName, Gauge> gauges, String[] labels) {
+        this.histograms = histograms;
+        this.gauges = gauges;
+        this.labels = labels;
+    }
+
+    /**
+     * A metric name and its labels, which are given as label name and label value pairs and
+     * are published in that order.
+     */
+    public static final class MetricName implements Comparable<MetricName> {
+        private final String name;
+        private final String[] labels;
+
+        public MetricName(String name, String... labels) {
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(name) &&
+                NAME_PATTERN.matcher(name).matches(), "name is not a valid metric name");
+            checkLabels(labels);
+            this.name = name;
+            this.labels = labels.clone();
+        }
+
+        public String getName() { return this.name; }
+
+        public int getLabelCount() { return this.labels.length / 2; }
+
+        public String getLabelName(int index) { return this.labels[index * 2]; }
+
+        public String getLabelValue(int index) { return this.labels[index * 2 + 1]; }
+
+        @Override
+        public int compareTo(MetricName other) {
+            int result = this.name.compareTo(other.name);
+            for (int i = 0; (result == 0) && (i < this.labels.length); i++) {
+                result = i < other.labels.length ?
+                    this.labels[i].compareTo(other.labels[i]) : 1;
+            }
+
+            return (result == 0) && (this.labels.length < other.labels.length) ? -1 : result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof MetricName)) {
+                return false;
+            }
+
+            MetricName other = (MetricName)o;
+            return this.name.equals(other.name) && Arrays.equals(this.labels, other.labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.name.hashCode() + Arrays.hashCode(this.labels);
+        }
+
+        @Override
+        public String toString() {
+            if (this.labels.length == 0) {
+                return this.name;
+            }
+
+            StringBuilder text = new StringBuilder(this.name).append('{');
+            for (int i = 0; i < this.labels.length; i += 2) {
+                text.append(i == 0 ? "" : ",").append(this.labels[i]).append("=\"")
+                    .append(this.labels[i + 1]).append('"');
+            }
+
+            return text.append('}').toString();
+        }
+    }
+
+    /**
+     * Returns a view of this registry that puts labels, given as label name and label value
+     * pairs, in front of the labels of every metric looked up through it.  A daemon running
+     * several monitors gives each one a view, so their metrics are kept apart.
+     */
+    public MetricRegistry withLabels(String... labels) {
+        checkLabels(labels);
+        return new MetricRegistry(this.histograms, this.gauges, this.getLabels(labels));
+    }
+
+    private static void checkLabels(String[] labels) {
+        Preconditions.checkNotNull(labels, "labels cannot be null");
+        Preconditions.checkArgument(labels.length % 2 == 0,
+            "labels must be label name and label value pairs");
+        for (int i = 0; i < labels.length; i += 2) {
+            Preconditions.checkArgument((labels[i] != null) &&
+                NAME_PATTERN.matcher(labels[i]).matches(),
+                "labels contains an invalid label name");
+            Preconditions.checkArgument(labels[i + 1] != null,
+                "label " + labels[i] + " has no value");
+            for (int j = 0; j < i; j += 2) {
+                Preconditions.checkArgument(!labels[i].equals(labels[j]),
+                    "label " + labels[i] + " is set more than once");
+            }
+        }
+    }
+
+    private String[] getLabels(String... labels) {
+        if (this.labels.length == 0) {
+            return labels;
+        }
+
+        String[] result = Arrays.copyOf(this.labels, this.labels.length + labels.length);
+        System.arraycopy(labels, 0, result, this.labels.length, labels.length);
+        return result;
+    }
+
+    public LatencyHistogram getHistogram(String name, String... labels) {
+        MetricName metricName = new MetricName(name, this.getLabels(labels));
+        LatencyHistogram histogram = this.histograms.get(metricName);
+        return histogram != null ? histogram :
+            this.histograms.computeIfAbsent(metricName, n -> new LatencyHistogram());
+    }
+
+    /**
+     * Returns a read-only view of every histogram, ordered by name and then labels.  The view
+     * is live, and iterating it while metrics are added never fails.
+     */
+    public SortedMap<MetricName, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableSortedMap(this.histograms);
+    }
+
+    public Gauge getGauge(String name, String... labels) {
+        MetricName metricName = new MetricName(name, this.getLabels(labels));
+        Gauge gauge = this.gauges.get(metricName);
+        return gauge != null ? gauge : this.gauges.computeIfAbsent(metricName, n -> new Gauge());
+    }
+
+    /**
+     * Returns a read-only view of every gauge, ordered like getHistograms().
+     */
+    public SortedMap<MetricName, Gauge> getGauges() {
+        return Collections.unmodifiableSortedMap(this.gauges);
+    }
+}
@@ -0,0 +1,243 @@
+package com.microsoft.azure.practices.nvadaemon.metrics;
+
+import com.google.common.base.Preconditions;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the daemon's metrics at /metrics in the Prometheus text format.  Requests are handled
+ * one at a time on the server's own thread, and only read the registry's atomics, so a scrape
+ * never waits on, or holds up, a monitor.  The response is rendered straight from the registry,
+ * which is iterated in order without being copied, into buffers that are kept between scrapes.
+ */
+public final class MetricsServer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(MetricsServer.class);
+    static final String PATH = "/metrics";
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    static final String PREFIX = "nvadaemon_";
+    private static final int STOP_DELAY_SECONDS = 1;
+    // The histogram bucket bounds we publish, in nanoseconds, from 1ms to 2 minutes.
+    private static final long[] BUCKET_BOUNDS = {
+        1000000L, 5000000L, 10000000L, 25000000L, 50000000L, 100000000L, 250000000L,
+        500000000L, 1000000000L, 2500000000L, 5000000000L, 10000000000L, 30000000000L,
+        60000000000L, 120000000000L
+    };
+    private static final String[] BUCKET_LABELS = {
+        "0.001", "0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10",
+        "30", "60", "120"
+    };
+
+    private final MetricRegistry metricRegistry;
+    private final HttpServer server;
+    private final ExecutorService executorService;
+    private final StringBuilder text = new StringBuilder(4096);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer body = ByteBuffer.allocate(4096);
+
+    /**
+     * Creates a server listening on port, or on any free port if port is 0.  It must be started
+     * before it serves anything.
+     */
+    public MetricsServer(int port, MetricRegistry metricRegistry) throws IOException {
+        Preconditions.checkArgument(port >= 0 && port <= 65535,
+            "port must be between 0 and 65535");
+        this.metricRegistry = Preconditions.checkNotNull(metricRegistry,
+            "metricRegistry cannot be null");
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executorService = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(this.executorService);
+        this.server.createContext(PATH, this::handle);
+    }
+
+    public InetSocketAddress getAddress() {
+        return this.server.getAddress();
+    }
+
+    public void start() {
+        log.info("Serving metrics on port " + this.getAddress().getPort());
+        this.server.start();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(STOP_DELAY_SECONDS);
+        this.executorService.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!PATH.equals(exchange.getRequestURI().getPath())) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            ByteBuffer body = this.render();
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, body.remaining());
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Error serving metrics", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private ByteBuffer render() {
+        this.text.setLength(0);
+        write(this.metricRegistry, this.text);
+        // The body only grows until it fits the largest response we have rendered.
+        while (true) {
+            this.body.clear();
+            this.encoder.reset();
+            CharBuffer chars = CharBuffer.wrap(this.text);
+            CoderResult result = this.encoder.encode(chars, this.body, true);
+            if (!result.isOverflow()) {
+                result = this.encoder.flush(this.body);
+            }
+
+            if (!result.isOverflow()) {
+                this.body.flip();
+                return this.body;
+            }
+
+            this.body = ByteBuffer.allocate(this.body.capacity() * 2);
+        }
+    }
+
+    /**
+     * Writes every metric in metricRegistry to text.  Histograms are published in seconds, as
+     * cumulative buckets; a bucket's count leaves out values that share its bound's bucket in
+     * the histogram, so it may be a little low.
+     */
+    static void write(MetricRegistry metricRegistry, StringBuilder text) {
+        String previous = null;
+        for (Map.Entry<MetricRegistry.MetricName, Gauge> entry :
+            metricRegistry.getGauges().entrySet()) {
+            MetricRegistry.MetricName name = entry.getKey();
+            if (!name.getName().equals(previous)) {
+                previous = name.getName();
+                text.append("# TYPE ").append(PREFIX).append(previous).append(" gauge\n");
+            }
+
+            text.append(PREFIX).append(name.getName());
+            writeLabels(name, null, text);
+            text.append(' ').append(entry.getValue().get()).append('\n');
+        }
+
+        previous = null;
+        for (Map.Entry<MetricRegistry.MetricName, LatencyHistogram> entry :
+            metricRegistry.getHistograms().entrySet()) {
+            MetricRegistry.MetricName name = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            if (!name.getName().equals(previous)) {
+                previous = name.getName();
+                text.append("# TYPE ").append(PREFIX).append(previous)
+                    .append("_seconds histogram\n");
+            }
+
+            // We read the count first, so no bucket can be larger than the +Inf bucket.
+            long count = histogram.getCount();
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                text.append(PREFIX).append(name.getName()).append("_seconds_bucket");
+                writeLabels(name, BUCKET_LABELS[i], text);
+                text.append(' ')
+                    .append(Math.min(count,
+                        histogram.getCountAtOrBelow(BUCKET_BOUNDS[i], TimeUnit.NANOSECONDS)))
+                    .append('\n');
+            }
+
+            text.append(PREFIX).append(name.getName()).append("_seconds_bucket");
+            writeLabels(name, "+Inf", text);
+            text.append(' ').append(count).append('\n');
+            text.append(PREFIX).append(name.getName()).append("_seconds_sum");
+            writeLabels(name, null, text);
+            text.append(' ')
+                .append(histogram.getSum(TimeUnit.NANOSECONDS) / (double)TimeUnit.SECONDS.toNanos(1))
+                .append('\n');
+            text.append(PREFIX).append(name.getName()).append("_seconds_count");
+            writeLabels(name, null, text);
+            text.append(' ').append(count).append('\n');
+        }
+    }
+
+    private static void writeLabels(MetricRegistry.MetricName name, String le,
+                                    StringBuilder text) {
+        if ((name.getLabelCount() == 0) && (le == null)) {
+            return;
+        }
+
+        text.append('{');
+        for (int i = 0; i < name.getLabelCount(); i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+
+            text.append(name.getLabelName(i)).append("=\"");
+            writeLabelValue(name.getLabelValue(i), text);
+            text.append('"');
+        }
+
+        if (le != null) {
+            if (name.getLabelCount() > 0) {
+                text.append(',');
+            }
+
+            text.append("le=\"").append(le).append('"');
+        }
+
+        text.append('}');
+    }
+
+    private static void writeLabelValue(String value, StringBuilder text) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    text.append("\\\\");
+                    break;
+                case '"':
+                    text.append("\\\"");
+                    break;
+                case '\n':
+                    text.append("\\n");
+                    break;
+                default:
+                    text.append(c);
+            }
+        }
+    }
+}
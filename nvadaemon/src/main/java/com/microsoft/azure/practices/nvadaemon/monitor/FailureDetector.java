@@ -0,0 +1,21 @@
+package com.microsoft.azure.practices.nvadaemon.monitor;
+
+/**
+ * Decides whether a probed resource has failed from the history of its probes.  Timestamps
+ * are System.nanoTime() values.
+ */
+public interface FailureDetector {
+    /**
+     * Records a probe that succeeded, where timestamp is when its response arrived.
+     */
+    void success(long timestamp);
+
+    void failure(long timestamp);
+
+    boolean isAvailable(long timestamp);
+
+    /**
+     * Forgets the probe history, for example once the resource has been replaced.
+     */
+    void reset();
+}
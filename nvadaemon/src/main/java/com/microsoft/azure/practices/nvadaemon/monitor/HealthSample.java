@@ -0,0 +1,70 @@
+package com.microsoft.azure.practices.nvadaemon.monitor;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * One daemon's view of the health of the resources a monitor watches, as a bit per resource.
+ * The configurationId lets a reader ignore samples taken against a different configuration,
+ * where the bits would mean different resources.
+ */
+public final class HealthSample {
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 1 + Long.BYTES + Long.BYTES;
+
+    private final long timestamp;
+    private final long configurationId;
+    private final BitSet healthy;
+
+    public HealthSample(long timestamp, long configurationId, BitSet healthy) {
+        Preconditions.checkNotNull(healthy, "healthy cannot be null");
+        this.timestamp = timestamp;
+        this.configurationId = configurationId;
+        this.healthy = (BitSet)healthy.clone();
+    }
+
+    /**
+     * When the sample was taken, in milliseconds since the epoch.
+     */
+    public long getTimestamp() { return this.timestamp; }
+
+    public long getConfigurationId() { return this.configurationId; }
+
+    public boolean isHealthy(int index) { return this.healthy.get(index); }
+
+    /**
+     * Returns true if this sample reports the same health as another, whenever it was taken.
+     */
+    public boolean sameHealth(HealthSample other) {
+        return (other != null) && (this.configurationId == other.configurationId) &&
+            this.healthy.equals(other.healthy);
+    }
+
+    public byte[] toBytes() {
+        byte[] bits = this.healthy.toByteArray();
+        return ByteBuffer.allocate(HEADER_SIZE + bits.length)
+            .put(VERSION)
+            .putLong(this.timestamp)
+            .putLong(this.configurationId)
+            .put(bits)
+            .array();
+    }
+
+    public static HealthSample fromBytes(byte[] data) {
+        Preconditions.checkNotNull(data, "data cannot be null");
+        Preconditions.checkArgument(data.length >= HEADER_SIZE && data[0] == VERSION,
+            "Invalid health sample");
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.get();
+        long timestamp = buffer.getLong();
+        long configurationId = buffer.getLong();
+        return new HealthSample(timestamp, configurationId, BitSet.valueOf(buffer));
+    }
+
+    @Override
+    public String toString() {
+        return "HealthSample{timestamp=" + this.timestamp + ", healthy=" + this.healthy + "}";
+    }
+}
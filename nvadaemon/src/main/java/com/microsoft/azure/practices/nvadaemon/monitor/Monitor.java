@@ -5,4 +5,13 @@ import com.microsoft.azure.practices.nvadaemon.config.MonitorConfiguration;
 public interface Monitor extends AutoCloseable {
     //void init(MonitorConfiguration configuration) throws Exception;
     void init() throws Exception;
+
+    /**
+     * Called periodically on a standby daemon, between construction and init(), so the
+     * monitor can keep credentials and cached state current before it takes over.  It may
+     * run at the same time as observe(), but it has returned before init() is called, and it
+     * is interrupted if the daemon takes over while it is running.
+     */
+    default void refresh() throws Exception {
+    }
 }
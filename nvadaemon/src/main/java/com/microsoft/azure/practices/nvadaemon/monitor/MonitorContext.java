@@ -0,0 +1,24 @@
+package com.microsoft.azure.practices.nvadaemon.monitor;
+
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
+
+public interface MonitorContext {
+    String getName();
+
+    /**
+     * Returns a store that is shared by every daemon running this monitor, so a new leader
+     * can pick up where the previous one left off.
+     */
+    MonitorStateStore getStateStore();
+
+    /**
+     * Returns the health samples published by the other daemons running this monitor.
+     */
+    PeerHealth getPeerHealth();
+
+    /**
+     * Returns the daemon's metrics, which outlive any one monitor instance.  Every metric
+     * looked up through it is labelled with the monitor's name.
+     */
+    MetricRegistry getMetricRegistry();
+}
@@ -0,0 +1,10 @@
+package com.microsoft.azure.practices.nvadaemon.monitor;
+
+public interface MonitorStateStore {
+    /**
+     * Returns the data last written for {@code key}, or null if nothing has been written.
+     */
+    byte[] read(String key) throws Exception;
+
+    void write(String key, byte[] data) throws Exception;
+}
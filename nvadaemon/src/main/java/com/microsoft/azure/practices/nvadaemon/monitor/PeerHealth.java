@@ -0,0 +1,20 @@
+package com.microsoft.azure.practices.nvadaemon.monitor;
+
+import java.util.List;
+
+/**
+ * Health samples shared between the daemons running a monitor, so a leader can check that
+ * the other daemons see a failure before acting on it.
+ */
+public interface PeerHealth {
+    /**
+     * Publishes this daemon's latest sample.  Implementations may coalesce samples that do not
+     * change the reported health.
+     */
+    void publish(HealthSample sample) throws Exception;
+
+    /**
+     * Returns the latest sample published by each of the other daemons.
+     */
+    List<HealthSample> getPeerSamples() throws Exception;
+}
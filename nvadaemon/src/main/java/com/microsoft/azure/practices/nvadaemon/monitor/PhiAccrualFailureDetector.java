@@ -0,0 +1,130 @@
+package com.microsoft.azure.practices.nvadaemon.monitor;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phi accrual failure detector of Hayashibara et al.  Rather than counting failures, it
+ * keeps the distribution of the intervals between successful probe responses and reports how
+ * unlikely the current silence is, as phi = -log10(P(interval > silence)).  A phi of 8 means
+ * roughly a one in 10^8 chance that the resource is still up.
+ *
+ * <p>Response timestamps include the probe's round trip time, so the history reflects both the
+ * polling interval and the latency jitter of each resource.  The normal distribution is
+ * approximated with a logistic function, as in Akka's implementation.</p>
+ */
+public class PhiAccrualFailureDetector implements FailureDetector {
+    private final double threshold;
+    private final int maxSampleSize;
+    private final double minStdDeviation;
+    private final double acceptablePause;
+    private final double firstIntervalEstimate;
+
+    private final Deque<Long> intervals = new ArrayDeque<>();
+    private double intervalSum;
+    private double squaredIntervalSum;
+    private long lastTimestamp;
+    private boolean started = false;
+
+    public PhiAccrualFailureDetector(double threshold, int maxSampleSize, long minStdDeviation,
+                                     long acceptablePause, long firstIntervalEstimate,
+                                     TimeUnit unit) {
+        Preconditions.checkArgument(threshold > 0, "threshold must be greater than 0");
+        Preconditions.checkArgument(maxSampleSize > 0, "maxSampleSize must be greater than 0");
+        Preconditions.checkArgument(minStdDeviation > 0,
+            "minStdDeviation must be greater than 0");
+        Preconditions.checkArgument(acceptablePause >= 0,
+            "acceptablePause cannot be negative");
+        Preconditions.checkArgument(firstIntervalEstimate > 0,
+            "firstIntervalEstimate must be greater than 0");
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        this.threshold = threshold;
+        this.maxSampleSize = maxSampleSize;
+        this.minStdDeviation = unit.toNanos(minStdDeviation);
+        this.acceptablePause = unit.toNanos(acceptablePause);
+        this.firstIntervalEstimate = unit.toNanos(firstIntervalEstimate);
+    }
+
+    // The first event starts the clock, so a resource that never responds still times out.
+    private void start(long timestamp) {
+        if (!this.started) {
+            this.started = true;
+            this.lastTimestamp = timestamp;
+            long estimate = (long)this.firstIntervalEstimate;
+            long deviation = estimate / 4;
+            addInterval(estimate - deviation);
+            addInterval(estimate + deviation);
+        }
+    }
+
+    private void addInterval(long interval) {
+        if (this.intervals.size() >= this.maxSampleSize) {
+            long oldest = this.intervals.removeFirst();
+            this.intervalSum -= oldest;
+            this.squaredIntervalSum -= (double)oldest * oldest;
+        }
+
+        this.intervals.addLast(interval);
+        this.intervalSum += interval;
+        this.squaredIntervalSum += (double)interval * interval;
+    }
+
+    @Override
+    public synchronized void success(long timestamp) {
+        if (!this.started) {
+            start(timestamp);
+            return;
+        }
+
+        // An interval that already counts as a failure would skew the history.
+        long interval = timestamp - this.lastTimestamp;
+        if ((interval > 0) && isAvailable(timestamp)) {
+            addInterval(interval);
+        }
+
+        this.lastTimestamp = Math.max(this.lastTimestamp, timestamp);
+    }
+
+    @Override
+    public synchronized void failure(long timestamp) {
+        start(timestamp);
+    }
+
+    @Override
+    public synchronized boolean isAvailable(long timestamp) {
+        return phi(timestamp) < this.threshold;
+    }
+
+    public synchronized double phi(long timestamp) {
+        if (!this.started) {
+            return 0.0;
+        }
+
+        double n = this.intervals.size();
+        double mean = this.intervalSum / n;
+        double variance = Math.max(this.squaredIntervalSum / n - mean * mean, 0.0);
+        double stdDeviation = Math.max(Math.sqrt(variance), this.minStdDeviation);
+        return phi(timestamp - this.lastTimestamp, mean + this.acceptablePause, stdDeviation);
+    }
+
+    static double phi(double timeDiff, double mean, double stdDeviation) {
+        double y = (timeDiff - mean) / stdDeviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (timeDiff > mean) {
+            return -Math.log10(e / (1.0 + e));
+        } else {
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.intervals.clear();
+        this.intervalSum = 0;
+        this.squaredIntervalSum = 0;
+        this.started = false;
+    }
+}
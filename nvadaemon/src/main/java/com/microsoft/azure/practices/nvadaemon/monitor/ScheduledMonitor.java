@@ -7,4 +7,24 @@ public interface ScheduledMonitor extends Monitor {
     void execute();
     int getTime();
     TimeUnit getUnit();
+
+    /**
+     * Returns true while the monitor is confirming a failure it has seen.  The monitor is
+     * then probed every getConfirmationTime() rather than every getTime().
+     */
+    default boolean isConfirming() {
+        return false;
+    }
+
+    default int getConfirmationTime() {
+        return getTime();
+    }
+
+    /**
+     * Called every getTime() on a standby daemon, between construction and init(), so the
+     * monitor can share its own view of the resources with the leader through its
+     * MonitorContext's PeerHealth.  Like refresh(), it has returned before init() is called.
+     */
+    default void observe() throws Exception {
+    }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package com.microsoft.azure.practices.nvadaemon.monitor;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Considers a resource failed once a number of consecutive probes have failed.
+ */
+public class ThresholdFailureDetector implements FailureDetector {
+    private final int threshold;
+    private int failures = 0;
+
+    public ThresholdFailureDetector(int threshold) {
+        Preconditions.checkArgument(threshold > 0, "threshold must be greater than 0");
+        this.threshold = threshold;
+    }
+
+    @Override
+    public synchronized void success(long timestamp) {
+        this.failures = 0;
+    }
+
+    @Override
+    public synchronized void failure(long timestamp) {
+        this.failures++;
+    }
+
+    @Override
+    public synchronized boolean isAvailable(long timestamp) {
+        return this.failures < this.threshold;
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.failures = 0;
+    }
+}
@@ -0,0 +1,39 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of fixed size buffers for probe sessions.  The pool only ever grows to the number of
+ * buffers in use at once, which is bounded by the number of probes in a cycle.  It is owned by
+ * a single {@link ProbeEngine} and is not thread safe.
+ */
+final class BufferPool {
+    private final int bufferSize;
+    private final Deque<ByteBuffer> buffers = new ArrayDeque<>();
+
+    BufferPool(int bufferSize) {
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+        this.bufferSize = bufferSize;
+    }
+
+    int getBufferSize() { return this.bufferSize; }
+
+    int size() { return this.buffers.size(); }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = this.buffers.pollFirst();
+        return buffer == null ? ByteBuffer.allocate(this.bufferSize) : buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        Preconditions.checkNotNull(buffer, "buffer cannot be null");
+        Preconditions.checkArgument(buffer.capacity() == this.bufferSize,
+            "buffer does not belong to this pool");
+        buffer.clear();
+        this.buffers.offerFirst(buffer);
+    }
+}
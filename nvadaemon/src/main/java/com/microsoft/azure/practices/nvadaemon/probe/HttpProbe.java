@@ -0,0 +1,198 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends a GET request to the target, over TLS if requested, and checks the response status and,
+ * optionally, that the body contains some text.  Only the first {@link ProbeEngine#BUFFER_SIZE}
+ * bytes of the response are examined.
+ */
+public final class HttpProbe extends Probe {
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEADERS_END = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final boolean tls;
+    private final boolean verifyCertificate;
+    private final String path;
+    private final Integer expectedStatus;
+    private final String expectedBody;
+    private final byte[] expectedBodyBytes;
+    private final SSLContext sslContext;
+
+    /**
+     * @param expectedStatus the required status code, or null to accept any 2xx status
+     * @param expectedBody text the body must contain, or null to only check the status
+     */
+    public HttpProbe(boolean tls, boolean verifyCertificate, String path, Integer expectedStatus,
+                     String expectedBody) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(path) && path.startsWith("/"),
+            "path must start with /");
+        Preconditions.checkArgument(path.chars().noneMatch(c -> c <= ' ' || c > '~'),
+            "path must be encoded");
+        Preconditions.checkArgument(expectedStatus == null ||
+                (expectedStatus >= 100 && expectedStatus <= 599),
+            "expectedStatus must be between 100 and 599");
+        Preconditions.checkArgument(expectedBody == null || !expectedBody.isEmpty(),
+            "expectedBody cannot be empty");
+        this.tls = tls;
+        this.verifyCertificate = verifyCertificate;
+        this.path = path;
+        this.expectedStatus = expectedStatus;
+        this.expectedBody = expectedBody;
+        this.expectedBodyBytes = expectedBody == null ? null :
+            expectedBody.getBytes(StandardCharsets.UTF_8);
+        this.sslContext = tls ? TlsProbe.createSslContext(verifyCertificate) : null;
+    }
+
+    public boolean isTls() { return this.tls; }
+
+    public boolean isVerifyCertificate() { return this.verifyCertificate; }
+
+    public String getPath() { return this.path; }
+
+    public Integer getExpectedStatus() { return this.expectedStatus; }
+
+    public String getExpectedBody() { return this.expectedBody; }
+
+    @Override
+    ProbeSession newSession(SocketAddress target, BufferPool bufferPool) {
+        return new Session(target, bufferPool);
+    }
+
+    @Override
+    public String toString() { return (this.tls ? "https " : "http ") + this.path; }
+
+    private final class Session extends StreamProbeSession {
+        private ByteBuffer request;
+        private ByteBuffer response;
+
+        Session(SocketAddress target, BufferPool bufferPool) {
+            super(target, bufferPool, HttpProbe.this.sslContext);
+        }
+
+        @Override
+        protected boolean exchange(Transport transport) throws IOException {
+            if (this.request == null) {
+                this.request = this.acquireBuffer();
+                this.response = this.acquireBuffer();
+                byte[] request = this.createRequest();
+                if (request.length > this.request.capacity()) {
+                    throw new IOException("HTTP request too large");
+                }
+
+                this.request.put(request).flip();
+            }
+
+            while (this.request.hasRemaining()) {
+                if (transport.write(this.request) == 0) {
+                    return false;
+                }
+            }
+
+            if (!transport.flush()) {
+                return false;
+            }
+
+            while (true) {
+                if (!this.response.hasRemaining()) {
+                    return this.check(true);
+                }
+
+                int read = transport.read(this.response);
+                if (read < 0) {
+                    return this.check(true);
+                } else if (read == 0) {
+                    return false;
+                } else if (this.check(false)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        protected boolean isWriting() {
+            return (this.request != null) && this.request.hasRemaining();
+        }
+
+        private byte[] createRequest() {
+            String host = this.target.toString();
+            if (this.target instanceof InetSocketAddress) {
+                InetSocketAddress address = (InetSocketAddress)this.target;
+                host = address.getHostString();
+                if (host.indexOf(':') >= 0) {
+                    host = "[" + host + "]";
+                }
+
+                host += ":" + address.getPort();
+            }
+
+            return ("GET " + HttpProbe.this.path + " HTTP/1.1\r\n" +
+                "Host: " + host + "\r\n" +
+                "User-Agent: nvadaemon\r\n" +
+                "Accept: */*\r\n" +
+                "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+
+        /**
+         * @param complete whether the response will not grow any further
+         * @return true if the response passed, false if more of it is needed
+         */
+        private boolean check(boolean complete) throws IOException {
+            byte[] data = this.response.array();
+            int length = this.response.position();
+            int statusLineEnd = indexOf(data, 0, length, CRLF);
+            if (statusLineEnd < 0) {
+                if (complete) {
+                    throw new IOException("Incomplete HTTP response");
+                }
+
+                return false;
+            }
+
+            int status = parseStatus(new String(data, 0, statusLineEnd,
+                StandardCharsets.US_ASCII));
+            if (HttpProbe.this.expectedStatus == null ? (status < 200 || status > 299) :
+                status != HttpProbe.this.expectedStatus) {
+                throw new IOException("Unexpected HTTP status: " + status);
+            }
+
+            if (HttpProbe.this.expectedBodyBytes == null) {
+                return true;
+            }
+
+            int headersEnd = indexOf(data, statusLineEnd, length, HEADERS_END);
+            if ((headersEnd >= 0) && (indexOf(data, headersEnd + HEADERS_END.length, length,
+                HttpProbe.this.expectedBodyBytes) >= 0)) {
+                return true;
+            }
+
+            if (complete) {
+                throw new IOException("HTTP response does not contain '" +
+                    HttpProbe.this.expectedBody + "'");
+            }
+
+            return false;
+        }
+    }
+
+    private static int parseStatus(String statusLine) throws IOException {
+        String[] parts = statusLine.split(" ", 3);
+        if ((parts.length >= 2) && parts[0].startsWith("HTTP/")) {
+            try {
+                return Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                // Fall through to the error below
+            }
+        }
+
+        throw new IOException("Invalid HTTP status line: " + statusLine);
+    }
+}
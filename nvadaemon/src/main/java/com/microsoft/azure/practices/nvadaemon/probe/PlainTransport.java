@@ -0,0 +1,30 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+final class PlainTransport implements Transport {
+    private final SocketChannel channel;
+
+    PlainTransport(SocketChannel channel) {
+        this.channel = Preconditions.checkNotNull(channel, "channel cannot be null");
+    }
+
+    @Override
+    public boolean handshake() { return true; }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException { return this.channel.write(src); }
+
+    @Override
+    public boolean flush() { return true; }
+
+    @Override
+    public boolean hasPendingWrites() { return false; }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException { return this.channel.read(dst); }
+}
@@ -0,0 +1,14 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import java.net.SocketAddress;
+
+/**
+ * Describes how a {@link ProbeEngine} checks the health of a target.  Probes are immutable and
+ * can be shared between targets; the per-target state lives in the session each probe creates.
+ */
+public abstract class Probe {
+    Probe() {
+    }
+
+    abstract ProbeSession newSession(SocketAddress target, BufferPool bufferPool);
+}
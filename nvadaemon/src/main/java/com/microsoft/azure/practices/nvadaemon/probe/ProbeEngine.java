@@ -0,0 +1,178 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.channels.UnsupportedAddressTypeException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes a set of endpoints on a single selector, so one thread can check every NVA in a single
+ * poll cycle instead of waiting on each in turn.  Each target can use a different {@link Probe};
+ * the buffers the probes need are pooled and reused from one cycle to the next.
+ */
+public class ProbeEngine implements AutoCloseable {
+    /**
+     * Large enough for a TLS record, and the most of any response a probe will look at.
+     */
+    public static final int BUFFER_SIZE = 32 * 1024;
+
+    private final Selector selector;
+    private final BufferPool bufferPool = new BufferPool(BUFFER_SIZE);
+
+    public ProbeEngine() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    public synchronized Map<SocketAddress, ProbeResult> probe(
+        Collection<? extends SocketAddress> targets, long timeout, TimeUnit unit)
+        throws IOException {
+        Preconditions.checkNotNull(targets, "targets cannot be null");
+        Map<SocketAddress, Probe> probes = new LinkedHashMap<>();
+        for (SocketAddress target : targets) {
+            probes.put(Preconditions.checkNotNull(target, "target cannot be null"),
+                TcpProbe.INSTANCE);
+        }
+
+        return this.probe(probes, timeout, unit);
+    }
+
+    public synchronized Map<SocketAddress, ProbeResult> probe(
+        Map<? extends SocketAddress, ? extends Probe> probes, long timeout, TimeUnit unit)
+        throws IOException {
+        Preconditions.checkNotNull(probes, "probes cannot be null");
+        return this.probe(probes, probes.keySet(), timeout, timeout, unit);
+    }
+
+    /**
+     * Probes every target, but only waits up to timeout for the targets in required.  Once
+     * those have finished, the rest are given until optionalTimeout, and any still running
+     * are reported as timed out, so a target that never answers cannot hold up the targets
+     * the caller has to decide on.
+     */
+    public synchronized Map<SocketAddress, ProbeResult> probe(
+        Map<? extends SocketAddress, ? extends Probe> probes,
+        Set<? extends SocketAddress> required, long timeout, long optionalTimeout,
+        TimeUnit unit) throws IOException {
+        Preconditions.checkNotNull(probes, "probes cannot be null");
+        Preconditions.checkNotNull(required, "required cannot be null");
+        Preconditions.checkArgument(timeout > 0, "timeout must be greater than 0");
+        Preconditions.checkArgument(optionalTimeout > 0,
+            "optionalTimeout must be greater than 0");
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        Preconditions.checkState(this.selector.isOpen(), "ProbeEngine is closed");
+
+        Map<SocketAddress, ProbeResult> results = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        long requiredDeadline = start + unit.toNanos(timeout);
+        long optionalDeadline = start + unit.toNanos(Math.min(timeout, optionalTimeout));
+        int pending = 0;
+        int pendingRequired = 0;
+        try {
+            for (Map.Entry<? extends SocketAddress, ? extends Probe> entry : probes.entrySet()) {
+                SocketAddress target = Preconditions.checkNotNull(entry.getKey(),
+                    "target cannot be null");
+                Probe probe = Preconditions.checkNotNull(entry.getValue(),
+                    "probe cannot be null");
+                if (this.start(probe.newSession(target, this.bufferPool), start, results)) {
+                    pending++;
+                    if (required.contains(target)) {
+                        pendingRequired++;
+                    }
+                }
+            }
+
+            while (pending > 0) {
+                long remaining = (pendingRequired > 0 ? requiredDeadline : optionalDeadline) -
+                    System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+
+                this.selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    ProbeSession session = (ProbeSession)key.attachment();
+                    try {
+                        if (!session.ready()) {
+                            continue;
+                        }
+
+                        results.put(session.getTarget(), ProbeResult.success(
+                            session.getTarget(), System.nanoTime() - start,
+                            TimeUnit.NANOSECONDS));
+                    } catch (IOException e) {
+                        results.put(session.getTarget(), ProbeResult.failure(
+                            session.getTarget(), System.nanoTime() - start,
+                            TimeUnit.NANOSECONDS, e));
+                    }
+
+                    session.close();
+                    pending--;
+                    if (required.contains(session.getTarget())) {
+                        pendingRequired--;
+                    }
+                }
+            }
+        } finally {
+            // Anything still registered did not finish before the deadline.
+            for (SelectionKey key : this.selector.keys()) {
+                if (key.isValid()) {
+                    ProbeSession session = (ProbeSession)key.attachment();
+                    results.putIfAbsent(session.getTarget(), ProbeResult.failure(
+                        session.getTarget(), System.nanoTime() - start, TimeUnit.NANOSECONDS,
+                        new SocketTimeoutException("probe timed out")));
+                    session.close();
+                }
+            }
+
+            // Flush the cancelled keys so the next cycle starts with an empty selector.
+            this.selector.selectNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * @return true if the session is waiting on the selector
+     */
+    private boolean start(ProbeSession session, long start,
+                          Map<SocketAddress, ProbeResult> results) {
+        try {
+            if (session.start(this.selector)) {
+                results.put(session.getTarget(), ProbeResult.success(session.getTarget(),
+                    System.nanoTime() - start, TimeUnit.NANOSECONDS));
+                session.close();
+                return false;
+            }
+
+            return true;
+        } catch (IOException | UnresolvedAddressException | UnsupportedAddressTypeException e) {
+            results.put(session.getTarget(), ProbeResult.failure(session.getTarget(),
+                System.nanoTime() - start, TimeUnit.NANOSECONDS, e));
+            session.close();
+            return false;
+        }
+    }
+
+    int getPooledBufferCount() {
+        return this.bufferPool.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (SelectionKey key : this.selector.keys()) {
+            ((ProbeSession)key.attachment()).close();
+        }
+
+        this.selector.close();
+    }
+}
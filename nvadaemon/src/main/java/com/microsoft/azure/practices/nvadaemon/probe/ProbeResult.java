@@ -0,0 +1,81 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+public final class ProbeResult {
+    private final SocketAddress target;
+    private final boolean success;
+    private final long latency;
+    private final Throwable cause;
+
+    private ProbeResult(SocketAddress target, boolean success, long latency, Throwable cause) {
+        this.target = Preconditions.checkNotNull(target, "target cannot be null");
+        Preconditions.checkArgument(latency >= 0, "latency cannot be negative");
+        this.success = success;
+        this.latency = latency;
+        this.cause = cause;
+    }
+
+    public static ProbeResult success(SocketAddress target, long latency, TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        return new ProbeResult(target, true, unit.toNanos(latency), null);
+    }
+
+    public static ProbeResult failure(SocketAddress target, long latency, TimeUnit unit,
+                                      Throwable cause) {
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        Preconditions.checkNotNull(cause, "cause cannot be null");
+        return new ProbeResult(target, false, unit.toNanos(latency), cause);
+    }
+
+    /**
+     * Combines the results of probing several endpoints of one resource into a single result for
+     * the resource, which succeeds if at least quorum of the endpoints succeeded.  A successful
+     * result's latency is the time it took to reach the quorum.
+     */
+    public static ProbeResult quorum(SocketAddress target, Collection<ProbeResult> results,
+                                     int quorum) {
+        Preconditions.checkNotNull(results, "results cannot be null");
+        Preconditions.checkArgument(quorum > 0 && quorum <= results.size(),
+            "quorum must be between 1 and the number of results");
+        long[] successLatencies = results.stream()
+            .filter(r -> r.isSuccess())
+            .mapToLong(r -> r.latency)
+            .sorted()
+            .toArray();
+        if (successLatencies.length >= quorum) {
+            return new ProbeResult(target, true, successLatencies[quorum - 1], null);
+        }
+
+        IOException cause = new IOException(successLatencies.length + " of " + results.size() +
+            " probes succeeded, " + quorum + " required");
+        results.stream()
+            .filter(r -> !r.isSuccess())
+            .forEach(r -> cause.addSuppressed(new IOException(r.toString(), r.getCause())));
+        return new ProbeResult(target, false,
+            results.stream().mapToLong(r -> r.latency).max().getAsLong(), cause);
+    }
+
+    public SocketAddress getTarget() { return this.target; }
+
+    public boolean isSuccess() { return this.success; }
+
+    public long getLatency(TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit cannot be null");
+        return unit.convert(this.latency, TimeUnit.NANOSECONDS);
+    }
+
+    public Throwable getCause() { return this.cause; }
+
+    @Override
+    public String toString() {
+        return this.target + (this.success ? " succeeded" : " failed") + " after " +
+            TimeUnit.NANOSECONDS.toMillis(this.latency) + "ms" +
+            (this.cause == null ? "" : ": " + this.cause);
+    }
+}
@@ -0,0 +1,106 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state of a single probe of a single target.  The engine calls {@link #start(Selector)}
+ * once and then {@link #ready()} each time the session's channel is selected, until either
+ * returns true, one of them throws, or the probe times out.
+ */
+abstract class ProbeSession {
+    private static final Logger log = LoggerFactory.getLogger(ProbeSession.class);
+
+    protected final SocketAddress target;
+    private final BufferPool bufferPool;
+    private final List<ByteBuffer> buffers = new ArrayList<>(3);
+    private Selector selector;
+    private SelectionKey key;
+
+    ProbeSession(SocketAddress target, BufferPool bufferPool) {
+        this.target = Preconditions.checkNotNull(target, "target cannot be null");
+        this.bufferPool = Preconditions.checkNotNull(bufferPool, "bufferPool cannot be null");
+    }
+
+    SocketAddress getTarget() { return this.target; }
+
+    /**
+     * Opens the channel and starts the probe.
+     * @return true if the probe already succeeded
+     */
+    final boolean start(Selector selector) throws IOException {
+        this.selector = Preconditions.checkNotNull(selector, "selector cannot be null");
+        return this.open();
+    }
+
+    protected abstract boolean open() throws IOException;
+
+    /**
+     * Continues the probe once the channel is selected.
+     * @return true if the probe succeeded, false if it is still waiting on the channel
+     */
+    abstract boolean ready() throws IOException;
+
+    protected abstract SelectableChannel channel();
+
+    protected final void interest(int ops) throws ClosedChannelException {
+        if (this.key == null) {
+            this.key = this.channel().register(this.selector, ops, this);
+        } else {
+            this.key.interestOps(ops);
+        }
+    }
+
+    protected final ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = this.bufferPool.acquire();
+        this.buffers.add(buffer);
+        return buffer;
+    }
+
+    void close() {
+        if (this.key != null) {
+            this.key.cancel();
+        }
+
+        SelectableChannel channel = this.channel();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Error closing probe channel", e);
+            }
+        }
+
+        for (ByteBuffer buffer : this.buffers) {
+            this.bufferPool.release(buffer);
+        }
+
+        this.buffers.clear();
+    }
+
+    static int indexOf(byte[] data, int from, int to, byte[] pattern) {
+        for (int i = from; i <= to - pattern.length; i++) {
+            int j = 0;
+            while ((j < pattern.length) && (data[i + j] == pattern[j])) {
+                j++;
+            }
+
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,90 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A probe over a TCP connection, optionally secured with TLS.  On its own it succeeds once the
+ * connection (and handshake) is established; subclasses exchange data on top of it.
+ */
+class StreamProbeSession extends ProbeSession {
+    private final SSLContext sslContext;
+    private SocketChannel channel;
+    private Transport transport;
+
+    StreamProbeSession(SocketAddress target, BufferPool bufferPool, SSLContext sslContext) {
+        super(target, bufferPool);
+        this.sslContext = sslContext;
+    }
+
+    @Override
+    protected boolean open() throws IOException {
+        this.channel = SocketChannel.open();
+        this.channel.configureBlocking(false);
+        if (this.channel.connect(this.target)) {
+            return this.connected();
+        }
+
+        this.interest(SelectionKey.OP_CONNECT);
+        return false;
+    }
+
+    @Override
+    boolean ready() throws IOException {
+        if (this.transport == null) {
+            return this.channel.finishConnect() && this.connected();
+        }
+
+        return this.step();
+    }
+
+    @Override
+    protected SelectableChannel channel() { return this.channel; }
+
+    /**
+     * Exchanges application data once the transport is ready.
+     * @return true if the probe succeeded, false if it is waiting on the channel
+     */
+    protected boolean exchange(Transport transport) throws IOException {
+        return true;
+    }
+
+    /**
+     * @return true if {@link #exchange(Transport)} is waiting to write rather than to read
+     */
+    protected boolean isWriting() {
+        return false;
+    }
+
+    private boolean connected() throws IOException {
+        this.transport = this.sslContext == null ? new PlainTransport(this.channel) :
+            new TlsTransport(this.channel, this.createEngine(), this.acquireBuffer(),
+                this.acquireBuffer(), this.acquireBuffer());
+        return this.step();
+    }
+
+    private boolean step() throws IOException {
+        if (this.transport.handshake() && this.exchange(this.transport)) {
+            return true;
+        }
+
+        this.interest(this.transport.hasPendingWrites() || this.isWriting() ?
+            SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        return false;
+    }
+
+    private SSLEngine createEngine() {
+        SSLEngine engine = this.target instanceof InetSocketAddress ?
+            this.sslContext.createSSLEngine(((InetSocketAddress)this.target).getHostString(),
+                ((InetSocketAddress)this.target).getPort()) :
+            this.sslContext.createSSLEngine();
+        engine.setUseClientMode(true);
+        return engine;
+    }
+}
@@ -0,0 +1,21 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import java.net.SocketAddress;
+
+/**
+ * Succeeds when a TCP connection to the target is accepted.
+ */
+public final class TcpProbe extends Probe {
+    public static final TcpProbe INSTANCE = new TcpProbe();
+
+    private TcpProbe() {
+    }
+
+    @Override
+    ProbeSession newSession(SocketAddress target, BufferPool bufferPool) {
+        return new StreamProbeSession(target, bufferPool, null);
+    }
+
+    @Override
+    public String toString() { return "tcp"; }
+}
@@ -0,0 +1,60 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.net.SocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Succeeds when a TLS handshake with the target completes.  Unless verifyCertificate is set,
+ * any certificate is accepted, since NVAs commonly present self-signed certificates and the
+ * probe only cares that the TLS stack is responding.
+ */
+public final class TlsProbe extends Probe {
+    private final boolean verifyCertificate;
+    private final SSLContext sslContext;
+
+    public TlsProbe(boolean verifyCertificate) {
+        this.verifyCertificate = verifyCertificate;
+        this.sslContext = createSslContext(verifyCertificate);
+    }
+
+    public boolean isVerifyCertificate() { return this.verifyCertificate; }
+
+    @Override
+    ProbeSession newSession(SocketAddress target, BufferPool bufferPool) {
+        return new StreamProbeSession(target, bufferPool, this.sslContext);
+    }
+
+    @Override
+    public String toString() { return "tls"; }
+
+    static SSLContext createSslContext(boolean verifyCertificate) {
+        try {
+            if (verifyCertificate) {
+                return SSLContext.getDefault();
+            }
+
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[] { new TrustAllTrustManager() }, null);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Error creating SSLContext", e);
+        }
+    }
+
+    private static final class TrustAllTrustManager implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
+    }
+}
@@ -0,0 +1,190 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import com.google.common.base.Preconditions;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Drives an {@link SSLEngine} over a non-blocking socket.  Delegated tasks run inline on the
+ * probing thread, since a probe handshake is a handful of small messages.
+ */
+final class TlsTransport implements Transport {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    // Encrypted bytes read from the channel, in write mode.
+    private final ByteBuffer netIn;
+    // Encrypted bytes waiting to be written to the channel, in read mode.
+    private final ByteBuffer netOut;
+    // Decrypted bytes not yet returned by read(), in write mode.
+    private final ByteBuffer appIn;
+    private boolean closed;
+
+    TlsTransport(SocketChannel channel, SSLEngine engine, ByteBuffer netIn, ByteBuffer netOut,
+                 ByteBuffer appIn) throws SSLException {
+        this.channel = Preconditions.checkNotNull(channel, "channel cannot be null");
+        this.engine = Preconditions.checkNotNull(engine, "engine cannot be null");
+        this.netIn = Preconditions.checkNotNull(netIn, "netIn cannot be null");
+        this.netOut = Preconditions.checkNotNull(netOut, "netOut cannot be null");
+        this.appIn = Preconditions.checkNotNull(appIn, "appIn cannot be null");
+        SSLSession session = engine.getSession();
+        if ((session.getPacketBufferSize() > Math.min(netIn.capacity(), netOut.capacity())) ||
+            (session.getApplicationBufferSize() > appIn.capacity())) {
+            throw new SSLException("Probe buffers are too small for TLS records");
+        }
+
+        this.netOut.flip();
+        this.engine.beginHandshake();
+    }
+
+    @Override
+    public boolean handshake() throws IOException {
+        while (true) {
+            switch (this.engine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = this.engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+
+                    break;
+                case NEED_WRAP:
+                    if (!this.flush()) {
+                        return false;
+                    }
+
+                    this.wrap(EMPTY);
+                    break;
+                case NEED_UNWRAP:
+                    if (!this.unwrap()) {
+                        if (this.closed) {
+                            throw new EOFException("Connection closed during TLS handshake");
+                        }
+
+                        return false;
+                    }
+
+                    break;
+                default:
+                    return this.flush();
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return this.flush() ? this.wrap(src) : 0;
+    }
+
+    @Override
+    public boolean flush() throws IOException {
+        while (this.netOut.hasRemaining()) {
+            if (this.channel.write(this.netOut) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean hasPendingWrites() { return this.netOut.hasRemaining(); }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        while ((this.appIn.position() == 0) && !this.closed) {
+            SSLEngineResult.HandshakeStatus status = this.engine.getHandshakeStatus();
+            boolean progress = ((status == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) ||
+                (status == SSLEngineResult.HandshakeStatus.FINISHED)) ?
+                this.unwrap() : this.handshake();
+            if (!progress) {
+                break;
+            }
+        }
+
+        if (this.appIn.position() == 0) {
+            return this.closed ? -1 : 0;
+        }
+
+        this.appIn.flip();
+        int count = Math.min(this.appIn.remaining(), dst.remaining());
+        ByteBuffer chunk = this.appIn.duplicate();
+        chunk.limit(chunk.position() + count);
+        dst.put(chunk);
+        this.appIn.position(this.appIn.position() + count);
+        this.appIn.compact();
+        return count;
+    }
+
+    private int wrap(ByteBuffer src) throws IOException {
+        SSLEngineResult result;
+        this.netOut.compact();
+        try {
+            result = this.engine.wrap(src, this.netOut);
+        } finally {
+            this.netOut.flip();
+        }
+
+        switch (result.getStatus()) {
+            case OK:
+                this.flush();
+                return result.bytesConsumed();
+            case CLOSED:
+                throw new EOFException("TLS session closed");
+            default:
+                throw new SSLException("Unexpected TLS wrap status: " + result.getStatus());
+        }
+    }
+
+    /**
+     * @return true if the engine made progress, false if it is waiting on the channel or the
+     * session is closed
+     */
+    private boolean unwrap() throws IOException {
+        while (true) {
+            SSLEngineResult result;
+            this.netIn.flip();
+            try {
+                result = this.engine.unwrap(this.netIn, this.appIn);
+            } finally {
+                this.netIn.compact();
+            }
+
+            switch (result.getStatus()) {
+                case OK:
+                    if ((result.bytesConsumed() > 0) || (result.bytesProduced() > 0)) {
+                        return true;
+                    }
+
+                    break;
+                case BUFFER_UNDERFLOW:
+                    break;
+                case CLOSED:
+                    this.closed = true;
+                    return false;
+                default:
+                    throw new SSLException("Unexpected TLS unwrap status: " + result.getStatus());
+            }
+
+            if (!this.netIn.hasRemaining()) {
+                throw new SSLException("TLS record too large");
+            }
+
+            int read = this.channel.read(this.netIn);
+            if (read < 0) {
+                this.closed = true;
+                return false;
+            } else if (read == 0) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The non-blocking byte stream a stream probe talks over, either the socket itself or TLS on
+ * top of it.  None of the methods block; they return early when the channel is not ready.
+ */
+interface Transport {
+    /**
+     * Advances any handshake.
+     * @return true once application data can be exchanged
+     */
+    boolean handshake() throws IOException;
+
+    int write(ByteBuffer src) throws IOException;
+
+    /**
+     * Writes anything the transport has buffered.
+     * @return true if nothing is left to write
+     */
+    boolean flush() throws IOException;
+
+    boolean hasPendingWrites();
+
+    /**
+     * @return the number of bytes read, which may be 0, or -1 at the end of the stream
+     */
+    int read(ByteBuffer dst) throws IOException;
+}
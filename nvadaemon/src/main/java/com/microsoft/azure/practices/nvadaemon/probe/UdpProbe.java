@@ -0,0 +1,95 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.Arrays;
+
+/**
+ * Sends a datagram to the target and succeeds when a reply arrives that contains the expected
+ * response, or any reply if there is no expected response.  An ICMP port unreachable reply
+ * fails the probe immediately.
+ */
+public final class UdpProbe extends Probe {
+    private final byte[] request;
+    private final byte[] expectedResponse;
+
+    public UdpProbe(byte[] request, byte[] expectedResponse) {
+        Preconditions.checkNotNull(request, "request cannot be null");
+        Preconditions.checkArgument(request.length > 0, "request cannot be empty");
+        Preconditions.checkArgument(request.length <= ProbeEngine.BUFFER_SIZE,
+            "request cannot be longer than " + ProbeEngine.BUFFER_SIZE + " bytes");
+        Preconditions.checkArgument(expectedResponse == null || expectedResponse.length > 0,
+            "expectedResponse cannot be empty");
+        this.request = Arrays.copyOf(request, request.length);
+        this.expectedResponse = expectedResponse == null ? null :
+            Arrays.copyOf(expectedResponse, expectedResponse.length);
+    }
+
+    @Override
+    ProbeSession newSession(SocketAddress target, BufferPool bufferPool) {
+        return new Session(target, bufferPool);
+    }
+
+    @Override
+    public String toString() { return "udp"; }
+
+    private final class Session extends ProbeSession {
+        private DatagramChannel channel;
+        private ByteBuffer buffer;
+        private boolean sent;
+
+        Session(SocketAddress target, BufferPool bufferPool) {
+            super(target, bufferPool);
+        }
+
+        @Override
+        protected boolean open() throws IOException {
+            this.channel = DatagramChannel.open();
+            this.channel.configureBlocking(false);
+            this.channel.connect(this.target);
+            this.buffer = this.acquireBuffer();
+            this.buffer.put(UdpProbe.this.request).flip();
+            return this.send();
+        }
+
+        @Override
+        boolean ready() throws IOException {
+            if (!this.sent) {
+                return this.send();
+            }
+
+            if (this.channel.read(this.buffer) == 0) {
+                return false;
+            }
+
+            if ((UdpProbe.this.expectedResponse == null) ||
+                (indexOf(this.buffer.array(), 0, this.buffer.position(),
+                    UdpProbe.this.expectedResponse) >= 0)) {
+                return true;
+            }
+
+            throw new IOException("Unexpected UDP response");
+        }
+
+        @Override
+        protected SelectableChannel channel() { return this.channel; }
+
+        private boolean send() throws IOException {
+            if (this.channel.write(this.buffer) == 0) {
+                this.interest(SelectionKey.OP_WRITE);
+                return false;
+            }
+
+            this.sent = true;
+            this.buffer.clear();
+            this.interest(SelectionKey.OP_READ);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.microsoft.azure.practices.nvadaemon.monitor.HealthSample;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+public class InMemoryPeerHealthTest {
+    @Test
+    void testNoPeers() {
+        InMemoryPeerHealth peerHealth = new InMemoryPeerHealth();
+        peerHealth.publish(new HealthSample(1000, 42, new BitSet()));
+        Assertions.assertTrue(peerHealth.getPeerSamples().isEmpty());
+    }
+
+    @Test
+    void testNullSample() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new InMemoryPeerHealth().publish(null));
+    }
+
+    @Test
+    void testJoin() {
+        InMemoryPeerHealth leader = new InMemoryPeerHealth();
+        InMemoryPeerHealth follower = leader.join();
+        leader.publish(new HealthSample(1000, 42, new BitSet()));
+        follower.publish(new HealthSample(1000, 42, new BitSet()));
+        follower.publish(new HealthSample(2000, 42, new BitSet()));
+        List<HealthSample> samples = leader.getPeerSamples();
+        Assertions.assertEquals(1, samples.size());
+        Assertions.assertEquals(2000, samples.get(0).getTimestamp());
+        Assertions.assertEquals(1, follower.getPeerSamples().size());
+    }
+}
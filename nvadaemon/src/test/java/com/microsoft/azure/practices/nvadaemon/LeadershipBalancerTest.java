@@ -0,0 +1,85 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LeadershipBalancerTest {
+    @Test
+    void testInvalidGroupCount() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new LeadershipBalancer(0));
+    }
+
+    @Test
+    void testNullGroup() {
+        LeadershipBalancer balancer = new LeadershipBalancer(1);
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> balancer.shouldYield(null, 1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> balancer.shouldRelease(null, 1));
+    }
+
+    @Test
+    void testFairShare() {
+        LeadershipBalancer balancer = new LeadershipBalancer(5);
+        Assertions.assertEquals(5, balancer.getFairShare(0));
+        Assertions.assertEquals(5, balancer.getFairShare(1));
+        Assertions.assertEquals(3, balancer.getFairShare(2));
+        Assertions.assertEquals(1, balancer.getFairShare(5));
+        Assertions.assertEquals(1, balancer.getFairShare(8));
+    }
+
+    @Test
+    void testSingleDaemonLeadsEverything() {
+        LeadershipBalancer balancer = new LeadershipBalancer(3);
+        Assertions.assertFalse(balancer.shouldYield("ingress", 1));
+        Assertions.assertFalse(balancer.shouldYield("egress", 1));
+        Assertions.assertFalse(balancer.shouldYield("east-west", 1));
+        Assertions.assertEquals(3, balancer.getLeadershipCount());
+        Assertions.assertFalse(balancer.shouldRelease("ingress", 1));
+    }
+
+    @Test
+    void testYieldOverFairShare() {
+        LeadershipBalancer balancer = new LeadershipBalancer(3);
+        Assertions.assertFalse(balancer.shouldYield("ingress", 3));
+        Assertions.assertTrue(balancer.shouldYield("egress", 3));
+        Assertions.assertEquals(1, balancer.getLeadershipCount());
+    }
+
+    @Test
+    void testYieldIsBounded() {
+        // A participant whose session has not expired yet must not leave a group unmonitored.
+        LeadershipBalancer balancer = new LeadershipBalancer(3);
+        Assertions.assertFalse(balancer.shouldYield("ingress", 3));
+        Assertions.assertTrue(balancer.shouldYield("egress", 3));
+        Assertions.assertTrue(balancer.shouldYield("egress", 3));
+        Assertions.assertFalse(balancer.shouldYield("egress", 3));
+        Assertions.assertEquals(2, balancer.getLeadershipCount());
+        balancer.released("egress");
+        Assertions.assertTrue(balancer.shouldYield("egress", 3));
+    }
+
+    @Test
+    void testReleaseOverFairShare() {
+        LeadershipBalancer balancer = new LeadershipBalancer(4);
+        Assertions.assertFalse(balancer.shouldYield("a", 1));
+        Assertions.assertFalse(balancer.shouldYield("b", 1));
+        Assertions.assertFalse(balancer.shouldYield("c", 1));
+        Assertions.assertFalse(balancer.shouldYield("d", 1));
+        // A second daemon joined, so two of the groups should move to it.
+        Assertions.assertTrue(balancer.shouldRelease("a", 2));
+        Assertions.assertTrue(balancer.shouldRelease("b", 2));
+        Assertions.assertFalse(balancer.shouldRelease("c", 2));
+        Assertions.assertFalse(balancer.shouldRelease("d", 2));
+        Assertions.assertEquals(2, balancer.getLeadershipCount());
+    }
+
+    @Test
+    void testReleaseUnknownGroup() {
+        LeadershipBalancer balancer = new LeadershipBalancer(1);
+        Assertions.assertFalse(balancer.shouldRelease("ingress", 2));
+        balancer.released("ingress");
+        Assertions.assertEquals(0, balancer.getLeadershipCount());
+    }
+}
@@ -4,6 +4,7 @@ import com.microsoft.azure.practices.nvadaemon.config.DaemonConfiguration;
 import com.microsoft.azure.practices.nvadaemon.config.MonitorConfiguration;
 import com.microsoft.azure.practices.nvadaemon.config.NvaDaemonConfiguration;
 import com.microsoft.azure.practices.nvadaemon.config.ZookeeperConfiguration;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.api.ACLBackgroundPathAndBytesable;
 import org.apache.curator.framework.api.ACLCreateModeBackgroundPathAndBytesable;
@@ -69,6 +70,62 @@ public class NvaLeaderSelectorListenerAdapterTest {
         nvaLeaderSelectorListenerAdapter.close();
     }
 
+    @Test
+    void testGroupWithoutBalancer() {
+        ZookeeperConfiguration zookeeperConfiguration =
+            new ZookeeperConfiguration("connection-string", "/leader-selector-path", null, null);
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        monitors.add(new MonitorConfiguration("com.company.Monitor", null));
+        NvaDaemonConfiguration nvaDaemonConfiguration = new NvaDaemonConfiguration(
+            zookeeperConfiguration, new DaemonConfiguration(monitors, null));
+        CuratorFramework curatorFramework = mock(CuratorFramework.class);
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new NvaLeaderSelectorListenerAdapter(nvaDaemonConfiguration,
+                curatorFramework, monitors.get(0), null));
+    }
+
+    @Test
+    void testCreateAdapters() throws Exception {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("probeReturnValue", "true");
+        settings.put("awaitTime", "2000");
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$ScheduledMonitorValidConstructor",
+                settings, "ingress"));
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$ScheduledMonitorValidConstructor",
+                settings, "egress"));
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration(monitors, null);
+        CuratorFramework curatorFramework = mock(CuratorFramework.class);
+        when(curatorFramework.getConnectionStateListenable())
+            .thenReturn(mock(Listenable.class));
+
+        Assertions.assertEquals(1, NvaLeaderSelectorListenerAdapter.create(
+            new NvaDaemonConfiguration(
+                new ZookeeperConfiguration("connection-string", "/leader-selector-path",
+                    null, null),
+                daemonConfiguration),
+            curatorFramework).size());
+
+        List<NvaLeaderSelectorListenerAdapter> adapters = NvaLeaderSelectorListenerAdapter.create(
+            new NvaDaemonConfiguration(
+                new ZookeeperConfiguration("connection-string", "/leader-selector-path",
+                    null, null, true, null),
+                daemonConfiguration),
+            curatorFramework);
+        Assertions.assertEquals(2, adapters.size());
+        for (NvaLeaderSelectorListenerAdapter adapter : adapters) {
+            adapter.start();
+        }
+
+        for (NvaLeaderSelectorListenerAdapter adapter : adapters) {
+            adapter.close();
+        }
+    }
+
     @Test
     void testTakeLeadership() throws Exception {
         ZookeeperConfiguration zookeeperConfiguration =
@@ -100,6 +157,47 @@ public class NvaLeaderSelectorListenerAdapterTest {
         task.get();
     }
 
+    @Test
+    void testLeaderGauge() throws Exception {
+        ZookeeperConfiguration zookeeperConfiguration =
+            new ZookeeperConfiguration("connection-string", "/leader-selector-path", null, null);
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("probeReturnValue", "true");
+        settings.put("awaitTime", "2000");
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$ScheduledMonitorValidConstructor",
+                settings));
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration(monitors, null);
+        NvaDaemonConfiguration nvaDaemonConfiguration = new NvaDaemonConfiguration(
+            zookeeperConfiguration, daemonConfiguration);
+
+        CuratorFramework curatorFramework = mock(CuratorFramework.class);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        NvaLeaderSelectorListenerAdapter nvaLeaderSelectorListenerAdapter =
+            new NvaLeaderSelectorListenerAdapter(nvaDaemonConfiguration, curatorFramework,
+                metricRegistry);
+        Assertions.assertFalse(nvaLeaderSelectorListenerAdapter.isLeader());
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<Void> task = executorService.submit(
+            () -> {
+                thread.set(Thread.currentThread());
+                nvaLeaderSelectorListenerAdapter.takeLeadership(curatorFramework);
+                return null;
+            });
+        Thread.sleep(1000);
+        Assertions.assertTrue(nvaLeaderSelectorListenerAdapter.isLeader());
+        Assertions.assertEquals(1, metricRegistry.getGauge(
+            NvaLeaderSelectorListenerAdapter.LEADER_METRIC).get());
+        thread.get().interrupt();
+        task.get();
+        Assertions.assertFalse(nvaLeaderSelectorListenerAdapter.isLeader());
+        Assertions.assertEquals(0, metricRegistry.getGauge(
+            NvaLeaderSelectorListenerAdapter.LEADER_METRIC).get());
+    }
+
     @Test
     void testTakeLeadershipInterrupted() throws Exception {
         ZookeeperConfiguration zookeeperConfiguration =
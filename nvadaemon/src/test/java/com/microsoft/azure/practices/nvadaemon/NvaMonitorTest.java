@@ -2,7 +2,9 @@ package com.microsoft.azure.practices.nvadaemon;
 
 import com.microsoft.azure.practices.nvadaemon.config.DaemonConfiguration;
 import com.microsoft.azure.practices.nvadaemon.config.MonitorConfiguration;
+import com.microsoft.azure.practices.nvadaemon.metrics.MetricRegistry;
 import com.microsoft.azure.practices.nvadaemon.monitor.Monitor;
+import com.microsoft.azure.practices.nvadaemon.monitor.MonitorContext;
 import com.microsoft.azure.practices.nvadaemon.monitor.ScheduledMonitor;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -11,9 +13,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SystemPropertyCondition.SystemProperty(key = "testMonitors", value = "enabled")
 public class NvaMonitorTest {
@@ -240,6 +247,411 @@ public class NvaMonitorTest {
         nvaMonitor.close();
     }
 
+    @Test
+    void testPrepareInvalidClassName() {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$InvalidClassName",
+                null));
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration(monitors, null);
+        NvaMonitor nvaMonitor = new NvaMonitor(daemonConfiguration);
+        Assertions.assertThrows(NvaMonitor.NvaMonitorException.class,
+            () -> nvaMonitor.prepare());
+    }
+
+    @Test
+    void testStartUsesPreparedMonitor() throws Exception {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$CountingMonitor",
+                null));
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration(monitors, null, 100);
+        CountingMonitor.instances.set(0);
+        CountingMonitor.refreshes.set(0);
+        NvaMonitor nvaMonitor = new NvaMonitor(daemonConfiguration);
+        nvaMonitor.prepare();
+        nvaMonitor.prepare();
+        Thread.sleep(1000);
+        Assertions.assertTrue(CountingMonitor.refreshes.get() > 0);
+        nvaMonitor.start();
+        Assertions.assertEquals(1, CountingMonitor.instances.get());
+        nvaMonitor.close();
+    }
+
+    @Test
+    void testSlowRefreshDoesNotDelayObserve() throws Exception {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("probeReturnValue", "true");
+        settings.put("awaitTime", "100");
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$SlowRefreshMonitor",
+                settings));
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration(monitors, null, 100);
+        SlowRefreshMonitor.observes.set(0);
+        NvaMonitor nvaMonitor = new NvaMonitor(daemonConfiguration);
+        nvaMonitor.prepare();
+        Thread.sleep(1000);
+        // The first refresh blocks for longer than we wait, but observing carries on.
+        Assertions.assertTrue(SlowRefreshMonitor.observes.get() > 5);
+        nvaMonitor.close();
+    }
+
+    @Test
+    void testStartWaitsForRefresh() throws Exception {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("probeReturnValue", "true");
+        settings.put("awaitTime", "100");
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$SlowRefreshMonitor",
+                settings));
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration(monitors, null, 100);
+        SlowRefreshMonitor.refreshing.set(false);
+        SlowRefreshMonitor.initDuringRefresh.set(false);
+        NvaMonitor nvaMonitor = new NvaMonitor(daemonConfiguration);
+        nvaMonitor.prepare();
+        Thread.sleep(300);
+        Assertions.assertTrue(SlowRefreshMonitor.refreshing.get());
+        long start = System.nanoTime();
+        nvaMonitor.start();
+        Thread.sleep(300);
+        // The refresh is interrupted rather than waited out, and has finished before init().
+        Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        Assertions.assertFalse(SlowRefreshMonitor.initDuringRefresh.get());
+        Assertions.assertFalse(SlowRefreshMonitor.refreshing.get());
+        nvaMonitor.close();
+    }
+
+    public static class SlowRefreshMonitor extends ScheduledMonitorValidConstructor {
+        static final AtomicInteger observes = new AtomicInteger();
+        static final AtomicBoolean refreshing = new AtomicBoolean();
+        static final AtomicBoolean initDuringRefresh = new AtomicBoolean();
+
+        public SlowRefreshMonitor(MonitorConfiguration monitorConfiguration) {
+            super(monitorConfiguration);
+        }
+
+        @Override
+        public void refresh() throws Exception {
+            refreshing.set(true);
+            try {
+                Thread.sleep(5000);
+            } finally {
+                refreshing.set(false);
+            }
+        }
+
+        @Override
+        public void init() throws Exception {
+            initDuringRefresh.compareAndSet(false, refreshing.get());
+        }
+
+        @Override
+        public void observe() {
+            observes.incrementAndGet();
+        }
+    }
+
+    @Test
+    void testMultipleMonitors() throws Exception {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        Map<String, Object> failingSettings = new HashMap<>();
+        failingSettings.put("initShouldThrowException", "true");
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$MonitorValidConstructor",
+                failingSettings, "failing"));
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("probeReturnValue", "true");
+        settings.put("awaitTime", "100");
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$ScheduledMonitorValidConstructor",
+                settings, "first"));
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$ScheduledMonitorValidConstructor",
+                settings, "second"));
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration(monitors, null);
+        ScheduledMonitorValidConstructor.probes.set(0);
+        NvaMonitor nvaMonitor = new NvaMonitor(daemonConfiguration);
+        Future<Void> task = nvaMonitor.start();
+        Thread.sleep(1000);
+        // The failing monitor must not stop the others.
+        Assertions.assertFalse(task.isDone());
+        Assertions.assertTrue(ScheduledMonitorValidConstructor.probes.get() > 10);
+        nvaMonitor.stop();
+        Assertions.assertThrows(ExecutionException.class,
+            () -> task.get(5000, TimeUnit.MILLISECONDS));
+        nvaMonitor.close();
+    }
+
+    @Test
+    void testFailedMonitorIsRestarted() throws Exception {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("probeReturnValue", "true");
+        settings.put("awaitTime", "100");
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$FlakyMonitor",
+                settings, "flaky"));
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$ScheduledMonitorValidConstructor",
+                settings, "healthy"));
+        FlakyMonitor.inits.set(0);
+        FlakyMonitor.probes.set(0);
+        NvaMonitor nvaMonitor = new NvaMonitor(new DaemonConfiguration(monitors, null));
+        Future<Void> task = nvaMonitor.start();
+        Thread.sleep(NvaMonitor.INITIAL_RESTART_DELAY_MS + 1000);
+        // The first init() fails, so the monitor only probes once it has been rebuilt.
+        Assertions.assertEquals(2, FlakyMonitor.inits.get());
+        Assertions.assertTrue(FlakyMonitor.probes.get() > 0);
+        Assertions.assertFalse(task.isDone());
+        nvaMonitor.stop();
+        // The failure is still reported once the monitors stop.
+        Assertions.assertThrows(ExecutionException.class,
+            () -> task.get(5000, TimeUnit.MILLISECONDS));
+        nvaMonitor.close();
+    }
+
+    public static class FlakyMonitor extends ScheduledMonitorValidConstructor {
+        static final AtomicInteger inits = new AtomicInteger();
+        static final AtomicInteger probes = new AtomicInteger();
+
+        public FlakyMonitor(MonitorConfiguration monitorConfiguration) {
+            super(monitorConfiguration);
+        }
+
+        @Override
+        public void init() throws Exception {
+            if (inits.incrementAndGet() == 1) {
+                throw new RuntimeException("Transient error in monitor init()");
+            }
+        }
+
+        @Override
+        public boolean probe() {
+            probes.incrementAndGet();
+            return super.probe();
+        }
+    }
+
+    @Test
+    void testMonitorMetricsAreLabelled() throws Exception {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$MetricsMonitor",
+                null, "first"));
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$MetricsMonitor",
+                null, "second"));
+        MetricRegistry metricRegistry = new MetricRegistry();
+        NvaMonitor nvaMonitor = new NvaMonitor(new DaemonConfiguration(monitors, null), null,
+            metricRegistry);
+        nvaMonitor.start();
+        Thread.sleep(500);
+        nvaMonitor.close();
+        Assertions.assertEquals(1, metricRegistry.getGauge(MetricsMonitor.METRIC,
+            NvaMonitor.MONITOR_LABEL, "first").get());
+        Assertions.assertEquals(1, metricRegistry.getGauge(MetricsMonitor.METRIC,
+            NvaMonitor.MONITOR_LABEL, "second").get());
+        Assertions.assertEquals(0, metricRegistry.getGauge(MetricsMonitor.METRIC).get());
+    }
+
+    public static class MetricsMonitor implements Monitor {
+        static final String METRIC = "initialized";
+        private final MonitorContext monitorContext;
+
+        public MetricsMonitor(MonitorConfiguration monitorConfiguration,
+                              MonitorContext monitorContext) {
+            this.monitorContext = monitorContext;
+        }
+
+        @Override
+        public void init() throws Exception {
+            this.monitorContext.getMetricRegistry().getGauge(METRIC).set(true);
+        }
+
+        @Override
+        public void close() throws Exception {
+        }
+    }
+
+    private static DaemonConfiguration createSlowMonitorConfiguration(String probeReturnValue,
+                                                                      String probeTime,
+                                                                      String executeTime) {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("probeReturnValue", probeReturnValue);
+        settings.put("awaitTime", "100");
+        settings.put("probeTime", probeTime);
+        settings.put("executeTime", executeTime);
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$SlowScheduledMonitor",
+                settings));
+        SlowScheduledMonitor.probes.set(0);
+        SlowScheduledMonitor.executes.set(0);
+        return new DaemonConfiguration(monitors, null);
+    }
+
+    @Test
+    void testScheduledMonitorFixedRate() throws Exception {
+        // With a fixed delay, a 50ms probe every 100ms would only tick about 6 times a second.
+        NvaMonitor nvaMonitor = new NvaMonitor(
+            createSlowMonitorConfiguration("true", "50", "0"));
+        nvaMonitor.start();
+        Thread.sleep(1050);
+        nvaMonitor.close();
+        Assertions.assertTrue(SlowScheduledMonitor.probes.get() >= 9);
+    }
+
+    @Test
+    void testScheduledMonitorOverrun() throws Exception {
+        // Ticks missed while a 250ms probe runs are skipped, not run back to back.
+        NvaMonitor nvaMonitor = new NvaMonitor(
+            createSlowMonitorConfiguration("true", "250", "0"));
+        nvaMonitor.start();
+        Thread.sleep(1050);
+        nvaMonitor.close();
+        Assertions.assertTrue(SlowScheduledMonitor.probes.get() >= 3);
+        Assertions.assertTrue(SlowScheduledMonitor.probes.get() <= 5);
+    }
+
+    @Test
+    void testStopDoesNotWaitForExecute() throws Exception {
+        NvaMonitor nvaMonitor = new NvaMonitor(
+            createSlowMonitorConfiguration("false", "0", "2000"));
+        Future<Void> task = nvaMonitor.start();
+        Thread.sleep(500);
+        Assertions.assertEquals(1, SlowScheduledMonitor.executes.get());
+        long start = System.nanoTime();
+        nvaMonitor.stop();
+        Assertions.assertTrue(
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+        Assertions.assertFalse(task.isDone());
+        task.get(5000, TimeUnit.MILLISECONDS);
+        Assertions.assertEquals(1, SlowScheduledMonitor.executes.get());
+        nvaMonitor.close();
+    }
+
+    @Test
+    void testScheduledMonitorConfirmation() throws Exception {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("probeReturnValue", "true");
+        settings.put("awaitTime", "200");
+        monitors.add(
+            new MonitorConfiguration(
+                "com.microsoft.azure.practices.nvadaemon.NvaMonitorTest$ConfirmingMonitor",
+                settings));
+        ConfirmingMonitor.probeTimes.clear();
+        NvaMonitor nvaMonitor = new NvaMonitor(new DaemonConfiguration(monitors, null));
+        nvaMonitor.start();
+        Thread.sleep(1000);
+        nvaMonitor.close();
+
+        // The monitor is confirming after the first probe, so the next four run 20ms apart,
+        // then it goes back to probing every 200ms.
+        List<Long> probeTimes = ConfirmingMonitor.probeTimes;
+        Assertions.assertTrue(probeTimes.size() >= 6);
+        Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(
+            probeTimes.get(4) - probeTimes.get(0)) < 150);
+        Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(
+            probeTimes.get(5) - probeTimes.get(4)) >= 150);
+    }
+
+    public static class ConfirmingMonitor extends ScheduledMonitorValidConstructor {
+        static final List<Long> probeTimes = new CopyOnWriteArrayList<>();
+
+        public ConfirmingMonitor(MonitorConfiguration monitorConfiguration) {
+            super(monitorConfiguration);
+        }
+
+        @Override
+        public boolean probe() {
+            probeTimes.add(System.nanoTime());
+            return super.probe();
+        }
+
+        @Override
+        public boolean isConfirming() {
+            return probeTimes.size() < 5;
+        }
+
+        @Override
+        public int getConfirmationTime() {
+            return 20;
+        }
+    }
+
+    public static class SlowScheduledMonitor extends ScheduledMonitorValidConstructor {
+        static final AtomicInteger probes = new AtomicInteger();
+        static final AtomicInteger executes = new AtomicInteger();
+        private final long probeTime;
+        private final long executeTime;
+
+        public SlowScheduledMonitor(MonitorConfiguration monitorConfiguration) {
+            super(monitorConfiguration);
+            this.probeTime = new Long(
+                (String)monitorConfiguration.getSettings().get("probeTime"));
+            this.executeTime = new Long(
+                (String)monitorConfiguration.getSettings().get("executeTime"));
+        }
+
+        private static void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean probe() {
+            probes.incrementAndGet();
+            sleep(this.probeTime);
+            return super.probe();
+        }
+
+        @Override
+        public void execute() {
+            executes.incrementAndGet();
+            sleep(this.executeTime);
+        }
+    }
+
+    public static class CountingMonitor implements Monitor {
+        static final AtomicInteger instances = new AtomicInteger();
+        static final AtomicInteger refreshes = new AtomicInteger();
+
+        public CountingMonitor(MonitorConfiguration monitorConfiguration) {
+            instances.incrementAndGet();
+        }
+
+        @Override
+        public void refresh() {
+            refreshes.incrementAndGet();
+        }
+
+        @Override
+        public void init() throws Exception {
+        }
+
+        @Override
+        public void close() throws Exception {
+        }
+    }
+
     public static class MonitorWithoutValidInterfaces {
         public MonitorWithoutValidInterfaces(MonitorConfiguration monitorConfiguration){
         }
@@ -359,6 +771,7 @@ public class NvaMonitorTest {
     }
 
     public static class ScheduledMonitorValidConstructor implements ScheduledMonitor {
+        static final AtomicInteger probes = new AtomicInteger();
 
         private boolean probeReturnValue;
         private int awaitTime;
@@ -371,6 +784,7 @@ public class NvaMonitorTest {
 
         @Override
         public boolean probe() {
+            probes.incrementAndGet();
             return this.probeReturnValue;
         }
 
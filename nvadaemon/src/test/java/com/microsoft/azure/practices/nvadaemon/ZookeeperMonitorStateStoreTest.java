@@ -0,0 +1,104 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CreateBuilder;
+import org.apache.curator.framework.api.GetDataBuilder;
+import org.apache.curator.framework.api.ProtectACLCreateModePathAndBytesable;
+import org.apache.curator.framework.api.SetDataBuilder;
+import org.apache.zookeeper.KeeperException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ZookeeperMonitorStateStoreTest {
+    private static final String PATH = "/monitors/monitor/state";
+    private static final byte[] DATA = new byte[] { 1, 2, 3 };
+
+    @Test
+    void test_null_client() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new ZookeeperMonitorStateStore(null, "/monitors/monitor"));
+    }
+
+    @Test
+    void test_invalid_base_path() {
+        CuratorFramework client = mock(CuratorFramework.class);
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ZookeeperMonitorStateStore(client, "monitors"));
+    }
+
+    @Test
+    void test_invalid_key() {
+        ZookeeperMonitorStateStore stateStore = new ZookeeperMonitorStateStore(
+            mock(CuratorFramework.class), "/monitors/monitor");
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> stateStore.read(""));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> stateStore.read("state/other"));
+    }
+
+    @Test
+    void test_read() throws Exception {
+        CuratorFramework client = mock(CuratorFramework.class);
+        GetDataBuilder getDataBuilder = mock(GetDataBuilder.class);
+        when(client.getData()).thenReturn(getDataBuilder);
+        when(getDataBuilder.forPath(PATH)).thenReturn(DATA);
+        ZookeeperMonitorStateStore stateStore =
+            new ZookeeperMonitorStateStore(client, "/monitors/monitor");
+        Assertions.assertArrayEquals(DATA, stateStore.read("state"));
+    }
+
+    @Test
+    void test_read_no_node() throws Exception {
+        CuratorFramework client = mock(CuratorFramework.class);
+        GetDataBuilder getDataBuilder = mock(GetDataBuilder.class);
+        when(client.getData()).thenReturn(getDataBuilder);
+        when(getDataBuilder.forPath(PATH)).thenThrow(new KeeperException.NoNodeException(PATH));
+        ZookeeperMonitorStateStore stateStore =
+            new ZookeeperMonitorStateStore(client, "/monitors/monitor");
+        Assertions.assertNull(stateStore.read("state"));
+    }
+
+    @Test
+    void test_write_existing_node() throws Exception {
+        CuratorFramework client = mock(CuratorFramework.class);
+        SetDataBuilder setDataBuilder = mock(SetDataBuilder.class);
+        when(client.setData()).thenReturn(setDataBuilder);
+        ZookeeperMonitorStateStore stateStore =
+            new ZookeeperMonitorStateStore(client, "/monitors/monitor");
+        stateStore.write("state", DATA);
+        verify(setDataBuilder, times(1)).forPath(PATH, DATA);
+        verify(client, never()).create();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void test_write_creates_node() throws Exception {
+        CuratorFramework client = mock(CuratorFramework.class);
+        SetDataBuilder setDataBuilder = mock(SetDataBuilder.class);
+        when(client.setData()).thenReturn(setDataBuilder);
+        when(setDataBuilder.forPath(PATH, DATA)).thenThrow(new KeeperException.NoNodeException(PATH));
+        CreateBuilder createBuilder = mock(CreateBuilder.class);
+        ProtectACLCreateModePathAndBytesable<String> parentsBuilder =
+            mock(ProtectACLCreateModePathAndBytesable.class);
+        when(client.create()).thenReturn(createBuilder);
+        when(createBuilder.creatingParentsIfNeeded()).thenReturn(parentsBuilder);
+        ZookeeperMonitorStateStore stateStore =
+            new ZookeeperMonitorStateStore(client, "/monitors/monitor");
+        stateStore.write("state", DATA);
+        verify(parentsBuilder, times(1)).forPath(PATH, DATA);
+    }
+
+    @Test
+    void test_write_null_data() {
+        ZookeeperMonitorStateStore stateStore = new ZookeeperMonitorStateStore(
+            mock(CuratorFramework.class), "/monitors/monitor");
+        Assertions.assertThrows(NullPointerException.class,
+            () -> stateStore.write("state", null));
+    }
+}
@@ -0,0 +1,151 @@
+package com.microsoft.azure.practices.nvadaemon;
+
+import com.microsoft.azure.practices.nvadaemon.monitor.HealthSample;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CreateBuilder;
+import org.apache.curator.framework.api.DeleteBuilder;
+import org.apache.curator.framework.api.GetChildrenBuilder;
+import org.apache.curator.framework.api.GetDataBuilder;
+import org.apache.curator.framework.api.ProtectACLCreateModePathAndBytesable;
+import org.apache.curator.framework.api.SetDataBuilder;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ZookeeperPeerHealthTest {
+    private static final String PATH = "/monitors/monitor/health";
+
+    private static HealthSample sample(long timestamp, boolean healthy) {
+        BitSet bitSet = new BitSet();
+        bitSet.set(0, healthy);
+        return new HealthSample(timestamp, 42, bitSet);
+    }
+
+    @Test
+    void testNullClient() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new ZookeeperPeerHealth(null, PATH));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        CuratorFramework client = mock(CuratorFramework.class);
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ZookeeperPeerHealth(client, "health"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ZookeeperPeerHealth(client, PATH, 0, TimeUnit.MILLISECONDS));
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new ZookeeperPeerHealth(client, PATH, 1000, null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPublishCreatesEphemeralNode() throws Exception {
+        CuratorFramework client = mock(CuratorFramework.class);
+        SetDataBuilder setDataBuilder = mock(SetDataBuilder.class);
+        when(client.setData()).thenReturn(setDataBuilder);
+        when(setDataBuilder.forPath(anyString(), any(byte[].class)))
+            .thenThrow(new KeeperException.NoNodeException());
+        CreateBuilder createBuilder = mock(CreateBuilder.class);
+        ProtectACLCreateModePathAndBytesable<String> parentsBuilder =
+            mock(ProtectACLCreateModePathAndBytesable.class);
+        ProtectACLCreateModePathAndBytesable<String> modeBuilder =
+            mock(ProtectACLCreateModePathAndBytesable.class);
+        when(client.create()).thenReturn(createBuilder);
+        when(createBuilder.creatingParentsIfNeeded()).thenReturn(parentsBuilder);
+        when(parentsBuilder.withMode(CreateMode.EPHEMERAL)).thenReturn(modeBuilder);
+        ZookeeperPeerHealth peerHealth = new ZookeeperPeerHealth(client, PATH);
+        Assertions.assertTrue(peerHealth.getPath().startsWith(PATH + "/"));
+        HealthSample sample = sample(1000, true);
+        peerHealth.publish(sample);
+        verify(modeBuilder, times(1)).forPath(peerHealth.getPath(), sample.toBytes());
+    }
+
+    @Test
+    void testPublishSkipsUnchangedHealth() throws Exception {
+        CuratorFramework client = mock(CuratorFramework.class);
+        SetDataBuilder setDataBuilder = mock(SetDataBuilder.class);
+        when(client.setData()).thenReturn(setDataBuilder);
+        ZookeeperPeerHealth peerHealth = new ZookeeperPeerHealth(client, PATH);
+        peerHealth.publish(sample(1000, true));
+        peerHealth.publish(sample(2000, true));
+        verify(setDataBuilder, times(1)).forPath(anyString(), any(byte[].class));
+        peerHealth.publish(sample(3000, false));
+        verify(setDataBuilder, times(2)).forPath(anyString(), any(byte[].class));
+        verify(client, never()).create();
+    }
+
+    @Test
+    void testPublishRefreshesUnchangedHealth() throws Exception {
+        CuratorFramework client = mock(CuratorFramework.class);
+        SetDataBuilder setDataBuilder = mock(SetDataBuilder.class);
+        when(client.setData()).thenReturn(setDataBuilder);
+        ZookeeperPeerHealth peerHealth = new ZookeeperPeerHealth(client, PATH, 1,
+            TimeUnit.MILLISECONDS);
+        peerHealth.publish(sample(1000, true));
+        Thread.sleep(5);
+        peerHealth.publish(sample(2000, true));
+        verify(setDataBuilder, times(2)).forPath(anyString(), any(byte[].class));
+    }
+
+    @Test
+    void testGetPeerSamples() throws Exception {
+        CuratorFramework client = mock(CuratorFramework.class);
+        ZookeeperPeerHealth peerHealth = new ZookeeperPeerHealth(client, PATH);
+        String self = peerHealth.getPath().substring(PATH.length() + 1);
+        GetChildrenBuilder getChildrenBuilder = mock(GetChildrenBuilder.class);
+        when(client.getChildren()).thenReturn(getChildrenBuilder);
+        when(getChildrenBuilder.forPath(PATH)).thenReturn(
+            Arrays.asList(self, "peer", "gone", "invalid"));
+        GetDataBuilder getDataBuilder = mock(GetDataBuilder.class);
+        when(client.getData()).thenReturn(getDataBuilder);
+        when(getDataBuilder.forPath(PATH + "/peer")).thenReturn(sample(1000, false).toBytes());
+        when(getDataBuilder.forPath(PATH + "/gone"))
+            .thenThrow(new KeeperException.NoNodeException());
+        when(getDataBuilder.forPath(PATH + "/invalid")).thenReturn(new byte[] { 1 });
+        List<HealthSample> samples = peerHealth.getPeerSamples();
+        Assertions.assertEquals(1, samples.size());
+        Assertions.assertEquals(1000, samples.get(0).getTimestamp());
+        Assertions.assertFalse(samples.get(0).isHealthy(0));
+        verify(getDataBuilder, never()).forPath(peerHealth.getPath());
+    }
+
+    @Test
+    void testGetPeerSamplesNoNode() throws Exception {
+        CuratorFramework client = mock(CuratorFramework.class);
+        GetChildrenBuilder getChildrenBuilder = mock(GetChildrenBuilder.class);
+        when(client.getChildren()).thenReturn(getChildrenBuilder);
+        when(getChildrenBuilder.forPath(PATH)).thenThrow(new KeeperException.NoNodeException());
+        ZookeeperPeerHealth peerHealth = new ZookeeperPeerHealth(client, PATH);
+        Assertions.assertTrue(peerHealth.getPeerSamples().isEmpty());
+    }
+
+    @Test
+    void testClose() throws Exception {
+        CuratorFramework client = mock(CuratorFramework.class);
+        SetDataBuilder setDataBuilder = mock(SetDataBuilder.class);
+        when(client.setData()).thenReturn(setDataBuilder);
+        DeleteBuilder deleteBuilder = mock(DeleteBuilder.class);
+        when(client.delete()).thenReturn(deleteBuilder);
+        ZookeeperPeerHealth peerHealth = new ZookeeperPeerHealth(client, PATH);
+        peerHealth.close();
+        verify(client, never()).delete();
+        peerHealth.publish(sample(1000, true));
+        peerHealth.close();
+        verify(deleteBuilder, times(1)).forPath(peerHealth.getPath());
+    }
+}
@@ -28,6 +28,24 @@ public class DaemonConfigurationTest {
         Assertions.assertEquals(monitors, daemonConfiguration.getMonitors());
     }
 
+    @Test
+    void test_duplicate_monitor_names() {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        monitors.add(new MonitorConfiguration("com.company.Monitor", null));
+        monitors.add(new MonitorConfiguration("com.company.Monitor", null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new DaemonConfiguration(monitors, null));
+    }
+
+    @Test
+    void test_multiple_monitors() {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        monitors.add(new MonitorConfiguration("com.company.Monitor", null, "ingress"));
+        monitors.add(new MonitorConfiguration("com.company.Monitor", null, "egress"));
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration(monitors, null);
+        Assertions.assertEquals(monitors, daemonConfiguration.getMonitors());
+    }
+
     @Test
     void test_default_shutdown_await_time() {
         List<MonitorConfiguration> monitors = new ArrayList<>();
@@ -65,4 +83,48 @@ public class DaemonConfigurationTest {
         Assertions.assertEquals(shutdownAwaitTime.intValue(),
             daemonConfiguration.getShutdownAwaitTime());
     }
+
+    @Test
+    void test_default_standby_refresh_interval() {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        monitors.add(new MonitorConfiguration("com.company.Monitor", null));
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration(monitors, null, -1);
+        Assertions.assertEquals(DaemonConfiguration.DEFAULT_STANDBY_REFRESH_INTERVAL,
+            daemonConfiguration.getStandbyRefreshInterval());
+    }
+
+    @Test
+    void test_valid_standby_refresh_interval() {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        monitors.add(new MonitorConfiguration("com.company.Monitor", null));
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration(monitors, null, 60000);
+        Assertions.assertEquals(60000, daemonConfiguration.getStandbyRefreshInterval());
+    }
+
+    @Test
+    void test_default_metrics_port() {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        monitors.add(new MonitorConfiguration("com.company.Monitor", null));
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration(monitors, null);
+        Assertions.assertEquals(0, daemonConfiguration.getMetricsPort());
+    }
+
+    @Test
+    void test_valid_metrics_port() {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        monitors.add(new MonitorConfiguration("com.company.Monitor", null));
+        DaemonConfiguration daemonConfiguration =
+            new DaemonConfiguration(monitors, null, null, 9404);
+        Assertions.assertEquals(9404, daemonConfiguration.getMetricsPort());
+    }
+
+    @Test
+    void test_invalid_metrics_port() {
+        List<MonitorConfiguration> monitors = new ArrayList<>();
+        monitors.add(new MonitorConfiguration("com.company.Monitor", null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new DaemonConfiguration(monitors, null, null, 0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new DaemonConfiguration(monitors, null, null, 65536));
+    }
 }
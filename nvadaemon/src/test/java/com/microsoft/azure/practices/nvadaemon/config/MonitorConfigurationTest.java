@@ -42,4 +42,30 @@ public class MonitorConfigurationTest {
             new MonitorConfiguration("com.company.Monitor", settings);
         Assertions.assertEquals("value", monitorConfiguration.getSettings().get("setting"));
     }
+
+    @Test
+    void test_default_name() {
+        MonitorConfiguration monitorConfiguration =
+            new MonitorConfiguration("com.company.Monitor", null);
+        Assertions.assertEquals("com.company.Monitor", monitorConfiguration.getName());
+    }
+
+    @Test
+    void test_empty_name() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new MonitorConfiguration("com.company.Monitor", null, ""));
+    }
+
+    @Test
+    void test_invalid_name() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new MonitorConfiguration("com.company.Monitor", null, "nva/group"));
+    }
+
+    @Test
+    void test_valid_name() {
+        MonitorConfiguration monitorConfiguration =
+            new MonitorConfiguration("com.company.Monitor", null, "nva-group-1");
+        Assertions.assertEquals("nva-group-1", monitorConfiguration.getName());
+    }
 }
@@ -120,4 +120,31 @@ public class ZookeeperConfigurationTest {
         Assertions.assertEquals(retrySleepTime.intValue(),
             zookeeperConfiguration.getRetrySleepTime());
     }
+
+    @Test
+    void test_default_partition_leadership() {
+        ZookeeperConfiguration zookeeperConfiguration =
+            new ZookeeperConfiguration("connection-string", "/leader-selector-path", null, null);
+        Assertions.assertFalse(zookeeperConfiguration.isPartitionLeadership());
+        Assertions.assertEquals(ZookeeperConfiguration.DEFAULT_REBALANCE_INTERVAL,
+            zookeeperConfiguration.getRebalanceInterval());
+    }
+
+    @Test
+    void test_partition_leadership() {
+        ZookeeperConfiguration zookeeperConfiguration =
+            new ZookeeperConfiguration("connection-string", "/leader-selector-path", null, null,
+                true, 1000);
+        Assertions.assertTrue(zookeeperConfiguration.isPartitionLeadership());
+        Assertions.assertEquals(1000, zookeeperConfiguration.getRebalanceInterval());
+    }
+
+    @Test
+    void test_invalid_rebalance_interval() {
+        ZookeeperConfiguration zookeeperConfiguration =
+            new ZookeeperConfiguration("connection-string", "/leader-selector-path", null, null,
+                true, 0);
+        Assertions.assertEquals(ZookeeperConfiguration.DEFAULT_REBALANCE_INTERVAL,
+            zookeeperConfiguration.getRebalanceInterval());
+    }
 }
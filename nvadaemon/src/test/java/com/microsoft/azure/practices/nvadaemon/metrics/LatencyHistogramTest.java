@@ -0,0 +1,115 @@
+package com.microsoft.azure.practices.nvadaemon.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+    @Test
+    void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assertions.assertEquals(0, histogram.getCount());
+        Assertions.assertEquals(0, histogram.getSum(TimeUnit.NANOSECONDS));
+        Assertions.assertEquals(0, histogram.getMax(TimeUnit.NANOSECONDS));
+        Assertions.assertEquals(0, histogram.getValueAtPercentile(99, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    void testNullUnit() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assertions.assertThrows(NullPointerException.class, () -> histogram.record(1, null));
+    }
+
+    @Test
+    void testInvalidPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> histogram.getValueAtPercentile(101, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    void testBucketsCoverEveryValue() {
+        Assertions.assertEquals(0, LatencyHistogram.getBucketIndex(0));
+        Assertions.assertEquals(LatencyHistogram.BUCKET_COUNT - 1,
+            LatencyHistogram.getBucketIndex(Long.MAX_VALUE));
+        Assertions.assertEquals(Long.MAX_VALUE,
+            LatencyHistogram.getBucketUpperBound(LatencyHistogram.BUCKET_COUNT - 1));
+        for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lowerBound = LatencyHistogram.getBucketUpperBound(i - 1) + 1;
+            Assertions.assertEquals(i, LatencyHistogram.getBucketIndex(lowerBound));
+            Assertions.assertEquals(i,
+                LatencyHistogram.getBucketIndex(LatencyHistogram.getBucketUpperBound(i)));
+        }
+    }
+
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        Assertions.assertEquals(100, histogram.getCount());
+        Assertions.assertEquals(5050, histogram.getSum(TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(100, histogram.getMax(TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(100, histogram.getValueAtPercentile(100, TimeUnit.MILLISECONDS));
+        long median = histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS);
+        Assertions.assertTrue(median >= 50000 && median <= 50000 * 17 / 16, "median " + median);
+        long p99 = histogram.getValueAtPercentile(99, TimeUnit.MICROSECONDS);
+        Assertions.assertTrue(p99 >= 99000 && p99 <= 100000, "p99 " + p99);
+    }
+
+    @Test
+    void testNegativeDurationIsRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5, TimeUnit.NANOSECONDS);
+        Assertions.assertEquals(1, histogram.getCount());
+        Assertions.assertEquals(0, histogram.getMax(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    void testCountAtOrBelow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10, TimeUnit.MILLISECONDS);
+        histogram.record(100, TimeUnit.MILLISECONDS);
+        histogram.record(1, TimeUnit.SECONDS);
+        Assertions.assertEquals(0, histogram.getCountAtOrBelow(5, TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(1, histogram.getCountAtOrBelow(50, TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(2, histogram.getCountAtOrBelow(500, TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(3, histogram.getCountAtOrBelow(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, histogram.getCountAtOrBelow(-1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testConcurrentRecording() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 4;
+        int recordsPerThread = 10000;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                executorService.submit(() -> {
+                    for (int i = 1; i <= recordsPerThread; i++) {
+                        histogram.record(i, TimeUnit.MICROSECONDS);
+                    }
+
+                    done.countDown();
+                });
+            }
+
+            Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        Assertions.assertEquals(threads * recordsPerThread, histogram.getCount());
+        Assertions.assertEquals(threads * recordsPerThread,
+            histogram.getCountAtOrBelow(Long.MAX_VALUE, TimeUnit.NANOSECONDS));
+        Assertions.assertEquals(recordsPerThread, histogram.getMax(TimeUnit.MICROSECONDS));
+    }
+}
@@ -0,0 +1,143 @@
+package com.microsoft.azure.practices.nvadaemon.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedMap;
+
+public class MetricRegistryTest {
+    @Test
+    void testInvalidName() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> metricRegistry.getHistogram("probe-latency"));
+    }
+
+    @Test
+    void testInvalidLabelName() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> metricRegistry.getHistogram("probe_latency", "1nva", "nva1"));
+    }
+
+    @Test
+    void testLabelNameWithoutValue() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> metricRegistry.getHistogram("probe_latency", "nva", null));
+    }
+
+    @Test
+    void testOddLabels() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> metricRegistry.getHistogram("probe_latency", "nva"));
+    }
+
+    @Test
+    void testDuplicateLabelName() {
+        MetricRegistry metricRegistry = new MetricRegistry().withLabels("monitor", "monitor1");
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> metricRegistry.getHistogram("probe_latency", "monitor", "monitor2"));
+    }
+
+    @Test
+    void testSameNameReturnsSameHistogram() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Assertions.assertSame(metricRegistry.getHistogram("failover_duration"),
+            metricRegistry.getHistogram("failover_duration"));
+        Assertions.assertSame(metricRegistry.getHistogram("probe_latency", "nva", "nva1"),
+            metricRegistry.getHistogram("probe_latency", "nva", "nva1"));
+        Assertions.assertNotSame(metricRegistry.getHistogram("probe_latency", "nva", "nva1"),
+            metricRegistry.getHistogram("probe_latency", "nva", "nva2"));
+    }
+
+    @Test
+    void testHistogramsAreOrdered() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.getHistogram("probe_latency", "nva", "nva2");
+        metricRegistry.getHistogram("failover_duration");
+        metricRegistry.getHistogram("probe_latency", "nva", "nva1");
+        Assertions.assertEquals(Arrays.asList(
+            new MetricRegistry.MetricName("failover_duration"),
+            new MetricRegistry.MetricName("probe_latency", "nva", "nva1"),
+            new MetricRegistry.MetricName("probe_latency", "nva", "nva2")),
+            new ArrayList<>(metricRegistry.getHistograms().keySet()));
+    }
+
+    @Test
+    void testSameNameReturnsSameGauge() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Assertions.assertSame(metricRegistry.getGauge("leader"),
+            metricRegistry.getGauge("leader"));
+        Assertions.assertNotSame(metricRegistry.getGauge("nva_active", "nva", "nva1"),
+            metricRegistry.getGauge("nva_active", "nva", "nva2"));
+    }
+
+    @Test
+    void testGaugesAreOrdered() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.getGauge("nva_active", "nva", "nva2");
+        metricRegistry.getGauge("leader");
+        metricRegistry.getGauge("nva_active", "nva", "nva1");
+        Assertions.assertEquals(Arrays.asList(
+            new MetricRegistry.MetricName("leader"),
+            new MetricRegistry.MetricName("nva_active", "nva", "nva1"),
+            new MetricRegistry.MetricName("nva_active", "nva", "nva2")),
+            new ArrayList<>(metricRegistry.getGauges().keySet()));
+    }
+
+    @Test
+    void testGaugesAreLive() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        SortedMap<MetricRegistry.MetricName, Gauge> gauges = metricRegistry.getGauges();
+        metricRegistry.getGauge("leader");
+        Assertions.assertEquals(Collections.singletonList(new MetricRegistry.MetricName("leader")),
+            new ArrayList<>(gauges.keySet()));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> gauges.clear());
+    }
+
+    @Test
+    void testWithLabels() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        MetricRegistry first = metricRegistry.withLabels("monitor", "first");
+        MetricRegistry second = metricRegistry.withLabels("monitor", "second");
+        Assertions.assertSame(first.getHistogram("failover_duration"),
+            metricRegistry.getHistogram("failover_duration", "monitor", "first"));
+        Assertions.assertNotSame(first.getHistogram("failover_duration"),
+            second.getHistogram("failover_duration"));
+        Assertions.assertSame(first.getGauge("nva_active", "nva", "nva1"),
+            metricRegistry.getGauge("nva_active", "monitor", "first", "nva", "nva1"));
+        Assertions.assertEquals(Arrays.asList(
+            new MetricRegistry.MetricName("failover_duration", "monitor", "first"),
+            new MetricRegistry.MetricName("failover_duration", "monitor", "second")),
+            new ArrayList<>(metricRegistry.getHistograms().keySet()));
+    }
+
+    @Test
+    void testLabelsAreOrdered() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.getGauge("nva_active", "monitor", "first", "nva", "nva2");
+        metricRegistry.getGauge("nva_active", "monitor", "first");
+        metricRegistry.getGauge("nva_active", "monitor", "first", "nva", "nva1");
+        Assertions.assertEquals(Arrays.asList(
+            new MetricRegistry.MetricName("nva_active", "monitor", "first"),
+            new MetricRegistry.MetricName("nva_active", "monitor", "first", "nva", "nva1"),
+            new MetricRegistry.MetricName("nva_active", "monitor", "first", "nva", "nva2")),
+            new ArrayList<>(metricRegistry.getGauges().keySet()));
+    }
+
+    @Test
+    void testMetricNameToString() {
+        Assertions.assertEquals("failover_duration",
+            new MetricRegistry.MetricName("failover_duration").toString());
+        Assertions.assertEquals("probe_latency{nva=\"nva1\"}",
+            new MetricRegistry.MetricName("probe_latency", "nva", "nva1").toString());
+        Assertions.assertEquals("probe_latency{monitor=\"first\",nva=\"nva1\"}",
+            new MetricRegistry.MetricName("probe_latency", "monitor", "first", "nva", "nva1")
+                .toString());
+    }
+}
@@ -0,0 +1,163 @@
+package com.microsoft.azure.practices.nvadaemon.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsServerTest {
+    private static HttpURLConnection open(MetricsServer server, String path) throws Exception {
+        URL url = new URL("http", "localhost", server.getAddress().getPort(), path);
+        return (HttpURLConnection)url.openConnection();
+    }
+
+    private static String read(HttpURLConnection connection) throws Exception {
+        try (InputStream input = connection.getInputStream()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testInvalidPort() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new MetricsServer(-1, new MetricRegistry()));
+    }
+
+    @Test
+    void testNullMetricRegistry() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new MetricsServer(0, null));
+    }
+
+    @Test
+    void testWriteGauges() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.getGauge("leader").set(true);
+        metricRegistry.getGauge("nva_active", "nva", "nva1").set(true);
+        metricRegistry.getGauge("nva_active", "nva", "nva2").set(false);
+        StringBuilder text = new StringBuilder();
+        MetricsServer.write(metricRegistry, text);
+        Assertions.assertEquals(
+            "# TYPE nvadaemon_leader gauge\n" +
+            "nvadaemon_leader 1\n" +
+            "# TYPE nvadaemon_nva_active gauge\n" +
+            "nvadaemon_nva_active{nva=\"nva1\"} 1\n" +
+            "nvadaemon_nva_active{nva=\"nva2\"} 0\n",
+            text.toString());
+    }
+
+    @Test
+    void testWriteHistogram() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        LatencyHistogram histogram = metricRegistry.getHistogram("failover_duration");
+        histogram.record(3, TimeUnit.SECONDS);
+        histogram.record(1, TimeUnit.HOURS);
+        StringBuilder text = new StringBuilder();
+        MetricsServer.write(metricRegistry, text);
+        String output = text.toString();
+        Assertions.assertTrue(output.startsWith(
+            "# TYPE nvadaemon_failover_duration_seconds histogram\n"));
+        Assertions.assertTrue(output.contains(
+            "nvadaemon_failover_duration_seconds_bucket{le=\"2.5\"} 0\n"));
+        Assertions.assertTrue(output.contains(
+            "nvadaemon_failover_duration_seconds_bucket{le=\"5\"} 1\n"));
+        Assertions.assertTrue(output.contains(
+            "nvadaemon_failover_duration_seconds_bucket{le=\"120\"} 1\n"));
+        Assertions.assertTrue(output.contains(
+            "nvadaemon_failover_duration_seconds_bucket{le=\"+Inf\"} 2\n"));
+        Assertions.assertTrue(output.contains(
+            "nvadaemon_failover_duration_seconds_sum 3603.0\n"));
+        Assertions.assertTrue(output.contains(
+            "nvadaemon_failover_duration_seconds_count 2\n"));
+    }
+
+    @Test
+    void testWriteEscapesLabelValues() {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.getHistogram("probe_latency", "nva", "a\\b\"c\nd")
+            .record(1, TimeUnit.MILLISECONDS);
+        StringBuilder text = new StringBuilder();
+        MetricsServer.write(metricRegistry, text);
+        Assertions.assertTrue(text.toString().contains(
+            "nvadaemon_probe_latency_seconds_bucket{nva=\"a\\\\b\\\"c\\nd\",le=\"+Inf\"} 1\n"));
+        Assertions.assertTrue(text.toString().contains(
+            "nvadaemon_probe_latency_seconds_count{nva=\"a\\\\b\\\"c\\nd\"} 1\n"));
+    }
+
+    @Test
+    void testWriteMultipleLabels() {
+        MetricRegistry metricRegistry = new MetricRegistry().withLabels("monitor", "first");
+        metricRegistry.getHistogram("probe_latency", "nva", "nva1")
+            .record(1, TimeUnit.MILLISECONDS);
+        StringBuilder text = new StringBuilder();
+        MetricsServer.write(metricRegistry, text);
+        Assertions.assertTrue(text.toString().contains(
+            "nvadaemon_probe_latency_seconds_bucket{monitor=\"first\",nva=\"nva1\",le=\"+Inf\"} 1\n"));
+        Assertions.assertTrue(text.toString().contains(
+            "nvadaemon_probe_latency_seconds_count{monitor=\"first\",nva=\"nva1\"} 1\n"));
+    }
+
+    @Test
+    void testServeMetrics() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.getGauge("leader").set(true);
+        try (MetricsServer server = new MetricsServer(0, metricRegistry)) {
+            server.start();
+            HttpURLConnection connection = open(server, "/metrics");
+            Assertions.assertEquals(200, connection.getResponseCode());
+            Assertions.assertEquals(MetricsServer.CONTENT_TYPE, connection.getContentType());
+            Assertions.assertEquals("# TYPE nvadaemon_leader gauge\nnvadaemon_leader 1\n",
+                read(connection));
+            // Each scrape reads the registry again.
+            metricRegistry.getGauge("leader").set(false);
+            Assertions.assertEquals("# TYPE nvadaemon_leader gauge\nnvadaemon_leader 0\n",
+                read(open(server, "/metrics")));
+        }
+    }
+
+    @Test
+    void testServeLargeResponse() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        for (int i = 0; i < 100; i++) {
+            metricRegistry.getHistogram("probe_latency", "nva", "nva" + i)
+                .record(i, TimeUnit.MILLISECONDS);
+        }
+
+        StringBuilder expected = new StringBuilder();
+        MetricsServer.write(metricRegistry, expected);
+        try (MetricsServer server = new MetricsServer(0, metricRegistry)) {
+            server.start();
+            Assertions.assertEquals(expected.toString(), read(open(server, "/metrics")));
+        }
+    }
+
+    @Test
+    void testUnknownPath() throws Exception {
+        try (MetricsServer server = new MetricsServer(0, new MetricRegistry())) {
+            server.start();
+            Assertions.assertEquals(404, open(server, "/metrics/other").getResponseCode());
+        }
+    }
+
+    @Test
+    void testUnsupportedMethod() throws Exception {
+        try (MetricsServer server = new MetricsServer(0, new MetricRegistry())) {
+            server.start();
+            HttpURLConnection connection = open(server, "/metrics");
+            connection.setRequestMethod("DELETE");
+            Assertions.assertEquals(405, connection.getResponseCode());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.microsoft.azure.practices.nvadaemon.monitor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+public class HealthSampleTest {
+    private static BitSet bits(int... indexes) {
+        BitSet bitSet = new BitSet();
+        for (int index : indexes) {
+            bitSet.set(index);
+        }
+
+        return bitSet;
+    }
+
+    @Test
+    void testNullHealthy() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new HealthSample(0, 0, null));
+    }
+
+    @Test
+    void testIsHealthy() {
+        HealthSample sample = new HealthSample(1000, 42, bits(0, 2));
+        Assertions.assertTrue(sample.isHealthy(0));
+        Assertions.assertFalse(sample.isHealthy(1));
+        Assertions.assertTrue(sample.isHealthy(2));
+        Assertions.assertFalse(sample.isHealthy(3));
+    }
+
+    @Test
+    void testHealthyIsCopied() {
+        BitSet healthy = bits(0);
+        HealthSample sample = new HealthSample(1000, 42, healthy);
+        healthy.clear(0);
+        Assertions.assertTrue(sample.isHealthy(0));
+    }
+
+    @Test
+    void testSameHealth() {
+        HealthSample sample = new HealthSample(1000, 42, bits(1));
+        Assertions.assertTrue(sample.sameHealth(new HealthSample(2000, 42, bits(1))));
+        Assertions.assertFalse(sample.sameHealth(new HealthSample(1000, 42, bits(0))));
+        Assertions.assertFalse(sample.sameHealth(new HealthSample(1000, 43, bits(1))));
+        Assertions.assertFalse(sample.sameHealth(null));
+    }
+
+    @Test
+    void testRoundTrip() {
+        HealthSample sample = HealthSample.fromBytes(
+            new HealthSample(1000, -7, bits(0, 9)).toBytes());
+        Assertions.assertEquals(1000, sample.getTimestamp());
+        Assertions.assertEquals(-7, sample.getConfigurationId());
+        Assertions.assertTrue(sample.isHealthy(0));
+        Assertions.assertFalse(sample.isHealthy(1));
+        Assertions.assertTrue(sample.isHealthy(9));
+    }
+
+    @Test
+    void testRoundTripNoneHealthy() {
+        HealthSample sample = HealthSample.fromBytes(
+            new HealthSample(1000, 42, new BitSet()).toBytes());
+        Assertions.assertFalse(sample.isHealthy(0));
+    }
+
+    @Test
+    void testFromBytesInvalid() {
+        Assertions.assertThrows(NullPointerException.class,
+            () -> HealthSample.fromBytes(null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> HealthSample.fromBytes(new byte[] { 1, 2, 3 }));
+        byte[] data = new HealthSample(1000, 42, new BitSet()).toBytes();
+        data[0] = 2;
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> HealthSample.fromBytes(data));
+    }
+}
@@ -0,0 +1,107 @@
+package com.microsoft.azure.practices.nvadaemon.monitor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class PhiAccrualFailureDetectorTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static PhiAccrualFailureDetector createDetector(long acceptablePause) {
+        return new PhiAccrualFailureDetector(8.0, 100, 10, acceptablePause, 1000,
+            TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void testInvalidArguments() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new PhiAccrualFailureDetector(0, 100, 10, 0, 1000, TimeUnit.MILLISECONDS));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new PhiAccrualFailureDetector(8.0, 0, 10, 0, 1000, TimeUnit.MILLISECONDS));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new PhiAccrualFailureDetector(8.0, 100, 0, 0, 1000, TimeUnit.MILLISECONDS));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new PhiAccrualFailureDetector(8.0, 100, 10, -1, 1000, TimeUnit.MILLISECONDS));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new PhiAccrualFailureDetector(8.0, 100, 10, 0, 0, TimeUnit.MILLISECONDS));
+        Assertions.assertThrows(NullPointerException.class,
+            () -> new PhiAccrualFailureDetector(8.0, 100, 10, 0, 1000, null));
+    }
+
+    @Test
+    void testPhi() {
+        // phi is 0.3 at the mean, and rises steeply past it.
+        Assertions.assertEquals(0.3, PhiAccrualFailureDetector.phi(1000, 1000, 100), 0.01);
+        Assertions.assertTrue(PhiAccrualFailureDetector.phi(500, 1000, 100) < 0.01);
+        Assertions.assertTrue(PhiAccrualFailureDetector.phi(1300, 1000, 100) > 2.5);
+        Assertions.assertTrue(PhiAccrualFailureDetector.phi(2000, 1000, 100) > 8.0);
+        Assertions.assertTrue(PhiAccrualFailureDetector.phi(1000000, 1000, 100) > 8.0);
+    }
+
+    @Test
+    void testAvailableWithoutHistory() {
+        PhiAccrualFailureDetector detector = createDetector(0);
+        Assertions.assertEquals(0.0, detector.phi(0));
+        Assertions.assertTrue(detector.isAvailable(Long.MAX_VALUE));
+    }
+
+    @Test
+    void testNeverRespondingTimesOut() {
+        PhiAccrualFailureDetector detector = createDetector(0);
+        detector.failure(0);
+        Assertions.assertTrue(detector.isAvailable(1000 * MS));
+        Assertions.assertFalse(detector.isAvailable(3000 * MS));
+    }
+
+    @Test
+    void testRegularHeartbeats() {
+        PhiAccrualFailureDetector detector = createDetector(0);
+        long timestamp = 0;
+        for (int i = 0; i < 100; i++) {
+            detector.success(timestamp);
+            timestamp += 1000 * MS;
+        }
+
+        // A regular resource is suspected soon after it misses a response.
+        Assertions.assertTrue(detector.isAvailable(timestamp - 1000 * MS + 1000 * MS));
+        Assertions.assertFalse(detector.isAvailable(timestamp - 1000 * MS + 1200 * MS));
+    }
+
+    @Test
+    void testJitteryHeartbeatsAreToleratedLonger() {
+        PhiAccrualFailureDetector detector = createDetector(0);
+        long timestamp = 0;
+        for (int i = 0; i < 100; i++) {
+            detector.success(timestamp);
+            timestamp += ((i % 2 == 0) ? 700 : 1300) * MS;
+        }
+
+        long last = timestamp - 700 * MS;
+        Assertions.assertTrue(detector.isAvailable(last + 1200 * MS));
+        Assertions.assertFalse(detector.isAvailable(last + 3000 * MS));
+    }
+
+    @Test
+    void testAcceptablePause() {
+        PhiAccrualFailureDetector detector = createDetector(2000);
+        long timestamp = 0;
+        for (int i = 0; i < 100; i++) {
+            detector.success(timestamp);
+            timestamp += 1000 * MS;
+        }
+
+        long last = timestamp - 1000 * MS;
+        Assertions.assertTrue(detector.isAvailable(last + 2500 * MS));
+        Assertions.assertFalse(detector.isAvailable(last + 4000 * MS));
+    }
+
+    @Test
+    void testReset() {
+        PhiAccrualFailureDetector detector = createDetector(0);
+        detector.failure(0);
+        Assertions.assertFalse(detector.isAvailable(10000 * MS));
+        detector.reset();
+        Assertions.assertTrue(detector.isAvailable(10000 * MS));
+    }
+}
@@ -0,0 +1,36 @@
+package com.microsoft.azure.practices.nvadaemon.monitor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ThresholdFailureDetectorTest {
+    @Test
+    void testInvalidThreshold() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new ThresholdFailureDetector(0));
+    }
+
+    @Test
+    void testConsecutiveFailures() {
+        ThresholdFailureDetector detector = new ThresholdFailureDetector(3);
+        Assertions.assertTrue(detector.isAvailable(0));
+        detector.failure(0);
+        detector.failure(1);
+        Assertions.assertTrue(detector.isAvailable(1));
+        detector.success(2);
+        detector.failure(3);
+        detector.failure(4);
+        Assertions.assertTrue(detector.isAvailable(4));
+        detector.failure(5);
+        Assertions.assertFalse(detector.isAvailable(5));
+    }
+
+    @Test
+    void testReset() {
+        ThresholdFailureDetector detector = new ThresholdFailureDetector(1);
+        detector.failure(0);
+        Assertions.assertFalse(detector.isAvailable(0));
+        detector.reset();
+        Assertions.assertTrue(detector.isAvailable(0));
+    }
+}
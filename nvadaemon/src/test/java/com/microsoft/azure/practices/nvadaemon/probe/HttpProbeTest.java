@@ -0,0 +1,40 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HttpProbeTest {
+    @Test
+    void test_invalid_path() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new HttpProbe(false, false, null, null, null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new HttpProbe(false, false, "health", null, null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new HttpProbe(false, false, "/health check", null, null));
+    }
+
+    @Test
+    void test_invalid_expected_status() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new HttpProbe(false, false, "/", 99, null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new HttpProbe(false, false, "/", 600, null));
+    }
+
+    @Test
+    void test_invalid_expected_body() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new HttpProbe(false, false, "/", null, ""));
+    }
+
+    @Test
+    void test_valid_parameters() {
+        HttpProbe probe = new HttpProbe(true, true, "/health?deep=true", 204, "ok");
+        Assertions.assertTrue(probe.isTls());
+        Assertions.assertTrue(probe.isVerifyCertificate());
+        Assertions.assertEquals("/health?deep=true", probe.getPath());
+        Assertions.assertEquals(Integer.valueOf(204), probe.getExpectedStatus());
+        Assertions.assertEquals("ok", probe.getExpectedBody());
+    }
+}
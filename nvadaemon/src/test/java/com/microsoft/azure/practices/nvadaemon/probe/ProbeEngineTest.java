@@ -0,0 +1,430 @@
+package com.microsoft.azure.practices.nvadaemon.probe;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class ProbeEngineTest {
+    @Test
+    void test_null_targets() throws IOException {
+        try (ProbeEngine probeEngine = new ProbeEngine()) {
+            Assertions.assertThrows(NullPointerException.class,
+                () -> probeEngine.probe((Collection<SocketAddress>)null,
+                    1000, TimeUnit.MILLISECONDS));
+            Assertions.assertThrows(NullPointerException.class,
+                () -> probeEngine.probe((Map<SocketAddress, Probe>)null,
+                    1000, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    void test_invalid_timeout() throws IOException {
+        try (ProbeEngine probeEngine = new ProbeEngine()) {
+            Assertions.assertThrows(IllegalArgumentException.class,
+                () -> probeEngine.probe(Collections.emptyList(), 0, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    void test_null_unit() throws IOException {
+        try (ProbeEngine probeEngine = new ProbeEngine()) {
+            Assertions.assertThrows(NullPointerException.class,
+                () -> probeEngine.probe(Collections.emptyList(), 1000, null));
+        }
+    }
+
+    @Test
+    void test_closed() throws IOException {
+        ProbeEngine probeEngine = new ProbeEngine();
+        probeEngine.close();
+        Assertions.assertThrows(IllegalStateException.class,
+            () -> probeEngine.probe(Collections.emptyList(), 1000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void test_no_targets() throws IOException {
+        try (ProbeEngine probeEngine = new ProbeEngine()) {
+            Assertions.assertTrue(probeEngine.probe(Collections.emptyList(),
+                1000, TimeUnit.MILLISECONDS).isEmpty());
+        }
+    }
+
+    @Test
+    void test_probe_all_targets() throws IOException {
+        try (ServerSocketChannel listening = openServerSocketChannel();
+             ProbeEngine probeEngine = new ProbeEngine()) {
+            SocketAddress up = listening.getLocalAddress();
+            SocketAddress down = getUnusedAddress();
+            Map<SocketAddress, ProbeResult> results = probeEngine.probe(
+                Arrays.asList(up, down), 5000, TimeUnit.MILLISECONDS);
+            Assertions.assertEquals(2, results.size());
+            Assertions.assertTrue(results.get(up).isSuccess());
+            Assertions.assertNull(results.get(up).getCause());
+            Assertions.assertTrue(results.get(up).getLatency(TimeUnit.NANOSECONDS) >= 0);
+            Assertions.assertFalse(results.get(down).isSuccess());
+            Assertions.assertNotNull(results.get(down).getCause());
+        }
+    }
+
+    @Test
+    void test_probe_engine_is_reusable() throws IOException {
+        try (ServerSocketChannel listening = openServerSocketChannel();
+             ProbeEngine probeEngine = new ProbeEngine()) {
+            SocketAddress up = listening.getLocalAddress();
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertTrue(probeEngine.probe(Collections.singletonList(up),
+                    5000, TimeUnit.MILLISECONDS).get(up).isSuccess());
+            }
+        }
+    }
+
+    @Test
+    void test_unresolved_target() throws IOException {
+        SocketAddress unresolved = InetSocketAddress.createUnresolved("nva.invalid", 1234);
+        try (ProbeEngine probeEngine = new ProbeEngine()) {
+            ProbeResult result = probeEngine.probe(Collections.singletonList(unresolved),
+                1000, TimeUnit.MILLISECONDS).get(unresolved);
+            Assertions.assertFalse(result.isSuccess());
+        }
+    }
+
+    @Test
+    void test_probe_result_timeout_cause() {
+        SocketAddress target = InetSocketAddress.createUnresolved("nva", 1234);
+        ProbeResult result = ProbeResult.failure(target, 2, TimeUnit.SECONDS,
+            new SocketTimeoutException());
+        Assertions.assertEquals(target, result.getTarget());
+        Assertions.assertEquals(2000, result.getLatency(TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(result.getCause() instanceof SocketTimeoutException);
+    }
+
+    @Test
+    void test_null_probe() throws IOException {
+        try (ProbeEngine probeEngine = new ProbeEngine()) {
+            Assertions.assertThrows(NullPointerException.class,
+                () -> probeEngine.probe(Collections.singletonMap(getUnusedAddress(), null),
+                    1000, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    void test_http_probe() throws Exception {
+        try (TestHttpServer server = new TestHttpServer(false);
+             ProbeEngine probeEngine = new ProbeEngine()) {
+            SocketAddress target = server.getAddress();
+            Assertions.assertTrue(probeEngine.probe(Collections.singletonMap(target,
+                new HttpProbe(false, false, "/health", null, null)),
+                5000, TimeUnit.MILLISECONDS).get(target).isSuccess());
+            Assertions.assertTrue(probeEngine.probe(Collections.singletonMap(target,
+                new HttpProbe(false, false, "/health", 200, "healthy")),
+                5000, TimeUnit.MILLISECONDS).get(target).isSuccess());
+
+            ProbeResult result = probeEngine.probe(Collections.singletonMap(target,
+                new HttpProbe(false, false, "/fail", null, null)),
+                5000, TimeUnit.MILLISECONDS).get(target);
+            Assertions.assertFalse(result.isSuccess());
+            Assertions.assertEquals("Unexpected HTTP status: 503", result.getCause().getMessage());
+
+            result = probeEngine.probe(Collections.singletonMap(target,
+                new HttpProbe(false, false, "/health", null, "wedged")),
+                5000, TimeUnit.MILLISECONDS).get(target);
+            Assertions.assertFalse(result.isSuccess());
+            Assertions.assertEquals("HTTP response does not contain 'wedged'",
+                result.getCause().getMessage());
+        }
+    }
+
+    @Test
+    void test_http_probe_connected_but_unresponsive() throws IOException {
+        // The backlog accepts the connection, but nothing ever answers the request.
+        try (ServerSocketChannel listening = openServerSocketChannel();
+             ProbeEngine probeEngine = new ProbeEngine()) {
+            SocketAddress target = listening.getLocalAddress();
+            Assertions.assertTrue(probeEngine.probe(Collections.singletonList(target),
+                1000, TimeUnit.MILLISECONDS).get(target).isSuccess());
+            ProbeResult result = probeEngine.probe(Collections.singletonMap(target,
+                new HttpProbe(false, false, "/health", null, null)),
+                500, TimeUnit.MILLISECONDS).get(target);
+            Assertions.assertFalse(result.isSuccess());
+            Assertions.assertTrue(result.getCause() instanceof SocketTimeoutException);
+        }
+    }
+
+    @Test
+    void test_https_probe() throws Exception {
+        try (TestHttpServer server = new TestHttpServer(true);
+             ProbeEngine probeEngine = new ProbeEngine()) {
+            SocketAddress target = server.getAddress();
+            Assertions.assertTrue(probeEngine.probe(Collections.singletonMap(target,
+                new HttpProbe(true, false, "/health", 200, "healthy")),
+                5000, TimeUnit.MILLISECONDS).get(target).isSuccess());
+
+            // The test certificate is self-signed, so it cannot be verified.
+            ProbeResult result = probeEngine.probe(Collections.singletonMap(target,
+                new HttpProbe(true, true, "/health", null, null)),
+                5000, TimeUnit.MILLISECONDS).get(target);
+            Assertions.assertFalse(result.isSuccess());
+        }
+    }
+
+    @Test
+    void test_tls_probe() throws Exception {
+        try (TestHttpServer https = new TestHttpServer(true);
+             TestHttpServer http = new TestHttpServer(false);
+             ProbeEngine probeEngine = new ProbeEngine()) {
+            Map<SocketAddress, Probe> probes = new LinkedHashMap<>();
+            probes.put(https.getAddress(), new TlsProbe(false));
+            probes.put(http.getAddress(), new TlsProbe(false));
+            Map<SocketAddress, ProbeResult> results = probeEngine.probe(probes,
+                2000, TimeUnit.MILLISECONDS);
+            Assertions.assertTrue(results.get(https.getAddress()).isSuccess());
+            Assertions.assertFalse(results.get(http.getAddress()).isSuccess());
+        }
+    }
+
+    @Test
+    void test_udp_probe() throws Exception {
+        try (TestUdpEchoServer server = new TestUdpEchoServer();
+             ProbeEngine probeEngine = new ProbeEngine()) {
+            SocketAddress up = server.getAddress();
+            SocketAddress down = getUnusedUdpAddress();
+            byte[] ping = "ping".getBytes(StandardCharsets.US_ASCII);
+            Map<SocketAddress, Probe> probes = new LinkedHashMap<>();
+            probes.put(up, new UdpProbe(ping, ping));
+            probes.put(down, new UdpProbe(ping, null));
+            Map<SocketAddress, ProbeResult> results = probeEngine.probe(probes,
+                2000, TimeUnit.MILLISECONDS);
+            Assertions.assertTrue(results.get(up).isSuccess());
+            Assertions.assertFalse(results.get(down).isSuccess());
+
+            ProbeResult result = probeEngine.probe(Collections.singletonMap(up,
+                new UdpProbe(ping, "pong".getBytes(StandardCharsets.US_ASCII))),
+                2000, TimeUnit.MILLISECONDS).get(up);
+            Assertions.assertFalse(result.isSuccess());
+        }
+    }
+
+    @Test
+    void test_optional_targets_do_not_hold_up_required_targets() throws Exception {
+        // The silent server never answers, so only the optional timeout ends its probe.
+        try (TestUdpEchoServer server = new TestUdpEchoServer();
+             DatagramSocket silent = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             ProbeEngine probeEngine = new ProbeEngine()) {
+            SocketAddress required = server.getAddress();
+            SocketAddress optional = silent.getLocalSocketAddress();
+            byte[] ping = "ping".getBytes(StandardCharsets.US_ASCII);
+            Map<SocketAddress, Probe> probes = new LinkedHashMap<>();
+            probes.put(required, new UdpProbe(ping, ping));
+            probes.put(optional, new UdpProbe(ping, ping));
+            long start = System.nanoTime();
+            Map<SocketAddress, ProbeResult> results = probeEngine.probe(probes,
+                Collections.singleton(required), 10000, 200, TimeUnit.MILLISECONDS);
+            Assertions.assertTrue(
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+            Assertions.assertTrue(results.get(required).isSuccess());
+            Assertions.assertFalse(results.get(optional).isSuccess());
+            Assertions.assertTrue(
+                results.get(optional).getCause() instanceof SocketTimeoutException);
+        }
+    }
+
+    @Test
+    void test_invalid_optional_timeout() throws IOException {
+        try (ProbeEngine probeEngine = new ProbeEngine()) {
+            Assertions.assertThrows(IllegalArgumentException.class,
+                () -> probeEngine.probe(Collections.emptyMap(), Collections.emptySet(), 1000, 0,
+                    TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    void test_udp_probe_invalid_request() {
+        Assertions.assertThrows(NullPointerException.class, () -> new UdpProbe(null, null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new UdpProbe(new byte[0], null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new UdpProbe(new byte[ProbeEngine.BUFFER_SIZE + 1], null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new UdpProbe(new byte[1], new byte[0]));
+    }
+
+    @Test
+    void test_buffers_are_reused() throws Exception {
+        try (TestHttpServer server = new TestHttpServer(true);
+             ProbeEngine probeEngine = new ProbeEngine()) {
+            SocketAddress target = server.getAddress();
+            Probe probe = new HttpProbe(true, false, "/health", null, "healthy");
+            Assertions.assertEquals(0, probeEngine.getPooledBufferCount());
+            Assertions.assertTrue(probeEngine.probe(Collections.singletonMap(target, probe),
+                5000, TimeUnit.MILLISECONDS).get(target).isSuccess());
+            int pooled = probeEngine.getPooledBufferCount();
+            Assertions.assertTrue(pooled > 0);
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertTrue(probeEngine.probe(Collections.singletonMap(target, probe),
+                    5000, TimeUnit.MILLISECONDS).get(target).isSuccess());
+                Assertions.assertEquals(pooled, probeEngine.getPooledBufferCount());
+            }
+        }
+    }
+
+    @Test
+    void test_probe_result_quorum() {
+        SocketAddress target = InetSocketAddress.createUnresolved("nva", 1234);
+        SocketAddress endpoint = InetSocketAddress.createUnresolved("nva", 5678);
+        List<ProbeResult> results = Arrays.asList(
+            ProbeResult.success(target, 30, TimeUnit.MILLISECONDS),
+            ProbeResult.failure(endpoint, 100, TimeUnit.MILLISECONDS,
+                new SocketTimeoutException()),
+            ProbeResult.success(endpoint, 10, TimeUnit.MILLISECONDS));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> ProbeResult.quorum(target, results, 0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> ProbeResult.quorum(target, results, 4));
+
+        ProbeResult result = ProbeResult.quorum(target, results, 1);
+        Assertions.assertTrue(result.isSuccess());
+        Assertions.assertEquals(target, result.getTarget());
+        Assertions.assertEquals(10, result.getLatency(TimeUnit.MILLISECONDS));
+
+        result = ProbeResult.quorum(target, results, 2);
+        Assertions.assertTrue(result.isSuccess());
+        Assertions.assertEquals(30, result.getLatency(TimeUnit.MILLISECONDS));
+
+        result = ProbeResult.quorum(target, results, 3);
+        Assertions.assertFalse(result.isSuccess());
+        Assertions.assertEquals(100, result.getLatency(TimeUnit.MILLISECONDS));
+        Assertions.assertEquals("2 of 3 probes succeeded, 3 required",
+            result.getCause().getMessage());
+        Assertions.assertEquals(1, result.getCause().getSuppressed().length);
+    }
+
+    private static final class TestHttpServer implements AutoCloseable {
+        private final HttpServer server;
+
+        TestHttpServer(boolean tls) throws IOException, GeneralSecurityException {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+            if (tls) {
+                HttpsServer httpsServer = HttpsServer.create(address, 0);
+                httpsServer.setHttpsConfigurator(new HttpsConfigurator(createSslContext()));
+                this.server = httpsServer;
+            } else {
+                this.server = HttpServer.create(address, 0);
+            }
+
+            this.server.createContext("/health", e -> respond(e, 200, "healthy"));
+            this.server.createContext("/fail", e -> respond(e, 503, "unhealthy"));
+            this.server.start();
+        }
+
+        SocketAddress getAddress() { return this.server.getAddress(); }
+
+        @Override
+        public void close() {
+            this.server.stop(0);
+        }
+
+        private static void respond(HttpExchange exchange, int status, String body)
+            throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        }
+
+        private static SSLContext createSslContext()
+            throws IOException, GeneralSecurityException {
+            char[] password = "changeit".toCharArray();
+            KeyStore keyStore = KeyStore.getInstance("JKS");
+            try (InputStream inputStream =
+                     ProbeEngineTest.class.getResourceAsStream("/probe-test.jks")) {
+                keyStore.load(inputStream, password);
+            }
+
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(
+                KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, password);
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+            return sslContext;
+        }
+    }
+
+    private static final class TestUdpEchoServer implements AutoCloseable {
+        private final DatagramSocket socket;
+        private final Thread thread;
+
+        TestUdpEchoServer() throws IOException {
+            this.socket = new DatagramSocket(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            this.thread = new Thread(() -> {
+                byte[] buffer = new byte[1024];
+                try {
+                    while (true) {
+                        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                        this.socket.receive(packet);
+                        this.socket.send(packet);
+                    }
+                } catch (IOException e) {
+                    // The socket was closed
+                }
+            });
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        SocketAddress getAddress() { return this.socket.getLocalSocketAddress(); }
+
+        @Override
+        public void close() throws InterruptedException {
+            this.socket.close();
+            this.thread.join();
+        }
+    }
+
+    private static SocketAddress getUnusedUdpAddress() throws SocketException {
+        try (DatagramSocket socket = new DatagramSocket(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            return socket.getLocalSocketAddress();
+        }
+    }
+
+    private static ServerSocketChannel openServerSocketChannel() throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        return channel;
+    }
+
+    private static SocketAddress getUnusedAddress() throws IOException {
+        try (ServerSocketChannel channel = openServerSocketChannel()) {
+            return channel.getLocalAddress();
+        }
+    }
+}